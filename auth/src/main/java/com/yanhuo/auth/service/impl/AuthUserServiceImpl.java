@@ -14,6 +14,7 @@ import com.yanhuo.common.exception.YanHuoException;
 import com.yanhuo.common.utils.ConvertUtils;
 import com.yanhuo.common.utils.JwtUtils;
 import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.xo.cache.UserSummaryCache;
 import com.yanhuo.xo.dao.UserDao;
 import com.yanhuo.xo.entity.User;
 import lombok.extern.slf4j.Slf4j;
@@ -39,6 +40,9 @@ public class AuthUserServiceImpl extends ServiceImpl<UserDao, User> implements A
     @Autowired
     RedisUtils redisUtils;
 
+    @Autowired
+    UserSummaryCache userSummaryCache;
+
     private void setUserInfoAndToken(Map<String, Object> map, User authUser) {
         String accessToken = JwtUtils.getJwtToken(authUser.getId(), AuthConstant.ACCESS_TOKEN_EXPIRATION_TIME);
         String refreshToken = JwtUtils.getJwtToken(authUser.getId(), AuthConstant.REFRESH_TOKEN_EXPIRATION_TIME);
@@ -147,7 +151,9 @@ public class AuthUserServiceImpl extends ServiceImpl<UserDao, User> implements A
             user = this.getById(authUserDTO.getId());
         }
         user.setPassword(pwd);
-        return this.updateById(user);
+        boolean updated = this.updateById(user);
+        userSummaryCache.invalidate(user.getId());
+        return updated;
     }
 
     @Override
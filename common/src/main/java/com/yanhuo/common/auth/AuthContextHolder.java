@@ -24,4 +24,19 @@ public class AuthContextHolder {
     public static void removeUserId() {
         userId.remove();
     }
+
+    //访问token，异步任务中远程调用时使用
+    private static ThreadLocal<String> accessToken = new ThreadLocal<>();
+
+    public static void setAccessToken(String _accessToken) {
+        accessToken.set(_accessToken);
+    }
+
+    public static String getAccessToken() {
+        return accessToken.get();
+    }
+
+    public static void removeAccessToken() {
+        accessToken.remove();
+    }
 }
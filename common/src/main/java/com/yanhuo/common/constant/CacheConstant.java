@@ -0,0 +1,57 @@
+package com.yanhuo.common.constant;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * 缓存key设置
+ * @author xiaozhao
+ */
+@ApiModel("缓存key")
+public interface CacheConstant {
+
+    @ApiModelProperty("用户点赞收藏的id集合(likeOrCollection:{uid}:{type})")
+    String LIKE_OR_COLLECTION_KEY = "likeOrCollection:";
+
+    @ApiModelProperty("空集合占位元素")
+    String EMPTY_MEMBER = "";
+
+    @ApiModelProperty("笔记热度排行(zset)")
+    String HOT_NOTE_KEY = "hotNote:rank";
+
+    @ApiModelProperty("笔记热度排行衰减的基准时间")
+    String HOT_NOTE_EPOCH_KEY = "hotNote:epoch";
+
+    @ApiModelProperty("关注动态收件箱(zset，timeline:inbox:{uid})")
+    String TIMELINE_INBOX_KEY = "timeline:inbox:";
+
+    @ApiModelProperty("用户摘要信息(userSummary:{uid})")
+    String USER_SUMMARY_KEY = "userSummary:";
+
+    @ApiModelProperty("用户摘要信息失效通知频道")
+    String USER_SUMMARY_INVALIDATE_CHANNEL = "userSummary:invalidate";
+
+    @ApiModelProperty("笔记一级评论按点赞数排行(zset，commentTree:rank:{nid})")
+    String COMMENT_TREE_RANK_KEY = "commentTree:rank:";
+
+    @ApiModelProperty("笔记评论树节点(hash，commentTree:node:{nid}，一级评论id -> 携带前几条二级评论的评论)")
+    String COMMENT_TREE_NODE_KEY = "commentTree:node:";
+
+    @ApiModelProperty("笔记评论树重建锁(commentTree:lock:{nid})")
+    String COMMENT_TREE_LOCK_KEY = "commentTree:lock:";
+
+    @ApiModelProperty("重建期间增量更新的一级评论id(set，commentTree:dirty:{nid})，重建写入后重新更新")
+    String COMMENT_TREE_DIRTY_KEY = "commentTree:dirty:";
+
+    @ApiModelProperty("笔记索引增量同步位置，最后同步的笔记update_date毫秒数")
+    String NOTE_INDEX_WATERMARK_KEY = "noteIndex:watermark";
+
+    @ApiModelProperty("笔记索引同步锁，增量同步和全量重建互斥")
+    String NOTE_INDEX_LOCK_KEY = "noteIndex:lock";
+
+    @ApiModelProperty("笔记删除后的清理任务(zset，任务json -> 下次执行时间毫秒数)")
+    String NOTE_CLEANUP_KEY = "noteCleanup:queue";
+
+    @ApiModelProperty("重试用完的笔记清理任务(list)")
+    String NOTE_CLEANUP_DEAD_KEY = "noteCleanup:dead";
+}
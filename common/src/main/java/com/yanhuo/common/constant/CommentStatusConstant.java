@@ -0,0 +1,17 @@
+package com.yanhuo.common.constant;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * @author xiaozhao
+ */
+@ApiModel("评论状态")
+public interface CommentStatusConstant {
+
+    @ApiModelProperty("已保存，等待同步后展示")
+    Integer PENDING = 0;
+
+    @ApiModelProperty("已同步，正常展示")
+    Integer VISIBLE = 1;
+}
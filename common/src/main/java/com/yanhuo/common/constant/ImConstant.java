@@ -13,4 +13,31 @@ public interface ImConstant {
 
     @ApiModelProperty("消息通知数量")
     String MESSAGE_COUNT_KEY = "messageCountKey:";
+
+    @ApiModelProperty("消息通知数量哈希表，替代json格式的MESSAGE_COUNT_KEY")
+    String MESSAGE_COUNT_HASH_KEY = "messageCount:";
+
+    @ApiModelProperty("已累加的通知id，后接通知id，重试时不重复累加")
+    String MESSAGE_COUNT_APPLIED_KEY = "messageCountApplied:";
+
+    @ApiModelProperty("用户websocket连接所在的im节点")
+    String PRESENCE_KEY = "imPresence:";
+
+    @ApiModelProperty("发往指定im节点的消息频道，后接节点id")
+    String ROUTE_CHANNEL = "imRoute:";
+
+    @ApiModelProperty("发往所有im节点的消息频道")
+    String BROADCAST_CHANNEL = "imBroadcast";
+
+    @ApiModelProperty("会话最近消息有序集合，后接会话id")
+    String CHAT_RECENT_KEY = "chatRecent:";
+
+    @ApiModelProperty("还没有写入数据库的私聊消息(hash，消息id -> 消息json)")
+    String CHAT_PENDING_KEY = "chatWrite:pending";
+
+    @ApiModelProperty("重试和拆分后仍写入失败的私聊消息(hash，消息id -> 消息json)，需要人工处理")
+    String CHAT_FAILED_KEY = "chatWrite:failed";
+
+    @ApiModelProperty("恢复未写入的私聊消息的锁")
+    String CHAT_RECOVER_LOCK_KEY = "chatWrite:recoverLock";
 }
@@ -0,0 +1,20 @@
+package com.yanhuo.common.constant;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * @author xiaozhao
+ */
+@ApiModel("笔记状态")
+public interface NoteStatusConstant {
+
+    @ApiModelProperty("已保存，正在建立索引")
+    Integer PROCESSING = 0;
+
+    @ApiModelProperty("已发布")
+    Integer PUBLISHED = 1;
+
+    @ApiModelProperty("发布失败")
+    Integer FAILED = 2;
+}
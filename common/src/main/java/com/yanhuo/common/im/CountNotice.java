@@ -0,0 +1,45 @@
+package com.yanhuo.common.im;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 通知数量增量，同一接收用户的多次通知合并为一条
+ * <p>
+ * 每条增量有唯一id，im按id去重，发送失败重试时不会重复累加。
+ *
+ * @author xiaozhao
+ */
+@Data
+public class CountNotice implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String id;
+
+    private String acceptUid;
+
+    private long likeOrCollectionCount;
+
+    private long commentCount;
+
+    private long followCount;
+
+    /**
+     * @param type 0 点赞 1 评论 2 关注
+     */
+    public void add(Integer type) {
+        switch (type) {
+            case 0:
+                likeOrCollectionCount++;
+                break;
+            case 1:
+                commentCount++;
+                break;
+            default:
+                followCount++;
+                break;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.yanhuo.common.result;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 游标分页结果
+ *
+ * @author xiaozhao
+ */
+@ApiModel("游标分页结果")
+@Data
+@Accessors(chain = true)
+public class CursorPage<T> implements Serializable {
+
+    @ApiModelProperty("数据")
+    private List<T> records = new ArrayList<>();
+
+    @ApiModelProperty("下一页游标，为空表示没有更多数据")
+    private String nextCursor;
+
+    @ApiModelProperty("是否还有更多数据")
+    private Boolean hasMore = false;
+
+    @ApiModelProperty("总数，只在第一页且需要统计时返回")
+    private Long total;
+
+    /**
+     * 保留游标信息，替换数据
+     *
+     * @param records 转换后的数据
+     * @return 新的游标分页结果
+     */
+    public <R> CursorPage<R> convert(List<R> records) {
+        return new CursorPage<R>()
+                .setRecords(records)
+                .setNextCursor(nextCursor)
+                .setHasMore(hasMore)
+                .setTotal(total);
+    }
+}
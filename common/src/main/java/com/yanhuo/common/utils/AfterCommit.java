@@ -0,0 +1,35 @@
+package com.yanhuo.common.utils;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 事务提交后执行
+ * <p>
+ * 当前线程存在事务时注册到事务提交之后执行，事务回滚时不执行；没有事务时立即执行。
+ *
+ * @author xiaozhao
+ */
+public final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    /**
+     * 在当前事务提交后执行，没有事务时立即执行
+     *
+     * @param runnable 要执行的操作
+     */
+    public static void run(Runnable runnable) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    runnable.run();
+                }
+            });
+        } else {
+            runnable.run();
+        }
+    }
+}
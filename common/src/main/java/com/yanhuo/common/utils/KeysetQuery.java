@@ -0,0 +1,220 @@
+package com.yanhuo.common.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yanhuo.common.exception.YanHuoException;
+import com.yanhuo.common.result.CursorPage;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 游标(keyset)分页查询
+ * <p>
+ * 按若干排序列分页，最后一列必须唯一(一般是id)。
+ * 下一页从上一页最后一条记录的排序列取值继续查询，
+ * 用 where (c1, c2, ..) < (v1, v2, ..) 代替offset，深分页和第一页一样快，默认不执行count。
+ * 游标是排序列取值的json数组再做base64编码，对客户端不透明。
+ * 分页数小于1时报错，大于MAX_PAGE_SIZE时按MAX_PAGE_SIZE查询。
+ *
+ * <pre>
+ * CursorPage&lt;Note&gt; page = KeysetQuery.&lt;Note&gt;desc()
+ *         .dateColumn("create_date", Note::getCreateDate)
+ *         .stringColumn("id", Note::getId)
+ *         .page(new QueryWrapper&lt;Note&gt;().eq("uid", uid), cursor, pageSize, noteService::list);
+ * </pre>
+ *
+ * @author xiaozhao
+ */
+public class KeysetQuery<T> {
+
+    /**
+     * 最大分页数，避免一次查询和返回过多记录
+     */
+    public static final long MAX_PAGE_SIZE = 100;
+
+    private final boolean desc;
+
+    private final List<Column<T>> columns = new ArrayList<>();
+
+    private KeysetQuery(boolean desc) {
+        this.desc = desc;
+    }
+
+    public static <T> KeysetQuery<T> desc() {
+        return new KeysetQuery<>(true);
+    }
+
+    public static <T> KeysetQuery<T> asc() {
+        return new KeysetQuery<>(false);
+    }
+
+    /**
+     * 增加排序列
+     *
+     * @param column 列名或表达式，如 ifnull(pinned, 0)
+     * @param getter 从记录中取排序值，不能为null
+     * @param parser 把游标中的字符串还原为查询参数
+     */
+    public KeysetQuery<T> column(String column, Function<T, ?> getter, Function<String, ?> parser) {
+        columns.add(new Column<>(column, getter, parser));
+        return this;
+    }
+
+    public KeysetQuery<T> stringColumn(String column, Function<T, String> getter) {
+        return column(column, getter, value -> value);
+    }
+
+    public KeysetQuery<T> longColumn(String column, Function<T, Long> getter) {
+        return column(column, getter, Long::valueOf);
+    }
+
+    public KeysetQuery<T> intColumn(String column, Function<T, Integer> getter) {
+        return column(column, getter, Integer::valueOf);
+    }
+
+    /**
+     * 时间列在游标中保存为毫秒数
+     */
+    public KeysetQuery<T> dateColumn(String column, Function<T, Date> getter) {
+        return column(column, item -> getter.apply(item).getTime(), value -> new Date(Long.parseLong(value)));
+    }
+
+    /**
+     * 按游标查询一页，不统计总数
+     */
+    public CursorPage<T> page(QueryWrapper<T> wrapper, String cursor, long pageSize, Function<QueryWrapper<T>, List<T>> lister) {
+        return page(wrapper, cursor, pageSize, lister, null);
+    }
+
+    /**
+     * 按游标查询一页
+     *
+     * @param wrapper  过滤条件，不能包含排序和limit
+     * @param cursor   上一页返回的游标，第一页为空
+     * @param pageSize 分页数
+     * @param lister   执行查询，如 service::list
+     * @param counter  统计总数，如 service::count，为null时不统计，只在第一页统计
+     * @return 游标分页结果
+     */
+    public CursorPage<T> page(QueryWrapper<T> wrapper, String cursor, long pageSize,
+                              Function<QueryWrapper<T>, List<T>> lister, Function<QueryWrapper<T>, Long> counter) {
+        pageSize = checkPageSize(pageSize);
+        CursorPage<T> page = new CursorPage<>();
+        if (counter != null && StringUtils.isBlank(cursor)) {
+            page.setTotal(counter.apply(wrapper));
+        }
+        if (StringUtils.isNotBlank(cursor)) {
+            List<Object> values = decode(cursor);
+            wrapper.and(w -> {
+                // (c1 < v1) or (c1 = v1 and c2 < v2) or ...
+                for (int i = 0; i < columns.size(); i++) {
+                    int last = i;
+                    w.or(x -> {
+                        for (int j = 0; j < last; j++) {
+                            x.eq(columns.get(j).column, values.get(j));
+                        }
+                        if (desc) {
+                            x.lt(columns.get(last).column, values.get(last));
+                        } else {
+                            x.gt(columns.get(last).column, values.get(last));
+                        }
+                    });
+                }
+            });
+        }
+        columns.forEach(item -> wrapper.orderBy(true, !desc, item.column));
+        // 多取一条用于判断是否还有下一页
+        wrapper.last("limit " + (pageSize + 1));
+        CursorPage<T> result = page(lister.apply(wrapper), pageSize);
+        return result.setTotal(page.getTotal());
+    }
+
+    /**
+     * 用已按排序列排好序的记录构造一页，用于缓存等不经过数据库的第一页
+     *
+     * @param records  排好序的记录，多于pageSize条时表示还有下一页
+     * @param pageSize 分页数
+     * @return 游标分页结果，游标和数据库查询得到的格式相同
+     */
+    public CursorPage<T> page(List<T> records, long pageSize) {
+        pageSize = checkPageSize(pageSize);
+        CursorPage<T> page = new CursorPage<>();
+        boolean hasMore = records.size() > pageSize;
+        if (hasMore) {
+            records = new ArrayList<>(records.subList(0, (int) pageSize));
+            page.setNextCursor(encode(records.get(records.size() - 1)));
+        }
+        return page.setRecords(records).setHasMore(hasMore);
+    }
+
+    /**
+     * 检查分页数，超过上限时取上限
+     *
+     * @param pageSize 分页数
+     * @return 实际使用的分页数
+     */
+    public static long checkPageSize(long pageSize) {
+        if (pageSize < 1) {
+            throw new YanHuoException("分页数无效");
+        }
+        return Math.min(pageSize, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * 用记录的排序列取值生成游标
+     *
+     * @param item 记录
+     * @return 游标
+     */
+    public String encode(T item) {
+        List<String> values = new ArrayList<>(columns.size());
+        columns.forEach(column -> values.add(String.valueOf(column.getter.apply(item))));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(JSONUtil.toJsonStr(values).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标，用于在数据库之外的数据源上按同一个位置继续分页
+     *
+     * @param cursor 游标
+     * @return 各排序列的查询参数
+     */
+    public List<Object> decode(String cursor) {
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            List<String> values = JSONUtil.parseArray(json).toList(String.class);
+            if (values.size() != columns.size()) {
+                throw new YanHuoException("游标无效");
+            }
+            List<Object> result = new ArrayList<>(values.size());
+            for (int i = 0; i < values.size(); i++) {
+                result.add(columns.get(i).parser.apply(values.get(i)));
+            }
+            return result;
+        } catch (YanHuoException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new YanHuoException("游标无效");
+        }
+    }
+
+    private static class Column<T> {
+
+        private final String column;
+
+        private final Function<T, ?> getter;
+
+        private final Function<String, ?> parser;
+
+        private Column(String column, Function<T, ?> getter, Function<String, ?> parser) {
+            this.column = column;
+            this.getter = getter;
+            this.parser = parser;
+        }
+    }
+}
@@ -2,10 +2,14 @@ package com.yanhuo.common.utils;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.Cursor;
 import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
@@ -21,6 +25,12 @@ import java.util.concurrent.TimeUnit;
 @Component
 public class RedisUtils {
 
+    private static final String Z_ADD_IF_EXISTS_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 1 then " +
+            "redis.call('zadd', KEYS[1], ARGV[1], ARGV[2]) " +
+            "redis.call('zremrangebyrank', KEYS[1], 0, -tonumber(ARGV[3]) - 1) " +
+            "return 1 end return 0";
+
     @Autowired
     private StringRedisTemplate redisTemplate;
 
@@ -91,6 +101,22 @@ public class RedisUtils {
         return redisTemplate.expire(key, timeout, unit);
     }
 
+    /**
+     * 管道批量设置过期时间，不存在的key不会被创建
+     *
+     * @param keys    key
+     * @param timeout 过期时间
+     * @param unit    时间单位
+     */
+    public void multiExpire(Collection<String> keys, long timeout, TimeUnit unit) {
+        RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        long seconds = unit.toSeconds(timeout);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            keys.forEach(key -> connection.expire(serializer.serialize(key), seconds));
+            return null;
+        });
+    }
+
     /**
      * 设置过期时间
      *
@@ -292,6 +318,32 @@ public class RedisUtils {
         redisTemplate.opsForValue().set(key, value, timeout, unit);
     }
 
+    /**
+     * 管道批量设置key的值及过期时间
+     *
+     * @param map     key -> value
+     * @param timeout 过期时间
+     * @param unit    时间单位
+     */
+    public void multiSetEx(Map<String, String> map, long timeout, TimeUnit unit) {
+        RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        long seconds = unit.toSeconds(timeout);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            map.forEach((key, value) -> connection.setEx(serializer.serialize(key), seconds, serializer.serialize(value)));
+            return null;
+        });
+    }
+
+    /**
+     * 向频道发布消息
+     *
+     * @param channel 频道
+     * @param message 消息
+     */
+    public void convertAndSend(String channel, String message) {
+        redisTemplate.convertAndSend(channel, message);
+    }
+
     /**
      * 只有在 key 不存在时设置 key 的值
      *
@@ -303,6 +355,19 @@ public class RedisUtils {
         return redisTemplate.opsForValue().setIfAbsent(key, value);
     }
 
+    /**
+     * 只有在 key 不存在时设置 key 的值和过期时间
+     *
+     * @param key
+     * @param value
+     * @param timeout 过期时间
+     * @param unit    时间单位
+     * @return 之前已经存在返回false, 不存在返回true
+     */
+    public boolean setIfAbsent(String key, String value, long timeout, TimeUnit unit) {
+        return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(key, value, timeout, unit));
+    }
+
     /**
      * 用 value 参数覆写给定 key 所储存的字符串值，从偏移量 offset 开始
      *
@@ -395,6 +460,24 @@ public class RedisUtils {
         return redisTemplate.opsForHash().entries(key);
     }
 
+    /**
+     * 管道批量获取多个哈希表的所有字段，不存在的key返回空map
+     *
+     * @param keys
+     * @return 与keys顺序一致
+     */
+    @SuppressWarnings("unchecked")
+    public List<Map<String, String>> hGetAllBatch(List<String> keys) {
+        RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            keys.forEach(key -> connection.hGetAll(serializer.serialize(key)));
+            return null;
+        });
+        List<Map<String, String>> list = new ArrayList<>(results.size());
+        results.forEach(item -> list.add(item == null ? new HashMap<>(0) : (Map<String, String>) item));
+        return list;
+    }
+
     /**
      * 获取所有给定字段的值
      *
@@ -823,6 +906,27 @@ public class RedisUtils {
         return redisTemplate.opsForSet().isMember(key, value);
     }
 
+    /**
+     * 批量判断集合是否包含value，使用管道一次往返完成
+     *
+     * @param key
+     * @param values
+     * @return 与values顺序一致的结果
+     */
+    public List<Boolean> sIsMembers(String key, List<String> values) {
+        RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        byte[] rawKey = serializer.serialize(key);
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String value : values) {
+                connection.sIsMember(rawKey, serializer.serialize(value));
+            }
+            return null;
+        });
+        List<Boolean> list = new ArrayList<>(results.size());
+        results.forEach(item -> list.add(Boolean.TRUE.equals(item)));
+        return list;
+    }
+
     /**
      * 获取两个集合的交集
      *
@@ -1063,6 +1167,85 @@ public class RedisUtils {
         return redisTemplate.opsForZSet().incrementScore(key, value, delta);
     }
 
+    /**
+     * 管道批量增加元素的score值
+     *
+     * @param key
+     * @param deltaMap 元素 -> 增量
+     */
+    public void zIncrementScores(String key, Map<String, Double> deltaMap) {
+        RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        byte[] rawKey = serializer.serialize(key);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            deltaMap.forEach((value, delta) -> connection.zIncrBy(rawKey, delta, serializer.serialize(value)));
+            return null;
+        });
+    }
+
+    /**
+     * 管道批量向已存在的有序集合添加元素，并只保留score最大的maxSize个元素，不存在的key不会被创建
+     *
+     * @param keys    有序集合key
+     * @param value   元素
+     * @param score   score值
+     * @param maxSize 最大元素数量
+     */
+    public void zAddIfExists(Collection<String> keys, String value, double score, long maxSize) {
+        RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        byte[] script = serializer.serialize(Z_ADD_IF_EXISTS_SCRIPT);
+        byte[] rawValue = serializer.serialize(value);
+        byte[] rawScore = serializer.serialize(String.valueOf(score));
+        byte[] rawMaxSize = serializer.serialize(String.valueOf(maxSize));
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                connection.eval(script, ReturnType.INTEGER, 1,
+                        serializer.serialize(key), rawScore, rawValue, rawMaxSize);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 管道批量执行lua脚本，每组key和参数执行一次，不返回结果
+     *
+     * @param script   脚本
+     * @param keysList 每次执行使用的key
+     * @param argsList 每次执行的参数，与keysList一一对应
+     */
+    public void executeBatch(RedisScript<?> script, List<List<String>> keysList, List<List<String>> argsList) {
+        RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        byte[] rawScript = serializer.serialize(script.getScriptAsString());
+        ReturnType returnType = ReturnType.fromJavaType(script.getResultType());
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < keysList.size(); i++) {
+                List<String> keys = keysList.get(i);
+                List<String> args = argsList.get(i);
+                byte[][] keysAndArgs = new byte[keys.size() + args.size()][];
+                int index = 0;
+                for (String key : keys) {
+                    keysAndArgs[index++] = serializer.serialize(key);
+                }
+                for (String arg : args) {
+                    keysAndArgs[index++] = serializer.serialize(arg);
+                }
+                connection.eval(rawScript, returnType, keys.size(), keysAndArgs);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 执行lua脚本
+     *
+     * @param script 脚本
+     * @param keys   脚本使用的key
+     * @param args   脚本参数
+     * @return 脚本返回值
+     */
+    public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+        return redisTemplate.execute(script, keys, args);
+    }
+
     /**
      * 返回元素在集合的排名,有序集合是按照元素的score值由小到大排列
      *
@@ -1216,6 +1399,22 @@ public class RedisUtils {
                 start, end);
     }
 
+    /**
+     * 根据Score值分页查询集合元素及其score值, 从大到小排序
+     *
+     * @param key
+     * @param min
+     * @param max
+     * @param offset
+     * @param count
+     * @return
+     */
+    public Set<TypedTuple<String>> zReverseRangeByScoreWithScores(
+            String key, double min, double max, long offset, long count) {
+        return redisTemplate.opsForZSet().reverseRangeByScoreWithScores(key,
+                min, max, offset, count);
+    }
+
     /**
      * 根据score值获取集合元素数量
      *
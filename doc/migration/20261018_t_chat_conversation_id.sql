@@ -0,0 +1,17 @@
+-- ----------------------------
+-- t_chat 增加会话id和 (conversation_id, timestamp, id) 索引，回填已有消息的会话id
+-- 已有数据库执行，新建数据库直接使用 yanhuo-test.sql
+-- 聊天记录和会话最近消息缓存只按 conversation_id 查询，不回填时已有会话的历史消息查不到
+-- 会话id与 Chat.conversationIdOf 相同：两个用户id按字节排序后用 ':' 连接再取md5，
+-- 用binary比较与java的String.compareTo顺序一致，不受列排序规则影响
+-- 回填只更新会话id为空的消息，可以重复执行；滚动升级时旧实例写入的消息在全部升级后再执行一次回填
+-- ----------------------------
+ALTER TABLE `t_chat`
+    ADD COLUMN `conversation_id` varchar(32) DEFAULT NULL AFTER `accept_uid`,
+    ADD KEY `conversation_index` (`conversation_id`, `timestamp`, `id`) USING BTREE;
+
+UPDATE `t_chat`
+SET `conversation_id` = MD5(CONCAT(LEAST(BINARY `send_uid`, BINARY `accept_uid`), ':', GREATEST(BINARY `send_uid`, BINARY `accept_uid`)))
+WHERE `conversation_id` IS NULL
+  AND `send_uid` IS NOT NULL
+  AND `accept_uid` IS NOT NULL;
@@ -0,0 +1,52 @@
+-- ----------------------------
+-- t_chat_user_relation 增加主键和 (send_uid, accept_uid) 唯一索引
+-- 已有数据库执行，新建数据库直接使用 yanhuo-test.sql
+-- 私聊消息批量写入用 insert ... on duplicate key update 更新会话，依赖这个唯一索引。
+-- 同一对用户有多条会话时保留最新的一条(timestamp最大，相同时id最小)，未读数累加到保留的会话
+-- 执行前请备份 t_chat_user_relation
+-- ----------------------------
+BEGIN;
+
+-- 旧数据的id可能为空，补上后才能加主键
+UPDATE `t_chat_user_relation` SET `id` = REPLACE(UUID(), '-', '') WHERE `id` IS NULL;
+
+DROP TEMPORARY TABLE IF EXISTS `tmp_chat_relation_keep`;
+CREATE TEMPORARY TABLE `tmp_chat_relation_keep` (
+  `send_uid` varchar(50) NOT NULL,
+  `accept_uid` varchar(50) NOT NULL,
+  `keep_id` varchar(50) NOT NULL,
+  `count` int NOT NULL,
+  PRIMARY KEY (`send_uid`, `accept_uid`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+INSERT INTO `tmp_chat_relation_keep` (`send_uid`, `accept_uid`, `keep_id`, `count`)
+SELECT r.`send_uid`,
+       r.`accept_uid`,
+       (SELECT x.`id`
+        FROM `t_chat_user_relation` x
+        WHERE x.`send_uid` = r.`send_uid` AND x.`accept_uid` = r.`accept_uid`
+        ORDER BY x.`timestamp` DESC, x.`id`
+        LIMIT 1),
+       SUM(IFNULL(r.`count`, 0))
+FROM `t_chat_user_relation` r
+WHERE r.`send_uid` IS NOT NULL AND r.`accept_uid` IS NOT NULL
+GROUP BY r.`send_uid`, r.`accept_uid`
+HAVING COUNT(*) > 1;
+
+UPDATE `t_chat_user_relation` r
+    INNER JOIN `tmp_chat_relation_keep` k ON k.`keep_id` = r.`id`
+SET r.`count` = k.`count`;
+
+DELETE r
+FROM `t_chat_user_relation` r
+         INNER JOIN `tmp_chat_relation_keep` k
+                    ON k.`send_uid` = r.`send_uid` AND k.`accept_uid` = r.`accept_uid` AND k.`keep_id` <> r.`id`;
+
+DROP TEMPORARY TABLE `tmp_chat_relation_keep`;
+
+COMMIT;
+
+ALTER TABLE `t_chat_user_relation`
+    MODIFY `id` varchar(50) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+    ADD PRIMARY KEY (`id`),
+    ADD UNIQUE KEY `send_accept_index` (`send_uid`, `accept_uid`) USING BTREE;
@@ -0,0 +1,9 @@
+-- ----------------------------
+-- t_comment 增加评论状态字段
+-- 已有数据库执行，新建数据库直接使用 yanhuo-test.sql
+-- 0 已保存，等待同步后展示；1 已同步，正常展示(CommentStatusConstant)
+-- 已有的评论都已经展示过，默认值为1，新增字段后所有已有评论仍然可见
+-- 执行后再执行 commentMergeJobHandler，把 t_comment_sync 中还未同步的评论以等待同步状态合并到 t_comment
+-- ----------------------------
+ALTER TABLE `t_comment`
+    ADD COLUMN `status` tinyint NOT NULL DEFAULT '1' AFTER `two_comment_count`;
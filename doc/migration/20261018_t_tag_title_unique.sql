@@ -0,0 +1,50 @@
+-- ----------------------------
+-- t_tag.title 增加唯一索引
+-- 已有数据库执行，新建数据库直接使用 yanhuo-test.sql
+-- 按 title 列的排序规则(utf8mb4_0900_ai_ci，忽略大小写和重音)合并重复的标签：
+-- 保留id最小的一条，笔记关联改到保留的标签上，点赞数累加到保留的标签
+-- 执行前请备份 t_tag 和 t_tag_note_relation
+-- ----------------------------
+BEGIN;
+
+DROP TEMPORARY TABLE IF EXISTS `tmp_tag_duplicate`;
+CREATE TEMPORARY TABLE `tmp_tag_duplicate` (
+  `id` varchar(50) NOT NULL,
+  `keep_id` varchar(50) NOT NULL,
+  PRIMARY KEY (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+INSERT INTO `tmp_tag_duplicate` (`id`, `keep_id`)
+SELECT t.`id`, k.`keep_id`
+FROM `t_tag` t
+         INNER JOIN (SELECT `title`, MIN(`id`) AS `keep_id` FROM `t_tag` WHERE `title` IS NOT NULL GROUP BY `title`) k
+                    ON k.`title` = t.`title`
+WHERE t.`id` <> k.`keep_id`;
+
+UPDATE `t_tag_note_relation` r
+    INNER JOIN `tmp_tag_duplicate` d ON d.`id` = r.`tid`
+SET r.`tid` = d.`keep_id`;
+
+-- 同一篇笔记合并后关联了两次同一个标签，保留id最小的关联
+DELETE r
+FROM `t_tag_note_relation` r
+         INNER JOIN `t_tag_note_relation` k ON k.`nid` = r.`nid` AND k.`tid` = r.`tid` AND k.`id` < r.`id`;
+
+UPDATE `t_tag` t
+    INNER JOIN (SELECT d.`keep_id`, SUM(IFNULL(x.`like_count`, 0)) AS `like_count`
+                FROM `tmp_tag_duplicate` d
+                         INNER JOIN `t_tag` x ON x.`id` = d.`id`
+                GROUP BY d.`keep_id`) s ON s.`keep_id` = t.`id`
+SET t.`like_count` = IFNULL(t.`like_count`, 0) + s.`like_count`;
+
+DELETE t
+FROM `t_tag` t
+         INNER JOIN `tmp_tag_duplicate` d ON d.`id` = t.`id`;
+
+DROP TEMPORARY TABLE `tmp_tag_duplicate`;
+
+COMMIT;
+
+ALTER TABLE `t_tag`
+    ADD UNIQUE KEY `title_index` (`title`) USING BTREE,
+    ADD KEY `create_date_index` (`create_date`) USING BTREE;
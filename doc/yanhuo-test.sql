@@ -96,7 +96,9 @@ CREATE TABLE `t_album_note_relation` (
   `create_date` datetime DEFAULT NULL,
   `updater` varchar(50) DEFAULT NULL,
   `update_date` datetime DEFAULT NULL,
-  PRIMARY KEY (`id`)
+  PRIMARY KEY (`id`),
+  KEY `nid_index` (`nid`) USING BTREE,
+  KEY `aid_create_date_index` (`aid`,`create_date`) USING BTREE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 
 -- ----------------------------
@@ -211,6 +213,7 @@ CREATE TABLE `t_chat` (
   `id` varchar(50) NOT NULL,
   `send_uid` varchar(50) DEFAULT NULL,
   `accept_uid` varchar(50) DEFAULT NULL,
+  `conversation_id` varchar(32) DEFAULT NULL,
   `content` longtext,
   `msg_type` int DEFAULT NULL,
   `chat_type` int DEFAULT NULL,
@@ -219,7 +222,8 @@ CREATE TABLE `t_chat` (
   `create_date` datetime DEFAULT NULL,
   `updater` varchar(50) DEFAULT NULL,
   `update_date` datetime DEFAULT NULL,
-  PRIMARY KEY (`id`)
+  PRIMARY KEY (`id`),
+  KEY `conversation_index` (`conversation_id`,`timestamp`,`id`) USING BTREE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 
 -- ----------------------------
@@ -233,7 +237,7 @@ COMMIT;
 -- ----------------------------
 DROP TABLE IF EXISTS `t_chat_user_relation`;
 CREATE TABLE `t_chat_user_relation` (
-  `id` varchar(50) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci DEFAULT NULL,
+  `id` varchar(50) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
   `send_uid` varchar(50) DEFAULT NULL,
   `accept_uid` varchar(50) DEFAULT NULL,
   `content` longtext,
@@ -242,7 +246,9 @@ CREATE TABLE `t_chat_user_relation` (
   `chat_type` int DEFAULT NULL,
   `msg_type` int DEFAULT NULL,
   `creator` varchar(50) DEFAULT NULL,
-  `create_date` date DEFAULT NULL
+  `create_date` date DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `send_accept_index` (`send_uid`,`accept_uid`) USING BTREE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 
 -- ----------------------------
@@ -268,11 +274,14 @@ CREATE TABLE `t_comment` (
   `content` longtext,
   `like_count` bigint DEFAULT '0',
   `two_comment_count` bigint DEFAULT '0',
+  `status` tinyint NOT NULL DEFAULT '1',
   `creator` varchar(50) DEFAULT NULL,
   `create_date` datetime DEFAULT NULL,
   `updater` varchar(50) DEFAULT NULL,
   `update_date` datetime DEFAULT NULL,
-  PRIMARY KEY (`id`)
+  PRIMARY KEY (`id`),
+  KEY `nid_index` (`nid`,`pid`,`like_count`) USING BTREE,
+  KEY `pid_index` (`pid`,`like_count`,`create_date`) USING BTREE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 
 -- ----------------------------
@@ -302,7 +311,8 @@ CREATE TABLE `t_comment_sync` (
   `create_date` datetime DEFAULT NULL,
   `updater` varchar(50) DEFAULT NULL,
   `update_date` datetime DEFAULT NULL,
-  PRIMARY KEY (`id`)
+  PRIMARY KEY (`id`),
+  KEY `nid_index` (`nid`) USING BTREE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 
 -- ----------------------------
@@ -323,7 +333,9 @@ CREATE TABLE `t_follower` (
   `create_date` datetime DEFAULT NULL,
   `updater` varchar(50) DEFAULT NULL,
   `update_date` datetime DEFAULT NULL,
-  PRIMARY KEY (`id`)
+  PRIMARY KEY (`id`),
+  KEY `uid_fid_index` (`uid`,`fid`) USING BTREE,
+  KEY `fid_index` (`fid`) USING BTREE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 
 -- ----------------------------
@@ -347,7 +359,9 @@ CREATE TABLE `t_like_or_collection` (
   `create_date` datetime NOT NULL,
   `updater` varchar(50) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
   `update_date` datetime NOT NULL,
-  PRIMARY KEY (`id`)
+  PRIMARY KEY (`id`),
+  KEY `like_or_collection_id_index` (`like_or_collection_id`,`type`) USING BTREE,
+  KEY `uid_type_create_date_index` (`uid`,`type`,`create_date`) USING BTREE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 
 -- ----------------------------
@@ -384,7 +398,8 @@ CREATE TABLE `t_note` (
   `updater` varchar(50) DEFAULT NULL,
   `update_date` datetime DEFAULT NULL,
   PRIMARY KEY (`id`),
-  KEY `update_date_index` (`update_date`) USING BTREE
+  KEY `update_date_index` (`update_date`) USING BTREE,
+  KEY `uid_create_date_index` (`uid`,`create_date`) USING BTREE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 
 -- ----------------------------
@@ -2155,7 +2170,9 @@ CREATE TABLE `t_tag` (
   `create_date` datetime DEFAULT NULL,
   `updater` varchar(50) DEFAULT NULL,
   `update_date` datetime DEFAULT NULL,
-  PRIMARY KEY (`id`)
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `title_index` (`title`) USING BTREE,
+  KEY `create_date_index` (`create_date`) USING BTREE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 
 -- ----------------------------
@@ -2235,7 +2252,8 @@ CREATE TABLE `t_tag_note_relation` (
   `create_date` datetime DEFAULT NULL,
   `updater` varchar(50) DEFAULT NULL,
   `update_date` datetime DEFAULT NULL,
-  PRIMARY KEY (`id`)
+  PRIMARY KEY (`id`),
+  KEY `nid_index` (`nid`) USING BTREE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 
 -- ----------------------------
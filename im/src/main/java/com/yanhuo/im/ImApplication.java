@@ -2,10 +2,12 @@ package com.yanhuo.im;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * @author xiaozhao
  */
+@EnableScheduling
 @SpringBootApplication(scanBasePackages = {"com.yanhuo.im","com.yanhuo.xo","com.yanhuo.common"})
 public class ImApplication {
     public static void main(String[] args) {
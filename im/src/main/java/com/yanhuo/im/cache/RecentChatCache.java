@@ -0,0 +1,161 @@
+package com.yanhuo.im.cache;
+
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yanhuo.common.constant.ImConstant;
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.xo.dao.ChatDao;
+import com.yanhuo.xo.entity.Chat;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * 会话最近消息缓存
+ * <p>
+ * 每个会话一个有序集合，score是消息时间戳，元素是消息json，只保留最新的recent-size条，
+ * 打开聊天窗口时第一屏直接从缓存读取，不查询数据库。
+ * 消息写入数据库后追加到缓存，缓存不存在时也会创建，所以用score为-inf的空字符串元素标记缓存已从数据库加载完整，
+ * 没有标记时从数据库加载最新的消息并与已追加的消息合并，不会遗漏加载期间写入的消息。
+ *
+ * @author xiaozhao
+ */
+@Component
+@Slf4j
+public class RecentChatCache {
+
+    /**
+     * 保留最新的ARGV[2]条消息，完整标记不计入数量
+     */
+    private static final String TRIM =
+            "local keep = tonumber(ARGV[2]) local start = 0 " +
+            "if redis.call('zscore', KEYS[1], '') then start = 1 keep = keep + 1 end " +
+            "local n = redis.call('zcard', KEYS[1]) - keep " +
+            "if n > 0 then redis.call('zremrangebyrank', KEYS[1], start, start + n - 1) end " +
+            "redis.call('expire', KEYS[1], ARGV[1]) ";
+
+    /**
+     * 缓存完整时续期并返回所有消息，否则返回空
+     */
+    private static final RedisScript<List> READ_SCRIPT = new DefaultRedisScript<>(
+            "if not redis.call('zscore', KEYS[1], '') then return nil end " +
+            "redis.call('expire', KEYS[1], ARGV[1]) " +
+            "return redis.call('zrevrangebyscore', KEYS[1], '+inf', '(-inf')", List.class);
+
+    /**
+     * 追加消息，ARGV[3]为1时同时写入完整标记，之后每两个参数为 时间戳, json
+     */
+    private static final RedisScript<Long> WRITE_SCRIPT = new DefaultRedisScript<>(
+            "for i = 4, #ARGV, 2 do redis.call('zadd', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "if ARGV[3] == '1' then redis.call('zadd', KEYS[1], '-inf', '') end " +
+            TRIM + "return 1", Long.class);
+
+    @Autowired
+    RedisUtils redisUtils;
+
+    @Autowired
+    ChatDao chatDao;
+
+    @Value("${chat.recent-size:50}")
+    int recentSize;
+
+    @Value("${chat.recent-ttl:86400}")
+    long recentTtl;
+
+    /**
+     * 得到会话最新的消息，缓存不完整时从数据库加载
+     *
+     * @param conversationId 会话id
+     * @return 按时间戳、id降序排列的最多recent-size条消息
+     */
+    public List<Chat> getRecent(String conversationId) {
+        List<String> keys = Collections.singletonList(getKey(conversationId));
+        List<?> result = redisUtils.execute(READ_SCRIPT, keys, String.valueOf(recentTtl));
+        if (result == null) {
+            List<Chat> chatList = chatDao.selectList(new QueryWrapper<Chat>()
+                    .eq("conversation_id", conversationId)
+                    .orderByDesc("timestamp", "id")
+                    .last("limit " + recentSize));
+            redisUtils.execute(WRITE_SCRIPT, keys, toArgs(chatList, true).toArray());
+            log.debug("从数据库加载会话{}的最近消息，数量={}", conversationId, chatList.size());
+            result = redisUtils.execute(READ_SCRIPT, keys, String.valueOf(recentTtl));
+        }
+        List<Chat> chatList = new ArrayList<>();
+        if (result == null) {
+            return chatList;
+        }
+        result.forEach(item -> chatList.add(JSONUtil.toBean(String.valueOf(item), Chat.class)));
+        // 时间戳相同的消息按id排序，与数据库游标分页的顺序一致
+        chatList.sort(Comparator.comparingLong(Chat::getTimestamp).thenComparing(Chat::getId).reversed());
+        return chatList;
+    }
+
+    /**
+     * 消息写入数据库后追加到所在会话的缓存
+     *
+     * @param chatList 已写入的消息
+     */
+    public void addAll(List<Chat> chatList) {
+        Map<String, List<Chat>> conversationMap = new LinkedHashMap<>(16);
+        chatList.forEach(chat -> conversationMap.computeIfAbsent(chat.getConversationId(), k -> new ArrayList<>()).add(chat));
+        List<List<String>> keysList = new ArrayList<>(conversationMap.size());
+        List<List<String>> argsList = new ArrayList<>(conversationMap.size());
+        conversationMap.forEach((conversationId, list) -> {
+            keysList.add(Collections.singletonList(getKey(conversationId)));
+            argsList.add(toArgs(list, false));
+        });
+        redisUtils.executeBatch(WRITE_SCRIPT, keysList, argsList);
+    }
+
+    /**
+     * 删除会话的缓存
+     *
+     * @param conversationIds 会话id
+     */
+    public void evict(Collection<String> conversationIds) {
+        List<String> keys = new ArrayList<>(conversationIds.size());
+        conversationIds.forEach(conversationId -> keys.add(getKey(conversationId)));
+        redisUtils.delete(keys);
+    }
+
+    public int getRecentSize() {
+        return recentSize;
+    }
+
+    private List<String> toArgs(List<Chat> chatList, boolean complete) {
+        List<String> args = new ArrayList<>(chatList.size() * 2 + 3);
+        args.add(String.valueOf(recentTtl));
+        args.add(String.valueOf(recentSize));
+        args.add(complete ? "1" : "0");
+        for (Chat chat : chatList) {
+            args.add(String.valueOf(chat.getTimestamp()));
+            args.add(JSONUtil.toJsonStr(toCached(chat)));
+        }
+        return args;
+    }
+
+    /**
+     * 只缓存消息本身的字段，数据库加载和写入后追加的同一条消息json相同，在有序集合中不会重复
+     */
+    private Chat toCached(Chat chat) {
+        Chat cached = new Chat();
+        cached.setId(chat.getId());
+        cached.setSendUid(chat.getSendUid());
+        cached.setAcceptUid(chat.getAcceptUid());
+        cached.setConversationId(chat.getConversationId());
+        cached.setContent(chat.getContent());
+        cached.setChatType(chat.getChatType());
+        cached.setMsgType(chat.getMsgType());
+        cached.setTimestamp(chat.getTimestamp());
+        return cached;
+    }
+
+    private String getKey(String conversationId) {
+        return ImConstant.CHAT_RECENT_KEY + conversationId;
+    }
+}
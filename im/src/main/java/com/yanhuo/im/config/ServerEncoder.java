@@ -1,8 +1,10 @@
 package com.yanhuo.im.config;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.yanhuo.common.im.Message;
+import lombok.extern.slf4j.Slf4j;
 
 import javax.websocket.EncodeException;
 import javax.websocket.Encoder;
@@ -10,38 +12,48 @@ import javax.websocket.EndpointConfig;
 
 /**
  * websocket配置
+ * <p>
+ * JsonMapper创建开销很大，所有连接共用一个线程安全的ObjectWriter，
+ * 发送队列和群发直接调用toJson，群发时只序列化一次。
+ *
  * @author xiaozhao
  */
+@Slf4j
 public class ServerEncoder implements Encoder.Text<Message> {
 
+    private static final ObjectWriter WRITER = JsonMapper.builder().build().writerFor(Message.class);
+
+    /**
+     * 序列化消息
+     *
+     * @param message 消息
+     * @return json，失败时为null
+     */
+    public static String toJson(Message message) {
+        try {
+            return WRITER.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            log.error("消息序列化失败，{}", message, e);
+            return null;
+        }
+    }
+
     @Override
     public void destroy() {
-        // TODO Auto-generated method stub
-        // 这里不重要
+        // 没有需要释放的资源
     }
 
     @Override
     public void init(EndpointConfig arg0) {
-        // TODO Auto-generated method stub
-        // 这里也不重要
-
+        // 共用静态的ObjectWriter，不需要初始化
     }
 
-    /*
-     *  encode()方法里的参数和Text<T>里的T一致，如果你是Student，这里就是encode（Student student）
-     */
     @Override
     public String encode(Message message) throws EncodeException {
-        try {
-            /*
-             * 这里是重点，只需要返回Object序列化后的json字符串就行
-             * 你也可以使用gosn，fastJson来序列化。
-             */
-            JsonMapper jsonMapper = new JsonMapper();
-            return jsonMapper.writeValueAsString(message);
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-            return null;
+        String json = toJson(message);
+        if (json == null) {
+            throw new EncodeException(message, "消息序列化失败");
         }
+        return json;
     }
 }
@@ -2,11 +2,14 @@ package com.yanhuo.im.controller;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.yanhuo.common.auth.AuthContextHolder;
+import com.yanhuo.common.result.CursorPage;
 import com.yanhuo.common.result.Result;
+import com.yanhuo.common.im.CountNotice;
 import com.yanhuo.common.im.Message;
 import com.yanhuo.common.validator.myVaildator.noLogin.NoLoginIntercept;
 import com.yanhuo.im.entity.CountMessage;
 import com.yanhuo.im.service.ChatService;
+import com.yanhuo.im.websocket.WebSocketServer;
 import com.yanhuo.xo.entity.Chat;
 import com.yanhuo.xo.vo.ChatUserRelationVo;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,6 +27,9 @@ public class ChatController {
     @Autowired
     ChatService chatService;
 
+    @Autowired
+    WebSocketServer webSocketServer;
+
     /**
      * 发送消息
      *
@@ -37,6 +43,19 @@ public class ChatController {
         return Result.ok();
     }
 
+    /**
+     * 批量累加通知数量并推送给在线用户
+     *
+     * @param countNotices 每个接收用户的通知数量增量
+     * @return success
+     */
+    @PostMapping("sendCountBatch")
+    @NoLoginIntercept
+    public Result<?> sendCountBatch(@RequestBody List<CountNotice> countNotices) {
+        chatService.sendCountBatch(countNotices);
+        return Result.ok();
+    }
+
     /**
      * 获取所有的聊天记录
      *
@@ -51,6 +70,20 @@ public class ChatController {
         return Result.ok(page);
     }
 
+    /**
+     * 按游标获取聊天记录
+     *
+     * @param pageSize  分页数
+     * @param acceptUid 接收方的用户id
+     * @param cursor    上一页返回的游标，第一页不传
+     * @return 聊天记录
+     */
+    @GetMapping("getChatRecordByCursor/{pageSize}")
+    public Result<?> getChatRecordByCursor(@PathVariable long pageSize, String acceptUid, String cursor) {
+        CursorPage<Chat> page = chatService.getChatRecordByCursor(acceptUid, cursor, pageSize);
+        return Result.ok(page);
+    }
+
     /**
      * 获取当前用户下所有聊天的用户信息
      *
@@ -101,6 +134,16 @@ public class ChatController {
         return Result.ok();
     }
 
+    /**
+     * 得到websocket发送统计，包括排队消息数和发送耗时
+     *
+     * @return 统计数据
+     */
+    @GetMapping("getOutboundStats")
+    public Result<?> getOutboundStats() {
+        return Result.ok(webSocketServer.getOutboundStats());
+    }
+
     @RequestMapping("closeChat/{sendUid}")
     public boolean closeChat(@PathVariable("sendUid") String sendUid){
         return chatService.closeChat(sendUid);
@@ -0,0 +1,193 @@
+package com.yanhuo.im.counter;
+
+import com.yanhuo.common.constant.ImConstant;
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.im.entity.CountMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * 未读通知数量
+ * <p>
+ * 每个用户一个哈希表，字段为点赞收藏、评论、关注数量，累加和清零都在lua脚本中原子执行并返回最新值，
+ * 不再读出json修改后写回，并发累加不会丢失。
+ * 旧的json格式key在第一次读写时由脚本转换为哈希表并删除。
+ * 带通知id的累加在同一脚本中记录id，相同id的增量只累加一次，调用方可以安全重试。
+ *
+ * @author xiaozhao
+ */
+@Component
+public class MessageCountStore {
+
+    public static final String LIKE_OR_COLLECTION_COUNT = "likeOrCollectionCount";
+
+    public static final String COMMENT_COUNT = "commentCount";
+
+    public static final String FOLLOW_COUNT = "followCount";
+
+    /**
+     * 哈希表不存在且存在旧的json时先转换，KEYS[1]为哈希表，KEYS[2]为旧的json
+     */
+    private static final String MIGRATE =
+            "if redis.call('exists', KEYS[1]) == 0 then local json = redis.call('get', KEYS[2]) " +
+            "if json then local c = cjson.decode(json) " +
+            "redis.call('hset', KEYS[1], '" + LIKE_OR_COLLECTION_COUNT + "', tonumber(c." + LIKE_OR_COLLECTION_COUNT + ") or 0, " +
+            "'" + COMMENT_COUNT + "', tonumber(c." + COMMENT_COUNT + ") or 0, " +
+            "'" + FOLLOW_COUNT + "', tonumber(c." + FOLLOW_COUNT + ") or 0) " +
+            "redis.call('del', KEYS[2]) end end ";
+
+    /**
+     * 每两个参数为 字段, 增量
+     */
+    private static final RedisScript<List> INCR_SCRIPT = new DefaultRedisScript<>(MIGRATE +
+            "for i = 1, #ARGV, 2 do redis.call('hincrby', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "return redis.call('hgetall', KEYS[1])", List.class);
+
+    /**
+     * KEYS[3]为通知id，不存在时记录并累加，ARGV[1]为id保留秒数，之后每两个参数为 字段, 增量
+     */
+    private static final RedisScript<List> INCR_ONCE_SCRIPT = new DefaultRedisScript<>(MIGRATE +
+            "if redis.call('set', KEYS[3], '1', 'NX', 'EX', ARGV[1]) then " +
+            "for i = 2, #ARGV, 2 do redis.call('hincrby', KEYS[1], ARGV[i], ARGV[i + 1]) end end " +
+            "return redis.call('hgetall', KEYS[1])", List.class);
+
+    /**
+     * 已累加的通知id保留时间，远大于调用方的重试时间
+     */
+    private static final long APPLIED_SECONDS = 3600;
+
+    /**
+     * 每两个参数为 字段, 值
+     */
+    private static final RedisScript<List> SET_SCRIPT = new DefaultRedisScript<>(MIGRATE +
+            "for i = 1, #ARGV, 2 do redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "return redis.call('hgetall', KEYS[1])", List.class);
+
+    @Autowired
+    RedisUtils redisUtils;
+
+    /**
+     * 原子累加通知数量
+     *
+     * @param uid                   用户id
+     * @param likeOrCollectionCount 点赞收藏增量
+     * @param commentCount          评论增量
+     * @param followCount           关注增量
+     * @return 累加后的数量
+     */
+    public CountMessage increment(String uid, long likeOrCollectionCount, long commentCount, long followCount) {
+        List<Object> args = new ArrayList<>(6);
+        addArg(args, LIKE_OR_COLLECTION_COUNT, likeOrCollectionCount);
+        addArg(args, COMMENT_COUNT, commentCount);
+        addArg(args, FOLLOW_COUNT, followCount);
+        return toCountMessage(uid, redisUtils.execute(INCR_SCRIPT, getKeys(uid), args.toArray()));
+    }
+
+    /**
+     * 按通知id原子累加通知数量，相同id只累加一次
+     *
+     * @param uid                   用户id
+     * @param noticeId              通知id，为空时不去重
+     * @param likeOrCollectionCount 点赞收藏增量
+     * @param commentCount          评论增量
+     * @param followCount           关注增量
+     * @return 累加后的数量
+     */
+    public CountMessage increment(String uid, String noticeId, long likeOrCollectionCount, long commentCount, long followCount) {
+        if (noticeId == null || noticeId.isEmpty()) {
+            return increment(uid, likeOrCollectionCount, commentCount, followCount);
+        }
+        List<Object> args = new ArrayList<>(7);
+        args.add(String.valueOf(APPLIED_SECONDS));
+        addArg(args, LIKE_OR_COLLECTION_COUNT, likeOrCollectionCount);
+        addArg(args, COMMENT_COUNT, commentCount);
+        addArg(args, FOLLOW_COUNT, followCount);
+        List<String> keys = new ArrayList<>(getKeys(uid));
+        keys.add(ImConstant.MESSAGE_COUNT_APPLIED_KEY + noticeId);
+        return toCountMessage(uid, redisUtils.execute(INCR_ONCE_SCRIPT, keys, args.toArray()));
+    }
+
+    /**
+     * 设置通知数量
+     *
+     * @param uid      用户id
+     * @param countMap 字段 -> 数量
+     * @return 设置后的数量
+     */
+    public CountMessage set(String uid, Map<String, Long> countMap) {
+        List<Object> args = new ArrayList<>(countMap.size() * 2);
+        countMap.forEach((field, count) -> {
+            args.add(field);
+            args.add(String.valueOf(count));
+        });
+        return toCountMessage(uid, redisUtils.execute(SET_SCRIPT, getKeys(uid), args.toArray()));
+    }
+
+    /**
+     * 得到用户的通知数量
+     *
+     * @param uid 用户id
+     * @return 通知数量，不存在时都为0
+     */
+    public CountMessage get(String uid) {
+        return getAll(Collections.singletonList(uid)).get(uid);
+    }
+
+    /**
+     * 批量得到用户的通知数量，每个用户一条HGETALL，管道一次发送
+     *
+     * @param uids 用户id
+     * @return 用户id -> 通知数量
+     */
+    public Map<String, CountMessage> getAll(List<String> uids) {
+        List<String> keys = new ArrayList<>(uids.size());
+        uids.forEach(uid -> keys.add(ImConstant.MESSAGE_COUNT_HASH_KEY + uid));
+        List<Map<String, String>> hashList = redisUtils.hGetAllBatch(keys);
+        Map<String, CountMessage> result = new HashMap<>(uids.size());
+        for (int i = 0; i < uids.size(); i++) {
+            String uid = uids.get(i);
+            Map<String, String> hash = hashList.get(i);
+            // 哈希表不存在时可能还是旧的json，通过脚本转换
+            result.put(uid, hash.isEmpty() ? increment(uid, 0, 0, 0) : toCountMessage(uid, hash));
+        }
+        return result;
+    }
+
+    private void addArg(List<Object> args, String field, long delta) {
+        if (delta != 0) {
+            args.add(field);
+            args.add(String.valueOf(delta));
+        }
+    }
+
+    private List<String> getKeys(String uid) {
+        return Arrays.asList(ImConstant.MESSAGE_COUNT_HASH_KEY + uid, ImConstant.MESSAGE_COUNT_KEY + uid);
+    }
+
+    private CountMessage toCountMessage(String uid, List<?> values) {
+        Map<String, String> hash = new HashMap<>(8);
+        if (values != null) {
+            for (int i = 0; i + 1 < values.size(); i += 2) {
+                hash.put(String.valueOf(values.get(i)), String.valueOf(values.get(i + 1)));
+            }
+        }
+        return toCountMessage(uid, hash);
+    }
+
+    private CountMessage toCountMessage(String uid, Map<String, String> hash) {
+        CountMessage countMessage = new CountMessage();
+        countMessage.setUid(uid);
+        countMessage.setLikeOrCollectionCount(parse(hash.get(LIKE_OR_COLLECTION_COUNT)));
+        countMessage.setCommentCount(parse(hash.get(COMMENT_COUNT)));
+        countMessage.setFollowCount(parse(hash.get(FOLLOW_COUNT)));
+        return countMessage;
+    }
+
+    private long parse(String value) {
+        return value == null ? 0L : Long.parseLong(value);
+    }
+}
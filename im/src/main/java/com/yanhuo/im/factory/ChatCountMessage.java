@@ -1,26 +1,37 @@
 package com.yanhuo.im.factory;
 
 import cn.hutool.json.JSONUtil;
-import com.yanhuo.common.constant.ImConstant;
 import com.yanhuo.common.im.Message;
-import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.im.counter.MessageCountStore;
 import com.yanhuo.im.entity.CountMessage;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * @author xiaozhao
  */
 public class ChatCountMessage implements MessageFactory{
 
-    RedisUtils redisUtils;
+    MessageCountStore messageCountStore;
 
-    public ChatCountMessage(RedisUtils redisUtils){
-        this.redisUtils = redisUtils;
+    public ChatCountMessage(MessageCountStore messageCountStore){
+        this.messageCountStore = messageCountStore;
     }
     @Override
     public void sendMessage(Message message) {
-        String messageCountKey = ImConstant.MESSAGE_COUNT_KEY + message.getAcceptUid();
         CountMessage countMessage = JSONUtil.toBean(JSONUtil.toJsonStr(message.getContent()), CountMessage.class);
-        countMessage.setUid(message.getAcceptUid());
-        redisUtils.set(messageCountKey, JSONUtil.toJsonStr(countMessage));
+        // 只覆盖消息中带有的数量
+        Map<String, Long> countMap = new HashMap<>(4);
+        if (countMessage.getLikeOrCollectionCount() != null) {
+            countMap.put(MessageCountStore.LIKE_OR_COLLECTION_COUNT, countMessage.getLikeOrCollectionCount());
+        }
+        if (countMessage.getCommentCount() != null) {
+            countMap.put(MessageCountStore.COMMENT_COUNT, countMessage.getCommentCount());
+        }
+        if (countMessage.getFollowCount() != null) {
+            countMap.put(MessageCountStore.FOLLOW_COUNT, countMessage.getFollowCount());
+        }
+        messageCountStore.set(message.getAcceptUid(), countMap);
     }
 }
@@ -1,101 +1,82 @@
 package com.yanhuo.im.factory;
 
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.yanhuo.common.im.Message;
 import com.yanhuo.common.utils.ConvertUtils;
-import com.yanhuo.im.service.ChatService;
-import com.yanhuo.im.websocket.WebSocketServer;
-import com.yanhuo.xo.dao.ChatUserRelationDao;
-import com.yanhuo.xo.dao.UserDao;
+import com.yanhuo.im.persist.ChatWriteBuffer;
+import com.yanhuo.im.route.MessageRouter;
+import com.yanhuo.xo.cache.UserSummaryCache;
 import com.yanhuo.xo.entity.Chat;
-import com.yanhuo.xo.entity.ChatUserRelation;
-import com.yanhuo.xo.entity.User;
 import com.yanhuo.xo.vo.ChatUserRelationVo;
+import com.yanhuo.xo.vo.UserSummaryVo;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 
 /**
+ * 私聊消息
+ * <p>
+ * 消息交给ChatWriteBuffer批量写入，双方只推送发生变化的一条会话(msgType 6)，不再重新查询并推送整个会话列表。
+ * 推送的会话中count为1表示未读数加1，为0表示未读数清零。
+ *
  * @author xiaozhao
  */
 public class ChatUserMessage implements MessageFactory {
 
-    private final WebSocketServer webSocketServer;
+    /**
+     * 会话增量消息类型
+     */
+    private static final int CONVERSATION_DELTA_MSG_TYPE = 6;
 
-    private final ChatService chatService;
+    private final MessageRouter messageRouter;
 
-    private final UserDao userDao;
+    private final ChatWriteBuffer chatWriteBuffer;
 
-    private final ChatUserRelationDao chatUserRelationDao;
+    private final UserSummaryCache userSummaryCache;
 
-    public ChatUserMessage(WebSocketServer webSocketServer, ChatService chatService, UserDao userDao, ChatUserRelationDao chatUserRelationDao) {
-        this.webSocketServer = webSocketServer;
-        this.chatService = chatService;
-        this.userDao = userDao;
-        this.chatUserRelationDao = chatUserRelationDao;
+    public ChatUserMessage(MessageRouter messageRouter, ChatWriteBuffer chatWriteBuffer, UserSummaryCache userSummaryCache) {
+        this.messageRouter = messageRouter;
+        this.chatWriteBuffer = chatWriteBuffer;
+        this.userSummaryCache = userSummaryCache;
     }
 
     @Override
     public void sendMessage(Message message) {
         String content = String.valueOf(message.getContent());
-        // 当前用户插入
-        saveMessage(message, 0);
-        saveMessage(message, 1);
-
-        getUserChatList(message, 0);
-        getUserChatList(message, 1);
-
+        long timestamp = System.currentTimeMillis();
         Chat chat = ConvertUtils.sourceToTarget(message, Chat.class);
-        chat.setTimestamp(System.currentTimeMillis());
+        chat.setId(IdWorker.getIdStr());
+        chat.setConversationId(Chat.conversationIdOf(message.getSendUid(), message.getAcceptUid()));
+        chat.setTimestamp(timestamp);
+        chat.setCreateDate(new Date(timestamp));
         chat.setContent(content);
-        chatService.save(chat);
-    }
-
-    private void saveMessage(Message message, Integer type) {
-        String content = String.valueOf(message.getContent());
-        String sendUid = type == 0 ? message.getSendUid() : message.getAcceptUid();
-        String acceptUid = type == 0 ? message.getAcceptUid() : message.getSendUid();
-        ChatUserRelation chatUserRelation = chatUserRelationDao.selectOne(new QueryWrapper<ChatUserRelation>().eq("send_uid", sendUid).eq("accept_uid", acceptUid));
+        chatWriteBuffer.add(chat);
 
-        if (chatUserRelation != null) {
-            chatUserRelation.setContent(content);
-            chatUserRelation.setTimestamp(System.currentTimeMillis());
-            chatUserRelation.setCount(type == 0 ? chatUserRelation.getCount() + 1 : 0);
-            chatUserRelationDao.updateById(chatUserRelation);
-        } else {
-            chatUserRelation = new ChatUserRelation();
-            chatUserRelation.setSendUid(sendUid);
-            chatUserRelation.setAcceptUid(acceptUid);
-            chatUserRelation.setCount(type == 0 ? 1 : 0);
-            chatUserRelation.setContent(content);
-            chatUserRelation.setTimestamp(System.currentTimeMillis());
-            chatUserRelationDao.insert(chatUserRelation);
-        }
+        Map<String, UserSummaryVo> userMap = userSummaryCache.getAll(Arrays.asList(message.getSendUid(), message.getAcceptUid()));
+        // 接收方的会话对象是发送方，未读数加1；发送方的会话对象是接收方，未读数清零
+        sendConversation(message.getAcceptUid(), userMap.get(message.getSendUid()), chat, 1);
+        sendConversation(message.getSendUid(), userMap.get(message.getAcceptUid()), chat, 0);
     }
 
-    public void getUserChatList(Message message, Integer type) {
-        String acceptUid = type == 0 ? message.getSendUid() : message.getAcceptUid();
-        List<ChatUserRelation> chatUserRelationList = chatUserRelationDao.selectList(new QueryWrapper<ChatUserRelation>().eq("accept_uid", acceptUid).orderByDesc("create_date"));
-        Set<String> uids = chatUserRelationList.stream().map(ChatUserRelation::getSendUid).collect(Collectors.toSet());
-        Map<String, User> userMap = userDao.selectBatchIds(uids).stream().collect(Collectors.toMap(User::getId, user -> user));
-        List<ChatUserRelationVo> chatUserRelationVoList = new ArrayList<>();
-        chatUserRelationList.forEach(item -> {
-            ChatUserRelationVo chatUserRelationVo = ConvertUtils.sourceToTarget(item, ChatUserRelationVo.class);
-            User user = userMap.get(item.getSendUid());
-            chatUserRelationVo.setUid(user.getId());
-            chatUserRelationVo.setUsername(user.getUsername());
-            chatUserRelationVo.setAvatar(user.getAvatar());
-            chatUserRelationVoList.add(chatUserRelationVo);
-        });
-
-        Message currentUserMessage = new Message();
-        currentUserMessage.setAcceptUid(acceptUid);
-        currentUserMessage.setContent(chatUserRelationVoList);
-        currentUserMessage.setMsgType(5);
-        webSocketServer.sendInfo(currentUserMessage);
+    private void sendConversation(String acceptUid, UserSummaryVo otherUser, Chat chat, int count) {
+        if (otherUser == null) {
+            return;
+        }
+        ChatUserRelationVo chatUserRelationVo = new ChatUserRelationVo();
+        chatUserRelationVo.setUid(otherUser.getId());
+        chatUserRelationVo.setUsername(otherUser.getUsername());
+        chatUserRelationVo.setAvatar(otherUser.getAvatar());
+        chatUserRelationVo.setContent(chat.getContent());
+        chatUserRelationVo.setCount(count);
+        chatUserRelationVo.setMsgType(chat.getMsgType());
+        chatUserRelationVo.setTimestamp(chat.getTimestamp());
+
+        Message conversationMessage = new Message();
+        conversationMessage.setAcceptUid(acceptUid);
+        conversationMessage.setContent(chatUserRelationVo);
+        conversationMessage.setMsgType(CONVERSATION_DELTA_MSG_TYPE);
+        messageRouter.route(conversationMessage);
     }
 }
@@ -0,0 +1,260 @@
+package com.yanhuo.im.persist;
+
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.yanhuo.common.constant.ImConstant;
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.im.cache.RecentChatCache;
+import com.yanhuo.xo.dao.ChatDao;
+import com.yanhuo.xo.dao.ChatUserRelationDao;
+import com.yanhuo.xo.entity.Chat;
+import com.yanhuo.xo.entity.ChatUserRelation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 私聊消息批量写入
+ * <p>
+ * 发送消息时先记录到redis的待写入哈希表，再放入队列，定时任务每隔几毫秒取出一批，在一个事务中用一条多行insert写入t_chat，
+ * 再用一条 insert ... on duplicate key update 更新双方的会话，接收方未读数加1，发送方未读数清零。
+ * 同一批中的会话行按消息顺序排列，同一会话的多条消息依次生效。
+ * 队列满时由调用线程直接写入，消息不会丢失。
+ * 事务提交后从待写入哈希表删除这一批消息，并追加到会话最近消息缓存。
+ * 一批写入失败时按指数退避重试，仍然失败时拆成两半分别写入，直到单条消息，单条仍失败的消息移到失败哈希表。
+ * 实例崩溃时队列中的消息还在待写入哈希表中，定时任务把超过recover-after毫秒还没有写入的消息补写到数据库。
+ *
+ * @author xiaozhao
+ */
+@Component
+@Slf4j
+public class ChatWriteBuffer {
+
+    @Autowired
+    ChatDao chatDao;
+
+    @Autowired
+    ChatUserRelationDao chatUserRelationDao;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    RecentChatCache recentChatCache;
+
+    @Autowired
+    RedisUtils redisUtils;
+
+    @Value("${chat.queue-capacity:10000}")
+    int queueCapacity;
+
+    @Value("${chat.batch-size:500}")
+    int batchSize;
+
+    @Value("${chat.max-retries:3}")
+    int maxRetries;
+
+    @Value("${chat.retry-interval:100}")
+    long retryInterval;
+
+    @Value("${chat.recover-after:300000}")
+    long recoverAfter;
+
+    private BlockingQueue<Chat> queue;
+
+    @PostConstruct
+    public void init() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * 消息记录到待写入哈希表后放入写入队列
+     *
+     * @param chat 消息
+     */
+    public void add(Chat chat) {
+        redisUtils.hPut(ImConstant.CHAT_PENDING_KEY, chat.getId(), JSONUtil.toJsonStr(chat));
+        if (!queue.offer(chat)) {
+            log.warn("聊天消息写入队列已满，直接写入，id={}", chat.getId());
+            try {
+                write(Collections.singletonList(chat));
+            } catch (RuntimeException e) {
+                // 发送失败返回给调用方，不再补写
+                redisUtils.hDelete(ImConstant.CHAT_PENDING_KEY, chat.getId());
+                throw e;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.flush-interval:20}")
+    public void flush() {
+        List<Chat> chatList = new ArrayList<>(batchSize);
+        while (queue.drainTo(chatList, batchSize) > 0) {
+            writeWithRetry(chatList);
+            chatList = new ArrayList<>(batchSize);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flush();
+    }
+
+    /**
+     * 补写其他实例崩溃前没有写入的消息，已经写入的只从待写入哈希表删除
+     */
+    @Scheduled(fixedDelayString = "${chat.recover-interval:60000}")
+    public void recover() {
+        if (!redisUtils.setIfAbsent(ImConstant.CHAT_RECOVER_LOCK_KEY, "1", recoverAfter, TimeUnit.MILLISECONDS)) {
+            return;
+        }
+        try {
+            List<Chat> chatList = new ArrayList<>();
+            long deadline = System.currentTimeMillis() - recoverAfter;
+            try (Cursor<Map.Entry<Object, Object>> cursor = redisUtils.hScan(ImConstant.CHAT_PENDING_KEY, ScanOptions.scanOptions().count(1000).build())) {
+                while (cursor.hasNext()) {
+                    Chat chat = JSONUtil.toBean(String.valueOf(cursor.next().getValue()), Chat.class);
+                    if (chat.getTimestamp() < deadline) {
+                        chatList.add(chat);
+                    }
+                }
+            }
+            chatList.sort(Comparator.comparingLong(Chat::getTimestamp));
+            for (int i = 0; i < chatList.size(); i += batchSize) {
+                List<Chat> batch = new ArrayList<>(chatList.subList(i, Math.min(i + batchSize, chatList.size())));
+                List<Object> ids = batch.stream().map(Chat::getId).collect(Collectors.toList());
+                Set<String> written = chatDao.selectObjs(new QueryWrapper<Chat>().select("id").in("id", ids))
+                        .stream().map(String::valueOf).collect(Collectors.toSet());
+                if (!written.isEmpty()) {
+                    redisUtils.hDelete(ImConstant.CHAT_PENDING_KEY, written.toArray());
+                    batch.removeIf(chat -> written.contains(chat.getId()));
+                }
+                if (!batch.isEmpty()) {
+                    log.warn("补写未写入的聊天消息，数量={}", batch.size());
+                    writeWithRetry(batch);
+                }
+            }
+        } finally {
+            redisUtils.delete(ImConstant.CHAT_RECOVER_LOCK_KEY);
+        }
+    }
+
+    private void writeWithRetry(List<Chat> chatList) {
+        long interval = retryInterval;
+        for (int i = 1; i <= maxRetries; i++) {
+            try {
+                write(chatList);
+                return;
+            } catch (Exception e) {
+                log.warn("聊天消息批量写入失败，第{}次，数量={}", i, chatList.size(), e);
+            }
+            if (i < maxRetries) {
+                try {
+                    Thread.sleep(interval);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                interval *= 2;
+            }
+        }
+        writeSplit(chatList);
+    }
+
+    /**
+     * 拆成两半分别写入，找出写入失败的消息，其余消息照常写入
+     */
+    private void writeSplit(List<Chat> chatList) {
+        if (chatList.size() == 1) {
+            park(chatList.get(0));
+            return;
+        }
+        int mid = chatList.size() / 2;
+        for (List<Chat> part : Arrays.asList(chatList.subList(0, mid), chatList.subList(mid, chatList.size()))) {
+            List<Chat> partList = new ArrayList<>(part);
+            try {
+                write(partList);
+            } catch (Exception e) {
+                writeSplit(partList);
+            }
+        }
+    }
+
+    private void park(Chat chat) {
+        log.error("聊天消息写入失败，移到{}，{}", ImConstant.CHAT_FAILED_KEY, chat);
+        try {
+            redisUtils.hPut(ImConstant.CHAT_FAILED_KEY, chat.getId(), JSONUtil.toJsonStr(chat));
+            redisUtils.hDelete(ImConstant.CHAT_PENDING_KEY, chat.getId());
+        } catch (Exception e) {
+            log.error("聊天消息移到失败列表失败，id={}", chat.getId(), e);
+        }
+    }
+
+    private void write(List<Chat> chatList) {
+        List<ChatUserRelation> relationList = new ArrayList<>(chatList.size() * 2);
+        for (Chat chat : chatList) {
+            // 接收方的会话未读数加1，发送方的会话未读数清零
+            relationList.add(toRelation(chat, chat.getSendUid(), chat.getAcceptUid(), 1));
+            relationList.add(toRelation(chat, chat.getAcceptUid(), chat.getSendUid(), 0));
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            chatDao.insertBatch(chatList);
+            chatUserRelationDao.upsertBatch(relationList);
+        });
+        log.debug("聊天消息批量写入，数量={}", chatList.size());
+        removePending(chatList);
+        appendRecent(chatList);
+    }
+
+    private void removePending(List<Chat> chatList) {
+        try {
+            redisUtils.hDelete(ImConstant.CHAT_PENDING_KEY, chatList.stream().map(Chat::getId).toArray());
+        } catch (Exception e) {
+            // 补写时会先检查是否已经写入
+            log.error("待写入聊天消息删除失败，数量={}", chatList.size(), e);
+        }
+    }
+
+    private void appendRecent(List<Chat> chatList) {
+        try {
+            recentChatCache.addAll(chatList);
+        } catch (Exception e) {
+            log.error("会话最近消息缓存追加失败，数量={}", chatList.size(), e);
+            try {
+                // 删除缓存，下次读取时从数据库重新加载
+                recentChatCache.evict(chatList.stream().map(Chat::getConversationId).collect(Collectors.toSet()));
+            } catch (Exception ex) {
+                log.error("会话最近消息缓存删除失败", ex);
+            }
+        }
+    }
+
+    private ChatUserRelation toRelation(Chat chat, String sendUid, String acceptUid, int count) {
+        ChatUserRelation relation = new ChatUserRelation();
+        // 会话已存在时不会使用这个id
+        relation.setId(IdWorker.getIdStr());
+        relation.setSendUid(sendUid);
+        relation.setAcceptUid(acceptUid);
+        relation.setContent(chat.getContent());
+        relation.setCount(count);
+        relation.setChatType(chat.getChatType());
+        relation.setMsgType(chat.getMsgType());
+        relation.setTimestamp(chat.getTimestamp());
+        relation.setCreator(chat.getSendUid());
+        return relation;
+    }
+}
@@ -0,0 +1,101 @@
+package com.yanhuo.im.route;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yanhuo.common.constant.ImConstant;
+import com.yanhuo.common.im.Message;
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.im.websocket.WebSocketServer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 跨节点的websocket消息路由
+ * <p>
+ * 接收用户连接在本节点时直接放入发送队列，否则按在线登记找到所在节点，
+ * 通过redis发布到该节点的频道，由该节点推送给用户，用户不在线时丢弃。
+ *
+ * @author xiaozhao
+ */
+@Component
+@Slf4j
+public class MessageRouter implements MessageListener {
+
+    @Autowired
+    WebSocketServer webSocketServer;
+
+    @Autowired
+    PresenceRegistry presenceRegistry;
+
+    @Autowired
+    RedisUtils redisUtils;
+
+    @Autowired
+    RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(ImConstant.ROUTE_CHANNEL + presenceRegistry.getNodeId()));
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(ImConstant.BROADCAST_CHANNEL));
+    }
+
+    /**
+     * 发送给接收用户，不论用户连接在哪个节点
+     *
+     * @param message 消息
+     */
+    public void route(Message message) {
+        String acceptUid = message.getAcceptUid();
+        if (webSocketServer.isLocal(acceptUid)) {
+            webSocketServer.sendInfo(message);
+            return;
+        }
+        String node = presenceRegistry.locate(acceptUid);
+        if (node == null || node.equals(presenceRegistry.getNodeId())) {
+            // 不在线，或登记还未过期但连接已经断开
+            return;
+        }
+        publish(ImConstant.ROUTE_CHANNEL + node, message);
+    }
+
+    /**
+     * 发送给所有节点上的所有用户
+     *
+     * @param message 消息
+     */
+    public void broadcast(Message message) {
+        publish(ImConstant.BROADCAST_CHANNEL, message);
+    }
+
+    @Override
+    public void onMessage(org.springframework.data.redis.connection.Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        try {
+            Message imMessage = objectMapper.readValue(message.getBody(), Message.class);
+            if (ImConstant.BROADCAST_CHANNEL.equals(channel)) {
+                webSocketServer.broadcast(imMessage);
+            } else {
+                webSocketServer.sendInfo(imMessage);
+            }
+        } catch (Exception e) {
+            log.error("处理其他节点转发的消息失败，channel={}", channel, e);
+        }
+    }
+
+    private void publish(String channel, Message message) {
+        try {
+            redisUtils.convertAndSend(channel, objectMapper.writeValueAsString(message));
+        } catch (Exception e) {
+            log.error("转发消息失败，channel={}，acceptUid={}", channel, message.getAcceptUid(), e);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.yanhuo.im.route;
+
+import cn.hutool.core.util.IdUtil;
+import com.yanhuo.common.constant.ImConstant;
+import com.yanhuo.common.utils.RedisUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户在线节点登记
+ * <p>
+ * 用户建立连接后在redis中记录 uid -> 节点id 并设置过期时间，由定时心跳续期，
+ * 节点宕机后登记随过期时间自动失效。断开连接时只删除仍属于本节点的登记，
+ * 避免用户已经重连到其他节点时误删。
+ *
+ * @author xiaozhao
+ */
+@Component
+@Slf4j
+public class PresenceRegistry {
+
+    /**
+     * 值等于本节点id时才删除
+     */
+    private static final RedisScript<Long> UNREGISTER_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) end return 0", Long.class);
+
+    @Autowired
+    RedisUtils redisUtils;
+
+    @Value("${ws.node-id:}")
+    String nodeId;
+
+    @Value("${ws.presence-ttl:90}")
+    long presenceTtl;
+
+    private final Set<String> localUids = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        if (StringUtils.isBlank(nodeId)) {
+            nodeId = IdUtil.simpleUUID();
+        }
+        log.info("im节点id={}", nodeId);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 登记用户连接在本节点
+     *
+     * @param uid 用户id
+     */
+    public void register(String uid) {
+        localUids.add(uid);
+        redisUtils.setEx(getKey(uid), nodeId, presenceTtl, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 删除本节点的用户登记
+     *
+     * @param uid 用户id
+     */
+    public void unregister(String uid) {
+        localUids.remove(uid);
+        redisUtils.execute(UNREGISTER_SCRIPT, Collections.singletonList(getKey(uid)), nodeId);
+    }
+
+    /**
+     * 得到用户连接所在的节点
+     *
+     * @param uid 用户id
+     * @return 节点id，不在线时为null
+     */
+    public String locate(String uid) {
+        return redisUtils.get(getKey(uid));
+    }
+
+    /**
+     * 心跳，为本节点所有在线用户的登记续期
+     */
+    @Scheduled(fixedDelayString = "${ws.heartbeat-interval:30000}")
+    public void heartbeat() {
+        if (localUids.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(localUids.size());
+        localUids.forEach(uid -> keys.add(getKey(uid)));
+        redisUtils.multiExpire(keys, presenceTtl, TimeUnit.SECONDS);
+        log.debug("im节点{}心跳续期，在线用户数={}", nodeId, keys.size());
+    }
+
+    private String getKey(String uid) {
+        return ImConstant.PRESENCE_KEY + uid;
+    }
+}
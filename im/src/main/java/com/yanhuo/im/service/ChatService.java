@@ -2,6 +2,8 @@ package com.yanhuo.im.service;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.yanhuo.common.im.CountNotice;
+import com.yanhuo.common.result.CursorPage;
 import com.yanhuo.common.im.Message;
 import com.yanhuo.im.entity.CountMessage;
 import com.yanhuo.xo.entity.Chat;
@@ -21,6 +23,13 @@ public interface ChatService extends IService<Chat> {
      */
     void sendMsg(Message message);
 
+    /**
+     * 批量累加通知数量并推送给在线用户
+     *
+     * @param countNotices 每个接收用户的通知数量增量
+     */
+    void sendCountBatch(List<CountNotice> countNotices);
+
     /**
      * 得到所有聊天的记录数量
      *
@@ -45,6 +54,16 @@ public interface ChatService extends IService<Chat> {
      */
     Page<Chat> getAllChatRecord(long currentPage, long pageSize, String acceptUid);
 
+    /**
+     * 按游标获取聊天记录，从最新的消息向前翻页
+     *
+     * @param acceptUid 接收方的用户id
+     * @param cursor    上一页返回的游标，第一页不传
+     * @param pageSize  分页数
+     * @return 按时间倒序的聊天记录
+     */
+    CursorPage<Chat> getChatRecordByCursor(String acceptUid, String cursor, long pageSize);
+
     /**
      * 清除聊天数量
      *
@@ -1,30 +1,36 @@
 package com.yanhuo.im.service.impl;
 
-import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.yanhuo.common.auth.AuthContextHolder;
-import com.yanhuo.common.constant.ImConstant;
+import com.yanhuo.common.result.CursorPage;
+import com.yanhuo.common.utils.KeysetQuery;
 import com.yanhuo.common.utils.ConvertUtils;
-import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.common.im.CountNotice;
 import com.yanhuo.common.im.Message;
+import com.yanhuo.im.cache.RecentChatCache;
+import com.yanhuo.im.counter.MessageCountStore;
 import com.yanhuo.im.entity.CountMessage;
 import com.yanhuo.im.factory.ChatCountMessage;
 import com.yanhuo.im.factory.ChatUserMessage;
 import com.yanhuo.im.factory.MessageFactory;
+import com.yanhuo.im.persist.ChatWriteBuffer;
+import com.yanhuo.im.route.MessageRouter;
 import com.yanhuo.im.service.ChatService;
 import com.yanhuo.im.websocket.WebSocketServer;
+import com.yanhuo.xo.cache.UserSummaryCache;
 import com.yanhuo.xo.dao.ChatDao;
 import com.yanhuo.xo.dao.ChatUserRelationDao;
-import com.yanhuo.xo.dao.UserDao;
 import com.yanhuo.xo.entity.Chat;
 import com.yanhuo.xo.entity.ChatUserRelation;
-import com.yanhuo.xo.entity.User;
 import com.yanhuo.xo.vo.ChatUserRelationVo;
+import com.yanhuo.xo.vo.UserSummaryVo;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -41,27 +47,37 @@ public class ChatServiceImpl extends ServiceImpl<ChatDao, Chat> implements ChatS
     WebSocketServer webSocketServer;
 
     @Autowired
-    RedisUtils redisUtils;
+    ChatUserRelationDao chatUserRelationDao;
 
     @Autowired
-    ChatUserRelationDao chatUserRelationDao;
+    UserSummaryCache userSummaryCache;
 
     @Autowired
-    UserDao userDao;
+    MessageCountStore messageCountStore;
+
+    @Autowired
+    MessageRouter messageRouter;
+
+    @Autowired
+    ChatWriteBuffer chatWriteBuffer;
+
+    @Autowired
+    RecentChatCache recentChatCache;
 
 
     @Override
     public void sendMsg(Message message) {
-        webSocketServer.sendInfo(message);
+        // 接收用户可能连接在其他节点
+        messageRouter.route(message);
         MessageFactory messageFactory = null;
 
         // 过滤发送的请求类型
         switch (message.getMsgType()) {
             case 0:
-                messageFactory = new ChatCountMessage(redisUtils);
+                messageFactory = new ChatCountMessage(messageCountStore);
                 break;
             case 1:
-                messageFactory = new ChatUserMessage(webSocketServer, this, userDao, chatUserRelationDao);
+                messageFactory = new ChatUserMessage(messageRouter, chatWriteBuffer, userSummaryCache);
                 break;
             default:
                 break;
@@ -71,19 +87,25 @@ public class ChatServiceImpl extends ServiceImpl<ChatDao, Chat> implements ChatS
         }
     }
 
+    @Override
+    public void sendCountBatch(List<CountNotice> countNotices) {
+        for (CountNotice countNotice : countNotices) {
+            // 按通知id去重，重试的增量不会重复累加，推送的是累加后的数量
+            CountMessage countMessage = messageCountStore.increment(countNotice.getAcceptUid(), countNotice.getId(),
+                    countNotice.getLikeOrCollectionCount(), countNotice.getCommentCount(), countNotice.getFollowCount());
+
+            Message message = new Message();
+            message.setContent(countMessage);
+            message.setMsgType(0);
+            message.setAcceptUid(countNotice.getAcceptUid());
+            messageRouter.route(message);
+        }
+    }
+
     @Override
     public CountMessage getCountMessage() {
         String currentUid = AuthContextHolder.getUserId();
-        String messageCountKey = ImConstant.MESSAGE_COUNT_KEY + currentUid;
-        if (Boolean.FALSE.equals(redisUtils.hasKey(messageCountKey))) {
-            CountMessage countMessage = new CountMessage();
-            countMessage.setFollowCount(0L);
-            countMessage.setCommentCount(0L);
-            countMessage.setLikeOrCollectionCount(0L);
-            return countMessage;
-        }
-        String json = redisUtils.get(messageCountKey);
-        return JSONUtil.toBean(json, CountMessage.class);
+        return messageCountStore.get(currentUid);
     }
 
     @Override
@@ -95,11 +117,11 @@ public class ChatServiceImpl extends ServiceImpl<ChatDao, Chat> implements ChatS
             return result;
         }
         Set<String> uids = chatUserRelationList.stream().map(ChatUserRelation::getSendUid).collect(Collectors.toSet());
-        Map<String, User> userMap = userDao.selectBatchIds(uids).stream().collect(Collectors.toMap(User::getId, user -> user));
+        Map<String, UserSummaryVo> userMap = userSummaryCache.getAll(uids);
 
         chatUserRelationList.forEach(item -> {
             ChatUserRelationVo chatUserRelationVo = ConvertUtils.sourceToTarget(item, ChatUserRelationVo.class);
-            User user = userMap.get(item.getSendUid());
+            UserSummaryVo user = userMap.get(item.getSendUid());
             chatUserRelationVo.setUid(user.getId());
             chatUserRelationVo.setUsername(user.getUsername());
             chatUserRelationVo.setAvatar(user.getAvatar());
@@ -112,12 +134,25 @@ public class ChatServiceImpl extends ServiceImpl<ChatDao, Chat> implements ChatS
     public Page<Chat> getAllChatRecord(long currentPage, long pageSize, String acceptUid) {
         String currentUid = AuthContextHolder.getUserId();
         QueryWrapper<Chat> queryWrapper = new QueryWrapper<Chat>()
-                .and(e -> e.eq("send_uid", currentUid).eq("accept_uid", acceptUid))
-                .or(e -> e.eq("send_uid", acceptUid).eq("accept_uid", currentUid))
-                .orderByDesc("timestamp");
+                .eq("conversation_id", Chat.conversationIdOf(currentUid, acceptUid))
+                .orderByDesc("timestamp", "id");
         return this.page(new Page<>((int) currentPage, (int) pageSize), queryWrapper);
     }
 
+    @Override
+    public CursorPage<Chat> getChatRecordByCursor(String acceptUid, String cursor, long pageSize) {
+        String currentUid = AuthContextHolder.getUserId();
+        String conversationId = Chat.conversationIdOf(currentUid, acceptUid);
+        KeysetQuery<Chat> keysetQuery = KeysetQuery.<Chat>desc()
+                .longColumn("timestamp", Chat::getTimestamp)
+                .stringColumn("id", Chat::getId);
+        // 第一屏从会话最近消息缓存读取，缓存保留的消息多于一页时才能判断是否还有下一页
+        if (StringUtils.isBlank(cursor) && pageSize < recentChatCache.getRecentSize()) {
+            return keysetQuery.page(recentChatCache.getRecent(conversationId), pageSize);
+        }
+        return keysetQuery.page(new QueryWrapper<Chat>().eq("conversation_id", conversationId), cursor, pageSize, this::list);
+    }
+
     @Override
     public void clearMessageCount(String sendUid, Integer type) {
         if (type == 3) {
@@ -128,28 +163,26 @@ public class ChatServiceImpl extends ServiceImpl<ChatDao, Chat> implements ChatS
                 chatUserRelationDao.updateById(chatUserRelation);
             }
         } else {
-            String messageCountKey = ImConstant.MESSAGE_COUNT_KEY + sendUid;
-            String json = redisUtils.get(messageCountKey);
-            CountMessage countMessage = JSONUtil.toBean(json, CountMessage.class);
+            String field;
             switch (type) {
                 case 0:
-                    countMessage.setLikeOrCollectionCount(0L);
+                    field = MessageCountStore.LIKE_OR_COLLECTION_COUNT;
                     break;
                 case 1:
-                    countMessage.setCommentCount(0L);
+                    field = MessageCountStore.COMMENT_COUNT;
                     break;
                 default:
-                    countMessage.setFollowCount(0L);
+                    field = MessageCountStore.FOLLOW_COUNT;
                     break;
             }
-            redisUtils.set(messageCountKey, JSONUtil.toJsonStr(countMessage));
+            messageCountStore.set(sendUid, Collections.singletonMap(field, 0L));
         }
     }
 
     @Override
     public boolean closeChat(String sendUid) {
         try {
-            webSocketServer.onClose(sendUid);
+            webSocketServer.close(sendUid);
         } catch (Exception e) {
             e.printStackTrace();
             return false;
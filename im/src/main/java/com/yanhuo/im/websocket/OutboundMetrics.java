@@ -0,0 +1,75 @@
+package com.yanhuo.im.websocket;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * websocket发送统计，包括发送数量、丢弃和合并数量、断开的慢连接数量和发送耗时
+ *
+ * @author xiaozhao
+ */
+@Component
+public class OutboundMetrics {
+
+    private final LongAdder sentCount = new LongAdder();
+
+    private final LongAdder failedCount = new LongAdder();
+
+    private final LongAdder droppedCount = new LongAdder();
+
+    private final LongAdder coalescedCount = new LongAdder();
+
+    private final LongAdder disconnectedCount = new LongAdder();
+
+    private final LongAdder sendNanos = new LongAdder();
+
+    private final AtomicLong maxSendNanos = new AtomicLong();
+
+    public void recordSend(long nanos, boolean ok) {
+        if (ok) {
+            sentCount.increment();
+        } else {
+            failedCount.increment();
+        }
+        sendNanos.add(nanos);
+        maxSendNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public void recordDropped() {
+        droppedCount.increment();
+    }
+
+    public void recordCoalesced() {
+        coalescedCount.increment();
+    }
+
+    public void recordDisconnected() {
+        disconnectedCount.increment();
+    }
+
+    /**
+     * 得到统计数据
+     *
+     * @param queueDepth 当前所有连接排队的消息数量
+     * @return 统计项 -> 值
+     */
+    public Map<String, Object> snapshot(long queueDepth) {
+        long sent = sentCount.sum();
+        long failed = failedCount.sum();
+        long total = sent + failed;
+        Map<String, Object> result = new LinkedHashMap<>(16);
+        result.put("queueDepth", queueDepth);
+        result.put("sentCount", sent);
+        result.put("failedCount", failed);
+        result.put("droppedCount", droppedCount.sum());
+        result.put("coalescedCount", coalescedCount.sum());
+        result.put("disconnectedCount", disconnectedCount.sum());
+        result.put("avgSendMillis", total == 0 ? 0D : sendNanos.sum() / 1e6 / total);
+        result.put("maxSendMillis", maxSendNanos.get() / 1e6);
+        return result;
+    }
+}
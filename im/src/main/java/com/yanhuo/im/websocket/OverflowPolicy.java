@@ -0,0 +1,19 @@
+package com.yanhuo.im.websocket;
+
+/**
+ * 发送队列满时的处理方式
+ *
+ * @author xiaozhao
+ */
+public enum OverflowPolicy {
+
+    /**
+     * 丢弃最早的消息
+     */
+    DROP_OLDEST,
+
+    /**
+     * 断开消费过慢的连接
+     */
+    DISCONNECT
+}
@@ -0,0 +1,195 @@
+package com.yanhuo.im.websocket;
+
+import com.yanhuo.common.im.Message;
+import com.yanhuo.im.config.ServerEncoder;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * 单个连接的发送队列
+ * <p>
+ * 消息先进入有界队列，每个连接同一时刻只有一条异步发送，发送完成的回调中再发送下一条，
+ * 慢连接只会让自己的队列积压，不会阻塞其他连接和调用方。
+ * 未读数量消息只有最新一条有意义，排队中的旧数量消息直接被替换。
+ * 消息在发送时用共享的ObjectWriter序列化，群发时由调用方序列化一次后传入json。
+ *
+ * @author xiaozhao
+ */
+@Slf4j
+public class SessionOutbox {
+
+    /**
+     * 未读数量消息类型
+     */
+    private static final int COUNT_MSG_TYPE = 0;
+
+    private final String uid;
+
+    private final Session session;
+
+    private final int capacity;
+
+    private final OverflowPolicy policy;
+
+    private final boolean coalesceCount;
+
+    private final OutboundMetrics metrics;
+
+    private final Deque<Frame> queue = new ArrayDeque<>();
+
+    private boolean sending = false;
+
+    private boolean closed = false;
+
+    public SessionOutbox(String uid, Session session, int capacity, OverflowPolicy policy, boolean coalesceCount, OutboundMetrics metrics) {
+        this.uid = uid;
+        this.session = session;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.coalesceCount = coalesceCount;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 消息放入发送队列，不等待发送完成
+     *
+     * @param message 消息
+     */
+    public void offer(Message message) {
+        offer(message, null);
+    }
+
+    /**
+     * 已经序列化的消息放入发送队列，群发时所有连接共用同一个json
+     *
+     * @param message 消息
+     * @param json    序列化后的消息，为null时发送前序列化
+     */
+    public void offer(Message message, String json) {
+        Frame next;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (coalesceCount && Objects.equals(message.getMsgType(), COUNT_MSG_TYPE) && removeQueuedCount()) {
+                metrics.recordCoalesced();
+            }
+            if (queue.size() >= capacity) {
+                if (policy == OverflowPolicy.DISCONNECT) {
+                    closed = true;
+                    queue.clear();
+                } else {
+                    queue.pollFirst();
+                    metrics.recordDropped();
+                }
+            }
+            if (closed) {
+                next = null;
+            } else {
+                queue.offerLast(new Frame(message, json));
+                if (sending) {
+                    return;
+                }
+                sending = true;
+                next = queue.pollFirst();
+            }
+        }
+        if (next == null) {
+            disconnect();
+            return;
+        }
+        send(next);
+    }
+
+    /**
+     * 得到排队中的消息数量
+     */
+    public synchronized int getDepth() {
+        return queue.size();
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    /**
+     * 连接关闭后丢弃排队中的消息
+     */
+    public synchronized void close() {
+        closed = true;
+        queue.clear();
+    }
+
+    private boolean removeQueuedCount() {
+        Iterator<Frame> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            if (Objects.equals(iterator.next().message.getMsgType(), COUNT_MSG_TYPE)) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void send(Frame frame) {
+        long start = System.nanoTime();
+        String json = frame.json != null ? frame.json : ServerEncoder.toJson(frame.message);
+        if (json == null) {
+            sendNext();
+            return;
+        }
+        try {
+            session.getAsyncRemote().sendText(json, result -> {
+                metrics.recordSend(System.nanoTime() - start, result.isOK());
+                if (!result.isOK()) {
+                    log.warn("websocket发送失败，uid={}", uid, result.getException());
+                }
+                sendNext();
+            });
+        } catch (Exception e) {
+            metrics.recordSend(System.nanoTime() - start, false);
+            log.warn("websocket发送失败，uid={}", uid, e);
+            sendNext();
+        }
+    }
+
+    private void sendNext() {
+        Frame next;
+        synchronized (this) {
+            next = closed ? null : queue.pollFirst();
+            if (next == null) {
+                sending = false;
+                return;
+            }
+        }
+        send(next);
+    }
+
+    private void disconnect() {
+        metrics.recordDisconnected();
+        log.warn("websocket发送队列已满，断开慢连接，uid={}", uid);
+        try {
+            session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "slow consumer"));
+        } catch (Exception e) {
+            log.warn("关闭websocket连接失败，uid={}", uid, e);
+        }
+    }
+
+    private static class Frame {
+
+        private final Message message;
+
+        private final String json;
+
+        private Frame(Message message, String json) {
+            this.message = message;
+            this.json = json;
+        }
+    }
+}
@@ -2,17 +2,24 @@ package com.yanhuo.im.websocket;
 
 import com.yanhuo.im.config.ServerEncoder;
 import com.yanhuo.common.im.Message;
+import com.yanhuo.im.route.PresenceRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.websocket.*;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
+import java.io.IOException;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * 每个连接有自己的发送队列，发送只入队不等待，队列满时按ws.overflow-policy处理
+ *
  * @author xiaozhao
  */
 @ServerEndpoint(value = "/ws/{uid}",encoders = { ServerEncoder.class })
@@ -22,62 +29,126 @@ public class WebSocketServer {
     //静态变量，用来记录当前在线连接数。应该把它设计成线程安全的。
     private static final AtomicInteger ONLINE_NUM = new AtomicInteger();
 
-    //concurrent包的线程安全Set，用来存放每个客户端对应的WebSocketServer对象。
-    private  static final ConcurrentHashMap<String, Session> SESSION_POOLS = new ConcurrentHashMap<>();
+    //concurrent包的线程安全Map，用来存放每个客户端对应的发送队列。
+    private  static final ConcurrentHashMap<String, SessionOutbox> SESSION_POOLS = new ConcurrentHashMap<>();
 
-    private final Object lockObj = new Object();
+    // 连接由容器创建，不经过spring注入，配置保存在静态变量中
+    private static int queueCapacity = 256;
+
+    private static OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+    private static boolean coalesceCount = true;
+
+    private static OutboundMetrics metrics = new OutboundMetrics();
+
+    private static PresenceRegistry presenceRegistry;
+
+    @Value("${ws.queue-capacity:256}")
+    public void setQueueCapacity(int queueCapacity) {
+        WebSocketServer.queueCapacity = queueCapacity;
+    }
+
+    @Value("${ws.overflow-policy:DROP_OLDEST}")
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        WebSocketServer.overflowPolicy = overflowPolicy;
+    }
+
+    @Value("${ws.coalesce-count:true}")
+    public void setCoalesceCount(boolean coalesceCount) {
+        WebSocketServer.coalesceCount = coalesceCount;
+    }
+
+    @Autowired
+    public void setMetrics(OutboundMetrics metrics) {
+        WebSocketServer.metrics = metrics;
+    }
+
+    @Autowired
+    public void setPresenceRegistry(PresenceRegistry presenceRegistry) {
+        WebSocketServer.presenceRegistry = presenceRegistry;
+    }
+
+    /**
+     * 用户是否连接在本节点
+     */
+    public boolean isLocal(String uid) {
+        return uid != null && SESSION_POOLS.containsKey(uid);
+    }
 
     //发送消息
-    public void sendMessage(Session session, Message message) {
-        if (session != null) {
-            synchronized (lockObj) {
-                log.info("发送数据={}", message);
-                try {
-                    session.getBasicRemote().sendObject(message);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
+    public void sendMessage(SessionOutbox outbox, Message message) {
+        if (outbox != null) {
+            log.debug("发送数据={}", message);
+            outbox.offer(message);
         }
     }
 
-    //给指定用户发送信息
+    //给连接在本节点的指定用户发送信息，其他节点的用户通过MessageRouter发送
     public void sendInfo(Message message) {
-        Session session = SESSION_POOLS.get(message.getAcceptUid());
-        try {
-            sendMessage(session, message);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        sendMessage(SESSION_POOLS.get(message.getAcceptUid()), message);
     }
 
-    // 群发消息
+    // 群发消息，只序列化一次，只入队不等待
     public void broadcast(Message message) {
-        for (Session session : SESSION_POOLS.values()) {
-            try {
-                sendMessage(session, message);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        String json = ServerEncoder.toJson(message);
+        if (json == null) {
+            return;
+        }
+        for (SessionOutbox outbox : SESSION_POOLS.values()) {
+            outbox.offer(message, json);
         }
     }
 
+    /**
+     * 得到发送统计
+     */
+    public Map<String, Object> getOutboundStats() {
+        long depth = 0;
+        for (SessionOutbox outbox : SESSION_POOLS.values()) {
+            depth += outbox.getDepth();
+        }
+        Map<String, Object> stats = metrics.snapshot(depth);
+        stats.put("sessionCount", SESSION_POOLS.size());
+        return stats;
+    }
+
     //建立连接成功调用
     @OnOpen
     public void onOpen(Session session, @PathParam(value = "uid") String uid) {
-        SESSION_POOLS.put(uid, session);
+        SessionOutbox old = SESSION_POOLS.put(uid, new SessionOutbox(uid, session, queueCapacity, overflowPolicy, coalesceCount, metrics));
+        if (old != null) {
+            old.close();
+        }
+        presenceRegistry.register(uid);
         addOnlineCount();
         log.info("{}加入webSocket！当前人数为={}", uid, ONLINE_NUM);
     }
 
     //关闭连接时调用
     @OnClose
-    public void onClose(@PathParam(value = "uid") String uid) {
-        SESSION_POOLS.remove(uid);
+    public void onClose(Session session, @PathParam(value = "uid") String uid) {
+        SessionOutbox outbox = SESSION_POOLS.get(uid);
+        // 同一用户重新连接后旧连接才关闭时，连接池中已经是新连接，不能移除也不能注销在线状态
+        if (outbox != null && outbox.getSession() == session && SESSION_POOLS.remove(uid, outbox)) {
+            outbox.close();
+            presenceRegistry.unregister(uid);
+        }
         subOnlineCount();
         log.info("{}断开webSocket连接！当前人数为={}", uid, ONLINE_NUM);
     }
 
+    /**
+     * 服务端关闭用户的连接，由容器回调onClose清理连接池和在线状态
+     *
+     * @param uid 用户id
+     */
+    public void close(String uid) throws IOException {
+        SessionOutbox outbox = SESSION_POOLS.get(uid);
+        if (outbox != null) {
+            outbox.getSession().close();
+        }
+    }
+
     //收到客户端信息后，根据接收人的username把消息推下去或者群发
     // to=-1群发消息
     @OnMessage
@@ -105,7 +176,7 @@ public class WebSocketServer {
         return ONLINE_NUM;
     }
 
-    public static ConcurrentMap<String, Session> getSessionPools() {
+    public static ConcurrentMap<String, SessionOutbox> getSessionPools() {
         return SESSION_POOLS;
     }
 }
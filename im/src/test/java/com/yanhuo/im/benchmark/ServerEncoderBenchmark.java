@@ -0,0 +1,80 @@
+package com.yanhuo.im.benchmark;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.yanhuo.common.im.Message;
+import com.yanhuo.im.config.ServerEncoder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * websocket消息序列化基准测试
+ * <p>
+ * 对比每条消息新建JsonMapper、共用ObjectWriter，以及群发时逐个连接序列化和只序列化一次的耗时。
+ * 运行方式：在im模块执行 mvn test-compile 后运行main方法。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServerEncoderBenchmark {
+
+    @Param({"100"})
+    int recipients;
+
+    private Message message;
+
+    @Setup
+    public void setup() {
+        Map<String, Object> content = new LinkedHashMap<>();
+        content.put("uid", "1630000000000000001");
+        content.put("likeOrCollectionCount", 12L);
+        content.put("commentCount", 3L);
+        content.put("followCount", 7L);
+        message = new Message();
+        message.setAcceptUid("1630000000000000001");
+        message.setMsgType(0);
+        message.setContent(content);
+    }
+
+    @Benchmark
+    public String newMapperPerMessage() throws Exception {
+        return new JsonMapper().writeValueAsString(message);
+    }
+
+    @Benchmark
+    public String sharedWriter() {
+        return ServerEncoder.toJson(message);
+    }
+
+    @Benchmark
+    public void broadcastEncodePerSession(Blackhole blackhole) throws Exception {
+        for (int i = 0; i < recipients; i++) {
+            blackhole.consume(new JsonMapper().writeValueAsString(message));
+        }
+    }
+
+    @Benchmark
+    public void broadcastEncodeOnce(Blackhole blackhole) {
+        String json = ServerEncoder.toJson(message);
+        for (int i = 0; i < recipients; i++) {
+            blackhole.consume(json);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ServerEncoderBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,122 @@
+package com.yanhuo.im.cache;
+
+import cn.hutool.json.JSONUtil;
+import com.yanhuo.common.constant.ImConstant;
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.xo.dao.ChatDao;
+import com.yanhuo.xo.entity.Chat;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 会话最近消息缓存单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("🗂️ 会话最近消息缓存测试")
+class RecentChatCacheTest {
+
+    @Mock
+    private RedisUtils redisUtils;
+
+    @Mock
+    private ChatDao chatDao;
+
+    @InjectMocks
+    private RecentChatCache recentChatCache;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(recentChatCache, "recentSize", 50);
+        ReflectionTestUtils.setField(recentChatCache, "recentTtl", 86400L);
+    }
+
+    @Test
+    @DisplayName("✅ 缓存完整时不查询数据库，按时间戳和id降序返回")
+    void shouldReadCompleteCache() {
+        when(redisUtils.execute(any(), anyList(), any())).thenReturn(Arrays.asList(
+                json(chat("2", 1000L)), json(chat("3", 2000L)), json(chat("1", 1000L))));
+
+        List<Chat> chatList = recentChatCache.getRecent("c1");
+
+        assertEquals(Arrays.asList("3", "2", "1"), chatList.stream().map(Chat::getId).collect(Collectors.toList()));
+        verifyNoInteractions(chatDao);
+    }
+
+    @Test
+    @DisplayName("✅ 缓存不完整时从数据库加载并写入完整标记")
+    void shouldLoadFromDatabase() {
+        Chat dbChat = chat("1", 1000L);
+        // 数据库中的记录带有创建时间等字段，写入缓存时去掉
+        dbChat.setCreateDate(new Date());
+        when(chatDao.selectList(any())).thenReturn(Collections.singletonList(dbChat));
+        List<Object[]> argsList = new ArrayList<>();
+        doAnswer(invocation -> {
+            Object[] args = (Object[]) invocation.getRawArguments()[2];
+            argsList.add(args);
+            if (args.length > 1) {
+                return 1L;
+            }
+            return argsList.size() == 1 ? null : Collections.singletonList(json(chat("1", 1000L)));
+        }).when(redisUtils).execute(any(), anyList(), any());
+
+        List<Chat> chatList = recentChatCache.getRecent("c1");
+
+        assertEquals(1, chatList.size());
+        Object[] writeArgs = argsList.get(1);
+        assertEquals("1", writeArgs[2]);
+        assertEquals("1000", writeArgs[3]);
+        assertEquals(json(chat("1", 1000L)), writeArgs[4]);
+    }
+
+    @Test
+    @DisplayName("✅ 按会话分组批量追加")
+    void shouldAppendByConversation() {
+        Chat first = chat("1", 1000L);
+        Chat second = chat("2", 2000L);
+        Chat other = chat("3", 3000L);
+        other.setConversationId("c2");
+        List<List<String>> keysList = new ArrayList<>();
+        List<List<String>> argsList = new ArrayList<>();
+        doAnswer(invocation -> {
+            keysList.addAll(invocation.getArgument(1));
+            argsList.addAll(invocation.getArgument(2));
+            return null;
+        }).when(redisUtils).executeBatch(any(), anyList(), anyList());
+
+        recentChatCache.addAll(Arrays.asList(first, other, second));
+
+        assertEquals(Arrays.asList(Collections.singletonList(ImConstant.CHAT_RECENT_KEY + "c1"),
+                Collections.singletonList(ImConstant.CHAT_RECENT_KEY + "c2")), keysList);
+        assertEquals(Arrays.asList("86400", "50", "0", "1000", json(first), "2000", json(second)), argsList.get(0));
+        assertEquals(5, argsList.get(1).size());
+    }
+
+    private String json(Chat chat) {
+        return JSONUtil.toJsonStr(chat);
+    }
+
+    private Chat chat(String id, long timestamp) {
+        Chat chat = new Chat();
+        chat.setId(id);
+        chat.setSendUid("a");
+        chat.setAcceptUid("b");
+        chat.setConversationId("c1");
+        chat.setContent("hello");
+        chat.setMsgType(1);
+        chat.setTimestamp(timestamp);
+        return chat;
+    }
+}
@@ -0,0 +1,97 @@
+package com.yanhuo.im.counter;
+
+import com.yanhuo.common.constant.ImConstant;
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.im.entity.CountMessage;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 未读通知数量单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("📬 未读通知数量测试")
+class MessageCountStoreTest {
+
+    @Mock
+    private RedisUtils redisUtils;
+
+    @InjectMocks
+    private MessageCountStore messageCountStore;
+
+    @Test
+    @DisplayName("✅ 累加只传非0增量，并解析脚本返回的最新值")
+    void shouldIncrementNonZeroFields() {
+        List<Object[]> argsList = new ArrayList<>();
+        doAnswer(invocation -> {
+            argsList.add((Object[]) invocation.getRawArguments()[2]);
+            return Arrays.asList("likeOrCollectionCount", "3", "commentCount", "1");
+        }).when(redisUtils).execute(any(), anyList(), any());
+
+        CountMessage countMessage = messageCountStore.increment("user-1", 2, 0, 0);
+
+        assertArrayEquals(new Object[]{"likeOrCollectionCount", "2"}, argsList.get(0));
+        assertEquals("user-1", countMessage.getUid());
+        assertEquals(3L, countMessage.getLikeOrCollectionCount());
+        assertEquals(1L, countMessage.getCommentCount());
+        assertEquals(0L, countMessage.getFollowCount());
+    }
+
+    @Test
+    @DisplayName("🔁 带通知id累加时记录id，脚本按id去重")
+    void shouldIncrementOnceById() {
+        List<List<String>> keysList = new ArrayList<>();
+        List<Object[]> argsList = new ArrayList<>();
+        doAnswer(invocation -> {
+            keysList.add(invocation.getArgument(1));
+            argsList.add((Object[]) invocation.getRawArguments()[2]);
+            return Arrays.asList("followCount", "1");
+        }).when(redisUtils).execute(any(), anyList(), any());
+
+        CountMessage countMessage = messageCountStore.increment("user-1", "notice-1", 0, 0, 1);
+
+        assertEquals(ImConstant.MESSAGE_COUNT_APPLIED_KEY + "notice-1", keysList.get(0).get(2));
+        assertArrayEquals(new Object[]{"3600", "followCount", "1"}, argsList.get(0));
+        assertEquals(1L, countMessage.getFollowCount());
+    }
+
+    @Test
+    @DisplayName("✅ 哈希表存在时只读取一次")
+    void shouldReadHashDirectly() {
+        Map<String, String> hash = new HashMap<>();
+        hash.put("followCount", "5");
+        when(redisUtils.hGetAllBatch(Collections.singletonList(ImConstant.MESSAGE_COUNT_HASH_KEY + "user-1")))
+                .thenReturn(Collections.singletonList(hash));
+
+        CountMessage countMessage = messageCountStore.get("user-1");
+
+        assertEquals(5L, countMessage.getFollowCount());
+        verify(redisUtils, never()).execute(any(), anyList(), any());
+    }
+
+    @Test
+    @DisplayName("✅ 哈希表不存在时通过脚本转换旧的json")
+    void shouldMigrateLegacyKey() {
+        when(redisUtils.hGetAllBatch(anyList())).thenReturn(Collections.singletonList(new HashMap<>()));
+        List<List<String>> keysList = new ArrayList<>();
+        doAnswer(invocation -> {
+            keysList.add(invocation.getArgument(1));
+            return Arrays.asList("commentCount", "4");
+        }).when(redisUtils).execute(any(), anyList(), any());
+
+        CountMessage countMessage = messageCountStore.get("user-1");
+
+        assertEquals(4L, countMessage.getCommentCount());
+        assertEquals(Arrays.asList(ImConstant.MESSAGE_COUNT_HASH_KEY + "user-1", ImConstant.MESSAGE_COUNT_KEY + "user-1"), keysList.get(0));
+    }
+}
@@ -0,0 +1,206 @@
+package com.yanhuo.im.persist;
+
+import cn.hutool.json.JSONUtil;
+import com.yanhuo.common.constant.ImConstant;
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.im.cache.RecentChatCache;
+import com.yanhuo.xo.dao.ChatDao;
+import com.yanhuo.xo.dao.ChatUserRelationDao;
+import com.yanhuo.xo.entity.Chat;
+import com.yanhuo.xo.entity.ChatUserRelation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 私聊消息批量写入单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("💬 私聊消息批量写入测试")
+class ChatWriteBufferTest {
+
+    @Mock
+    private ChatDao chatDao;
+
+    @Mock
+    private ChatUserRelationDao chatUserRelationDao;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private RecentChatCache recentChatCache;
+
+    @Mock
+    private RedisUtils redisUtils;
+
+    @InjectMocks
+    private ChatWriteBuffer chatWriteBuffer;
+
+    private final List<List<Chat>> chatBatches = new ArrayList<>();
+
+    private final List<List<ChatUserRelation>> relationBatches = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ReflectionTestUtils.setField(chatWriteBuffer, "queueCapacity", 3);
+        ReflectionTestUtils.setField(chatWriteBuffer, "batchSize", 2);
+        ReflectionTestUtils.setField(chatWriteBuffer, "maxRetries", 2);
+        ReflectionTestUtils.setField(chatWriteBuffer, "retryInterval", 0L);
+        ReflectionTestUtils.setField(chatWriteBuffer, "recoverAfter", 300000L);
+        chatWriteBuffer.init();
+        lenient().doAnswer(invocation -> {
+            ((Consumer<TransactionStatus>) invocation.getArgument(0)).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        lenient().doAnswer(invocation -> {
+            List<Chat> chatList = invocation.getArgument(0);
+            if (chatList.stream().anyMatch(chat -> "bad".equals(chat.getContent()))) {
+                throw new RuntimeException("写入失败");
+            }
+            chatBatches.add(new ArrayList<>(chatList));
+            return 0;
+        }).when(chatDao).insertBatch(anyList());
+        lenient().doAnswer(invocation -> {
+            relationBatches.add(new ArrayList<>(invocation.getArgument(0)));
+            return 0;
+        }).when(chatUserRelationDao).upsertBatch(anyList());
+    }
+
+    @Test
+    @DisplayName("✅ 按批写入消息，每条消息更新双方会话")
+    void shouldWriteInBatches() {
+        chatWriteBuffer.add(chat("a", "b", "1"));
+        chatWriteBuffer.add(chat("b", "a", "2"));
+        chatWriteBuffer.add(chat("a", "b", "3"));
+
+        verifyNoInteractions(chatDao);
+        chatWriteBuffer.flush();
+
+        assertEquals(2, chatBatches.size());
+        assertEquals(2, chatBatches.get(0).size());
+        assertEquals(1, chatBatches.get(1).size());
+
+        List<ChatUserRelation> relations = relationBatches.get(0);
+        assertEquals(4, relations.size());
+        // 接收方b的会话(发送方a)加1，发送方a的会话清零，按消息顺序排列
+        assertRelation(relations.get(0), "a", "b", 1);
+        assertRelation(relations.get(1), "b", "a", 0);
+        assertRelation(relations.get(2), "b", "a", 1);
+        assertRelation(relations.get(3), "a", "b", 0);
+        verify(recentChatCache, times(2)).addAll(anyList());
+    }
+
+    @Test
+    @DisplayName("✅ 队列满时直接写入")
+    void shouldWriteDirectlyWhenQueueFull() {
+        for (int i = 0; i < 4; i++) {
+            chatWriteBuffer.add(chat("a", "b", String.valueOf(i)));
+        }
+
+        assertEquals(1, chatBatches.size());
+        assertEquals("3", chatBatches.get(0).get(0).getContent());
+    }
+
+    @Test
+    @DisplayName("📝 消息先记录到待写入哈希表，写入后删除")
+    void shouldTrackPendingMessages() {
+        chatWriteBuffer.add(chat("a", "b", "1"));
+
+        verify(redisUtils).hPut(eq(ImConstant.CHAT_PENDING_KEY), eq("1"), anyString());
+        chatWriteBuffer.flush();
+
+        verify(redisUtils).hDelete(ImConstant.CHAT_PENDING_KEY, "1");
+    }
+
+    @Test
+    @DisplayName("🔁 一批写入失败时重试后拆分，只有失败的消息移到失败哈希表")
+    void shouldSplitAndParkFailedMessage() {
+        chatWriteBuffer.add(chat("a", "b", "ok"));
+        chatWriteBuffer.add(chat("a", "b", "bad"));
+
+        chatWriteBuffer.flush();
+
+        // 整批两次都失败，拆分后第一条写入成功
+        assertEquals(1, chatBatches.size());
+        assertEquals("ok", chatBatches.get(0).get(0).getContent());
+        verify(chatDao, times(4)).insertBatch(anyList());
+        verify(redisUtils).hPut(eq(ImConstant.CHAT_FAILED_KEY), eq("bad"), anyString());
+        verify(redisUtils).hDelete(ImConstant.CHAT_PENDING_KEY, "bad");
+    }
+
+    @Test
+    @DisplayName("🩹 补写崩溃前没有写入的消息，已写入的只删除记录")
+    @SuppressWarnings("unchecked")
+    void shouldRecoverPendingMessages() {
+        long old = System.currentTimeMillis() - 600000L;
+        Chat written = chat("a", "b", "1");
+        written.setTimestamp(old);
+        Chat lost = chat("a", "b", "2");
+        lost.setTimestamp(old + 1);
+        Chat fresh = chat("a", "b", "3");
+        List<Map.Entry<Object, Object>> entries = new ArrayList<>();
+        for (Chat chat : Arrays.asList(lost, written, fresh)) {
+            entries.add(new AbstractMap.SimpleEntry<>(chat.getId(), JSONUtil.toJsonStr(chat)));
+        }
+        Cursor<Map.Entry<Object, Object>> cursor = mock(Cursor.class);
+        when(cursor.hasNext()).thenReturn(true, true, true, false);
+        when(cursor.next()).thenReturn(entries.get(0), entries.get(1), entries.get(2));
+        when(redisUtils.setIfAbsent(eq(ImConstant.CHAT_RECOVER_LOCK_KEY), anyString(), anyLong(), any())).thenReturn(true);
+        when(redisUtils.hScan(eq(ImConstant.CHAT_PENDING_KEY), any())).thenReturn(cursor);
+        when(chatDao.selectObjs(any())).thenReturn(Collections.singletonList("1"));
+
+        chatWriteBuffer.recover();
+
+        verify(redisUtils).hDelete(ImConstant.CHAT_PENDING_KEY, "1");
+        assertEquals(1, chatBatches.size());
+        assertEquals("2", chatBatches.get(0).get(0).getId());
+        assertEquals(1, chatBatches.get(0).size());
+        verify(redisUtils).delete(ImConstant.CHAT_RECOVER_LOCK_KEY);
+    }
+
+    @Test
+    @DisplayName("✅ 队列为空时不访问数据库")
+    void shouldSkipWhenEmpty() {
+        chatWriteBuffer.flush();
+
+        verifyNoInteractions(chatDao, chatUserRelationDao, transactionTemplate, recentChatCache, redisUtils);
+    }
+
+    private void assertRelation(ChatUserRelation relation, String sendUid, String acceptUid, int count) {
+        assertEquals(sendUid, relation.getSendUid());
+        assertEquals(acceptUid, relation.getAcceptUid());
+        assertEquals(count, relation.getCount());
+    }
+
+    private Chat chat(String sendUid, String acceptUid, String content) {
+        Chat chat = new Chat();
+        chat.setId(content);
+        chat.setSendUid(sendUid);
+        chat.setAcceptUid(acceptUid);
+        chat.setContent(content);
+        chat.setTimestamp(System.currentTimeMillis());
+        return chat;
+    }
+}
@@ -0,0 +1,176 @@
+package com.yanhuo.im.route;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yanhuo.common.constant.ImConstant;
+import com.yanhuo.common.im.Message;
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.im.websocket.WebSocketServer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 跨节点消息路由单元测试
+ * <p>
+ * 两个节点共用一个内存中的redis替身，字符串key和发布订阅都在内存中完成
+ */
+@DisplayName("🛰️ 跨节点消息路由测试")
+class MessageRouterTest {
+
+    private final Map<String, String> store = new ConcurrentHashMap<>();
+
+    private final Map<String, List<MessageListener>> subscribers = new ConcurrentHashMap<>();
+
+    private Node node1;
+
+    private Node node2;
+
+    @BeforeEach
+    void setUp() {
+        node1 = new Node("node-1");
+        node2 = new Node("node-2");
+    }
+
+    @Test
+    @DisplayName("✅ 用户连接在其他节点时转发到该节点")
+    void shouldRouteToRemoteNode() {
+        node2.connect("user-b");
+
+        node1.router.route(message("user-b", "hello"));
+
+        verify(node1.webSocketServer, never()).sendInfo(any());
+        verify(node2.webSocketServer).sendInfo(argThat(item -> "user-b".equals(item.getAcceptUid()) && "hello".equals(item.getContent())));
+    }
+
+    @Test
+    @DisplayName("✅ 用户连接在本节点时直接发送")
+    void shouldSendLocally() {
+        node1.connect("user-a");
+
+        node1.router.route(message("user-a", "hello"));
+
+        verify(node1.webSocketServer).sendInfo(any());
+        verify(node2.webSocketServer, never()).sendInfo(any());
+    }
+
+    @Test
+    @DisplayName("✅ 用户不在线时丢弃")
+    void shouldDropWhenOffline() {
+        node1.router.route(message("user-c", "hello"));
+
+        verify(node1.webSocketServer, never()).sendInfo(any());
+        verify(node2.webSocketServer, never()).sendInfo(any());
+    }
+
+    @Test
+    @DisplayName("✅ 重连到其他节点后，旧节点断开不会删除新的登记")
+    void shouldKeepNewerRegistration() {
+        node1.connect("user-a");
+        node2.connect("user-a");
+
+        node1.disconnect("user-a");
+
+        assertEquals("node-2", store.get(ImConstant.PRESENCE_KEY + "user-a"));
+        node1.router.route(message("user-a", "hello"));
+        verify(node2.webSocketServer).sendInfo(any());
+    }
+
+    @Test
+    @DisplayName("✅ 广播到所有节点")
+    void shouldBroadcastToAllNodes() {
+        node1.router.broadcast(message(null, "notice"));
+
+        verify(node1.webSocketServer).broadcast(any());
+        verify(node2.webSocketServer).broadcast(any());
+    }
+
+    private Message message(String acceptUid, String content) {
+        Message message = new Message();
+        message.setAcceptUid(acceptUid);
+        message.setContent(content);
+        message.setMsgType(1);
+        return message;
+    }
+
+    /**
+     * 一个im节点，除redis替身外都是独立的对象
+     */
+    private class Node {
+
+        private final WebSocketServer webSocketServer = mock(WebSocketServer.class);
+
+        private final PresenceRegistry presenceRegistry = new PresenceRegistry();
+
+        private final MessageRouter router = new MessageRouter();
+
+        private final Set<String> localUids = new HashSet<>();
+
+        private Node(String nodeId) {
+            RedisUtils redisUtils = redisStandIn();
+            RedisMessageListenerContainer container = mock(RedisMessageListenerContainer.class);
+            doAnswer(invocation -> {
+                ChannelTopic topic = invocation.getArgument(1);
+                subscribers.computeIfAbsent(topic.getTopic(), k -> new ArrayList<>()).add(invocation.getArgument(0));
+                return null;
+            }).when(container).addMessageListener(any(MessageListener.class), any(ChannelTopic.class));
+            when(webSocketServer.isLocal(anyString())).thenAnswer(invocation -> localUids.contains(invocation.<String>getArgument(0)));
+
+            ReflectionTestUtils.setField(presenceRegistry, "redisUtils", redisUtils);
+            ReflectionTestUtils.setField(presenceRegistry, "nodeId", nodeId);
+            ReflectionTestUtils.setField(presenceRegistry, "presenceTtl", 90L);
+            presenceRegistry.init();
+
+            ReflectionTestUtils.setField(router, "webSocketServer", webSocketServer);
+            ReflectionTestUtils.setField(router, "presenceRegistry", presenceRegistry);
+            ReflectionTestUtils.setField(router, "redisUtils", redisUtils);
+            ReflectionTestUtils.setField(router, "redisMessageListenerContainer", container);
+            ReflectionTestUtils.setField(router, "objectMapper", new ObjectMapper());
+            router.init();
+        }
+
+        private void connect(String uid) {
+            localUids.add(uid);
+            presenceRegistry.register(uid);
+        }
+
+        private void disconnect(String uid) {
+            localUids.remove(uid);
+            presenceRegistry.unregister(uid);
+        }
+    }
+
+    private RedisUtils redisStandIn() {
+        RedisUtils redisUtils = mock(RedisUtils.class);
+        doAnswer(invocation -> store.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(redisUtils).setEx(anyString(), anyString(), anyLong(), any());
+        when(redisUtils.get(anyString())).thenAnswer(invocation -> store.get(invocation.<String>getArgument(0)));
+        // 登记删除脚本：值等于节点id时才删除
+        doAnswer(invocation -> {
+            List<String> keys = invocation.getArgument(1);
+            Object nodeId = invocation.getRawArguments()[2];
+            nodeId = nodeId instanceof Object[] ? ((Object[]) nodeId)[0] : nodeId;
+            return store.remove(keys.get(0), nodeId) ? 1L : 0L;
+        }).when(redisUtils).execute(any(), anyList(), any());
+        doAnswer(invocation -> {
+            String channel = invocation.getArgument(0);
+            byte[] body = invocation.<String>getArgument(1).getBytes(StandardCharsets.UTF_8);
+            subscribers.getOrDefault(channel, Collections.emptyList()).forEach(listener ->
+                    listener.onMessage(new DefaultMessage(channel.getBytes(StandardCharsets.UTF_8), body), null));
+            return null;
+        }).when(redisUtils).convertAndSend(anyString(), anyString());
+        return redisUtils;
+    }
+}
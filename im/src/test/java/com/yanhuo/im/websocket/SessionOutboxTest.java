@@ -0,0 +1,130 @@
+package com.yanhuo.im.websocket;
+
+import com.yanhuo.common.im.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.websocket.CloseReason;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 连接发送队列单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("📤 连接发送队列测试")
+class SessionOutboxTest {
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private RemoteEndpoint.Async async;
+
+    private final List<String> sent = new ArrayList<>();
+
+    private final List<SendHandler> handlers = new ArrayList<>();
+
+    private final OutboundMetrics metrics = new OutboundMetrics();
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(session.getAsyncRemote()).thenReturn(async);
+        // 不立即回调，模拟发送未完成的慢连接
+        lenient().doAnswer(invocation -> {
+            sent.add(invocation.getArgument(0));
+            handlers.add(invocation.getArgument(1));
+            return null;
+        }).when(async).sendText(anyString(), any(SendHandler.class));
+    }
+
+    @Test
+    @DisplayName("✅ 同一时刻只有一条发送，完成后发送下一条")
+    void shouldSendOneAtATime() {
+        SessionOutbox outbox = new SessionOutbox("user-1", session, 10, OverflowPolicy.DROP_OLDEST, true, metrics);
+
+        outbox.offer(message(1, "a"));
+        outbox.offer(message(1, "b"));
+
+        assertEquals(1, sent.size());
+        assertEquals(1, outbox.getDepth());
+        handlers.get(0).onResult(new SendResult());
+        assertEquals(2, sent.size());
+        assertTrue(sent.get(1).contains("\"content\":\"b\""));
+    }
+
+    @Test
+    @DisplayName("✅ 排队中的未读数量消息只保留最新一条")
+    void shouldCoalesceCountMessages() {
+        SessionOutbox outbox = new SessionOutbox("user-1", session, 10, OverflowPolicy.DROP_OLDEST, true, metrics);
+
+        outbox.offer(message(1, "a"));
+        outbox.offer(message(0, "count-1"));
+        outbox.offer(message(0, "count-2"));
+
+        assertEquals(1, outbox.getDepth());
+        handlers.get(0).onResult(new SendResult());
+        assertTrue(sent.get(1).contains("\"content\":\"count-2\""));
+        assertEquals(1L, metrics.snapshot(0).get("coalescedCount"));
+    }
+
+    @Test
+    @DisplayName("✅ 队列满时丢弃最早的消息")
+    void shouldDropOldest() {
+        SessionOutbox outbox = new SessionOutbox("user-1", session, 2, OverflowPolicy.DROP_OLDEST, true, metrics);
+
+        outbox.offer(message(1, "a"));
+        outbox.offer(message(1, "b"));
+        outbox.offer(message(1, "c"));
+        outbox.offer(message(1, "d"));
+
+        assertEquals(2, outbox.getDepth());
+        handlers.get(0).onResult(new SendResult());
+        assertTrue(sent.get(1).contains("\"content\":\"c\""));
+        assertEquals(1L, metrics.snapshot(0).get("droppedCount"));
+    }
+
+    @Test
+    @DisplayName("✅ 队列满时断开慢连接")
+    void shouldDisconnectSlowConsumer() throws Exception {
+        SessionOutbox outbox = new SessionOutbox("user-1", session, 1, OverflowPolicy.DISCONNECT, true, metrics);
+
+        outbox.offer(message(1, "a"));
+        outbox.offer(message(1, "b"));
+        outbox.offer(message(1, "c"));
+
+        verify(session).close(any(CloseReason.class));
+        assertEquals(0, outbox.getDepth());
+        assertEquals(1L, metrics.snapshot(0).get("disconnectedCount"));
+    }
+
+    @Test
+    @DisplayName("✅ 群发传入的json直接发送，不再序列化")
+    void shouldSendPreEncodedJson() {
+        SessionOutbox outbox = new SessionOutbox("user-1", session, 10, OverflowPolicy.DROP_OLDEST, true, metrics);
+
+        outbox.offer(message(1, "a"), "{\"shared\":true}");
+
+        assertEquals("{\"shared\":true}", sent.get(0));
+    }
+
+    private Message message(int msgType, String content) {
+        Message message = new Message();
+        message.setMsgType(msgType);
+        message.setContent(content);
+        message.setAcceptUid("user-1");
+        return message;
+    }
+}
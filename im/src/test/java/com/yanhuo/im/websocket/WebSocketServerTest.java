@@ -0,0 +1,67 @@
+package com.yanhuo.im.websocket;
+
+import com.yanhuo.im.route.PresenceRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.websocket.Session;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * websocket连接管理单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("🔌 websocket连接管理测试")
+class WebSocketServerTest {
+
+    @Mock
+    private Session oldSession;
+
+    @Mock
+    private Session newSession;
+
+    @Mock
+    private PresenceRegistry presenceRegistry;
+
+    private final WebSocketServer webSocketServer = new WebSocketServer();
+
+    @BeforeEach
+    void setUp() {
+        webSocketServer.setPresenceRegistry(presenceRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        WebSocketServer.getSessionPools().clear();
+    }
+
+    @Test
+    @DisplayName("🔁 重新连接后旧连接才关闭时保留新连接和在线状态")
+    void shouldKeepNewSessionWhenOldOneCloses() {
+        webSocketServer.onOpen(oldSession, "user-1");
+        webSocketServer.onOpen(newSession, "user-1");
+
+        webSocketServer.onClose(oldSession, "user-1");
+
+        assertSame(newSession, WebSocketServer.getSessionPools().get("user-1").getSession());
+        verify(presenceRegistry, never()).unregister("user-1");
+    }
+
+    @Test
+    @DisplayName("✅ 当前连接关闭时移除连接并注销在线状态")
+    void shouldUnregisterCurrentSession() {
+        webSocketServer.onOpen(newSession, "user-1");
+
+        webSocketServer.onClose(newSession, "user-1");
+
+        assertFalse(WebSocketServer.getSessionPools().containsKey("user-1"));
+        verify(presenceRegistry, times(1)).unregister("user-1");
+    }
+}
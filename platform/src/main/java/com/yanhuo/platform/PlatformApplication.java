@@ -3,12 +3,14 @@ package com.yanhuo.platform;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.openfeign.EnableFeignClients;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * @author xiaozhao
  */
-@SpringBootApplication(scanBasePackages = {"com.yanhuo.platform","com.yanhuo.common"})
+@SpringBootApplication(scanBasePackages = {"com.yanhuo.platform","com.yanhuo.xo","com.yanhuo.common"})
 @EnableFeignClients
+@EnableScheduling
 public class PlatformApplication {
     public static void main(String[] args) {
         SpringApplication.run(PlatformApplication.class, args);
@@ -0,0 +1,281 @@
+package com.yanhuo.platform.cache;
+
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yanhuo.common.constant.CacheConstant;
+import com.yanhuo.common.constant.CommentStatusConstant;
+import com.yanhuo.common.utils.AfterCommit;
+import com.yanhuo.common.utils.ConvertUtils;
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.platform.counter.CountField;
+import com.yanhuo.platform.counter.CountFlushListener;
+import com.yanhuo.xo.dao.CommentDao;
+import com.yanhuo.xo.dto.CountDeltaDTO;
+import com.yanhuo.xo.entity.Comment;
+import com.yanhuo.xo.vo.CommentVo;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 笔记评论树缓存
+ * <p>
+ * 每篇笔记两个key：一级评论按点赞数排行的zset，以及一级评论id -> 携带前child-size条二级评论的评论json的hash。
+ * 缓存只保存与查看用户无关的数据，用户名头像、是否点赞、未写回的计数在读取时叠加。
+ * 评论同步和点赞数、回复数写回数据库后，只重建受影响的一级评论节点。
+ * 缓存不存在时只有拿到重建锁的请求读取数据库重建，其他请求等待重建完成。
+ * 重建期间的增量更新记录到dirty集合，重建写入时取出，重建之后再从数据库更新一次，
+ * 避免重建读取数据库之后的更新被重建的清空和写入覆盖。
+ *
+ * @author xiaozhao
+ */
+@Component
+@Slf4j
+public class CommentTreeCache implements CountFlushListener {
+
+    /**
+     * 返回 {总数, 评论json...}，缓存不存在时返回空
+     */
+    private static final RedisScript<List> READ_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[2]) == 0 then return nil end " +
+            "redis.call('expire', KEYS[1], ARGV[3]) redis.call('expire', KEYS[2], ARGV[3]) " +
+            "local ids = redis.call('zrevrange', KEYS[1], ARGV[1], ARGV[2]) " +
+            "local result = {tostring(redis.call('zcard', KEYS[1]))} " +
+            "if #ids > 0 then " +
+            "local nodes = redis.call('hmget', KEYS[2], unpack(ids)) " +
+            "for i = 1, #nodes do if nodes[i] then result[#result + 1] = nodes[i] end end end " +
+            "return result", List.class);
+
+    /**
+     * 写入节点，KEYS为 排行, 节点, 重建锁, dirty集合。
+     * ARGV[1]为1时先清空(重建)，返回并删除重建期间记录的一级评论id；
+     * 为0时(增量更新)正在重建则记录一级评论id，缓存不存在则不写入。之后每三个参数为 id, 点赞数, json
+     */
+    private static final RedisScript<List> WRITE_SCRIPT = new DefaultRedisScript<>(
+            "local dirty = {} " +
+            "if ARGV[1] == '1' then redis.call('del', KEYS[1], KEYS[2]) " +
+            "dirty = redis.call('smembers', KEYS[4]) redis.call('del', KEYS[4]) " +
+            "else " +
+            "if redis.call('exists', KEYS[3]) == 1 then " +
+            "for i = 3, #ARGV, 3 do redis.call('sadd', KEYS[4], ARGV[i]) end " +
+            "redis.call('expire', KEYS[4], ARGV[2]) end " +
+            "if redis.call('exists', KEYS[2]) == 0 then return dirty end end " +
+            "redis.call('hset', KEYS[2], '', '1') " +
+            "for i = 3, #ARGV, 3 do " +
+            "redis.call('zadd', KEYS[1], ARGV[i + 1], ARGV[i]) " +
+            "redis.call('hset', KEYS[2], ARGV[i], ARGV[i + 2]) end " +
+            "redis.call('expire', KEYS[1], ARGV[2]) redis.call('expire', KEYS[2], ARGV[2]) " +
+            "return dirty", List.class);
+
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) end return 0", Long.class);
+
+    private static final long LOCK_POLL_INTERVAL = 50;
+
+    @Autowired
+    RedisUtils redisUtils;
+
+    @Autowired
+    CommentDao commentDao;
+
+    @Value("${comment-tree.child-size:3}")
+    int childSize;
+
+    @Value("${comment-tree.ttl:86400}")
+    long ttl;
+
+    @Value("${comment-tree.lock-timeout:5000}")
+    long lockTimeout;
+
+    @Value("${comment-tree.lock-wait:1000}")
+    long lockWait;
+
+    /**
+     * 分页得到一级评论，不存在时从数据库重建
+     *
+     * @param noteId 笔记id
+     * @param start  开始位置
+     * @param end    结束位置(包含)
+     * @return 一级评论总数和本页评论
+     */
+    public TreePage getPage(String noteId, long start, long end) {
+        List<String> keys = getKeys(noteId);
+        List<?> result = redisUtils.execute(READ_SCRIPT, keys, String.valueOf(start), String.valueOf(end), String.valueOf(ttl));
+        if (result == null || result.isEmpty()) {
+            load(noteId);
+            result = redisUtils.execute(READ_SCRIPT, keys, String.valueOf(start), String.valueOf(end), String.valueOf(ttl));
+        }
+        TreePage page = new TreePage();
+        if (result == null || result.isEmpty()) {
+            return page;
+        }
+        page.setTotal(Long.parseLong(String.valueOf(result.get(0))));
+        for (int i = 1; i < result.size(); i++) {
+            page.getRecords().add(JSONUtil.toBean(String.valueOf(result.get(i)), CommentVo.class));
+        }
+        return page;
+    }
+
+    /**
+     * 得到一级评论在笔记中按点赞数降序的排名，不存在时从数据库重建
+     *
+     * @param noteId    笔记id
+     * @param commentId 一级评论id
+     * @return 从0开始的排名，评论不存在时为null
+     */
+    public Long rank(String noteId, String commentId) {
+        List<String> keys = getKeys(noteId);
+        if (!Boolean.TRUE.equals(redisUtils.hasKey(keys.get(1)))) {
+            load(noteId);
+        }
+        return redisUtils.zReverseRank(keys.get(0), commentId);
+    }
+
+    /**
+     * 评论同步(状态改为已展示)后更新所在的一级评论节点，存在事务时在提交后执行
+     *
+     * @param comments 新增的评论
+     */
+    public void onCommentsAdded(List<Comment> comments) {
+        Map<String, Set<String>> parentMap = new HashMap<>(16);
+        comments.forEach(item -> parentMap.computeIfAbsent(item.getNid(), k -> new HashSet<>())
+                .add("0".equals(item.getPid()) ? item.getId() : item.getPid()));
+        AfterCommit.run(() -> refresh(parentMap));
+    }
+
+    /**
+     * 删除笔记的评论树
+     *
+     * @param noteIds 笔记id
+     */
+    public void evict(Collection<String> noteIds) {
+        List<String> keys = new ArrayList<>(noteIds.size() * 2);
+        noteIds.forEach(noteId -> keys.addAll(getKeys(noteId)));
+        // 提交前删除时，并发的读取可能从未提交的数据库重建出旧的评论树
+        AfterCommit.run(() -> redisUtils.delete(keys));
+    }
+
+    /**
+     * 评论点赞数、回复数写回后重建受影响的一级评论节点
+     */
+    @Override
+    public void onFlush(CountField field, List<CountDeltaDTO> deltaList) {
+        if (field != CountField.COMMENT_LIKE && field != CountField.COMMENT_TWO_COMMENT) {
+            return;
+        }
+        List<String> ids = deltaList.stream().map(CountDeltaDTO::getId).collect(Collectors.toList());
+        List<Comment> commentList = commentDao.selectList(new QueryWrapper<Comment>().select("id", "nid", "pid").in("id", ids));
+        Map<String, Set<String>> parentMap = new HashMap<>(16);
+        // 二级评论点赞数变化可能改变一级评论下保留的二级评论
+        commentList.forEach(item -> parentMap.computeIfAbsent(item.getNid(), k -> new HashSet<>())
+                .add("0".equals(item.getPid()) ? item.getId() : item.getPid()));
+        try {
+            refresh(parentMap);
+        } catch (Exception e) {
+            log.error("评论树缓存更新失败", e);
+        }
+    }
+
+    private void refresh(Map<String, Set<String>> parentMap) {
+        parentMap.forEach((noteId, parentIds) -> {
+            List<Comment> parentList = commentDao.selectList(new QueryWrapper<Comment>().in("id", parentIds).eq("pid", "0").eq("status", CommentStatusConstant.VISIBLE));
+            write(noteId, parentList, false);
+        });
+    }
+
+    /**
+     * 拿到重建锁时重建，否则等待其他请求重建完成，等待超时后自己重建
+     */
+    private void load(String noteId) {
+        String lockKey = CacheConstant.COMMENT_TREE_LOCK_KEY + noteId;
+        String token = UUID.randomUUID().toString();
+        if (redisUtils.setIfAbsent(lockKey, token, lockTimeout, TimeUnit.MILLISECONDS)) {
+            try {
+                rebuild(noteId);
+            } finally {
+                redisUtils.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), token);
+            }
+            return;
+        }
+        String nodeKey = CacheConstant.COMMENT_TREE_NODE_KEY + noteId;
+        for (long waited = 0; waited < lockWait; waited += LOCK_POLL_INTERVAL) {
+            try {
+                Thread.sleep(LOCK_POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (Boolean.TRUE.equals(redisUtils.hasKey(nodeKey))) {
+                return;
+            }
+        }
+        log.warn("等待笔记{}的评论树重建超时", noteId);
+        rebuild(noteId);
+    }
+
+    private void rebuild(String noteId) {
+        List<Comment> parentList = commentDao.selectList(new QueryWrapper<Comment>().eq("nid", noteId).eq("pid", "0").eq("status", CommentStatusConstant.VISIBLE));
+        List<?> dirty = write(noteId, parentList, true);
+        log.debug("重建笔记{}的评论树缓存，一级评论数={}", noteId, parentList.size());
+        if (dirty != null && !dirty.isEmpty()) {
+            // 重建读取数据库之后有增量更新，重新读取这些节点
+            Set<String> parentIds = dirty.stream().map(String::valueOf).collect(Collectors.toSet());
+            refresh(Collections.singletonMap(noteId, parentIds));
+        }
+    }
+
+    private List<?> write(String noteId, List<Comment> parentList, boolean rebuild) {
+        if (!rebuild && parentList.isEmpty()) {
+            return null;
+        }
+        Map<String, List<CommentVo>> childMap = new HashMap<>(16);
+        if (!parentList.isEmpty()) {
+            List<String> pids = parentList.stream().map(Comment::getId).collect(Collectors.toList());
+            commentDao.selectTopChildren(pids, childSize).forEach(item ->
+                    childMap.computeIfAbsent(item.getPid(), k -> new ArrayList<>()).add(toVo(item)));
+        }
+        List<Object> args = new ArrayList<>(parentList.size() * 3 + 2);
+        args.add(rebuild ? "1" : "0");
+        args.add(String.valueOf(ttl));
+        for (Comment parent : parentList) {
+            CommentVo commentVo = toVo(parent);
+            commentVo.setChildren(childMap.getOrDefault(parent.getId(), new ArrayList<>()));
+            args.add(parent.getId());
+            args.add(String.valueOf(parent.getLikeCount() == null ? 0L : parent.getLikeCount()));
+            args.add(JSONUtil.toJsonStr(commentVo));
+        }
+        List<String> keys = new ArrayList<>(getKeys(noteId));
+        keys.add(CacheConstant.COMMENT_TREE_LOCK_KEY + noteId);
+        keys.add(CacheConstant.COMMENT_TREE_DIRTY_KEY + noteId);
+        return redisUtils.execute(WRITE_SCRIPT, keys, args.toArray());
+    }
+
+    private CommentVo toVo(Comment comment) {
+        CommentVo commentVo = ConvertUtils.sourceToTarget(comment, CommentVo.class);
+        commentVo.setTime(comment.getCreateDate().getTime());
+        return commentVo;
+    }
+
+    private List<String> getKeys(String noteId) {
+        return Arrays.asList(CacheConstant.COMMENT_TREE_RANK_KEY + noteId, CacheConstant.COMMENT_TREE_NODE_KEY + noteId);
+    }
+
+    /**
+     * 评论树分页结果
+     */
+    @Data
+    public static class TreePage {
+
+        private long total;
+
+        private List<CommentVo> records = new ArrayList<>();
+    }
+}
@@ -0,0 +1,231 @@
+package com.yanhuo.platform.cache;
+
+import com.yanhuo.common.constant.CacheConstant;
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.platform.counter.CountField;
+import com.yanhuo.platform.counter.CountFlushListener;
+import com.yanhuo.xo.dto.CountDeltaDTO;
+import com.yanhuo.xo.entity.Note;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 笔记热度排行
+ * <p>
+ * 热度 = Σ 权重 × 计数 × 2^((笔记发布时间 - 基准时间) / 半衰期)，新笔记的分值随时间指数放大，
+ * 等价于旧笔记按半衰期衰减，但不需要定时重算整个排行。发布时间从雪花id中取出，
+ * 增量和重建使用同一个时间，取消点赞的负增量正好抵消点赞时加上的分值。
+ * 点赞、收藏、评论、浏览的增量在CountBuffer写回数据库后由脚本累加到redis zset，
+ * 分页直接按排名区间读取。由HotNoteJobHandler定期从t_note重建并重置基准时间，防止分值溢出。
+ * 重建期间的增量同时写入重建中的排行，只写入已经读过的笔记，没读到的笔记在读取时已经包含了这部分计数。
+ *
+ * @author xiaozhao
+ */
+@Component
+@Slf4j
+public class HotNoteRanking implements CountFlushListener {
+
+    private static final Map<CountField, Double> WEIGHT_MAP = new EnumMap<>(CountField.class);
+
+    static {
+        WEIGHT_MAP.put(CountField.NOTE_VIEW, 1D);
+        WEIGHT_MAP.put(CountField.NOTE_LIKE, 3D);
+        WEIGHT_MAP.put(CountField.NOTE_COMMENT, 4D);
+        WEIGHT_MAP.put(CountField.NOTE_COLLECTION, 5D);
+    }
+
+    private static final String REBUILD_KEY = CacheConstant.HOT_NOTE_KEY + ":rebuild";
+
+    /**
+     * 重建状态(hash)，epoch为新的基准时间，progress为已经读过的最大笔记id
+     */
+    private static final String REBUILD_STATE_KEY = CacheConstant.HOT_NOTE_KEY + ":rebuildState";
+
+    /**
+     * 重建状态的过期时间(秒)，重建中断时停止双写
+     */
+    private static final long REBUILD_STATE_SECONDS = 3600;
+
+    /**
+     * 雪花id的时间戳起点，与mybatis-plus的Sequence一致
+     */
+    private static final long TWEPOCH = 1288834974657L;
+
+    /**
+     * 累加增量，ARGV为 半衰期, 保留条数, 当前时间，之后每三个参数为 笔记id, 加权增量, 发布时间。
+     * 基准时间不存在时以当前时间初始化，重建中且笔记已经读过时按新的基准时间同时写入重建中的排行
+     */
+    private static final RedisScript<Long> INCR_SCRIPT = new DefaultRedisScript<>(
+            "local halfLife = tonumber(ARGV[1]) " +
+            "local epoch = redis.call('get', KEYS[2]) " +
+            "if not epoch then redis.call('set', KEYS[2], ARGV[3]) epoch = ARGV[3] end " +
+            "epoch = tonumber(epoch) " +
+            "local state = redis.call('hmget', KEYS[3], 'epoch', 'progress') " +
+            "local rebuildEpoch = tonumber(state[1]) " +
+            "local progress = state[2] " +
+            "for i = 4, #ARGV, 3 do " +
+            "local delta = tonumber(ARGV[i + 1]) " +
+            "local time = tonumber(ARGV[i + 2]) " +
+            "redis.call('zincrby', KEYS[1], delta * 2 ^ ((time - epoch) / halfLife), ARGV[i]) " +
+            "if rebuildEpoch and progress and progress ~= '' and ARGV[i] <= progress then " +
+            "redis.call('zincrby', KEYS[4], delta * 2 ^ ((time - rebuildEpoch) / halfLife), ARGV[i]) end end " +
+            "redis.call('zremrangebyrank', KEYS[1], 0, -tonumber(ARGV[2]) - 1) " +
+            "return 1", Long.class);
+
+    /**
+     * 用重建结果替换当前排行，同时切换基准时间并结束双写，ARGV为 新的基准时间, 保留条数
+     */
+    private static final RedisScript<Long> FINISH_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[2]) == 1 then " +
+            "redis.call('zremrangebyrank', KEYS[2], 0, -tonumber(ARGV[2]) - 1) " +
+            "redis.call('rename', KEYS[2], KEYS[1]) " +
+            "else redis.call('del', KEYS[1]) end " +
+            "redis.call('set', KEYS[3], ARGV[1]) " +
+            "redis.call('del', KEYS[4]) " +
+            "return 1", Long.class);
+
+    @Autowired
+    RedisUtils redisUtils;
+
+    @Value("${hot.half-life:86400000}")
+    long halfLife;
+
+    @Value("${hot.max-size:10000}")
+    long maxSize;
+
+    @Override
+    public void onFlush(CountField field, List<CountDeltaDTO> deltaList) {
+        Double weight = WEIGHT_MAP.get(field);
+        if (weight == null || deltaList.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<String> args = new ArrayList<>(deltaList.size() * 3 + 3);
+        args.add(String.valueOf(halfLife));
+        args.add(String.valueOf(maxSize));
+        args.add(String.valueOf(now));
+        for (CountDeltaDTO item : deltaList) {
+            args.add(item.getId());
+            args.add(String.valueOf(item.getDelta() * weight));
+            args.add(String.valueOf(noteTime(item.getId(), now)));
+        }
+        redisUtils.execute(INCR_SCRIPT, Arrays.asList(CacheConstant.HOT_NOTE_KEY, CacheConstant.HOT_NOTE_EPOCH_KEY,
+                REBUILD_STATE_KEY, REBUILD_KEY), args.toArray());
+    }
+
+    /**
+     * 分页得到热度最高的笔记id
+     *
+     * @param currentPage 当前页
+     * @param pageSize    分页数
+     * @return 按热度降序的笔记id
+     */
+    public List<String> getPage(long currentPage, long pageSize) {
+        long start = (currentPage - 1) * pageSize;
+        Set<String> ids = redisUtils.zReverseRange(CacheConstant.HOT_NOTE_KEY, start, start + pageSize - 1);
+        return ids == null ? Collections.emptyList() : new ArrayList<>(ids);
+    }
+
+    public long size() {
+        Long size = redisUtils.zSize(CacheConstant.HOT_NOTE_KEY);
+        return size == null ? 0L : size;
+    }
+
+    /**
+     * 笔记删除后移出排行，重建中的排行也一起移除
+     *
+     * @param noteIds 笔记id
+     */
+    public void remove(Collection<String> noteIds) {
+        if (!noteIds.isEmpty()) {
+            redisUtils.zRemove(CacheConstant.HOT_NOTE_KEY, noteIds.toArray());
+            redisUtils.zRemove(REBUILD_KEY, noteIds.toArray());
+        }
+    }
+
+    /**
+     * 开始重建，清空上次中断留下的重建结果并开始双写
+     *
+     * @param epoch 新的基准时间
+     */
+    public void startRebuild(long epoch) {
+        redisUtils.delete(REBUILD_KEY);
+        Map<String, String> state = new HashMap<>(4);
+        state.put("epoch", String.valueOf(epoch));
+        state.put("progress", "");
+        redisUtils.hPutAll(REBUILD_STATE_KEY, state);
+        redisUtils.expire(REBUILD_STATE_KEY, REBUILD_STATE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 重建时写入一批按id升序读取的笔记，写入后这批笔记之后的增量开始双写
+     *
+     * @param epoch    新的基准时间
+     * @param noteList 笔记
+     */
+    public void rebuildChunk(long epoch, List<Note> noteList) {
+        if (noteList.isEmpty()) {
+            return;
+        }
+        Set<TypedTuple<String>> tuples = new HashSet<>(noteList.size());
+        for (Note note : noteList) {
+            double score = nullToZero(note.getViewCount()) * WEIGHT_MAP.get(CountField.NOTE_VIEW)
+                    + nullToZero(note.getLikeCount()) * WEIGHT_MAP.get(CountField.NOTE_LIKE)
+                    + nullToZero(note.getCommentCount()) * WEIGHT_MAP.get(CountField.NOTE_COMMENT)
+                    + nullToZero(note.getCollectionCount()) * WEIGHT_MAP.get(CountField.NOTE_COLLECTION);
+            if (score > 0) {
+                long time = noteTime(note.getId(), note.getCreateDate().getTime());
+                tuples.add(new DefaultTypedTuple<>(note.getId(), score * decay(time, epoch)));
+            }
+        }
+        if (!tuples.isEmpty()) {
+            redisUtils.zAdd(REBUILD_KEY, tuples);
+        }
+        redisUtils.hPut(REBUILD_STATE_KEY, "progress", noteList.get(noteList.size() - 1).getId());
+        redisUtils.expire(REBUILD_STATE_KEY, REBUILD_STATE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 用重建结果替换当前排行并切换基准时间
+     *
+     * @param epoch 新的基准时间
+     */
+    public void finishRebuild(long epoch) {
+        redisUtils.execute(FINISH_SCRIPT, Arrays.asList(CacheConstant.HOT_NOTE_KEY, REBUILD_KEY,
+                CacheConstant.HOT_NOTE_EPOCH_KEY, REBUILD_STATE_KEY), String.valueOf(epoch), String.valueOf(maxSize));
+        log.info("笔记热度排行重建完成，基准时间={}", epoch);
+    }
+
+    /**
+     * 从雪花id中取出笔记的发布时间，不是雪花id时返回fallback
+     *
+     * @param noteId   笔记id
+     * @param fallback 默认时间
+     * @return 发布时间
+     */
+    public static long noteTime(String noteId, long fallback) {
+        try {
+            long time = (Long.parseLong(noteId) >> 22) + TWEPOCH;
+            return time > TWEPOCH && time <= fallback + TimeUnit.DAYS.toMillis(1) ? time : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private double decay(long time, long epoch) {
+        return Math.pow(2, (double) (time - epoch) / halfLife);
+    }
+
+    private static long nullToZero(Long count) {
+        return count == null ? 0L : count;
+    }
+}
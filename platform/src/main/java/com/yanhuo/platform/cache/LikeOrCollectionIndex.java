@@ -0,0 +1,162 @@
+package com.yanhuo.platform.cache;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yanhuo.common.constant.CacheConstant;
+import com.yanhuo.common.utils.AfterCommit;
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.xo.dao.LikeOrCollectionDao;
+import com.yanhuo.xo.entity.LikeOrCollection;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户点赞/收藏关系索引
+ * <p>
+ * 每个(uid, type)对应一个redis set，第一次查询时从t_like_or_collection加载，
+ * 之后由点赞收藏操作增量维护，批量判断只需要一次管道往返，
+ * 不再需要加载用户全部的点赞记录再逐个List.contains。
+ * 加载时先设置加载标记，从数据库读出的记录写入临时key，期间的增量记录到日志中，
+ * 最后在一个脚本中重放日志并rename为正式key，加载前后提交的点赞收藏都不会丢失。
+ *
+ * @author xiaozhao
+ */
+@Component
+@Slf4j
+public class LikeOrCollectionIndex {
+
+    /**
+     * 索引过期时间(天)，过期后下次查询重新从数据库加载
+     */
+    private static final long EXPIRE_DAYS = 3;
+
+    /**
+     * 加载标记和增量日志的过期时间(秒)，加载中断时自动清理
+     */
+    private static final long LOADING_SECONDS = 60;
+
+    private static final String LOADING_SUFFIX = ":loading";
+
+    private static final String JOURNAL_SUFFIX = ":journal";
+
+    private static final String TEMP_SUFFIX = ":tmp:";
+
+    /**
+     * 索引存在时修改索引，正在加载时记录到增量日志，ARGV为 1点赞/0取消, id, 日志过期时间
+     */
+    private static final RedisScript<Long> UPDATE_SCRIPT = new DefaultRedisScript<>(
+            "local applied = 0 " +
+            "if redis.call('exists', KEYS[1]) == 1 then " +
+            "if ARGV[1] == '1' then redis.call('sadd', KEYS[1], ARGV[2]) else redis.call('srem', KEYS[1], ARGV[2]) end " +
+            "applied = 1 end " +
+            "if redis.call('exists', KEYS[2]) == 1 then " +
+            "redis.call('rpush', KEYS[3], ARGV[1] .. ARGV[2]) redis.call('expire', KEYS[3], ARGV[3]) " +
+            "applied = 1 end " +
+            "return applied", Long.class);
+
+    /**
+     * 加载完成，索引已被其他线程加载时丢弃临时key，否则重放增量日志后rename为正式key，ARGV为 索引过期时间
+     */
+    private static final RedisScript<Long> FINISH_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 1 then redis.call('del', KEYS[2]) return 0 end " +
+            "local ops = redis.call('lrange', KEYS[3], 0, -1) " +
+            "for i = 1, #ops do " +
+            "local id = string.sub(ops[i], 2) " +
+            "if string.sub(ops[i], 1, 1) == '1' then redis.call('sadd', KEYS[2], id) else redis.call('srem', KEYS[2], id) end end " +
+            "redis.call('rename', KEYS[2], KEYS[1]) redis.call('expire', KEYS[1], ARGV[1]) " +
+            "redis.call('del', KEYS[3], KEYS[4]) " +
+            "return 1", Long.class);
+
+    @Autowired
+    RedisUtils redisUtils;
+
+    @Autowired
+    LikeOrCollectionDao likeOrCollectionDao;
+
+    /**
+     * 批量判断是否点赞或收藏
+     *
+     * @param uid  用户id
+     * @param type 类型 1点赞笔记 2点赞评论 3收藏笔记 4收藏专辑
+     * @param ids  点赞或收藏的id
+     * @return 已点赞或收藏的id
+     */
+    public Set<String> getLikedSet(String uid, Integer type, Collection<String> ids) {
+        Set<String> result = new HashSet<>(16);
+        if (StringUtils.isBlank(uid) || ids == null || ids.isEmpty()) {
+            return result;
+        }
+        String key = warm(uid, type);
+        List<String> idList = new ArrayList<>(ids);
+        List<Boolean> flags = redisUtils.sIsMembers(key, idList);
+        for (int i = 0; i < idList.size(); i++) {
+            if (flags.get(i)) {
+                result.add(idList.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 是否点赞或收藏
+     *
+     * @param uid  用户id
+     * @param type 类型
+     * @param id   点赞或收藏的id
+     * @return flag
+     */
+    public boolean isLiked(String uid, Integer type, String id) {
+        return getLikedSet(uid, type, Collections.singletonList(id)).contains(id);
+    }
+
+    /**
+     * 点赞或收藏后维护索引，存在事务时在提交后执行
+     *
+     * @param uid   用户id
+     * @param type  类型
+     * @param id    点赞或收藏的id
+     * @param liked true点赞/收藏 false取消
+     */
+    public void update(String uid, Integer type, String id, boolean liked) {
+        AfterCommit.run(() -> doUpdate(uid, type, id, liked));
+    }
+
+    private void doUpdate(String uid, Integer type, String id, boolean liked) {
+        String key = getKey(uid, type);
+        // 索引未加载且不在加载中时不需要维护，下次查询会从数据库完整加载
+        redisUtils.execute(UPDATE_SCRIPT, Arrays.asList(key, key + LOADING_SUFFIX, key + JOURNAL_SUFFIX),
+                liked ? "1" : "0", id, String.valueOf(LOADING_SECONDS));
+    }
+
+    private String warm(String uid, Integer type) {
+        String key = getKey(uid, type);
+        if (Boolean.TRUE.equals(redisUtils.hasKey(key))) {
+            return key;
+        }
+        // 先设置加载标记再读数据库，读取之后提交的增量都会进入日志
+        redisUtils.setEx(key + LOADING_SUFFIX, "1", LOADING_SECONDS, TimeUnit.SECONDS);
+        List<Object> idList = likeOrCollectionDao.selectObjs(new QueryWrapper<LikeOrCollection>()
+                .select("like_or_collection_id").eq("uid", uid).eq("type", type));
+        List<String> members = new ArrayList<>(idList.size() + 1);
+        // 占位元素保证没有任何记录的用户也能命中索引
+        members.add(CacheConstant.EMPTY_MEMBER);
+        idList.forEach(item -> members.add(String.valueOf(item)));
+        String tempKey = key + TEMP_SUFFIX + UUID.randomUUID();
+        redisUtils.sAdd(tempKey, members.toArray(new String[0]));
+        redisUtils.expire(tempKey, LOADING_SECONDS, TimeUnit.SECONDS);
+        redisUtils.execute(FINISH_SCRIPT, Arrays.asList(key, tempKey, key + JOURNAL_SUFFIX, key + LOADING_SUFFIX),
+                String.valueOf(TimeUnit.DAYS.toSeconds(EXPIRE_DAYS)));
+        log.debug("加载点赞收藏索引{}，记录数={}", key, idList.size());
+        return key;
+    }
+
+    private String getKey(String uid, Integer type) {
+        return CacheConstant.LIKE_OR_COLLECTION_KEY + uid + ":" + type;
+    }
+}
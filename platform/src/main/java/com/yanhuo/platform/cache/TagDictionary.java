@@ -0,0 +1,157 @@
+package com.yanhuo.platform.cache;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.yanhuo.common.auth.AuthContextHolder;
+import com.yanhuo.common.utils.AfterCommit;
+import com.yanhuo.xo.dao.TagDao;
+import com.yanhuo.xo.entity.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 标签字典(标题 -> id)
+ * <p>
+ * 第一次使用时加载t_tag的标题和id，之后定时按create_date增量加载其他实例新建的标签，
+ * 发布笔记时只需要查找笔记上的标签，不再每次加载整张标签表。
+ * 标题去掉首尾空格、兼容分解后去掉重音等附加符号并转小写后比较，接近title列utf8mb4_0900_ai_ci排序规则的比较结果，
+ * 不存在的标签一次批量插入，依赖title唯一索引忽略并发创建的重复标题，插入后按标题回查真正的id。
+ * 规范化结果和数据库的比较结果不一致时，回查不到的标题再逐个按数据库的排序规则查询。
+ *
+ * @author xiaozhao
+ */
+@Component
+@Slf4j
+public class TagDictionary {
+
+    /**
+     * 增量加载时向前多取的时间(毫秒)，避免事务提交晚于加载时间点的标签被遗漏
+     */
+    private static final long REFRESH_OVERLAP = 60000L;
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    @Autowired
+    TagDao tagDao;
+
+    private final Map<String, String> tagMap = new ConcurrentHashMap<>(256);
+
+    private volatile boolean loaded = false;
+
+    private volatile Date lastLoadDate;
+
+    /**
+     * 得到标签对应的id，不存在的标签批量创建
+     *
+     * @param titles 标签标题
+     * @return 规范化后的标题 -> 标签id
+     */
+    public Map<String, String> getOrCreate(Collection<String> titles) {
+        ensureLoaded();
+        Map<String, String> result = new HashMap<>(titles.size());
+        // 规范化标题 -> 第一次出现时的原始标题
+        Map<String, String> missMap = new LinkedHashMap<>();
+        for (String title : titles) {
+            String key = normalize(title);
+            if (StringUtils.isEmpty(key)) {
+                continue;
+            }
+            String id = tagMap.get(key);
+            if (id != null) {
+                result.put(key, id);
+            } else {
+                missMap.putIfAbsent(key, title.trim());
+            }
+        }
+        if (missMap.isEmpty()) {
+            return result;
+        }
+
+        String currentUid = AuthContextHolder.getUserId();
+        List<Tag> newTagList = new ArrayList<>(missMap.size());
+        missMap.values().forEach(title -> {
+            Tag tag = new Tag();
+            tag.setId(IdWorker.getIdStr());
+            tag.setTitle(title);
+            tag.setLikeCount(1L);
+            tag.setCreator(currentUid);
+            newTagList.add(tag);
+        });
+        tagDao.insertIgnoreBatch(newTagList);
+        // 并发创建相同标题时只有一条插入成功，用锁定读回查得到已提交的实际id
+        List<Tag> tagList = tagDao.selectList(new QueryWrapper<Tag>().select("id", "title").in("title", missMap.values()).last("lock in share mode"));
+        Map<String, String> createdMap = new HashMap<>(tagList.size());
+        tagList.forEach(tag -> createdMap.put(normalize(tag.getTitle()), tag.getId()));
+        for (Map.Entry<String, String> entry : missMap.entrySet()) {
+            if (createdMap.containsKey(entry.getKey())) {
+                continue;
+            }
+            // 数据库认为和已有标签相同但规范化结果不同的标题，按数据库的比较结果回查
+            Tag tag = tagDao.selectOne(new QueryWrapper<Tag>().select("id", "title").eq("title", entry.getValue()).last("limit 1 lock in share mode"));
+            if (tag != null) {
+                createdMap.put(entry.getKey(), tag.getId());
+            } else {
+                log.warn("标签{}创建后查询不到", entry.getValue());
+            }
+        }
+        result.putAll(createdMap);
+        // 事务回滚时新标签不存在，提交后才放入字典
+        AfterCommit.run(() -> tagMap.putAll(createdMap));
+        return result;
+    }
+
+    /**
+     * 定时加载其他实例新建的标签
+     */
+    @Scheduled(fixedDelayString = "${tag.refresh-interval:60000}")
+    public void refresh() {
+        if (!loaded) {
+            return;
+        }
+        Date since = new Date(lastLoadDate.getTime() - REFRESH_OVERLAP);
+        Date now = new Date();
+        List<Tag> tagList = tagDao.selectList(new QueryWrapper<Tag>().select("id", "title").ge("create_date", since));
+        tagList.forEach(tag -> tagMap.put(normalize(tag.getTitle()), tag.getId()));
+        lastLoadDate = now;
+        log.debug("标签字典增量加载完成，新增={}，总数={}", tagList.size(), tagMap.size());
+    }
+
+    /**
+     * 规范化标题，如 " Café " 和 "cafe" 规范化后相同
+     *
+     * @param title 标题
+     * @return 规范化后的标题
+     */
+    public static String normalize(String title) {
+        if (title == null) {
+            return null;
+        }
+        String decomposed = Normalizer.normalize(title.trim(), Normalizer.Form.NFKD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            Date now = new Date();
+            List<Tag> tagList = tagDao.selectList(new QueryWrapper<Tag>().select("id", "title"));
+            tagList.forEach(tag -> tagMap.put(normalize(tag.getTitle()), tag.getId()));
+            lastLoadDate = now;
+            loaded = true;
+            log.info("标签字典加载完成，标签数={}", tagMap.size());
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.yanhuo.platform.cleanup;
+
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yanhuo.common.auth.AuthContextHolder;
+import com.yanhuo.common.constant.CacheConstant;
+import com.yanhuo.common.constant.TokenConstant;
+import com.yanhuo.common.utils.AfterCommit;
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.common.utils.WebUtils;
+import com.yanhuo.platform.client.EsClient;
+import com.yanhuo.platform.client.OssClient;
+import com.yanhuo.xo.dao.NoteDao;
+import com.yanhuo.xo.entity.Note;
+import lombok.Data;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * 笔记删除后的外部资源清理
+ * <p>
+ * 清理任务在删除笔记的事务中写入redis zset，score为下次执行时间，实例崩溃或重启不会丢失。
+ * 事务提交后由线程池立即执行一次，失败的任务按指数退避放回队列，由定时任务取出到期的任务重试，
+ * 取出时score改为租约到期时间，执行中崩溃的任务在租约到期后被重新取出。
+ * 重试用完的任务移入死信列表，需要人工处理。es和oss的删除都是幂等的，任务重复执行没有影响。
+ * 执行时任务中的笔记仍然存在说明事务还没有提交或已回滚，超过commit-timeout后丢弃。
+ *
+ * @author xiaozhao
+ */
+@Component
+@Slf4j
+public class NoteCleanupQueue {
+
+    private static final int CHUNK_SIZE = 500;
+
+    private static final int CLAIM_SIZE = 20;
+
+    private static final String QUEUE_KEY = CacheConstant.NOTE_CLEANUP_KEY;
+
+    private static final String DEAD_KEY = CacheConstant.NOTE_CLEANUP_DEAD_KEY;
+
+    /**
+     * 取出到期的任务，score改为租约到期时间
+     */
+    private static final RedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "local tasks = redis.call('zrangebyscore', KEYS[1], '-inf', ARGV[1], 'limit', 0, ARGV[3]) " +
+            "for i = 1, #tasks do redis.call('zadd', KEYS[1], ARGV[2], tasks[i]) end " +
+            "return tasks", List.class);
+
+    /**
+     * 任务还在队列中时替换为新的内容和执行时间，已被其他实例完成的任务不再放回
+     */
+    private static final RedisScript<Long> RESCHEDULE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('zrem', KEYS[1], ARGV[1]) == 0 then return 0 end " +
+            "redis.call('zadd', KEYS[1], ARGV[3], ARGV[2]) return 1", Long.class);
+
+    private static final RedisScript<Long> DEAD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('zrem', KEYS[1], ARGV[1]) == 0 then return 0 end " +
+            "redis.call('lpush', KEYS[2], ARGV[1]) return 1", Long.class);
+
+    @Autowired
+    EsClient esClient;
+
+    @Autowired
+    OssClient ossClient;
+
+    @Autowired
+    NoteDao noteDao;
+
+    @Autowired
+    RedisUtils redisUtils;
+
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    Executor executor;
+
+    @Value("${oss.type}")
+    Integer type;
+
+    @Value("${cleanup.max-retries:5}")
+    int maxRetries;
+
+    @Value("${cleanup.retry-interval:1000}")
+    long retryInterval;
+
+    @Value("${cleanup.lease:300000}")
+    long lease;
+
+    @Value("${cleanup.commit-timeout:600000}")
+    long commitTimeout;
+
+    /**
+     * 在删除笔记的事务中写入清理任务，提交后异步删除笔记的es文档和图片
+     *
+     * @param noteIds 笔记id
+     * @param paths   图片地址
+     */
+    public void submit(List<String> noteIds, List<String> paths) {
+        long now = System.currentTimeMillis();
+        CleanupTask task = new CleanupTask()
+                .setId(UUID.randomUUID().toString())
+                .setNoteIds(noteIds)
+                .setPaths(paths)
+                .setAttempts(0)
+                .setCreateTime(now);
+        String member = JSONUtil.toJsonStr(task);
+        // 租约内由本实例执行，提交前崩溃时租约到期后由定时任务执行
+        redisUtils.zAdd(QUEUE_KEY, member, now + lease);
+        // 异步线程没有请求上下文，先保存token供远程调用使用
+        String token = WebUtils.getRequestHeader(TokenConstant.ACCESS_TOKEN);
+        Runnable runnable = () -> {
+            AuthContextHolder.setAccessToken(token);
+            try {
+                process(member);
+            } finally {
+                AuthContextHolder.removeAccessToken();
+            }
+        };
+        AfterCommit.run(() -> executor.execute(runnable));
+    }
+
+    /**
+     * 定时取出到期的任务重试
+     */
+    @Scheduled(fixedDelayString = "${cleanup.poll-interval:10000}")
+    public void poll() {
+        long now = System.currentTimeMillis();
+        List<?> members = redisUtils.execute(CLAIM_SCRIPT, Collections.singletonList(QUEUE_KEY),
+                String.valueOf(now), String.valueOf(now + lease), String.valueOf(CLAIM_SIZE));
+        if (members == null) {
+            return;
+        }
+        for (Object member : members) {
+            try {
+                process(String.valueOf(member));
+            } catch (Exception e) {
+                log.error("执行笔记清理任务失败，{}", member, e);
+            }
+        }
+    }
+
+    private void process(String member) {
+        CleanupTask task = JSONUtil.toBean(member, CleanupTask.class);
+        long now = System.currentTimeMillis();
+        if (noteDao.selectCount(new QueryWrapper<Note>().in("id", task.getNoteIds())) > 0) {
+            if (now - task.getCreateTime() > commitTimeout) {
+                log.info("笔记删除没有提交，丢弃清理任务{}", task.getId());
+                redisUtils.zRemove(QUEUE_KEY, member);
+            } else {
+                reschedule(member, member, now + retryInterval);
+            }
+            return;
+        }
+        // es失败不影响oss清理，任一失败时整个任务重试
+        boolean success = runChunked("es", task.getNoteIds(), esClient::deleteNoteBulkData);
+        success = runChunked("oss", task.getPaths(), chunk -> ossClient.deleteBatch(chunk, type)) && success;
+        if (success) {
+            redisUtils.zRemove(QUEUE_KEY, member);
+            return;
+        }
+        int attempts = task.getAttempts() + 1;
+        if (attempts >= maxRetries) {
+            log.error("笔记清理失败，放弃重试，任务移入{}，{}", DEAD_KEY, member);
+            redisUtils.execute(DEAD_SCRIPT, Arrays.asList(QUEUE_KEY, DEAD_KEY), member);
+            return;
+        }
+        reschedule(member, JSONUtil.toJsonStr(task.setAttempts(attempts)), now + (retryInterval << (attempts - 1)));
+    }
+
+    private void reschedule(String member, String next, long time) {
+        redisUtils.execute(RESCHEDULE_SCRIPT, Collections.singletonList(QUEUE_KEY), member, next, String.valueOf(time));
+    }
+
+    private boolean runChunked(String name, List<String> list, Consumer<List<String>> action) {
+        boolean success = true;
+        for (int i = 0; i < list.size(); i += CHUNK_SIZE) {
+            List<String> chunk = new ArrayList<>(list.subList(i, Math.min(i + CHUNK_SIZE, list.size())));
+            try {
+                action.accept(chunk);
+            } catch (Exception e) {
+                log.warn("{}清理失败，数量={}", name, chunk.size(), e);
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    @Data
+    @Accessors(chain = true)
+    public static class CleanupTask {
+
+        private String id;
+
+        private List<String> noteIds;
+
+        private List<String> paths;
+
+        private Integer attempts;
+
+        private Long createTime;
+    }
+}
@@ -1,5 +1,6 @@
 package com.yanhuo.platform.client;
 
+import com.yanhuo.common.im.CountNotice;
 import com.yanhuo.common.im.Message;
 import com.yanhuo.common.result.Result;
 import com.yanhuo.platform.config.FeignRequestInterceptor;
@@ -10,6 +11,8 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 
+import java.util.List;
+
 /**
  * 解决远程调用设置token
  * @author xiaozhao
@@ -25,4 +28,13 @@ public interface ChatClient {
      */
     @PostMapping("/im/chat/sendMsg")
     Result<?> sendMsg(@RequestBody Message message);
+
+    /**
+     * 批量累加通知数量并推送
+     *
+     * @param countNotices 每个接收用户的通知数量增量
+     * @return success
+     */
+    @PostMapping("/im/chat/sendCountBatch")
+    Result<?> sendCountBatch(@RequestBody List<CountNotice> countNotices);
 }
@@ -1,12 +1,15 @@
 package com.yanhuo.platform.client;
 
+import com.yanhuo.common.result.Result;
 import com.yanhuo.platform.config.FeignRequestInterceptor;
 import com.yanhuo.xo.vo.NoteSearchVo;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 
 import java.util.List;
 
@@ -37,12 +40,31 @@ public interface EsClient {
     void updateNote(@RequestBody NoteSearchVo noteSearchVo);
 
     /**
-     * 批量增加笔记
+     * 批量写入笔记，已存在的笔记整体覆盖
      *
      * @param noteSearchVoList 笔记集合
+     * @param index            写入的索引，为空时写入笔记索引别名
+     * @return success
      */
     @RequestMapping("/search/note/addNoteBulkData")
-    void addNoteBulkData(@RequestBody List<NoteSearchVo> noteSearchVoList);
+    Result<?> addNoteBulkData(@RequestBody List<NoteSearchVo> noteSearchVoList, @RequestParam(value = "index", required = false) String index);
+
+    /**
+     * 创建全量重建使用的新索引
+     *
+     * @return 新索引名称
+     */
+    @PostMapping("/search/note/createReindex")
+    Result<String> createReindex();
+
+    /**
+     * 把笔记索引别名切换到全量重建的新索引
+     *
+     * @param index 新索引名称
+     * @return success
+     */
+    @PostMapping("/search/note/switchIndex")
+    Result<?> switchIndex(@RequestParam("index") String index);
 
     /**
      * 删除笔记
@@ -51,4 +73,12 @@ public interface EsClient {
      */
     @RequestMapping("/search/note/deleteNote/{noteId}")
     void deleteNote(@PathVariable String noteId);
+
+    /**
+     * 批量删除笔记
+     *
+     * @param noteIds 笔记id集合
+     */
+    @RequestMapping("/search/note/deleteNoteBulkData")
+    void deleteNoteBulkData(@RequestBody List<String> noteIds);
 }
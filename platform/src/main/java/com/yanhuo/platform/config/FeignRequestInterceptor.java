@@ -1,5 +1,6 @@
 package com.yanhuo.platform.config;
 
+import com.yanhuo.common.auth.AuthContextHolder;
 import com.yanhuo.common.constant.TokenConstant;
 import feign.RequestInterceptor;
 import feign.RequestTemplate;
@@ -26,9 +27,15 @@ public class FeignRequestInterceptor implements RequestInterceptor {
 
         // 从header获取X-token
         RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
-        ServletRequestAttributes attr = (ServletRequestAttributes) requestAttributes;
-        HttpServletRequest request = attr.getRequest();
-        String token = request.getHeader(TokenConstant.ACCESS_TOKEN);//网关传过来的 token
+        String token;
+        if (requestAttributes == null) {
+            // 异步任务中没有请求上下文，使用提交任务时保存的token
+            token = AuthContextHolder.getAccessToken();
+        } else {
+            ServletRequestAttributes attr = (ServletRequestAttributes) requestAttributes;
+            HttpServletRequest request = attr.getRequest();
+            token = request.getHeader(TokenConstant.ACCESS_TOKEN);//网关传过来的 token
+        }
         if (StringUtils.hasText(token)) {
             template.header(TokenConstant.ACCESS_TOKEN, token);
         }
@@ -1,6 +1,7 @@
 package com.yanhuo.platform.controller;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.yanhuo.common.result.CursorPage;
 import com.yanhuo.common.result.Result;
 import com.yanhuo.platform.service.AlbumNoteRelationService;
 import com.yanhuo.xo.vo.NoteSearchVo;
@@ -35,4 +36,20 @@ public class AlbumNoteRelationController {
         Page<NoteSearchVo> pageInfo = albumNoteRelationService.getNotePageByAlbumId(currentPage, pageSize, albumId, userId);
         return Result.ok(pageInfo);
     }
+
+    /**
+     * 按游标得到当前专辑下的笔记
+     *
+     * @param pageSize 分页数
+     * @param cursor   上一页返回的游标，第一页不传
+     * @param albumId  专辑id
+     * @param userId   用户id
+     * @param count    第一页是否统计总数
+     * @return 查询的笔记
+     */
+    @GetMapping("getNoteByAidCursor/{pageSize}")
+    public Result<?> getNoteByAlbumIdCursor(@PathVariable long pageSize, String cursor, String albumId, String userId, Boolean count) {
+        CursorPage<NoteSearchVo> pageInfo = albumNoteRelationService.getNoteByAlbumIdCursor(cursor, pageSize, albumId, userId, count);
+        return Result.ok(pageInfo);
+    }
 }
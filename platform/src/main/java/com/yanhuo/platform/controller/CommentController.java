@@ -2,6 +2,7 @@ package com.yanhuo.platform.controller;
 
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.yanhuo.common.result.CursorPage;
 import com.yanhuo.common.result.Result;
 import com.yanhuo.common.validator.ValidatorUtils;
 import com.yanhuo.common.validator.group.AddGroup;
@@ -89,6 +90,20 @@ public class CommentController {
         return Result.ok(pageInfo);
     }
 
+    /**
+     * 按游标获取一级评论下的二级评论
+     *
+     * @param pageSize     分页数
+     * @param cursor       上一页返回的游标，第一页不传
+     * @param oneCommentId 一级评论id
+     * @return 评论结果集
+     */
+    @GetMapping("getTwoCommentByCursor/{pageSize}")
+    public Result<?> getTwoCommentByCursor(@PathVariable long pageSize, String cursor, String oneCommentId) {
+        CursorPage<CommentVo> pageInfo = commentService.getTwoCommentByCursor(cursor, pageSize, oneCommentId);
+        return Result.ok(pageInfo);
+    }
+
     /**
      * 获取当前用户通知的评论集
      *
@@ -102,6 +117,19 @@ public class CommentController {
         return Result.ok(pageInfo);
     }
 
+    /**
+     * 按游标获取当前用户通知的评论集
+     *
+     * @param pageSize 分页数
+     * @param cursor   上一页返回的游标，第一页不传
+     * @return 评论结果集
+     */
+    @GetMapping("getNoticeCommentByCursor/{pageSize}")
+    public Result<?> getNoticeCommentByCursor(@PathVariable long pageSize, String cursor) {
+        CursorPage<CommentVo> pageInfo = commentService.getNoticeCommentByCursor(cursor, pageSize);
+        return Result.ok(pageInfo);
+    }
+
 
     /**
      * 得到所有的一级评论并携带二级评论
@@ -118,6 +146,20 @@ public class CommentController {
 
     }
 
+    /**
+     * 按游标得到一级评论并携带二级评论
+     *
+     * @param pageSize 分页数
+     * @param cursor   上一页返回的游标，第一页不传
+     * @param noteId   笔记id
+     * @return 评论结果集
+     */
+    @GetMapping("getCommentWithCommentByCursor/{pageSize}")
+    public Result<?> getCommentWithCommentByCursor(@PathVariable long pageSize, String cursor, String noteId) {
+        CursorPage<CommentVo> pageInfo = commentService.getCommentWithCommentByCursor(cursor, pageSize, noteId);
+        return Result.ok(pageInfo);
+    }
+
     /**
      * 自动滚动到当前评论
      *
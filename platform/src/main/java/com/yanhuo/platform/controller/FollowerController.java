@@ -1,6 +1,7 @@
 package com.yanhuo.platform.controller;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.yanhuo.common.result.CursorPage;
 import com.yanhuo.common.result.Result;
 import com.yanhuo.platform.service.FollowerService;
 import com.yanhuo.platform.vo.TrendVo;
@@ -34,6 +35,19 @@ public class FollowerController {
         return Result.ok(pageInfo);
     }
 
+    /**
+     * 按游标得到关注用户的动态
+     *
+     * @param pageSize 分页数
+     * @param cursor   上一页返回的游标，第一页不传
+     * @return 动态
+     */
+    @GetMapping("getFollowTrendByCursor/{pageSize}")
+    public Result<?> getFollowTrendByCursor(@PathVariable long pageSize, String cursor) {
+        CursorPage<TrendVo> pageInfo = followerService.getFollowTrendByCursor(cursor, pageSize);
+        return Result.ok(pageInfo);
+    }
+
     /**
      * 得到当前用户所有的关注和粉丝
      *
@@ -47,6 +47,18 @@ public class NoteController {
         return Result.ok(id);
     }
 
+    /**
+     * 得到笔记的发布状态，保存笔记后轮询
+     *
+     * @param noteId 笔记id
+     * @return 0处理中，1已发布，2发布失败
+     */
+    @GetMapping("getNoteStatus")
+    public Result<?> getNoteStatus(String noteId) {
+        Integer status = noteService.getNoteStatus(noteId);
+        return Result.ok(status);
+    }
+
     /**
      * 删除笔记
      *
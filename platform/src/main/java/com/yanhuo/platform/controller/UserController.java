@@ -1,6 +1,7 @@
 package com.yanhuo.platform.controller;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.yanhuo.common.result.CursorPage;
 import com.yanhuo.common.result.Result;
 import com.yanhuo.platform.service.UserService;
 import com.yanhuo.xo.entity.User;
@@ -34,6 +35,22 @@ public class UserController {
         return Result.ok(pageInfo);
     }
 
+    /**
+     * 按游标得到用户的动态
+     *
+     * @param pageSize 分页数
+     * @param cursor   上一页返回的游标，第一页不传
+     * @param userId   用户id
+     * @param type     类型
+     * @param count    第一页是否统计总数
+     * @return CursorPage<NoteSearchVo>
+     */
+    @GetMapping("getTrendByUserCursor/{pageSize}")
+    public Result<?> getTrendByUserCursor(@PathVariable long pageSize, String cursor, String userId, Integer type, Boolean count) {
+        CursorPage<NoteSearchVo> pageInfo = userService.getTrendByUserCursor(cursor, pageSize, userId, type, count);
+        return Result.ok(pageInfo);
+    }
+
 
     /**
      * 获取用户信息
@@ -43,7 +60,7 @@ public class UserController {
      */
     @GetMapping("getUserById")
     public Result<?> getUserById(String userId) {
-        User user = userService.getById(userId);
+        User user = userService.getUserById(userId);
         return Result.ok(user);
     }
 
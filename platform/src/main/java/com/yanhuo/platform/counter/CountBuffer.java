@@ -0,0 +1,222 @@
+package com.yanhuo.platform.counter;
+
+import com.yanhuo.common.utils.AfterCommit;
+import com.yanhuo.xo.dto.CountDeltaDTO;
+import com.yanhuo.xo.mapper.CountMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 计数增量合并缓冲
+ * <p>
+ * 点赞、收藏、评论、关注、浏览等计数只在内存中累加，由定时任务把同一行的增量合并，
+ * 每个计数字段每批只执行一条 column = column + delta 语句，
+ * 避免先查整行再updateById带来的两次往返、整行覆盖和并发丢失更新。
+ * 读取计数的地方用merge加上还未写回的增量。应用停止时在web服务器停止之后、数据源关闭之前写回剩余的增量，
+ * 写回失败会重试几次，仍然失败的增量打印到错误日志中以便手工补回。
+ *
+ * @author xiaozhao
+ */
+@Component
+@Slf4j
+public class CountBuffer implements SmartLifecycle {
+
+    /**
+     * 在web服务器停止之后停止，此时不会再有新的增量
+     */
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 2048;
+
+    @Autowired
+    ApplicationContext applicationContext;
+
+    @Value("${counter.flush-batch-size:500}")
+    int batchSize;
+
+    @Value("${counter.shutdown-retries:3}")
+    int shutdownRetries;
+
+    @Value("${counter.shutdown-retry-interval:1000}")
+    long shutdownRetryInterval;
+
+    private volatile boolean running;
+
+    @Autowired(required = false)
+    List<CountFlushListener> listeners = Collections.emptyList();
+
+    private final Map<CountField, ConcurrentHashMap<String, LongAdder>> pendingMap = new EnumMap<>(CountField.class);
+
+    /**
+     * 上一轮刷盘时已经为0的记录，本轮仍为0则从缓冲中移除
+     */
+    private final Map<CountField, Set<String>> idleMap = new EnumMap<>(CountField.class);
+
+    public CountBuffer() {
+        for (CountField field : CountField.values()) {
+            pendingMap.put(field, new ConcurrentHashMap<>(16));
+            idleMap.put(field, ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    /**
+     * 累加计数，如果当前存在事务则在事务提交后才进入缓冲
+     *
+     * @param field 计数字段
+     * @param id    记录id
+     * @param delta 增量
+     */
+    public void add(CountField field, String id, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        AfterCommit.run(() -> doAdd(field, id, delta));
+    }
+
+    public void increment(CountField field, String id) {
+        add(field, id, 1L);
+    }
+
+    /**
+     * 得到还未写回数据库的增量
+     *
+     * @param field 计数字段
+     * @param id    记录id
+     * @return 待写回的增量
+     */
+    public long getPending(CountField field, String id) {
+        LongAdder adder = pendingMap.get(field).get(id);
+        return adder == null ? 0L : adder.sum();
+    }
+
+    /**
+     * 数据库中的计数加上缓冲中的增量
+     *
+     * @param field 计数字段
+     * @param id    记录id
+     * @param count 数据库中的计数
+     * @return 实时计数
+     */
+    public long merge(CountField field, String id, Long count) {
+        return Math.max((count == null ? 0L : count) + getPending(field, id), 0L);
+    }
+
+    @Scheduled(fixedDelayString = "${counter.flush-interval:1000}")
+    public void flush() {
+        for (CountField field : CountField.values()) {
+            List<CountDeltaDTO> deltaList = drain(field);
+            if (deltaList.isEmpty()) {
+                continue;
+            }
+            CountMapper countMapper = applicationContext.getBean(field.getMapperClass());
+            for (int i = 0; i < deltaList.size(); i += batchSize) {
+                List<CountDeltaDTO> batch = deltaList.subList(i, Math.min(i + batchSize, deltaList.size()));
+                try {
+                    countMapper.incrCountBatch(field.getColumn(), batch);
+                } catch (Exception e) {
+                    log.error("计数{}写回失败，增量放回缓冲等待下次写回", field, e);
+                    batch.forEach(item -> doAdd(field, item.getId(), item.getDelta()));
+                    continue;
+                }
+                notifyListeners(field, batch);
+            }
+            log.debug("计数{}写回完成，记录数={}", field, deltaList.size());
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    /**
+     * 停止时写回所有增量，失败时重试，最后仍未写回的增量打印到错误日志
+     */
+    @Override
+    public void stop() {
+        running = false;
+        for (int i = 0; i <= shutdownRetries; i++) {
+            flush();
+            if (!hasPending()) {
+                return;
+            }
+            if (i < shutdownRetries) {
+                try {
+                    Thread.sleep(shutdownRetryInterval);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        for (CountField field : CountField.values()) {
+            pendingMap.get(field).forEach((id, adder) -> {
+                long delta = adder.sum();
+                if (delta != 0) {
+                    log.error("应用停止时计数未能写回，field={}，id={}，delta={}", field, id, delta);
+                }
+            });
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private boolean hasPending() {
+        for (ConcurrentHashMap<String, LongAdder> fieldMap : pendingMap.values()) {
+            for (LongAdder adder : fieldMap.values()) {
+                if (adder.sum() != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void notifyListeners(CountField field, List<CountDeltaDTO> batch) {
+        for (CountFlushListener listener : listeners) {
+            try {
+                listener.onFlush(field, batch);
+            } catch (Exception e) {
+                log.error("计数{}写回回调{}执行失败", field, listener.getClass().getSimpleName(), e);
+            }
+        }
+    }
+
+    private void doAdd(CountField field, String id, long delta) {
+        pendingMap.get(field).computeIfAbsent(id, k -> new LongAdder()).add(delta);
+    }
+
+    private List<CountDeltaDTO> drain(CountField field) {
+        ConcurrentHashMap<String, LongAdder> fieldMap = pendingMap.get(field);
+        Set<String> idleSet = idleMap.get(field);
+        List<CountDeltaDTO> deltaList = new ArrayList<>();
+        for (Map.Entry<String, LongAdder> entry : fieldMap.entrySet()) {
+            String id = entry.getKey();
+            long delta = entry.getValue().sumThenReset();
+            if (delta != 0) {
+                idleSet.remove(id);
+                deltaList.add(new CountDeltaDTO(id, delta));
+            } else if (!idleSet.add(id)) {
+                // 连续两轮没有变化才移除，缩小与add并发时丢计数的窗口
+                fieldMap.computeIfPresent(id, (k, v) -> v.sum() == 0 ? null : v);
+                idleSet.remove(id);
+            }
+        }
+        return deltaList;
+    }
+}
@@ -0,0 +1,41 @@
+package com.yanhuo.platform.counter;
+
+import com.yanhuo.xo.dao.*;
+import com.yanhuo.xo.mapper.CountMapper;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 支持增量更新的计数字段
+ *
+ * @author xiaozhao
+ */
+@Getter
+@AllArgsConstructor
+public enum CountField {
+
+    NOTE_VIEW(NoteDao.class, "view_count"),
+    NOTE_LIKE(NoteDao.class, "like_count"),
+    NOTE_COLLECTION(NoteDao.class, "collection_count"),
+    NOTE_COMMENT(NoteDao.class, "comment_count"),
+
+    COMMENT_LIKE(CommentDao.class, "like_count"),
+    COMMENT_TWO_COMMENT(CommentDao.class, "two_comment_count"),
+
+    ALBUM_IMG(AlbumDao.class, "img_count"),
+    ALBUM_COLLECTION(AlbumDao.class, "collection_count"),
+
+    USER_TREND(UserDao.class, "trend_count"),
+    USER_FOLLOWER(UserDao.class, "follower_count"),
+    USER_FAN(UserDao.class, "fan_count");
+
+    /**
+     * 计数所在表对应的dao
+     */
+    private final Class<? extends CountMapper> mapperClass;
+
+    /**
+     * 计数字段列名
+     */
+    private final String column;
+}
@@ -0,0 +1,21 @@
+package com.yanhuo.platform.counter;
+
+import com.yanhuo.xo.dto.CountDeltaDTO;
+
+import java.util.List;
+
+/**
+ * 计数增量写回数据库后的回调，用于维护依赖计数的派生数据(如热度排行)
+ *
+ * @author xiaozhao
+ */
+public interface CountFlushListener {
+
+    /**
+     * 一批增量成功写回后调用
+     *
+     * @param field     计数字段
+     * @param deltaList 已写回的增量
+     */
+    void onFlush(CountField field, List<CountDeltaDTO> deltaList);
+}
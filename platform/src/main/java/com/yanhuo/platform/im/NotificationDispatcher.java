@@ -0,0 +1,156 @@
+package com.yanhuo.platform.im;
+
+import com.yanhuo.common.im.CountNotice;
+import com.yanhuo.common.utils.AfterCommit;
+import com.yanhuo.platform.client.ChatClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 点赞、评论、关注的消息通知分发
+ * <p>
+ * 业务请求只把通知放入有界队列，不访问redis也不调用im，队列满时丢弃并计数。
+ * 定时任务取出队列中的通知，按接收用户合并成数量增量，由线程池分批调用im批量接口，
+ * im累加未读数量后推送给在线用户。每条增量带唯一id，im按id去重，失败重试不会重复累加。
+ * 关闭时在当前线程发送剩余的通知，不再交给可能已关闭的线程池。
+ *
+ * @author xiaozhao
+ */
+@Component
+@Slf4j
+public class NotificationDispatcher {
+
+    @Autowired
+    ChatClient chatClient;
+
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    Executor executor;
+
+    @Value("${notify.queue-capacity:10000}")
+    int queueCapacity;
+
+    @Value("${notify.batch-size:200}")
+    int batchSize;
+
+    @Value("${notify.max-retries:3}")
+    int maxRetries;
+
+    @Value("${notify.retry-interval:1000}")
+    long retryInterval;
+
+    private BlockingQueue<Notice> queue;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * 通知用户，存在事务时在提交后才进入队列
+     *
+     * @param userId 接收通知的用户id
+     * @param type   0 点赞 1 评论 2 关注
+     */
+    public void dispatch(String userId, Integer type) {
+        if (userId == null) {
+            return;
+        }
+        Notice notice = new Notice(userId, type);
+        AfterCommit.run(() -> offer(notice));
+    }
+
+    /**
+     * 得到队列满时丢弃的通知数量
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Scheduled(fixedDelayString = "${notify.flush-interval:200}")
+    public void flush() {
+        flush(executor);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flush(Runnable::run);
+    }
+
+    private void flush(Executor sender) {
+        List<Notice> noticeList = new ArrayList<>();
+        queue.drainTo(noticeList);
+        if (noticeList.isEmpty()) {
+            return;
+        }
+        // 同一用户的多次通知合并为一条增量
+        Map<String, CountNotice> countMap = new LinkedHashMap<>(16);
+        for (Notice notice : noticeList) {
+            countMap.computeIfAbsent(notice.userId, k -> {
+                CountNotice countNotice = new CountNotice();
+                countNotice.setId(UUID.randomUUID().toString());
+                countNotice.setAcceptUid(k);
+                return countNotice;
+            }).add(notice.type);
+        }
+        List<CountNotice> countList = new ArrayList<>(countMap.values());
+        for (int i = 0; i < countList.size(); i += batchSize) {
+            List<CountNotice> batch = new ArrayList<>(countList.subList(i, Math.min(i + batchSize, countList.size())));
+            sender.execute(() -> send(batch));
+        }
+        log.debug("消息通知分发，通知数={}，用户数={}", noticeList.size(), countList.size());
+    }
+
+    private void offer(Notice notice) {
+        if (!queue.offer(notice)) {
+            long dropped = droppedCount.incrementAndGet();
+            log.warn("消息通知队列已满，丢弃通知，uid={}，累计丢弃={}", notice.userId, dropped);
+        }
+    }
+
+    private void send(List<CountNotice> batch) {
+        for (int i = 1; i <= maxRetries; i++) {
+            try {
+                chatClient.sendCountBatch(batch);
+                return;
+            } catch (Exception e) {
+                log.warn("消息通知发送失败，第{}次，用户数={}", i, batch.size(), e);
+            }
+            if (i < maxRetries) {
+                try {
+                    Thread.sleep(retryInterval);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        log.error("消息通知发送失败，放弃重试，用户数={}", batch.size());
+    }
+
+    private static class Notice {
+
+        private final String userId;
+
+        private final Integer type;
+
+        private Notice(String userId, Integer type) {
+            this.userId = userId;
+            this.type = type;
+        }
+    }
+}
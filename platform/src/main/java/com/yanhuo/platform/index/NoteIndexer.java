@@ -0,0 +1,306 @@
+package com.yanhuo.platform.index;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yanhuo.common.constant.CacheConstant;
+import com.yanhuo.common.constant.NoteStatusConstant;
+import com.yanhuo.common.exception.YanHuoException;
+import com.yanhuo.common.result.Result;
+import com.yanhuo.common.result.ResultCodeEnum;
+import com.yanhuo.common.utils.ConvertUtils;
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.platform.client.EsClient;
+import com.yanhuo.xo.cache.UserSummaryCache;
+import com.yanhuo.xo.dao.CategoryDao;
+import com.yanhuo.xo.dao.NoteDao;
+import com.yanhuo.xo.dao.TagDao;
+import com.yanhuo.xo.dao.TagNoteRelationDao;
+import com.yanhuo.xo.entity.Category;
+import com.yanhuo.xo.entity.Note;
+import com.yanhuo.xo.entity.Tag;
+import com.yanhuo.xo.entity.TagNoteRelation;
+import com.yanhuo.xo.vo.NoteSearchVo;
+import com.yanhuo.xo.vo.UserSummaryVo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * 笔记索引同步
+ * <p>
+ * 增量同步按 (update_date, id) 分段读取上次同步之后修改的笔记，
+ * 已发布的笔记(状态为空或已发布)每段用一次查询批量补全用户、标签和分类，再用一次bulk index写入es，已存在的文档直接覆盖；
+ * 其他状态的笔记从es删除，状态变化时需要同时更新update_date。
+ * 每段写入成功后把该段最后的update_date保存为同步位置，下次从位置向前overlap毫秒开始，
+ * 避免提交晚于同步时间点的修改被遗漏，重复写入同一篇笔记没有影响。
+ * 全量重建只写入已发布的笔记到新索引，完成后切换笔记索引别名，再把同步位置退回到重建开始时间，由增量同步补上重建期间的修改。
+ * 增量同步和全量重建共用一把redis锁，同一时间只有一个在执行，每段写入后续期。
+ *
+ * @author xiaozhao
+ */
+@Component
+@Slf4j
+public class NoteIndexer {
+
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) end return 0", Long.class);
+
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) end return 0", Long.class);
+
+    @Autowired
+    NoteDao noteDao;
+
+    @Autowired
+    TagNoteRelationDao tagNoteRelationDao;
+
+    @Autowired
+    TagDao tagDao;
+
+    @Autowired
+    CategoryDao categoryDao;
+
+    @Autowired
+    UserSummaryCache userSummaryCache;
+
+    @Autowired
+    EsClient esClient;
+
+    @Autowired
+    RedisUtils redisUtils;
+
+    @Value("${note-index.chunk-size:500}")
+    int chunkSize;
+
+    @Value("${note-index.overlap:60000}")
+    long overlap;
+
+    @Value("${note-index.max-retries:3}")
+    int maxRetries;
+
+    @Value("${note-index.retry-interval:1000}")
+    long retryInterval;
+
+    @Value("${note-index.lock-timeout:600000}")
+    long lockTimeout;
+
+    /**
+     * 同步上次同步之后修改的笔记
+     *
+     * @return 处理的笔记数量，其他实例正在同步或重建时返回0
+     */
+    public int indexChanged() {
+        String token = lock();
+        if (token == null) {
+            log.info("笔记索引正在同步或重建，跳过本次增量同步");
+            return 0;
+        }
+        try {
+            String watermark = redisUtils.get(CacheConstant.NOTE_INDEX_WATERMARK_KEY);
+            Date since = new Date(watermark == null ? 0L : Math.max(0L, Long.parseLong(watermark) - overlap));
+            return scan(since, false, noteList -> {
+                List<Note> publishedList = new ArrayList<>(noteList.size());
+                List<String> removedIds = new ArrayList<>();
+                for (Note note : noteList) {
+                    if (isPublished(note)) {
+                        publishedList.add(note);
+                    } else {
+                        removedIds.add(note.getId());
+                    }
+                }
+                if (!publishedList.isEmpty()) {
+                    bulk(hydrate(publishedList), null);
+                }
+                if (!removedIds.isEmpty()) {
+                    esClient.deleteNoteBulkData(removedIds);
+                }
+                Date last = noteList.get(noteList.size() - 1).getUpdateDate();
+                redisUtils.set(CacheConstant.NOTE_INDEX_WATERMARK_KEY, String.valueOf(last.getTime()));
+                renew(token);
+            });
+        } finally {
+            unlock(token);
+        }
+    }
+
+    /**
+     * 全量重建笔记索引
+     *
+     * @return 写入的笔记数量
+     */
+    public int reindex() {
+        String token = lock();
+        if (token == null) {
+            throw new YanHuoException("笔记索引正在同步或重建，请稍后重试");
+        }
+        try {
+            long start = System.currentTimeMillis();
+            String index = check(esClient.createReindex()).getData();
+            int total = scan(new Date(0L), true, noteList -> {
+                bulk(hydrate(noteList), index);
+                renew(token);
+            });
+            check(esClient.switchIndex(index));
+            // 重建开始后提交的修改没有写入新索引，退回同步位置后重新同步
+            String watermark = redisUtils.get(CacheConstant.NOTE_INDEX_WATERMARK_KEY);
+            if (watermark == null || Long.parseLong(watermark) > start) {
+                redisUtils.set(CacheConstant.NOTE_INDEX_WATERMARK_KEY, String.valueOf(start));
+            }
+            return total;
+        } finally {
+            unlock(token);
+        }
+    }
+
+    /**
+     * 补全笔记的作者、标签和分类，每种数据一次批量查询
+     *
+     * @param noteList 笔记
+     * @return es中的笔记
+     */
+    public List<NoteSearchVo> hydrate(List<Note> noteList) {
+        Set<String> uids = noteList.stream().map(Note::getUid).collect(Collectors.toSet());
+        Map<String, UserSummaryVo> userMap = userSummaryCache.getAll(uids);
+
+        List<String> nids = noteList.stream().map(Note::getId).collect(Collectors.toList());
+        List<TagNoteRelation> relationList = tagNoteRelationDao.selectList(new QueryWrapper<TagNoteRelation>().select("nid", "tid").in("nid", nids));
+        Map<String, String> tagMap = new HashMap<>(16);
+        Set<String> tids = relationList.stream().map(TagNoteRelation::getTid).collect(Collectors.toSet());
+        if (!tids.isEmpty()) {
+            tagDao.selectList(new QueryWrapper<Tag>().select("id", "title").in("id", tids))
+                    .forEach(tag -> tagMap.put(tag.getId(), tag.getTitle()));
+        }
+        Map<String, List<String>> noteTagMap = new HashMap<>(noteList.size());
+        relationList.forEach(item -> {
+            String title = tagMap.get(item.getTid());
+            if (title != null) {
+                noteTagMap.computeIfAbsent(item.getNid(), k -> new ArrayList<>()).add(title);
+            }
+        });
+
+        Set<String> cids = new HashSet<>();
+        noteList.forEach(note -> {
+            cids.add(note.getCid());
+            cids.add(note.getCpid());
+        });
+        cids.remove(null);
+        Map<String, String> categoryMap = new HashMap<>(16);
+        if (!cids.isEmpty()) {
+            categoryDao.selectList(new QueryWrapper<Category>().select("id", "title").in("id", cids))
+                    .forEach(category -> categoryMap.put(category.getId(), category.getTitle()));
+        }
+
+        List<NoteSearchVo> result = new ArrayList<>(noteList.size());
+        for (Note note : noteList) {
+            NoteSearchVo noteSearchVo = ConvertUtils.sourceToTarget(note, NoteSearchVo.class);
+            UserSummaryVo user = userMap.get(note.getUid());
+            if (user != null) {
+                noteSearchVo.setUsername(user.getUsername()).setAvatar(user.getAvatar());
+            }
+            noteSearchVo.setTags(String.join(",", noteTagMap.getOrDefault(note.getId(), Collections.emptyList())))
+                    .setCategoryName(categoryMap.get(note.getCid()))
+                    .setCategoryParentName(categoryMap.get(note.getCpid()))
+                    .setTime(note.getUpdateDate().getTime())
+                    .setIsLoading(false);
+            result.add(noteSearchVo);
+        }
+        return result;
+    }
+
+    /**
+     * 状态为空的是发布流程上线前的笔记，视为已发布
+     */
+    private static boolean isPublished(Note note) {
+        return note.getStatus() == null || NoteStatusConstant.PUBLISHED.equals(note.getStatus());
+    }
+
+    private String lock() {
+        String token = UUID.randomUUID().toString();
+        return redisUtils.setIfAbsent(CacheConstant.NOTE_INDEX_LOCK_KEY, token, lockTimeout, TimeUnit.MILLISECONDS) ? token : null;
+    }
+
+    private void renew(String token) {
+        Long renewed = redisUtils.execute(RENEW_SCRIPT, Collections.singletonList(CacheConstant.NOTE_INDEX_LOCK_KEY), token, String.valueOf(lockTimeout));
+        if (renewed == null || renewed == 0) {
+            // 锁已过期，可能已有其他实例在执行，停止本次同步
+            throw new YanHuoException("笔记索引同步锁已失效");
+        }
+    }
+
+    private void unlock(String token) {
+        try {
+            redisUtils.execute(UNLOCK_SCRIPT, Collections.singletonList(CacheConstant.NOTE_INDEX_LOCK_KEY), token);
+        } catch (Exception e) {
+            // 锁到期后自动释放
+            log.error("笔记索引同步锁释放失败", e);
+        }
+    }
+
+    /**
+     * 按 (update_date, id) 升序分段读取since之后修改的笔记
+     *
+     * @param publishedOnly 是否只读取已发布的笔记
+     */
+    private int scan(Date since, boolean publishedOnly, Consumer<List<Note>> consumer) {
+        Date lastDate = since;
+        String lastId = "";
+        int total = 0;
+        while (true) {
+            Date date = lastDate;
+            String id = lastId;
+            QueryWrapper<Note> queryWrapper = new QueryWrapper<Note>()
+                    .and(w -> w.gt("update_date", date).or(x -> x.eq("update_date", date).gt("id", id)));
+            if (publishedOnly) {
+                queryWrapper.and(w -> w.isNull("status").or().eq("status", NoteStatusConstant.PUBLISHED));
+            }
+            List<Note> noteList = noteDao.selectList(queryWrapper.orderByAsc("update_date", "id").last("limit " + chunkSize));
+            if (noteList.isEmpty()) {
+                break;
+            }
+            consumer.accept(noteList);
+            total += noteList.size();
+            Note last = noteList.get(noteList.size() - 1);
+            lastDate = last.getUpdateDate();
+            lastId = last.getId();
+            if (noteList.size() < chunkSize) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    private void bulk(List<NoteSearchVo> noteSearchVoList, String index) {
+        for (int i = 1; i <= maxRetries; i++) {
+            try {
+                check(esClient.addNoteBulkData(noteSearchVoList, index));
+                return;
+            } catch (Exception e) {
+                log.warn("笔记批量写入es失败，第{}次，数量={}", i, noteSearchVoList.size(), e);
+            }
+            if (i < maxRetries) {
+                try {
+                    Thread.sleep(retryInterval);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        // 同步位置停在上一段，下次从这里继续
+        throw new YanHuoException("笔记批量写入es失败");
+    }
+
+    private <T> Result<T> check(Result<T> result) {
+        if (result == null || !ResultCodeEnum.SUCCESS.getCode().equals(result.getCode())) {
+            throw new YanHuoException("es服务返回失败：" + (result == null ? null : result.getMessage()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,225 @@
+package com.yanhuo.platform.publish;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.yanhuo.common.auth.AuthContextHolder;
+import com.yanhuo.common.constant.NoteStatusConstant;
+import com.yanhuo.common.constant.TokenConstant;
+import com.yanhuo.common.utils.AfterCommit;
+import com.yanhuo.common.utils.ConvertUtils;
+import com.yanhuo.common.utils.WebUtils;
+import com.yanhuo.platform.client.EsClient;
+import com.yanhuo.platform.service.CategoryService;
+import com.yanhuo.platform.timeline.FollowTimeline;
+import com.yanhuo.xo.cache.UserSummaryCache;
+import com.yanhuo.xo.dao.NoteDao;
+import com.yanhuo.xo.dao.TagDao;
+import com.yanhuo.xo.dao.TagNoteRelationDao;
+import com.yanhuo.xo.entity.Category;
+import com.yanhuo.xo.entity.Note;
+import com.yanhuo.xo.entity.Tag;
+import com.yanhuo.xo.entity.TagNoteRelation;
+import com.yanhuo.xo.vo.NoteSearchVo;
+import com.yanhuo.xo.vo.UserSummaryVo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 笔记发布流水线
+ * <p>
+ * 图片上传和数据库保存在请求线程完成，笔记状态为处理中(0)。
+ * 事务提交后由流水线自己的线程池把笔记写入es，失败时按间隔定时重试，不占用线程等待，
+ * 成功后状态改为已发布(1)并推送到关注动态，重试用完后改为发布失败(2)，客户端可轮询笔记状态。
+ * 写入es后笔记已被删除时(状态更新不到)再删除刚写入的文档，避免删除清理先执行后留下文档。
+ * 发布失败的笔记和处理中超时的笔记(如等待重试时实例重启)由notePublishRetryJobHandler定时重新发布。
+ *
+ * @author xiaozhao
+ */
+@Component
+@Slf4j
+public class NotePublishPipeline {
+
+    private static final int CHUNK_SIZE = 100;
+
+    @Autowired
+    EsClient esClient;
+
+    @Autowired
+    CategoryService categoryService;
+
+    @Autowired
+    UserSummaryCache userSummaryCache;
+
+    @Autowired
+    NoteDao noteDao;
+
+    @Autowired
+    TagDao tagDao;
+
+    @Autowired
+    TagNoteRelationDao tagNoteRelationDao;
+
+    @Autowired
+    FollowTimeline followTimeline;
+
+    @Value("${publish.max-retries:3}")
+    int maxRetries;
+
+    @Value("${publish.retry-interval:1000}")
+    long retryInterval;
+
+    @Value("${publish.processing-timeout:600000}")
+    long processingTimeout;
+
+    @Value("${publish.threads:2}")
+    int threads;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        scheduler = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "note-publish-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        // 等待重试的笔记保持处理中，超时后由定时任务重新发布
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 事务提交后异步建立笔记索引
+     *
+     * @param note 已保存的笔记
+     * @param tags 笔记标签
+     */
+    public void index(Note note, String tags) {
+        // 异步线程没有请求上下文，先保存token供远程调用使用
+        String token = WebUtils.getRequestHeader(TokenConstant.ACCESS_TOKEN);
+        AfterCommit.run(() -> scheduler.execute(() -> indexAsync(note, tags, token, 1)));
+    }
+
+    /**
+     * 重新发布失败的笔记和处理中超时的笔记
+     *
+     * @return 发布成功的笔记数
+     */
+    public int retryFailed() {
+        Date deadline = new Date(System.currentTimeMillis() - processingTimeout);
+        String lastId = null;
+        int total = 0;
+        while (true) {
+            List<Note> noteList = noteDao.selectList(new QueryWrapper<Note>()
+                    .and(w -> w.eq("status", NoteStatusConstant.FAILED)
+                            .or(x -> x.eq("status", NoteStatusConstant.PROCESSING).lt("update_date", deadline)))
+                    .gt(lastId != null, "id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + CHUNK_SIZE));
+            if (noteList.isEmpty()) {
+                break;
+            }
+            // 定时任务本身就是重试间隔，每次只尝试一次
+            for (Note note : noteList) {
+                if (doIndex(note, getTags(note.getId()), 1)) {
+                    total++;
+                } else {
+                    updateStatus(note.getId(), NoteStatusConstant.FAILED);
+                }
+            }
+            lastId = noteList.get(noteList.size() - 1).getId();
+        }
+        return total;
+    }
+
+    /**
+     * 建立一次索引，失败时间隔retry-interval再次执行，重试用完后改为发布失败
+     */
+    private void indexAsync(Note note, String tags, String token, int attempt) {
+        AuthContextHolder.setAccessToken(token);
+        try {
+            if (doIndex(note, tags, attempt)) {
+                return;
+            }
+        } finally {
+            AuthContextHolder.removeAccessToken();
+        }
+        if (attempt < maxRetries) {
+            try {
+                scheduler.schedule(() -> indexAsync(note, tags, token, attempt + 1), retryInterval, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                log.warn("实例关闭中，笔记{}等待定时任务重新发布", note.getId());
+            }
+            return;
+        }
+        log.error("笔记{}发布失败", note.getId());
+        updateStatus(note.getId(), NoteStatusConstant.FAILED);
+    }
+
+    private boolean doIndex(Note note, String tags, int attempt) {
+        try {
+            esClient.addNote(buildSearchVo(note, tags));
+            if (updateStatus(note.getId(), NoteStatusConstant.PUBLISHED) > 0) {
+                followTimeline.publish(note.getUid(), note.getId(), note.getCreateDate());
+            } else {
+                // 笔记已被删除，删除清理可能已经执行过，删除刚写入的文档，失败时整次重试
+                esClient.deleteNoteBulkData(Collections.singletonList(note.getId()));
+            }
+            return true;
+        } catch (Exception e) {
+            log.warn("笔记{}建立索引失败，第{}次", note.getId(), attempt, e);
+            return false;
+        }
+    }
+
+    /**
+     * 按保存时的方式拼接笔记的标签
+     */
+    private String getTags(String noteId) {
+        List<Object> tids = tagNoteRelationDao.selectObjs(new QueryWrapper<TagNoteRelation>().select("tid").eq("nid", noteId));
+        if (tids.isEmpty()) {
+            return "";
+        }
+        List<Tag> tagList = tagDao.selectList(new QueryWrapper<Tag>().select("id", "title").in("id", tids));
+        return tagList.stream().map(Tag::getTitle).collect(Collectors.joining());
+    }
+
+    private NoteSearchVo buildSearchVo(Note note, String tags) {
+        UserSummaryVo user = userSummaryCache.get(note.getUid());
+        Category category = categoryService.getById(note.getCid());
+        Category parentCategory = categoryService.getById(note.getCpid());
+        NoteSearchVo noteSearchVo = ConvertUtils.sourceToTarget(note, NoteSearchVo.class);
+        noteSearchVo.setUsername(user.getUsername())
+                .setAvatar(user.getAvatar())
+                .setLikeCount(0L)
+                .setCategoryName(category.getTitle())
+                .setCategoryParentName(parentCategory.getTitle())
+                .setTags(tags)
+                .setStatus(NoteStatusConstant.PUBLISHED)
+                .setTime(note.getUpdateDate().getTime());
+        return noteSearchVo;
+    }
+
+    private int updateStatus(String noteId, Integer status) {
+        // 同时更新修改时间，增量索引同步据此处理状态变化
+        return noteDao.update(null, new UpdateWrapper<Note>().set("status", status).set("update_date", new Date()).eq("id", noteId));
+    }
+}
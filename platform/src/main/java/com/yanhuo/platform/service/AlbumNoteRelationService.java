@@ -2,6 +2,7 @@ package com.yanhuo.platform.service;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.yanhuo.common.result.CursorPage;
 import com.yanhuo.xo.entity.AlbumNoteRelation;
 import com.yanhuo.xo.vo.NoteSearchVo;
 
@@ -19,4 +20,16 @@ public interface AlbumNoteRelationService extends IService<AlbumNoteRelation> {
      * @return 查询的笔记
      */
     Page<NoteSearchVo> getNotePageByAlbumId(long currentPage, long pageSize, String albumId, String userId);
+
+    /**
+     * 按游标得到当前专辑下的笔记
+     *
+     * @param cursor   上一页返回的游标，第一页为空
+     * @param pageSize 分页数
+     * @param albumId  专辑id
+     * @param userId   用户id
+     * @param count    第一页是否统计总数
+     * @return 查询的笔记
+     */
+    CursorPage<NoteSearchVo> getNoteByAlbumIdCursor(String cursor, long pageSize, String albumId, String userId, Boolean count);
 }
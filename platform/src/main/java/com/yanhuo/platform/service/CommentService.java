@@ -3,6 +3,7 @@ package com.yanhuo.platform.service;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.yanhuo.common.result.CursorPage;
 import com.yanhuo.xo.dto.CommentDTO;
 import com.yanhuo.xo.entity.Comment;
 import com.yanhuo.xo.vo.CommentVo;
@@ -50,6 +51,16 @@ public interface CommentService extends IService<Comment> {
      */
     Page<CommentVo> getTwoCommentPageByOneCommentId(long currentPage, long pageSize, String oneCommentId);
 
+    /**
+     * 按游标得到一级评论下的二级评论
+     *
+     * @param cursor       上一页返回的游标，第一页为空
+     * @param pageSize     分页数
+     * @param oneCommentId 一级评论id
+     * @return 评论结果集
+     */
+    CursorPage<CommentVo> getTwoCommentByCursor(String cursor, long pageSize, String oneCommentId);
+
     /**
      * 得到所有的一级评论并携带二级评论
      *
@@ -60,6 +71,16 @@ public interface CommentService extends IService<Comment> {
      */
     Page<CommentVo> getCommentPageWithCommentByNoteId(long currentPage, long pageSize, String noteId);
 
+    /**
+     * 按游标得到一级评论并携带二级评论
+     *
+     * @param cursor   上一页返回的游标，第一页为空
+     * @param pageSize 分页数
+     * @param noteId   笔记id
+     * @return 评论结果集
+     */
+    CursorPage<CommentVo> getCommentWithCommentByCursor(String cursor, long pageSize, String noteId);
+
     /**
      * 自动滚动到当前评论
      *
@@ -93,4 +114,13 @@ public interface CommentService extends IService<Comment> {
      * @return 评论结果集
      */
     IPage<CommentVo> getNoticeComment(long currentPage, long pageSize);
+
+    /**
+     * 按游标获取当前用户通知的评论集
+     *
+     * @param cursor   上一页返回的游标，第一页为空
+     * @param pageSize 分页数
+     * @return 评论结果集
+     */
+    CursorPage<CommentVo> getNoticeCommentByCursor(String cursor, long pageSize);
 }
@@ -1,10 +0,0 @@
-package com.yanhuo.platform.service;
-
-import com.baomidou.mybatisplus.extension.service.IService;
-import com.yanhuo.xo.entity.CommentSync;
-
-/**
- * @author xiaozhao
- */
-public interface CommentSyncService extends IService<CommentSync> {
-}
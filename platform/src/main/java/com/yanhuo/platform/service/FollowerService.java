@@ -2,6 +2,7 @@ package com.yanhuo.platform.service;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.yanhuo.common.result.CursorPage;
 import com.yanhuo.platform.vo.TrendVo;
 import com.yanhuo.xo.entity.Follower;
 import com.yanhuo.xo.vo.FollowerVo;
@@ -11,7 +12,7 @@ import com.yanhuo.xo.vo.FollowerVo;
  */
 public interface FollowerService  extends IService<Follower> {
     /**
-     * 得到关注用户的所有动态
+     * 得到关注用户的所有动态，和游标分页读取同一条时间线，只支持前1000条
      *
      * @param currentPage 当前页
      * @param pageSize    分页数
@@ -19,6 +20,15 @@ public interface FollowerService  extends IService<Follower> {
      */
     Page<TrendVo> getFollowTrendPage(long currentPage, long pageSize);
 
+    /**
+     * 按游标得到关注用户的动态
+     *
+     * @param cursor   上一页返回的游标，第一页为空
+     * @param pageSize 分页数
+     * @return 动态
+     */
+    CursorPage<TrendVo> getFollowTrendByCursor(String cursor, long pageSize);
+
     /**
      * 得到当前用户所有的关注和粉丝
      *
@@ -24,6 +24,14 @@ public interface NoteService extends IService<Note> {
 
     String saveNoteByDTO(String noteData, MultipartFile[] files);
 
+    /**
+     * 得到笔记的发布状态
+     *
+     * @param noteId 笔记id
+     * @return 0处理中，1已发布，2发布失败
+     */
+    Integer getNoteStatus(String noteId);
+
     /**
      * 删除笔记
      *
@@ -2,6 +2,7 @@ package com.yanhuo.platform.service;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.yanhuo.common.result.CursorPage;
 import com.yanhuo.platform.vo.TrendVo;
 import com.yanhuo.xo.entity.User;
 import com.yanhuo.xo.vo.FollowerVo;
@@ -22,6 +23,26 @@ public interface UserService extends IService<User> {
      */
     Page<NoteSearchVo> getTrendPageByUser(long currentPage, long pageSize, String userId, Integer type);
 
+    /**
+     * 按游标得到用户的动态
+     *
+     * @param cursor   上一页返回的游标，第一页为空
+     * @param pageSize 分页数
+     * @param userId   用户id
+     * @param type     类型
+     * @param count    第一页是否统计总数
+     * @return CursorPage<NoteSearchVo>
+     */
+    CursorPage<NoteSearchVo> getTrendByUserCursor(String cursor, long pageSize, String userId, Integer type, Boolean count);
+
+    /**
+     * 获取用户信息，计数加上还未写回的增量
+     *
+     * @param userId 用户id
+     * @return user
+     */
+    User getUserById(String userId);
+
     /**
      * 更新用户信息
      *
@@ -4,21 +4,24 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.yanhuo.common.auth.AuthContextHolder;
+import com.yanhuo.common.result.CursorPage;
 import com.yanhuo.common.utils.ConvertUtils;
+import com.yanhuo.common.utils.KeysetQuery;
 import com.yanhuo.platform.service.AlbumNoteRelationService;
 import com.yanhuo.platform.service.NoteService;
-import com.yanhuo.platform.service.UserService;
+import com.yanhuo.xo.cache.UserSummaryCache;
 import com.yanhuo.xo.dao.AlbumNoteRelationDao;
 import com.yanhuo.xo.entity.AlbumNoteRelation;
 import com.yanhuo.xo.entity.Note;
-import com.yanhuo.xo.entity.User;
 import com.yanhuo.xo.vo.NoteSearchVo;
+import com.yanhuo.xo.vo.UserSummaryVo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -31,14 +34,32 @@ public class AlbumNoteRelationServiceImpl extends ServiceImpl<AlbumNoteRelationD
     NoteService noteService;
 
     @Autowired
-    UserService userService;
+    UserSummaryCache userSummaryCache;
 
     @Override
     public Page<NoteSearchVo> getNotePageByAlbumId(long currentPage, long pageSize, String albumId, String userId) {
         Page<NoteSearchVo> result = new Page<>();
         Page<AlbumNoteRelation> albumImgRelationPage = this.page(new Page<>(currentPage, pageSize), new QueryWrapper<AlbumNoteRelation>().eq("aid", albumId).orderByDesc("create_date"));
-        long total = albumImgRelationPage.getTotal();
-        List<AlbumNoteRelation> records = albumImgRelationPage.getRecords();
+        result.setTotal(albumImgRelationPage.getTotal());
+        result.setRecords(getNoteSearchVos(albumImgRelationPage.getRecords(), userId));
+        return result;
+    }
+
+    @Override
+    public CursorPage<NoteSearchVo> getNoteByAlbumIdCursor(String cursor, long pageSize, String albumId, String userId, Boolean count) {
+        CursorPage<AlbumNoteRelation> relationPage = KeysetQuery.<AlbumNoteRelation>desc()
+                .dateColumn("create_date", AlbumNoteRelation::getCreateDate)
+                .stringColumn("id", AlbumNoteRelation::getId)
+                .page(new QueryWrapper<AlbumNoteRelation>().eq("aid", albumId), cursor, pageSize, this::list,
+                        Boolean.TRUE.equals(count) ? this::count : null);
+        return relationPage.convert(getNoteSearchVos(relationPage.getRecords(), userId));
+    }
+
+    private List<NoteSearchVo> getNoteSearchVos(List<AlbumNoteRelation> records, String userId) {
+        List<NoteSearchVo> noteVoList = new ArrayList<>();
+        if (records.isEmpty()) {
+            return noteVoList;
+        }
         List<String> nids = records.stream().map(AlbumNoteRelation::getNid).collect(Collectors.toList());
         String currentUser = AuthContextHolder.getUserId();
         List<Note> noteList;
@@ -49,29 +70,25 @@ public class AlbumNoteRelationServiceImpl extends ServiceImpl<AlbumNoteRelationD
             noteList = noteService.list(new QueryWrapper<Note>().in("id", nids).eq("status", 1));
         }
         List<String> uids = noteList.stream().map(Note::getUid).collect(Collectors.toList());
-        List<User> userList = userService.listByIds(uids);
-        HashMap<String, User> userMap = new HashMap<>(16);
-        userList.forEach(item -> {
-            userMap.put(item.getId(), item);
-        });
+        Map<String, UserSummaryVo> userMap = userSummaryCache.getAll(uids);
         HashMap<String, Note> noteMap = new HashMap<>(16);
         noteList.forEach(item -> {
             noteMap.put(item.getId(), item);
         });
-        List<NoteSearchVo> noteVoList = new ArrayList<>();
         Note note;
-        User user;
+        UserSummaryVo user;
         NoteSearchVo noteSearchVo;
         for (AlbumNoteRelation model : records) {
             note = noteMap.get(model.getNid());
+            if (note == null) {
+                continue;
+            }
             user = userMap.get(note.getUid());
             noteSearchVo = ConvertUtils.sourceToTarget(note, NoteSearchVo.class);
             noteSearchVo.setUsername(user.getUsername())
                     .setAvatar(user.getAvatar());
             noteVoList.add(noteSearchVo);
         }
-        result.setTotal(total);
-        result.setRecords(noteVoList);
-        return result;
+        return noteVoList;
     }
 }
@@ -5,12 +5,12 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.yanhuo.common.utils.ConvertUtils;
 import com.yanhuo.platform.service.AlbumService;
-import com.yanhuo.platform.service.UserService;
+import com.yanhuo.xo.cache.UserSummaryCache;
 import com.yanhuo.xo.dao.AlbumDao;
 import com.yanhuo.xo.dto.AlbumDTO;
 import com.yanhuo.xo.entity.Album;
-import com.yanhuo.xo.entity.User;
 import com.yanhuo.xo.vo.AlbumVo;
+import com.yanhuo.xo.vo.UserSummaryVo;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -23,7 +23,7 @@ import org.springframework.stereotype.Service;
 public class  AlbumServiceImpl extends ServiceImpl<AlbumDao, Album> implements AlbumService {
 
     @Autowired
-    UserService userService;
+    UserSummaryCache userSummaryCache;
 
     @Override
     public Page<Album> getAlbumPageByUserId(long currentPage, long pageSize, String userId) {
@@ -40,7 +40,7 @@ public class  AlbumServiceImpl extends ServiceImpl<AlbumDao, Album> implements A
     public AlbumVo getAlbumById(String id) {
         Album album = this.getById(id);
         AlbumVo albumVo = ConvertUtils.sourceToTarget(album, AlbumVo.class);
-        User user = userService.getById(album.getUid());
+        UserSummaryVo user = userSummaryCache.get(album.getUid());
         albumVo.setUsername(user.getUsername());
         albumVo.setAvatar(user.getAvatar());
         return albumVo;
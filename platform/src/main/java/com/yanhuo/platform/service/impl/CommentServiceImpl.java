@@ -4,14 +4,26 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.yanhuo.common.auth.AuthContextHolder;
+import com.yanhuo.common.constant.CommentStatusConstant;
+import com.yanhuo.common.exception.YanHuoException;
+import com.yanhuo.common.result.CursorPage;
+import com.yanhuo.common.result.ResultCodeEnum;
 import com.yanhuo.common.utils.ConvertUtils;
-import com.yanhuo.platform.im.ChatUtils;
+import com.yanhuo.common.utils.KeysetQuery;
+import com.yanhuo.platform.cache.CommentTreeCache;
+import com.yanhuo.platform.cache.LikeOrCollectionIndex;
+import com.yanhuo.platform.counter.CountBuffer;
+import com.yanhuo.platform.counter.CountField;
+import com.yanhuo.platform.im.NotificationDispatcher;
 import com.yanhuo.platform.service.*;
+import com.yanhuo.xo.cache.UserSummaryCache;
 import com.yanhuo.xo.dao.CommentDao;
 import com.yanhuo.xo.dto.CommentDTO;
 import com.yanhuo.xo.entity.*;
 import com.yanhuo.xo.vo.CommentVo;
+import com.yanhuo.xo.vo.UserSummaryVo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -29,16 +41,19 @@ public class CommentServiceImpl extends ServiceImpl<CommentDao, Comment> impleme
     NoteService noteService;
 
     @Autowired
-    UserService userService;
+    UserSummaryCache userSummaryCache;
 
     @Autowired
-    LikeOrCollectionService likeOrCollectionService;
+    NotificationDispatcher notificationDispatcher;
 
     @Autowired
-    CommentSyncService commentSyncService;
+    CountBuffer countBuffer;
 
     @Autowired
-    ChatUtils chatUtils;
+    LikeOrCollectionIndex likeOrCollectionIndex;
+
+    @Autowired
+    CommentTreeCache commentTreeCache;
 
     @Override
     public Page<CommentVo> getOneCommentPageByNoteId(long currentPage, long pageSize, String noteId) {
@@ -54,33 +69,24 @@ public class CommentServiceImpl extends ServiceImpl<CommentDao, Comment> impleme
     @Override
     public CommentVo saveCommentByDTO(CommentDTO commentDTO) {
         String currentUid = AuthContextHolder.getUserId();
-        CommentSync commentsync = ConvertUtils.sourceToTarget(commentDTO, CommentSync.class);
-        commentsync.setUid(currentUid);
-        commentSyncService.save(commentsync);
+        // 直接写入t_comment，同步前不展示
+        Comment comment = ConvertUtils.sourceToTarget(commentDTO, Comment.class);
+        comment.setUid(currentUid);
+        comment.setStatus(CommentStatusConstant.PENDING);
+        this.save(comment);
 
-        Note note = noteService.getById(commentDTO.getNid());
-        note.setCommentCount(note.getCommentCount() + 1);
-        noteService.updateById(note);
+        countBuffer.increment(CountField.NOTE_COMMENT, commentDTO.getNid());
 
-        CommentVo commentVo = ConvertUtils.sourceToTarget(commentsync, CommentVo.class);
-        User user = userService.getById(currentUid);
+        CommentVo commentVo = ConvertUtils.sourceToTarget(comment, CommentVo.class);
+        UserSummaryVo user = userSummaryCache.get(currentUid);
 
         commentVo.setUsername(user.getUsername())
                 .setAvatar(user.getAvatar())
-                .setTime(commentsync.getCreateDate().getTime());
+                .setTime(comment.getCreateDate().getTime());
 
         // 一级评论数量加1
         if (!"0".equals(commentDTO.getPid())) {
-            Comment parentComment = this.getById(commentDTO.getPid());
-            if (parentComment == null) {
-                CommentSync commentSync = commentSyncService.getById(commentDTO.getPid());
-                commentSync.setTwoCommentCount(commentSync.getTwoCommentCount() + 1);
-                commentSyncService.updateById(commentSync);
-            } else {
-                parentComment.setTwoCommentCount(parentComment.getTwoCommentCount() + 1);
-                this.updateById(parentComment);
-            }
-
+            countBuffer.increment(CountField.COMMENT_TWO_COMMENT, commentDTO.getPid());
         }
         return commentVo;
     }
@@ -90,17 +96,22 @@ public class CommentServiceImpl extends ServiceImpl<CommentDao, Comment> impleme
     public void syncCommentByIds(List<String> commentIds) {
         String currentUid = AuthContextHolder.getUserId();
         if (!commentIds.isEmpty()) {
-            List<CommentSync> commentSyncs = commentSyncService.list(new QueryWrapper<CommentSync>().in("id", commentIds));
-            List<Comment> comments = ConvertUtils.sourceToTarget(commentSyncs, Comment.class);
-            this.saveBatch(comments);
+            // 只处理还未同步的评论，重复同步不会重复通知
+            List<Comment> comments = this.list(new QueryWrapper<Comment>().in("id", commentIds).eq("status", CommentStatusConstant.PENDING));
+            if (comments.isEmpty()) {
+                return;
+            }
+            List<String> ids = comments.stream().map(Comment::getId).collect(Collectors.toList());
+            this.update(new UpdateWrapper<Comment>().set("status", CommentStatusConstant.VISIBLE).in("id", ids).eq("status", CommentStatusConstant.PENDING));
+            commentTreeCache.onCommentsAdded(comments);
 
-            // TODO 可以使用异步的方式进行通知
+            // 通知只进入队列，提交后异步合并发送
             for (Comment comment : comments) {
                 if (!comment.getNoteUid().equals(currentUid)) {
                     if (!Objects.equals(comment.getReplyUid(), comment.getNoteUid())) {
-                        chatUtils.sendMessage(comment.getNoteUid(), 1);
+                        notificationDispatcher.dispatch(comment.getNoteUid(), 1);
                     }
-                    chatUtils.sendMessage(comment.getReplyUid(), 1);
+                    notificationDispatcher.dispatch(comment.getReplyUid(), 1);
                 }
             }
         }
@@ -111,225 +122,274 @@ public class CommentServiceImpl extends ServiceImpl<CommentDao, Comment> impleme
         Page<CommentVo> result = new Page<>();
         String currentUid = AuthContextHolder.getUserId();
 
-        Page<Comment> commentPage = this.page(new Page<>((int) currentPage, (int) pageSize), new QueryWrapper<Comment>().or(e -> e.eq("note_uid", currentUid).or().eq("reply_uid", currentUid)).ne("uid", currentUid).orderByDesc("create_date"));
+        Page<Comment> commentPage = this.page(new Page<>((int) currentPage, (int) pageSize), getNoticeWrapper(currentUid).orderByDesc("create_date"));
+        result.setRecords(getNoticeCommentVos(commentPage.getRecords(), currentUid));
+        result.setTotal(commentPage.getTotal());
+        return result;
+    }
 
-        List<Comment> commentList = commentPage.getRecords();
-        long total = commentPage.getTotal();
+    @Override
+    public CursorPage<CommentVo> getNoticeCommentByCursor(String cursor, long pageSize) {
+        String currentUid = AuthContextHolder.getUserId();
+        CursorPage<Comment> commentPage = KeysetQuery.<Comment>desc()
+                .dateColumn("create_date", Comment::getCreateDate)
+                .stringColumn("id", Comment::getId)
+                .page(getNoticeWrapper(currentUid), cursor, pageSize, this::list);
+        return commentPage.convert(getNoticeCommentVos(commentPage.getRecords(), currentUid));
+    }
+
+    private QueryWrapper<Comment> getNoticeWrapper(String currentUid) {
+        return new QueryWrapper<Comment>().and(e -> e.eq("note_uid", currentUid).or().eq("reply_uid", currentUid)).ne("uid", currentUid).eq("status", CommentStatusConstant.VISIBLE);
+    }
 
+    private List<CommentVo> getNoticeCommentVos(List<Comment> commentList, String currentUid) {
         List<CommentVo> commentVoList = new ArrayList<>();
-        if (!commentList.isEmpty()) {
-            Set<String> uids = commentList.stream().map(Comment::getUid).collect(Collectors.toSet());
-            Map<String, User> userMap = userService.listByIds(uids).stream().collect(Collectors.toMap(User::getId, user -> user));
-
-            Set<String> nids = commentList.stream().map(Comment::getNid).collect(Collectors.toSet());
-            Map<String, Note> noteMap = noteService.listByIds(nids).stream().collect(Collectors.toMap(Note::getId, note -> note));
-
-            // 得到所有回复的评论内容
-            Set<String> cids = commentList.stream().filter(item -> !"0".equals(item.getPid())).map(Comment::getReplyId).collect(Collectors.toSet());
-            Map<String, Comment> replyCommentMap = new HashMap<>(16);
-            if (!cids.isEmpty()) {
-                replyCommentMap = this.listByIds(cids).stream().collect(Collectors.toMap(Comment::getId, comment -> comment));
-            }
+        if (commentList.isEmpty()) {
+            return commentVoList;
+        }
+        Set<String> uids = commentList.stream().map(Comment::getUid).collect(Collectors.toSet());
+        Map<String, UserSummaryVo> userMap = userSummaryCache.getAll(uids);
 
+        Set<String> nids = commentList.stream().map(Comment::getNid).collect(Collectors.toSet());
+        Map<String, Note> noteMap = noteService.listByIds(nids).stream().collect(Collectors.toMap(Note::getId, note -> note));
 
-            for (Comment comment : commentList) {
-                CommentVo commentVo = ConvertUtils.sourceToTarget(comment, CommentVo.class);
-                User user = userMap.get(comment.getUid());
-                Note note = noteMap.get(comment.getNid());
-                commentVo.setUsername(user.getUsername())
-                        .setAvatar(user.getAvatar())
-                        .setTime(comment.getCreateDate().getTime())
-                        .setNoteCover(note.getNoteCover());
-
-                if (!"0".equals(comment.getPid())) {
-                    Comment replyComment = replyCommentMap.get(comment.getReplyId());
-                    commentVo.setReplyContent(replyComment.getContent());
-                    if (!comment.getReplyUid().equals(currentUid)) {
-                        User replyUser = userMap.get(comment.getReplyUid());
-                        commentVo.setReplyUsername(replyUser.getUsername());
-                    }
+        // 得到所有回复的评论内容
+        Set<String> cids = commentList.stream().filter(item -> !"0".equals(item.getPid())).map(Comment::getReplyId).collect(Collectors.toSet());
+        Map<String, Comment> replyCommentMap = new HashMap<>(16);
+        if (!cids.isEmpty()) {
+            replyCommentMap = this.listByIds(cids).stream().collect(Collectors.toMap(Comment::getId, comment -> comment));
+        }
+
+
+        for (Comment comment : commentList) {
+            CommentVo commentVo = ConvertUtils.sourceToTarget(comment, CommentVo.class);
+            UserSummaryVo user = userMap.get(comment.getUid());
+            Note note = noteMap.get(comment.getNid());
+            commentVo.setUsername(user.getUsername())
+                    .setAvatar(user.getAvatar())
+                    .setTime(comment.getCreateDate().getTime())
+                    .setNoteCover(note.getNoteCover());
+
+            if (!"0".equals(comment.getPid())) {
+                Comment replyComment = replyCommentMap.get(comment.getReplyId());
+                commentVo.setReplyContent(replyComment.getContent());
+                if (!comment.getReplyUid().equals(currentUid)) {
+                    UserSummaryVo replyUser = userMap.get(comment.getReplyUid());
+                    commentVo.setReplyUsername(replyUser.getUsername());
                 }
-                commentVoList.add(commentVo);
             }
+            commentVoList.add(commentVo);
         }
-        result.setRecords(commentVoList);
-        result.setTotal(total);
-        return result;
+        return commentVoList;
     }
 
     @Override
     public Page<CommentVo> getTwoCommentPageByOneCommentId(long currentPage, long pageSize, String oneCommentId) {
         Page<CommentVo> result = new Page<>();
         String currentUid = AuthContextHolder.getUserId();
-        Page<Comment> twoCommentPage = this.page(new Page<>((int) currentPage, (int) pageSize), new QueryWrapper<Comment>().eq("pid", oneCommentId).orderByDesc("like_count").orderByDesc("create_date"));
+        Page<Comment> twoCommentPage = this.page(new Page<>((int) currentPage, (int) pageSize), new QueryWrapper<Comment>().eq("pid", oneCommentId).eq("status", CommentStatusConstant.VISIBLE).orderByDesc("like_count", "create_date", "id"));
         List<Comment> twoCommentList = twoCommentPage.getRecords();
-        long total = twoCommentPage.getTotal();
-
         if (!twoCommentList.isEmpty()) {
-            Set<String> uids = twoCommentList.stream().map(Comment::getUid).collect(Collectors.toSet());
-            List<User> users = userService.listByIds(uids);
-            Map<String, User> userMap = users.stream().collect(Collectors.toMap(User::getId, user -> user));
-            Set<String> replyUids = twoCommentList.stream().map(Comment::getReplyUid).collect(Collectors.toSet());
-            Map<String, User> replyUserMap = new HashMap<>(16);
-            if (!replyUids.isEmpty()) {
-                List<User> replyUsers = userService.listByIds(replyUids);
-                replyUserMap = replyUsers.stream().collect(Collectors.toMap(User::getId, user -> user));
-            }
+            result.setRecords(getTwoCommentVos(twoCommentList, currentUid));
+        }
+        result.setTotal(twoCommentPage.getTotal());
+        return result;
+    }
 
-            List<CommentVo> commentVos = new ArrayList<>();
-            List<LikeOrCollection> likeOrCollections = likeOrCollectionService.list(new QueryWrapper<LikeOrCollection>().eq("uid", currentUid).eq("type", 2));
-            List<String> likeComments = likeOrCollections.stream().map(LikeOrCollection::getLikeOrCollectionId).collect(Collectors.toList());
-            for (Comment comment : twoCommentList) {
-                CommentVo commentVo = ConvertUtils.sourceToTarget(comment, CommentVo.class);
-                User user = userMap.get(comment.getUid());
-                commentVo.setUsername(user.getUsername())
-                        .setAvatar(user.getAvatar())
-                        .setTime(comment.getCreateDate().getTime())
-                        .setIsLike(likeComments.contains(comment.getId()));
-                User replyUser = replyUserMap.get(comment.getReplyUid());
-                if (replyUser != null) {
-                    commentVo.setReplyUsername(replyUser.getUsername());
-                }
-                commentVos.add(commentVo);
+    @Override
+    public CursorPage<CommentVo> getTwoCommentByCursor(String cursor, long pageSize, String oneCommentId) {
+        String currentUid = AuthContextHolder.getUserId();
+        CursorPage<Comment> twoCommentPage = KeysetQuery.<Comment>desc()
+                .longColumn("like_count", Comment::getLikeCount)
+                .dateColumn("create_date", Comment::getCreateDate)
+                .stringColumn("id", Comment::getId)
+                .page(new QueryWrapper<Comment>().eq("pid", oneCommentId).eq("status", CommentStatusConstant.VISIBLE), cursor, pageSize, this::list);
+        return twoCommentPage.convert(getTwoCommentVos(twoCommentPage.getRecords(), currentUid));
+    }
+
+    private List<CommentVo> getTwoCommentVos(List<Comment> twoCommentList, String currentUid) {
+        List<CommentVo> commentVos = new ArrayList<>();
+        if (twoCommentList.isEmpty()) {
+            return commentVos;
+        }
+        Set<String> uids = twoCommentList.stream().map(Comment::getUid).collect(Collectors.toSet());
+        Map<String, UserSummaryVo> userMap = userSummaryCache.getAll(uids);
+        Set<String> replyUids = twoCommentList.stream().map(Comment::getReplyUid).collect(Collectors.toSet());
+        Map<String, UserSummaryVo> replyUserMap = userSummaryCache.getAll(replyUids);
+
+        Set<String> commentIds = twoCommentList.stream().map(Comment::getId).collect(Collectors.toSet());
+        Set<String> likeComments = likeOrCollectionIndex.getLikedSet(currentUid, 2, commentIds);
+        for (Comment comment : twoCommentList) {
+            CommentVo commentVo = ConvertUtils.sourceToTarget(comment, CommentVo.class);
+            UserSummaryVo user = userMap.get(comment.getUid());
+            commentVo.setUsername(user.getUsername())
+                    .setAvatar(user.getAvatar())
+                    .setTime(comment.getCreateDate().getTime())
+                    .setIsLike(likeComments.contains(comment.getId()));
+            UserSummaryVo replyUser = replyUserMap.get(comment.getReplyUid());
+            if (replyUser != null) {
+                commentVo.setReplyUsername(replyUser.getUsername());
             }
-            result.setRecords(commentVos);
+            commentVos.add(commentVo);
         }
-        result.setTotal(total);
-        return result;
+        return commentVos;
     }
 
     @Override
     public Page<CommentVo> getCommentPageWithCommentByNoteId(long currentPage, long pageSize, String noteId) {
-        //先得到所有的一级评论
+        //从评论树缓存得到一级评论和携带的二级评论，再叠加用户信息和当前用户的点赞
         Page<CommentVo> result = new Page<>();
-        Page<Comment> oneCommentPage = this.page(new Page<>((int) currentPage, (int) pageSize), new QueryWrapper<Comment>().eq("nid", noteId).eq("pid", "0").orderByDesc("like_count"));
-        List<Comment> oneCommentList = oneCommentPage.getRecords();
-        if (!oneCommentList.isEmpty()) {
-            Set<String> oneUids = oneCommentList.stream().map(Comment::getUid).collect(Collectors.toSet());
-            long onetotal = oneCommentPage.getTotal();
-            String currentUid = AuthContextHolder.getUserId();
-            //得到对应的二级评论
-            List<String> oneIds = oneCommentList.stream().map(Comment::getId).collect(Collectors.toList());
-            List<Comment> twoCommentList = this.list(new QueryWrapper<Comment>().in("pid", oneIds).orderByDesc("like_count").orderByDesc("create_date"));
-            Set<String> twoUids = twoCommentList.stream().map(Comment::getUid).collect(Collectors.toSet());
-            oneUids.addAll(twoUids);
-
-            List<User> users = userService.listByIds(oneUids);
-            Map<String, User> userMap = users.stream().collect(Collectors.toMap(User::getId, user -> user));
-
-            //得到当前用户点赞的评论
-            List<LikeOrCollection> likeOrCollections = likeOrCollectionService.list(new QueryWrapper<LikeOrCollection>().eq("uid", currentUid).eq("type", 2));
-            List<String> likeComments = likeOrCollections.stream().map(LikeOrCollection::getLikeOrCollectionId).collect(Collectors.toList());
-
-            Set<String> replyUids = twoCommentList.stream().map(Comment::getReplyUid).collect(Collectors.toSet());
-            Map<String, User> replyUserMap = new HashMap<>(16);
-            if (!replyUids.isEmpty()) {
-                List<User> replyUsers = userService.listByIds(replyUids);
-                replyUserMap = replyUsers.stream().collect(Collectors.toMap(User::getId, user -> user));
-            }
-
+        long start = (currentPage - 1) * pageSize;
+        CommentTreeCache.TreePage treePage = commentTreeCache.getPage(noteId, start, start + pageSize - 1);
+        List<CommentVo> commentVoList = treePage.getRecords();
+        if (!commentVoList.isEmpty()) {
+            overlayCommentVos(commentVoList);
+            result.setRecords(commentVoList);
+            result.setTotal(treePage.getTotal());
+        }
+        return result;
+    }
 
-            List<CommentVo> twoCommentVos = new ArrayList<>();
-            for (Comment twoComment : twoCommentList) {
-                CommentVo commentVo = ConvertUtils.sourceToTarget(twoComment, CommentVo.class);
-                User user = userMap.get(twoComment.getUid());
+    /**
+     * 缓存中的评论叠加用户名头像、当前用户是否点赞和未写回的计数
+     */
+    private void overlayCommentVos(List<CommentVo> commentVoList) {
+        List<CommentVo> allVos = new ArrayList<>(commentVoList);
+        commentVoList.forEach(item -> {
+            if (item.getChildren() != null) {
+                allVos.addAll(item.getChildren());
+            }
+        });
+        Set<String> uids = new HashSet<>();
+        allVos.forEach(item -> {
+            uids.add(item.getUid());
+            uids.add(item.getReplyUid());
+        });
+        Map<String, UserSummaryVo> userMap = userSummaryCache.getAll(uids);
+        String currentUid = AuthContextHolder.getUserId();
+        Set<String> commentIds = allVos.stream().map(CommentVo::getId).collect(Collectors.toSet());
+        Set<String> likeComments = likeOrCollectionIndex.getLikedSet(currentUid, 2, commentIds);
+        for (CommentVo commentVo : allVos) {
+            UserSummaryVo user = userMap.get(commentVo.getUid());
+            if (user != null) {
                 commentVo.setUsername(user.getUsername())
-                        .setAvatar(user.getAvatar())
-                        .setTime(twoComment.getCreateDate().getTime())
-                        .setIsLike(likeComments.contains(twoComment.getId()));
-                User replyUser = replyUserMap.get(twoComment.getReplyUid());
+                        .setAvatar(user.getAvatar());
+            }
+            if (!"0".equals(commentVo.getPid())) {
+                UserSummaryVo replyUser = userMap.get(commentVo.getReplyUid());
                 if (replyUser != null) {
                     commentVo.setReplyUsername(replyUser.getUsername());
                 }
-                twoCommentVos.add(commentVo);
             }
+            commentVo.setIsLike(likeComments.contains(commentVo.getId()))
+                    .setLikeCount(countBuffer.merge(CountField.COMMENT_LIKE, commentVo.getId(), commentVo.getLikeCount()))
+                    .setTwoCommentCount(countBuffer.merge(CountField.COMMENT_TWO_COMMENT, commentVo.getId(), commentVo.getTwoCommentCount()));
+        }
+    }
 
-            Map<String, List<CommentVo>> twoCommentVoMap = twoCommentVos.stream().collect(Collectors.groupingBy(CommentVo::getPid));
+    @Override
+    public CursorPage<CommentVo> getCommentWithCommentByCursor(String cursor, long pageSize, String noteId) {
+        CursorPage<Comment> oneCommentPage = KeysetQuery.<Comment>desc()
+                .longColumn("like_count", Comment::getLikeCount)
+                .stringColumn("id", Comment::getId)
+                .page(new QueryWrapper<Comment>().eq("nid", noteId).eq("pid", "0").eq("status", CommentStatusConstant.VISIBLE), cursor, pageSize, this::list);
+        List<Comment> oneCommentList = oneCommentPage.getRecords();
+        return oneCommentPage.convert(oneCommentList.isEmpty() ? new ArrayList<>() : getCommentVosWithComment(oneCommentList));
+    }
 
-            List<CommentVo> commentVoList = new ArrayList<>();
+    /**
+     * 组装一级评论，每条携带最多3条二级评论
+     */
+    private List<CommentVo> getCommentVosWithComment(List<Comment> oneCommentList) {
+        Set<String> oneUids = oneCommentList.stream().map(Comment::getUid).collect(Collectors.toSet());
+        String currentUid = AuthContextHolder.getUserId();
+        //得到对应的二级评论
+        List<String> oneIds = oneCommentList.stream().map(Comment::getId).collect(Collectors.toList());
+        List<Comment> twoCommentList = this.baseMapper.selectTopChildren(oneIds, 3);
+        Set<String> twoUids = twoCommentList.stream().map(Comment::getUid).collect(Collectors.toSet());
+        oneUids.addAll(twoUids);
+
+        Map<String, UserSummaryVo> userMap = userSummaryCache.getAll(oneUids);
+
+        //得到当前用户点赞的评论
+        Set<String> commentIds = new HashSet<>(oneIds);
+        twoCommentList.forEach(item -> commentIds.add(item.getId()));
+        Set<String> likeComments = likeOrCollectionIndex.getLikedSet(currentUid, 2, commentIds);
+
+        Set<String> replyUids = twoCommentList.stream().map(Comment::getReplyUid).collect(Collectors.toSet());
+        Map<String, UserSummaryVo> replyUserMap = userSummaryCache.getAll(replyUids);
+
+
+        List<CommentVo> twoCommentVos = new ArrayList<>();
+        for (Comment twoComment : twoCommentList) {
+            CommentVo commentVo = ConvertUtils.sourceToTarget(twoComment, CommentVo.class);
+            UserSummaryVo user = userMap.get(twoComment.getUid());
+            commentVo.setUsername(user.getUsername())
+                    .setAvatar(user.getAvatar())
+                    .setTime(twoComment.getCreateDate().getTime())
+                    .setIsLike(likeComments.contains(twoComment.getId()));
+            UserSummaryVo replyUser = replyUserMap.get(twoComment.getReplyUid());
+            if (replyUser != null) {
+                commentVo.setReplyUsername(replyUser.getUsername());
+            }
+            twoCommentVos.add(commentVo);
+        }
 
-            for (Comment oneComment : oneCommentList) {
-                CommentVo commentVo = ConvertUtils.sourceToTarget(oneComment, CommentVo.class);
-                User user = userMap.get(oneComment.getUid());
-                commentVo.setUsername(user.getUsername())
-                        .setAvatar(user.getAvatar())
-                        .setTime(oneComment.getCreateDate().getTime())
-                        .setIsLike(likeComments.contains(oneComment.getId()));
-                List<CommentVo> children = twoCommentVoMap.get(oneComment.getId());
+        Map<String, List<CommentVo>> twoCommentVoMap = twoCommentVos.stream().collect(Collectors.groupingBy(CommentVo::getPid));
 
-                if (children != null && children.size() > 3) {
-                    children = children.subList(0, 3);
-                }
-                commentVo.setChildren(children);
-                commentVoList.add(commentVo);
-            }
+        List<CommentVo> commentVoList = new ArrayList<>();
 
-            result.setRecords(commentVoList);
-            result.setTotal(onetotal);
+        for (Comment oneComment : oneCommentList) {
+            CommentVo commentVo = ConvertUtils.sourceToTarget(oneComment, CommentVo.class);
+            UserSummaryVo user = userMap.get(oneComment.getUid());
+            commentVo.setUsername(user.getUsername())
+                    .setAvatar(user.getAvatar())
+                    .setTime(oneComment.getCreateDate().getTime())
+                    .setIsLike(likeComments.contains(oneComment.getId()));
+            List<CommentVo> children = twoCommentVoMap.get(oneComment.getId());
+
+            if (children != null && children.size() > 3) {
+                children = children.subList(0, 3);
+            }
+            commentVo.setChildren(children);
+            commentVoList.add(commentVo);
         }
-        return result;
+        return commentVoList;
     }
 
     @Override
     public Map<String, Object> scrollComment(String commentId) {
         Map<String, Object> resMap = new HashMap<>(16);
         Comment comment = this.getById(commentId);
+        if (comment == null) {
+            throw new YanHuoException(ResultCodeEnum.FAIL);
+        }
         String pid = comment.getPid();
-        int page1 = 1;
-        int page2 = 1;
         int limit1 = 7;
         int limit2 = 10;
-        long total = 0;
-        boolean flag = false;
-        List<CommentVo> comments = new ArrayList<>();
-        if ("0".equals(pid)) {
-            while (!flag) {
-                Page<CommentVo> allOneCommentPage = this.getCommentPageWithCommentByNoteId(page1, limit1, comment.getNid());
-                List<CommentVo> commentVoList = allOneCommentPage.getRecords();
-                List<String> pids = commentVoList.stream().map(CommentVo::getId).collect(Collectors.toList());
-                if (pids.contains(commentId)) {
-                    flag = true;
-                    total = allOneCommentPage.getTotal();
-                } else {
-                    page1++;
-                }
-                comments.addAll(commentVoList);
-            }
-        } else {
-            boolean flag2 = false;
-
-            while (!flag) {
-                IPage<CommentVo> allOneCommentPage = this.getCommentPageWithCommentByNoteId(page1, limit1, comment.getNid());
-                List<CommentVo> commentVoList = allOneCommentPage.getRecords();
-                List<String> pids = commentVoList.stream().map(CommentVo::getId).collect(Collectors.toList());
-                if (pids.contains(pid)) {
-                    for (CommentVo commentVo : commentVoList) {
-                        if (Objects.equals(commentVo.getId(), pid)) {
-                            List<CommentVo> comments2 = new ArrayList<>();
-                            flag = true;
-                            total = allOneCommentPage.getTotal();
-                            while (!flag2) {
-                                IPage<CommentVo> allTwoCommentPage = this.getTwoCommentPageByOneCommentId(page2, limit2, pid);
-                                List<CommentVo> commentVoList2 = allTwoCommentPage.getRecords();
-                                List<String> ids = commentVoList2.stream().map(CommentVo::getId).collect(Collectors.toList());
-                                if (ids.contains(commentId)) {
-                                    flag2 = true;
-                                } else {
-                                    page2++;
-                                }
-                                comments2.addAll(commentVoList2);
-                            }
-                            commentVo.setChildren(comments2);
-                        }
-                    }
-                } else {
-                    page1++;
+        // 由排名直接算出所在页，一次取出第一页到所在页的评论
+        String oneCommentId = "0".equals(pid) ? commentId : pid;
+        Long rank = commentTreeCache.rank(comment.getNid(), oneCommentId);
+        int page1 = rank == null ? 1 : (int) (rank / limit1) + 1;
+        int page2 = 1;
+        Page<CommentVo> allOneCommentPage = this.getCommentPageWithCommentByNoteId(1, (long) page1 * limit1, comment.getNid());
+        List<CommentVo> comments = allOneCommentPage.getRecords();
+        if (!"0".equals(pid)) {
+            // 排在当前二级评论之前的数量即为排名
+            long twoRank = this.count(new QueryWrapper<Comment>().eq("pid", pid).eq("status", CommentStatusConstant.VISIBLE).and(e -> e
+                    .gt("like_count", comment.getLikeCount())
+                    .or(x -> x.eq("like_count", comment.getLikeCount()).gt("create_date", comment.getCreateDate()))
+                    .or(x -> x.eq("like_count", comment.getLikeCount()).eq("create_date", comment.getCreateDate()).gt("id", commentId))));
+            page2 = (int) (twoRank / limit2) + 1;
+            IPage<CommentVo> allTwoCommentPage = this.getTwoCommentPageByOneCommentId(1, (long) page2 * limit2, pid);
+            for (CommentVo commentVo : comments) {
+                if (Objects.equals(commentVo.getId(), pid)) {
+                    commentVo.setChildren(allTwoCommentPage.getRecords());
                 }
-                comments.addAll(commentVoList);
             }
         }
         resMap.put("records", comments);
-        resMap.put("total", total);
+        resMap.put("total", allOneCommentPage.getTotal());
         resMap.put("page1", page1);
         resMap.put("page2", page2);
         return resMap;
@@ -1,15 +0,0 @@
-package com.yanhuo.platform.service.impl;
-
-
-import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.yanhuo.platform.service.*;
-import com.yanhuo.xo.dao.CommentSyncDao;
-import com.yanhuo.xo.entity.*;
-import org.springframework.stereotype.Service;
-
-/**
- * @author xiaozhao
- */
-@Service
-public class CommentSyncServiceImpl extends ServiceImpl<CommentSyncDao, CommentSync> implements CommentSyncService {
-}
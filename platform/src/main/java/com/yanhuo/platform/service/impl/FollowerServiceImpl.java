@@ -5,18 +5,23 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.yanhuo.common.auth.AuthContextHolder;
-import com.yanhuo.platform.im.ChatUtils;
+import com.yanhuo.common.exception.YanHuoException;
+import com.yanhuo.common.result.CursorPage;
+import com.yanhuo.common.utils.KeysetQuery;
+import com.yanhuo.platform.cache.LikeOrCollectionIndex;
+import com.yanhuo.platform.counter.CountBuffer;
+import com.yanhuo.platform.counter.CountField;
+import com.yanhuo.platform.im.NotificationDispatcher;
 import com.yanhuo.platform.service.FollowerService;
-import com.yanhuo.platform.service.LikeOrCollectionService;
 import com.yanhuo.platform.service.NoteService;
-import com.yanhuo.platform.service.UserService;
+import com.yanhuo.platform.timeline.FollowTimeline;
 import com.yanhuo.platform.vo.TrendVo;
+import com.yanhuo.xo.cache.UserSummaryCache;
 import com.yanhuo.xo.dao.FollowerDao;
 import com.yanhuo.xo.entity.Follower;
-import com.yanhuo.xo.entity.LikeOrCollection;
 import com.yanhuo.xo.entity.Note;
-import com.yanhuo.xo.entity.User;
 import com.yanhuo.xo.vo.FollowerVo;
+import com.yanhuo.xo.vo.UserSummaryVo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -30,42 +35,84 @@ import java.util.stream.Collectors;
 @Service
 public class FollowerServiceImpl extends ServiceImpl<FollowerDao, Follower> implements FollowerService {
 
+    /**
+     * 按页码翻页时从第一页按游标走到当前页，只支持前1000条，更深的页使用游标分页
+     */
+    private static final long MAX_PAGE_DEPTH = 1000;
+
     @Autowired
     NoteService noteService;
 
     @Autowired
-    UserService userService;
+    UserSummaryCache userSummaryCache;
+
+    @Autowired
+    NotificationDispatcher notificationDispatcher;
+
+    @Autowired
+    CountBuffer countBuffer;
 
     @Autowired
-    LikeOrCollectionService likeOrCollectionService;
+    LikeOrCollectionIndex likeOrCollectionIndex;
 
     @Autowired
-    ChatUtils chatUtils;
+    FollowTimeline followTimeline;
 
     @Override
     public Page<TrendVo> getFollowTrendPage(long currentPage, long pageSize) {
-        Page<TrendVo> page = new Page<>();
-        // 得到当前用户所有关注的用户
+        pageSize = KeysetQuery.checkPageSize(pageSize);
+        if (currentPage < 1 || currentPage * pageSize > MAX_PAGE_DEPTH) {
+            throw new YanHuoException("页码超出范围，请使用游标分页");
+        }
+        // 和游标分页读取同一条时间线，不再按关注列表in查询加offset
+        String currentUid = AuthContextHolder.getUserId();
+        CursorPage<String> idPage = followTimeline.getPage(currentUid, null, pageSize);
+        for (long i = 2; i <= currentPage; i++) {
+            if (!idPage.getHasMore()) {
+                idPage = new CursorPage<>();
+                break;
+            }
+            idPage = followTimeline.getPage(currentUid, idPage.getNextCursor(), pageSize);
+        }
+        Page<TrendVo> page = new Page<>(currentPage, pageSize);
+        page.setRecords(getTrendVos(idPage.getRecords(), currentUid));
+        // 时间线不统计总数，总数只用于判断是否还有下一页
+        page.setTotal((currentPage - 1) * pageSize + idPage.getRecords().size() + (idPage.getHasMore() ? 1 : 0));
+        return page;
+    }
+
+    @Override
+    public CursorPage<TrendVo> getFollowTrendByCursor(String cursor, long pageSize) {
         String currentUid = AuthContextHolder.getUserId();
-        List<Follower> followers = this.list(new QueryWrapper<Follower>().eq("uid", currentUid));
-        List<String> fids = followers.stream().map(Follower::getFid).collect(Collectors.toList());
-        fids.add(currentUid);
-        Page<Note> notePage = noteService.page(new Page<>((int) currentPage, (int) pageSize), new QueryWrapper<Note>().in("uid", fids).orderByDesc("update_date"));
-        List<Note> notes = notePage.getRecords();
+        CursorPage<String> idPage = followTimeline.getPage(currentUid, cursor, pageSize);
+        List<String> noteIds = idPage.getRecords();
+        CursorPage<TrendVo> page = new CursorPage<>();
+        page.setNextCursor(idPage.getNextCursor()).setHasMore(idPage.getHasMore());
+        page.setRecords(getTrendVos(noteIds, currentUid));
+        return page;
+    }
+
+    /**
+     * 按时间线顺序组装动态，已删除的笔记直接跳过
+     */
+    private List<TrendVo> getTrendVos(List<String> noteIds, String currentUid) {
+        if (noteIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<String, Note> noteMap = noteService.listByIds(noteIds).stream().collect(Collectors.toMap(Note::getId, note -> note));
+        List<Note> notes = noteIds.stream().filter(noteMap::containsKey).map(noteMap::get).collect(Collectors.toList());
         List<TrendVo> trendVos = new ArrayList<>();
         if (!notes.isEmpty()) {
             //得到所有用户的图片
             List<String> ids = notes.stream().map(Note::getUid).collect(Collectors.toList());
-            List<User> users = userService.listByIds(ids);
-            HashMap<String, User> userMap = new HashMap<>();
-            users.forEach(item -> userMap.put(item.getId(), item));
+            Map<String, UserSummaryVo> userMap = userSummaryCache.getAll(ids);
             // 是否点赞
-            List<LikeOrCollection> likeOrCollections = likeOrCollectionService.list(new QueryWrapper<LikeOrCollection>().eq("uid", currentUid).eq("type", 1));
-            List<String> likeOrCollectionIds = likeOrCollections.stream().map(LikeOrCollection::getLikeOrCollectionId).collect(Collectors.toList());
+            List<String> nids = notes.stream().map(Note::getId).collect(Collectors.toList());
+            Set<String> likeOrCollectionIds = likeOrCollectionIndex.getLikedSet(currentUid, 1, nids);
 
             for (Note note : notes) {
                 TrendVo trendVo = new TrendVo();
-                User user = userMap.get(note.getUid());
+                UserSummaryVo user = userMap.get(note.getUid());
                 trendVo.setUid(user.getId())
                         .setUsername(user.getUsername())
                         .setAvatar(user.getAvatar())
@@ -87,10 +134,7 @@ public class FollowerServiceImpl extends ServiceImpl<FollowerDao, Follower> impl
                 trendVos.add(trendVo);
             }
         }
-        long total = notePage.getTotal();
-        page.setTotal(total);
-        page.setRecords(trendVos);
-        return page;
+        return trendVos;
     }
 
     @Override
@@ -98,7 +142,6 @@ public class FollowerServiceImpl extends ServiceImpl<FollowerDao, Follower> impl
         return null;
     }
 
-    // TODO 需要优化
     @Transactional(rollbackFor = Exception.class)
     @Override
     public void followById(String followerId) {
@@ -106,21 +149,20 @@ public class FollowerServiceImpl extends ServiceImpl<FollowerDao, Follower> impl
         String userId = AuthContextHolder.getUserId();
         follower.setUid(userId);
         follower.setFid(followerId);
-        // 得到当前用户
-        User currentUser = userService.getById(userId);
-        User followerUser = userService.getById(followerId);
+        // 关注数和粉丝数以增量方式写回，不再读取并覆盖整行用户数据
+        int val;
         if (isFollow(followerId)) {
-            currentUser.setFollowerCount(currentUser.getFollowerCount() - 1);
-            followerUser.setFanCount(followerUser.getFanCount() - 1);
+            val = -1;
             this.remove(new QueryWrapper<Follower>().eq("uid", userId).eq("fid", followerId));
+            followTimeline.unfollow(userId, followerId);
         } else {
-            currentUser.setFollowerCount(currentUser.getFollowerCount() + 1);
-            followerUser.setFanCount(followerUser.getFanCount() + 1);
+            val = 1;
             this.save(follower);
-            chatUtils.sendMessage(followerId, 2);
+            followTimeline.follow(userId, followerId);
+            notificationDispatcher.dispatch(followerId, 2);
         }
-        userService.updateById(currentUser);
-        userService.updateById(followerUser);
+        countBuffer.add(CountField.USER_FOLLOWER, userId, val);
+        countBuffer.add(CountField.USER_FAN, followerId, val);
     }
 
     @Override
@@ -140,7 +182,7 @@ public class FollowerServiceImpl extends ServiceImpl<FollowerDao, Follower> impl
         long total = followerPage.getTotal();
 
         Set<String> uids = followerList.stream().map(Follower::getUid).collect(Collectors.toSet());
-        Map<String, User> userMap = userService.listByIds(uids).stream().collect(Collectors.toMap(User::getId, user -> user));
+        Map<String, UserSummaryVo> userMap = userSummaryCache.getAll(uids);
 
         // 得到当前用户的所有关注
         List<Follower> followers = this.list(new QueryWrapper<Follower>().eq("uid", userId));
@@ -149,7 +191,7 @@ public class FollowerServiceImpl extends ServiceImpl<FollowerDao, Follower> impl
         List<FollowerVo> followerVoList = new ArrayList<>();
         followerList.forEach(item -> {
             FollowerVo followerVo = new FollowerVo();
-            User user = userMap.get(item.getUid());
+            UserSummaryVo user = userMap.get(item.getUid());
             followerVo.setUid(user.getId())
                     .setUsername(user.getUsername())
                     .setAvatar(user.getAvatar())
@@ -1,17 +1,23 @@
 package com.yanhuo.platform.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.yanhuo.common.auth.AuthContextHolder;
 import com.yanhuo.common.utils.ConvertUtils;
-import com.yanhuo.platform.im.ChatUtils;
+import com.yanhuo.platform.cache.LikeOrCollectionIndex;
+import com.yanhuo.platform.counter.CountBuffer;
+import com.yanhuo.platform.counter.CountField;
+import com.yanhuo.platform.im.NotificationDispatcher;
 import com.yanhuo.platform.service.*;
+import com.yanhuo.xo.cache.UserSummaryCache;
 import com.yanhuo.xo.dao.LikeOrCollectionDao;
 import com.yanhuo.xo.dto.LikeOrCollectionDTO;
 import com.yanhuo.xo.entity.*;
 import com.yanhuo.xo.vo.CommentVo;
 import com.yanhuo.xo.vo.LikeOrCollectionVo;
+import com.yanhuo.xo.vo.UserSummaryVo;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -35,16 +41,19 @@ public class LikeOrCollectionServiceImpl extends ServiceImpl<LikeOrCollectionDao
     CommentService commentService;
 
     @Autowired
-    CommentSyncService commentSyncService;
+    AlbumService albumService;
 
     @Autowired
-    AlbumService albumService;
+    UserSummaryCache userSummaryCache;
+
+    @Autowired
+    NotificationDispatcher notificationDispatcher;
 
     @Autowired
-    UserService userService;
+    CountBuffer countBuffer;
 
     @Autowired
-    ChatUtils chatUtils;
+    LikeOrCollectionIndex likeOrCollectionIndex;
 
     @Transactional(rollbackFor = Exception.class)
     @Override
@@ -53,6 +62,7 @@ public class LikeOrCollectionServiceImpl extends ServiceImpl<LikeOrCollectionDao
         // 点赞
         if (isLikeOrCollection(likeOrCollectionDTO)) {
             this.remove(new QueryWrapper<LikeOrCollection>().eq("uid", currentUid).eq("like_or_collection_id", likeOrCollectionDTO.getLikeOrCollectionId()).eq("type", likeOrCollectionDTO.getType()));
+            likeOrCollectionIndex.update(currentUid, likeOrCollectionDTO.getType(), likeOrCollectionDTO.getLikeOrCollectionId(), false);
             updateLikeCollectionCount(likeOrCollectionDTO, -1);
         } else {
             // 点赞评论或者笔记
@@ -60,50 +70,41 @@ public class LikeOrCollectionServiceImpl extends ServiceImpl<LikeOrCollectionDao
             likeOrCollection.setTimestamp(System.currentTimeMillis());
             likeOrCollection.setUid(currentUid);
             this.save(likeOrCollection);
+            likeOrCollectionIndex.update(currentUid, likeOrCollectionDTO.getType(), likeOrCollectionDTO.getLikeOrCollectionId(), true);
             updateLikeCollectionCount(likeOrCollectionDTO, 1);
             // 不是当前用户才进行通知
             if (!likeOrCollectionDTO.getPublishUid().equals(currentUid)) {
-                chatUtils.sendMessage(likeOrCollectionDTO.getPublishUid(), 0);
+                notificationDispatcher.dispatch(likeOrCollectionDTO.getPublishUid(), 0);
             }
         }
     }
 
     private void updateLikeCollectionCount(LikeOrCollectionDTO likeOrCollectionDTO, int val) {
+        String likeOrCollectionId = likeOrCollectionDTO.getLikeOrCollectionId();
         switch (likeOrCollectionDTO.getType()) {
             case 1:
-                Note likeNote = noteService.getById(likeOrCollectionDTO.getLikeOrCollectionId());
-                likeNote.setLikeCount(likeNote.getLikeCount() + val);
-                noteService.updateById(likeNote);
+                countBuffer.add(CountField.NOTE_LIKE, likeOrCollectionId, val);
                 break;
             case 2:
-                Comment comment = commentService.getById(likeOrCollectionDTO.getLikeOrCollectionId());
-                if (comment == null) {
-                    CommentSync commentSync = commentSyncService.getById(likeOrCollectionDTO.getLikeOrCollectionId());
-                    commentSync.setLikeCount(commentSync.getLikeCount() + val);
-                    commentSyncService.updateById(commentSync);
-                } else {
-                    comment.setLikeCount(comment.getLikeCount() + val);
-                    commentService.updateById(comment);
-                }
+                // 评论保存时就写入t_comment，不需要再判断评论是否已同步
+                countBuffer.add(CountField.COMMENT_LIKE, likeOrCollectionId, val);
                 break;
             case 3:
                 String currentUid = AuthContextHolder.getUserId();
-                Note collectionNote = noteService.getById(likeOrCollectionDTO.getLikeOrCollectionId());
+                Note collectionNote = noteService.getById(likeOrCollectionId);
                 //收藏图片
-                collectionNote.setCollectionCount(collectionNote.getCollectionCount() + val);
-                noteService.updateById(collectionNote);
+                countBuffer.add(CountField.NOTE_COLLECTION, likeOrCollectionId, val);
 
                 AlbumNoteRelation albumNoteRelation = new AlbumNoteRelation();
                 albumNoteRelation.setNid(collectionNote.getId());
+                Integer imgCount = collectionNote.getCount();
                 if (val == 1) {
                     Album album = albumService.getOne(new QueryWrapper<Album>().eq("uid", currentUid).eq("type", 0));
-                    Integer imgCount = collectionNote.getCount();
-                    album.setImgCount(album.getImgCount() + imgCount);
+                    countBuffer.add(CountField.ALBUM_IMG, album.getId(), imgCount);
                     if (StringUtils.isBlank(album.getAlbumCover())) {
-                        album.setAlbumCover(collectionNote.getNoteCover());
+                        albumService.update(new UpdateWrapper<Album>().set("album_cover", collectionNote.getNoteCover()).eq("id", album.getId()));
                     }
                     albumNoteRelation.setAid(album.getId());
-                    albumService.updateById(album);
                     albumNoteRelationService.save(albumNoteRelation);
                 } else {
                     //
@@ -111,21 +112,17 @@ public class LikeOrCollectionServiceImpl extends ServiceImpl<LikeOrCollectionDao
                     Set<String> aids = albumNoteRelationList.stream().map(AlbumNoteRelation::getAid).collect(Collectors.toSet());
                     List<Album> albumList = albumService.listByIds(aids);
                     Album album = albumList.stream().filter(item -> item.getUid().equals(currentUid)).findFirst().orElse(null);
-                    Integer imgCount = collectionNote.getCount();
-                    long nums = album.getImgCount() - imgCount;
+                    long nums = countBuffer.merge(CountField.ALBUM_IMG, album.getId(), album.getImgCount()) - imgCount;
+                    countBuffer.add(CountField.ALBUM_IMG, album.getId(), -imgCount);
                     if (nums <= 0) {
-                        album.setAlbumCover(null);
+                        albumService.update(new UpdateWrapper<Album>().set("album_cover", null).eq("id", album.getId()));
                     }
-                    album.setImgCount(nums);
-                    albumService.updateById(album);
                     albumNoteRelationService.remove(new QueryWrapper<AlbumNoteRelation>().eq("aid", album.getId()).eq("nid", collectionNote.getId()));
                 }
                 break;
             default:
                 // 收藏专辑
-                Album collectAlbum = albumService.getById(likeOrCollectionDTO.getLikeOrCollectionId());
-                collectAlbum.setCollectionCount(collectAlbum.getCollectionCount() + val);
-                albumService.updateById(collectAlbum);
+                countBuffer.add(CountField.ALBUM_COLLECTION, likeOrCollectionId, val);
                 break;
         }
     }
@@ -149,9 +146,9 @@ public class LikeOrCollectionServiceImpl extends ServiceImpl<LikeOrCollectionDao
         // TODO 可以使用多线程优化
         // 得到所有用户
         Set<String> uids = likeOrCollectionList.stream().map(LikeOrCollection::getUid).collect(Collectors.toSet());
-        Map<String, User> userMap = new HashMap<>(16);
+        Map<String, UserSummaryVo> userMap = new HashMap<>(16);
         if (!uids.isEmpty()) {
-            userMap = userService.listByIds(uids).stream().collect(Collectors.toMap(User::getId, user -> user));
+            userMap = userSummaryCache.getAll(uids);
         }
 
         // notes
@@ -189,7 +186,7 @@ public class LikeOrCollectionServiceImpl extends ServiceImpl<LikeOrCollectionDao
 
         for (LikeOrCollection model : likeOrCollectionList) {
             LikeOrCollectionVo likeOrCollectionVo = new LikeOrCollectionVo();
-            User user = userMap.get(model.getUid());
+            UserSummaryVo user = userMap.get(model.getUid());
             likeOrCollectionVo.setUid(user.getId())
                     .setUsername(user.getUsername())
                     .setAvatar(user.getAvatar())
@@ -3,26 +3,43 @@ package com.yanhuo.platform.service.impl;
 import cn.hutool.json.JSONArray;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.yanhuo.common.auth.AuthContextHolder;
+import com.yanhuo.common.constant.NoteStatusConstant;
 import com.yanhuo.common.exception.YanHuoException;
 import com.yanhuo.common.result.Result;
 import com.yanhuo.common.result.ResultCodeEnum;
+import com.yanhuo.common.utils.AfterCommit;
 import com.yanhuo.common.utils.ConvertUtils;
+import com.yanhuo.platform.cleanup.NoteCleanupQueue;
 import com.yanhuo.platform.client.EsClient;
 import com.yanhuo.platform.client.OssClient;
+import com.yanhuo.platform.cache.CommentTreeCache;
+import com.yanhuo.platform.cache.HotNoteRanking;
+import com.yanhuo.platform.cache.LikeOrCollectionIndex;
+import com.yanhuo.platform.cache.TagDictionary;
+import com.yanhuo.platform.counter.CountBuffer;
+import com.yanhuo.platform.counter.CountField;
+import com.yanhuo.platform.publish.NotePublishPipeline;
 import com.yanhuo.platform.service.*;
+import com.yanhuo.platform.timeline.FollowTimeline;
+import com.yanhuo.xo.cache.UserSummaryCache;
 import com.yanhuo.xo.dao.NoteDao;
 import com.yanhuo.xo.dto.NoteDTO;
 import com.yanhuo.xo.entity.*;
 import com.yanhuo.xo.vo.NoteSearchVo;
 import com.yanhuo.xo.vo.NoteVo;
+import com.yanhuo.xo.vo.UserSummaryVo;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.*;
@@ -32,9 +49,10 @@ import java.util.stream.Collectors;
  * @author xiaozhao
  */
 @Service
+@Slf4j
 public class NoteServiceImpl extends ServiceImpl<NoteDao, Note> implements NoteService {
     @Autowired
-    UserService userService;
+    UserSummaryCache userSummaryCache;
 
     @Autowired
     TagNoteRelationService tagNoteRelationService;
@@ -58,15 +76,39 @@ public class NoteServiceImpl extends ServiceImpl<NoteDao, Note> implements NoteS
     @Autowired
     CommentService commentService;
 
-    @Autowired
-    CommentSyncService commentSyncService;
-
     @Autowired
     AlbumNoteRelationService albumNoteRelationService;
 
     @Autowired
     OssClient ossClient;
 
+    @Autowired
+    CountBuffer countBuffer;
+
+    @Autowired
+    LikeOrCollectionIndex likeOrCollectionIndex;
+
+    @Autowired
+    HotNoteRanking hotNoteRanking;
+
+    @Autowired
+    TagDictionary tagDictionary;
+
+    @Autowired
+    FollowTimeline followTimeline;
+
+    @Autowired
+    NotePublishPipeline notePublishPipeline;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    NoteCleanupQueue noteCleanupQueue;
+
+    @Autowired
+    CommentTreeCache commentTreeCache;
+
     @Value("${oss.type}")
     Integer type;
 
@@ -74,22 +116,22 @@ public class NoteServiceImpl extends ServiceImpl<NoteDao, Note> implements NoteS
     private StringBuilder getTags(Note note, NoteDTO noteDTO) {
         List<String> tagList = noteDTO.getTagList();
         List<TagNoteRelation> tagNoteRelationList = new ArrayList<>();
-        List<Tag> tagList1 = tagService.list();
-        Map<String, Tag> tagMap = tagList1.stream().collect(Collectors.toMap(Tag::getTitle, tag -> tag));
         StringBuilder tags = new StringBuilder();
         if (!tagList.isEmpty()) {
+            // 只查找笔记上的标签，不存在的标签由字典批量创建
+            Map<String, String> tagIdMap = tagDictionary.getOrCreate(tagList);
+            Set<String> tids = new HashSet<>();
             for (String tag : tagList) {
-                TagNoteRelation tagNoteRelation = new TagNoteRelation();
-                if (tagMap.containsKey(tag)) {
-                    Tag tagModel = tagMap.get(tag);
-                    tagNoteRelation.setTid(tagModel.getId());
-                } else {
-                    Tag model = new Tag();
-                    model.setTitle(tag);
-                    model.setLikeCount(1L);
-                    tagService.save(model);
-                    tagNoteRelation.setTid(model.getId());
+                String tid = tagIdMap.get(TagDictionary.normalize(tag));
+                if (tid == null) {
+                    log.warn("笔记{}的标签{}没有找到对应的id", note.getId(), tag);
+                    continue;
+                }
+                if (!tids.add(tid)) {
+                    continue;
                 }
+                TagNoteRelation tagNoteRelation = new TagNoteRelation();
+                tagNoteRelation.setTid(tid);
                 tagNoteRelation.setNid(note.getId());
                 tagNoteRelationList.add(tagNoteRelation);
                 tags.append(tag);
@@ -106,8 +148,13 @@ public class NoteServiceImpl extends ServiceImpl<NoteDao, Note> implements NoteS
         if (note == null) {
             throw new YanHuoException(ResultCodeEnum.FAIL);
         }
-        note.setViewCount(note.getViewCount() + 1);
-        User user = userService.getById(note.getUid());
+        // 计数先写入缓冲，由CountBuffer定时批量写回，这里合并未写回的增量
+        countBuffer.increment(CountField.NOTE_VIEW, noteId);
+        note.setViewCount(countBuffer.merge(CountField.NOTE_VIEW, noteId, note.getViewCount()));
+        note.setLikeCount(countBuffer.merge(CountField.NOTE_LIKE, noteId, note.getLikeCount()));
+        note.setCollectionCount(countBuffer.merge(CountField.NOTE_COLLECTION, noteId, note.getCollectionCount()));
+        note.setCommentCount(countBuffer.merge(CountField.NOTE_COMMENT, noteId, note.getCommentCount()));
+        UserSummaryVo user = userSummaryCache.get(note.getUid());
         NoteVo noteVo = ConvertUtils.sourceToTarget(note, NoteVo.class);
         noteVo.setUsername(user.getUsername())
                 .setAvatar(user.getAvatar())
@@ -117,11 +164,8 @@ public class NoteServiceImpl extends ServiceImpl<NoteDao, Note> implements NoteS
         noteVo.setIsFollow(follow);
 
         String currentUid = AuthContextHolder.getUserId();
-        List<LikeOrCollection> likeOrCollectionList = likeOrCollectionService.list(new QueryWrapper<LikeOrCollection>().eq("like_or_collection_id", noteId).eq("uid", currentUid));
-
-        Set<Integer> types = likeOrCollectionList.stream().map(LikeOrCollection::getType).collect(Collectors.toSet());
-        noteVo.setIsLike(types.contains(1));
-        noteVo.setIsCollection(types.contains(3));
+        noteVo.setIsLike(likeOrCollectionIndex.isLiked(currentUid, 1, noteId));
+        noteVo.setIsCollection(likeOrCollectionIndex.isLiked(currentUid, 3, noteId));
 
 
         //得到标签
@@ -132,94 +176,103 @@ public class NoteServiceImpl extends ServiceImpl<NoteDao, Note> implements NoteS
             List<Tag> tagList = tagService.listByIds(tids);
             noteVo.setTagList(tagList);
         }
-
-        this.updateById(note);
         return noteVo;
     }
 
 
-    @Transactional(rollbackFor = Exception.class)
     @Override
     public String saveNoteByDTO(String noteData, MultipartFile[] files) {
         String currentUid = AuthContextHolder.getUserId();
         NoteDTO noteDTO = JSONUtil.toBean(noteData, NoteDTO.class);
         Note note = ConvertUtils.sourceToTarget(noteDTO, Note.class);
         note.setUid(currentUid);
-        boolean save = this.save(note);
-        if (!save) {
-            return null;
-        }
-        // TODO 存在数据一致性问题，需要往专辑中添加
-
-        User user = userService.getById(currentUid);
-        user.setTrendCount(user.getTrendCount() + 1);
-        userService.updateById(user);
-        // 获取所有的标签
-        StringBuilder tags = getTags(note, noteDTO);
-
-        Category category = categoryService.getById(note.getCid());
-        Category parentCategory = categoryService.getById(note.getCpid());
 
-        List<String> dataList = null;
+        // 先上传图片，事务只包含数据库写入
+        List<String> dataList;
         try {
             Result<List<String>> result = ossClient.saveBatch(files, type);
             dataList = result.getData();
         } catch (Exception e) {
-            e.printStackTrace();
+            throw new YanHuoException("图片上传失败");
         }
-        String[] urlArr = dataList.toArray(new String[dataList.size()]);
-        String urls = JSONUtil.toJsonStr(urlArr);
-        note.setUrls(urls);
-        note.setNoteCover(urlArr[0]);
-        this.updateById(note);
+        if (dataList == null || dataList.isEmpty()) {
+            throw new YanHuoException("图片上传失败");
+        }
+        note.setUrls(JSONUtil.toJsonStr(dataList));
+        note.setNoteCover(dataList.get(0));
+        note.setStatus(NoteStatusConstant.PROCESSING);
 
-        // 往es中添加数据
-        NoteSearchVo noteSearchVo = ConvertUtils.sourceToTarget(note, NoteSearchVo.class);
-        noteSearchVo.setUsername(user.getUsername())
-                .setAvatar(user.getAvatar())
-                .setLikeCount(0L)
-                .setCategoryName(category.getTitle())
-                .setCategoryParentName(parentCategory.getTitle())
-                .setTags(tags.toString())
-                .setTime(note.getUpdateDate().getTime());
-        esClient.addNote(noteSearchVo);
+        // TODO 存在数据一致性问题，需要往专辑中添加
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                this.save(note);
+                countBuffer.increment(CountField.USER_TREND, currentUid);
+                // 获取所有的标签
+                StringBuilder tags = getTags(note, noteDTO);
+                // 提交后异步写入es并更新笔记状态，发布成功后推送到关注动态
+                notePublishPipeline.index(note, tags.toString());
+            });
+        } catch (RuntimeException e) {
+            // 删除图片失败时不能覆盖保存失败的原因
+            try {
+                ossClient.deleteBatch(dataList, type);
+            } catch (Exception ex) {
+                log.error("笔记保存失败后删除图片失败，图片={}", dataList, ex);
+                e.addSuppressed(ex);
+            }
+            throw e;
+        }
         return note.getId();
     }
 
+    @Override
+    public Integer getNoteStatus(String noteId) {
+        Note note = this.getOne(new QueryWrapper<Note>().select("id", "status").eq("id", noteId));
+        if (note == null) {
+            throw new YanHuoException(ResultCodeEnum.FAIL);
+        }
+        return note.getStatus();
+    }
+
 
     @Override
     @Transactional(rollbackFor = Exception.class)
     public void deleteNoteByIds(List<String> noteIds) {
-        List<Note> noteList = this.listByIds(noteIds);
-        // TODO 这里需要优化，数据一致性问题
+        if (noteIds == null || noteIds.isEmpty()) {
+            return;
+        }
+        List<Note> noteList = this.list(new QueryWrapper<Note>().select("id", "uid", "urls").in("id", noteIds));
+        if (noteList.isEmpty()) {
+            return;
+        }
+        List<String> nids = noteList.stream().map(Note::getId).collect(Collectors.toList());
+        List<String> pathArr = new ArrayList<>();
         noteList.forEach(item -> {
-            String noteId = item.getId();
-            esClient.deleteNote(noteId);
-
-            String urls = item.getUrls();
-            JSONArray objects = JSONUtil.parseArray(urls);
-            Object[] array = objects.toArray();
-            List<String> pathArr = new ArrayList<>();
-            for (Object o : array) {
-                pathArr.add((String) o);
+            if (StringUtils.isNotBlank(item.getUrls())) {
+                JSONUtil.parseArray(item.getUrls()).forEach(o -> pathArr.add((String) o));
             }
-            ossClient.deleteBatch(pathArr, type);
-            // TODO 可以使用多线程优化，
-            // 删除点赞图片，评论，标签关系，收藏关系
-            likeOrCollectionService.remove(new QueryWrapper<LikeOrCollection>().eq("like_or_collection_id", noteId));
-            List<Comment> commentList = commentService.list(new QueryWrapper<Comment>().eq("nid", noteId));
-            List<CommentSync> commentSyncList = commentSyncService.list(new QueryWrapper<CommentSync>().eq("nid", noteId));
-            List<String> cids = commentList.stream().map(Comment::getId).collect(Collectors.toList());
-            List<String> cids2 = commentSyncList.stream().map(CommentSync::getId).collect(Collectors.toList());
-            if (!cids.isEmpty()) {
-                likeOrCollectionService.remove(new QueryWrapper<LikeOrCollection>().in("like_or_collection_id", cids).eq("type", 2));
-            }
-            commentService.removeBatchByIds(cids);
-            commentSyncService.removeBatchByIds(cids2);
-            tagNoteRelationService.remove(new QueryWrapper<TagNoteRelation>().eq("nid", noteId));
-            albumNoteRelationService.remove(new QueryWrapper<AlbumNoteRelation>().eq("nid", noteId));
         });
-        this.removeBatchByIds(noteIds);
+
+        // 按集合一次删除点赞收藏，评论，标签关系，专辑关系，语句数和笔记数量无关
+        List<Object> cids = commentService.listObjs(new QueryWrapper<Comment>().select("id").in("nid", nids));
+        if (!cids.isEmpty()) {
+            likeOrCollectionService.remove(new QueryWrapper<LikeOrCollection>().in("like_or_collection_id", cids).eq("type", 2));
+        }
+        likeOrCollectionService.remove(new QueryWrapper<LikeOrCollection>().in("like_or_collection_id", nids));
+        commentService.remove(new QueryWrapper<Comment>().in("nid", nids));
+        tagNoteRelationService.remove(new QueryWrapper<TagNoteRelation>().in("nid", nids));
+        albumNoteRelationService.remove(new QueryWrapper<AlbumNoteRelation>().in("nid", nids));
+        this.removeBatchByIds(nids);
+        // 提交后异步删除es文档和图片，失败重试
+        noteCleanupQueue.submit(nids, pathArr);
+        // 提交后再删除缓存，避免回滚后排行和评论树缺少仍存在的笔记
+        AfterCommit.run(() -> hotNoteRanking.remove(nids));
+        commentTreeCache.evict(nids);
+        // 提交后从作者和粉丝的关注动态收件箱移除
+        noteList.stream()
+                .filter(item -> item.getUid() != null)
+                .collect(Collectors.groupingBy(Note::getUid, Collectors.mapping(Note::getId, Collectors.toList())))
+                .forEach((uid, ids) -> followTimeline.remove(uid, ids));
     }
 
     @Override
@@ -264,7 +317,7 @@ public class NoteServiceImpl extends ServiceImpl<NoteDao, Note> implements NoteS
         // 重新绑定标签关系
         StringBuilder tags = getTags(note, noteDTO);
 
-        User user = userService.getById(currentUid);
+        UserSummaryVo user = userSummaryCache.get(currentUid);
 
         NoteSearchVo noteSearchVo = ConvertUtils.sourceToTarget(note, NoteSearchVo.class);
         noteSearchVo.setUsername(user.getUsername())
@@ -278,23 +331,54 @@ public class NoteServiceImpl extends ServiceImpl<NoteDao, Note> implements NoteS
 
     @Override
     public Page<NoteVo> getHotPage(long currentPage, long pageSize) {
-        return null;
+        Page<NoteVo> noteVoPage = new Page<>(currentPage, pageSize);
+        noteVoPage.setTotal(hotNoteRanking.size());
+        List<String> noteIds = hotNoteRanking.getPage(currentPage, pageSize);
+        if (noteIds.isEmpty()) {
+            return noteVoPage;
+        }
+        Map<String, Note> noteMap = this.listByIds(noteIds).stream().collect(Collectors.toMap(Note::getId, note -> note));
+        Set<String> uids = noteMap.values().stream().map(Note::getUid).collect(Collectors.toSet());
+        Map<String, UserSummaryVo> userMap = userSummaryCache.getAll(uids);
+
+        List<NoteVo> noteVoList = new ArrayList<>();
+        // 按排行顺序组装，排行中已删除的笔记直接跳过
+        for (String noteId : noteIds) {
+            Note note = noteMap.get(noteId);
+            if (note == null) {
+                continue;
+            }
+            UserSummaryVo user = userMap.get(note.getUid());
+            NoteVo noteVo = ConvertUtils.sourceToTarget(note, NoteVo.class);
+            noteVo.setUsername(user.getUsername())
+                    .setAvatar(user.getAvatar())
+                    .setTime(note.getUpdateDate().getTime())
+                    .setViewCount(countBuffer.merge(CountField.NOTE_VIEW, noteId, note.getViewCount()))
+                    .setLikeCount(countBuffer.merge(CountField.NOTE_LIKE, noteId, note.getLikeCount()))
+                    .setCollectionCount(countBuffer.merge(CountField.NOTE_COLLECTION, noteId, note.getCollectionCount()))
+                    .setCommentCount(countBuffer.merge(CountField.NOTE_COMMENT, noteId, note.getCommentCount()));
+            noteVoList.add(noteVo);
+        }
+        noteVoPage.setRecords(noteVoList);
+        return noteVoPage;
     }
 
     @Override
     public boolean pinnedNote(String noteId) {
         String currentUid = AuthContextHolder.getUserId();
         Note note = this.getById(noteId);
+        int pinned;
         if (note.getPinned().equals(1)) {
-            note.setPinned(0);
+            pinned = 0;
         } else {
             List<Note> noteList = this.list(new QueryWrapper<Note>().eq("uid", currentUid));
             long count = noteList.stream().filter(item -> item.getPinned() == 1).count();
             if (count >= 2) {
                 throw new YanHuoException("最多只能置顶2个笔记");
             }
-            note.setPinned(1);
+            pinned = 1;
         }
-        return this.updateById(note);
+        // 只更新置顶字段，避免用旧的计数覆盖已经写回的增量
+        return this.update(new UpdateWrapper<Note>().set("pinned", pinned).eq("id", noteId));
     }
 }
@@ -4,16 +4,22 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.yanhuo.common.auth.AuthContextHolder;
+import com.yanhuo.common.result.CursorPage;
 import com.yanhuo.common.utils.ConvertUtils;
+import com.yanhuo.common.utils.KeysetQuery;
+import com.yanhuo.platform.counter.CountBuffer;
+import com.yanhuo.platform.counter.CountField;
 import com.yanhuo.platform.service.LikeOrCollectionService;
 import com.yanhuo.platform.service.NoteService;
 import com.yanhuo.platform.service.UserService;
+import com.yanhuo.xo.cache.UserSummaryCache;
 import com.yanhuo.xo.dao.UserDao;
 import com.yanhuo.xo.entity.LikeOrCollection;
 import com.yanhuo.xo.entity.Note;
 import com.yanhuo.xo.entity.User;
 import com.yanhuo.xo.vo.FollowerVo;
 import com.yanhuo.xo.vo.NoteSearchVo;
+import com.yanhuo.xo.vo.UserSummaryVo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -32,6 +38,12 @@ public class UserServiceImpl extends ServiceImpl<UserDao, User> implements UserS
     @Autowired
     LikeOrCollectionService likeOrCollectionService;
 
+    @Autowired
+    CountBuffer countBuffer;
+
+    @Autowired
+    UserSummaryCache userSummaryCache;
+
     @Override
     public Page<NoteSearchVo> getTrendPageByUser(long currentPage, long pageSize, String userId, Integer type) {
         Page<NoteSearchVo> resultPage;
@@ -43,84 +55,135 @@ public class UserServiceImpl extends ServiceImpl<UserDao, User> implements UserS
         return resultPage;
     }
 
+    @Override
+    public CursorPage<NoteSearchVo> getTrendByUserCursor(String cursor, long pageSize, String userId, Integer type, Boolean count) {
+        if (type == 1) {
+            // 置顶为空时按未置顶排序，游标列不能为null
+            CursorPage<Note> notePage = KeysetQuery.<Note>desc()
+                    .intColumn("ifnull(pinned, 0)", note -> note.getPinned() == null ? 0 : note.getPinned())
+                    .dateColumn("update_date", Note::getUpdateDate)
+                    .stringColumn("id", Note::getId)
+                    .page(getTrendWrapper(userId), cursor, pageSize, noteService::list,
+                            Boolean.TRUE.equals(count) ? noteService::count : null);
+            return notePage.convert(getTrendVos(notePage.getRecords(), userId));
+        }
+        CursorPage<LikeOrCollection> likeOrCollectionPage = KeysetQuery.<LikeOrCollection>desc()
+                .dateColumn("create_date", LikeOrCollection::getCreateDate)
+                .stringColumn("id", LikeOrCollection::getId)
+                .page(getLikeOrCollectionWrapper(userId, type), cursor, pageSize, likeOrCollectionService::list,
+                        Boolean.TRUE.equals(count) ? likeOrCollectionService::count : null);
+        return likeOrCollectionPage.convert(getLikeOrCollectionVos(likeOrCollectionPage.getRecords()));
+    }
+
     private Page<NoteSearchVo> getLikeOrCollectionPageByUser(long currentPage, long pageSize, String userId) {
         Page<NoteSearchVo> noteSearchVoPage = new Page<>();
-        // 得到当前用户发布的所有专辑
+        Page<Note> notePage = noteService.page(new Page<>((int) currentPage, (int) pageSize), getTrendWrapper(userId).orderByDesc("pinned", "update_date"));
+        noteSearchVoPage.setRecords(getTrendVos(notePage.getRecords(), userId));
+        noteSearchVoPage.setTotal(notePage.getTotal());
+        return noteSearchVoPage;
+    }
+
+    /**
+     * 当前用户能看到自己所有的笔记，其他用户只能看到图片笔记
+     */
+    private QueryWrapper<Note> getTrendWrapper(String userId) {
         String currentUserId = AuthContextHolder.getUserId();
-        Page<Note> notePage;
-        if (currentUserId.equals(userId)) {
-            //是当前用户
-            notePage = noteService.page(new Page<>((int) currentPage, (int) pageSize), new QueryWrapper<Note>().eq("uid", userId).orderByDesc("pinned", "update_date"));
-        } else {
-            notePage = noteService.page(new Page<>((int) currentPage, (int) pageSize), new QueryWrapper<Note>().eq("uid", userId).eq("type", 1).orderByDesc("pinned", "update_date"));
+        QueryWrapper<Note> wrapper = new QueryWrapper<Note>().eq("uid", userId);
+        if (!currentUserId.equals(userId)) {
+            wrapper.eq("type", 1);
         }
-        List<Note> noteList = notePage.getRecords();
-        long total = notePage.getTotal();
+        return wrapper;
+    }
 
+    private List<NoteSearchVo> getTrendVos(List<Note> noteList, String userId) {
+        String currentUserId = AuthContextHolder.getUserId();
         // 得到所有用户的信息
         Set<String> uids = noteList.stream().map(Note::getUid).collect(Collectors.toSet());
-        Map<String, User> userMap = this.listByIds(uids).stream().collect(Collectors.toMap(User::getId, user -> user));
+        Map<String, UserSummaryVo> userMap = userSummaryCache.getAll(uids);
 
         List<NoteSearchVo> noteSearchVoList = new ArrayList<>();
         for (Note note : noteList) {
             NoteSearchVo noteSearchVo = ConvertUtils.sourceToTarget(note, NoteSearchVo.class);
-            User user = userMap.get(note.getUid());
+            UserSummaryVo user = userMap.get(note.getUid());
             noteSearchVo.setUsername(user.getUsername())
                     .setAvatar(user.getAvatar())
                     .setTime(note.getUpdateDate().getTime());
             if (!currentUserId.equals(userId)) {
                 noteSearchVo.setViewCount(null);
+            } else {
+                noteSearchVo.setViewCount(countBuffer.merge(CountField.NOTE_VIEW, note.getId(), note.getViewCount()));
             }
             noteSearchVoList.add(noteSearchVo);
         }
-        noteSearchVoPage.setRecords(noteSearchVoList);
-        noteSearchVoPage.setTotal(total);
-        return noteSearchVoPage;
+        return noteSearchVoList;
     }
 
 
     private Page<NoteSearchVo> getLikeOrCollectionPageByUser(long currentPage, long pageSize, String userId, Integer type) {
         Page<NoteSearchVo> noteSearchVoPage = new Page<>();
-        Page<LikeOrCollection> likeOrCollectionPage;
-        // 得到当前用户发布的所有图片
-        if (type == 2) {
-            // 所有点赞图片
-            likeOrCollectionPage = likeOrCollectionService.page(new Page<>(currentPage, pageSize), new QueryWrapper<LikeOrCollection>().eq("uid", userId).eq("type", 1).orderByDesc("create_date"));
-        } else {
-            // 所有收藏图片
-            likeOrCollectionPage = likeOrCollectionService.page(new Page<>(currentPage, pageSize), new QueryWrapper<LikeOrCollection>().eq("uid", userId).eq("type", 3).orderByDesc("create_date"));
-        }
+        Page<LikeOrCollection> likeOrCollectionPage = likeOrCollectionService.page(new Page<>(currentPage, pageSize), getLikeOrCollectionWrapper(userId, type).orderByDesc("create_date"));
+        noteSearchVoPage.setRecords(getLikeOrCollectionVos(likeOrCollectionPage.getRecords()));
+        noteSearchVoPage.setTotal(likeOrCollectionPage.getTotal());
+        return noteSearchVoPage;
+    }
 
-        List<LikeOrCollection> likeOrCollectionList = likeOrCollectionPage.getRecords();
-        long total = likeOrCollectionPage.getTotal();
+    /**
+     * type为2是所有点赞图片，否则是所有收藏图片
+     */
+    private QueryWrapper<LikeOrCollection> getLikeOrCollectionWrapper(String userId, Integer type) {
+        return new QueryWrapper<LikeOrCollection>().eq("uid", userId).eq("type", type == 2 ? 1 : 3);
+    }
 
+    private List<NoteSearchVo> getLikeOrCollectionVos(List<LikeOrCollection> likeOrCollectionList) {
+        List<NoteSearchVo> noteSearchVoList = new ArrayList<>();
+        if (likeOrCollectionList.isEmpty()) {
+            return noteSearchVoList;
+        }
         Set<String> uids = likeOrCollectionList.stream().map(LikeOrCollection::getPublishUid).collect(Collectors.toSet());
-        Map<String, User> userMap = this.listByIds(uids).stream().collect(Collectors.toMap(User::getId, user -> user));
+        Map<String, UserSummaryVo> userMap = userSummaryCache.getAll(uids);
 
         Set<String> nids = likeOrCollectionList.stream().map(LikeOrCollection::getLikeOrCollectionId).collect(Collectors.toSet());
         Map<String, Note> noteMap = noteService.listByIds(nids).stream().collect(Collectors.toMap(Note::getId, note -> note));
 
-        List<NoteSearchVo> noteSearchVoList = new ArrayList<>();
-
         for (LikeOrCollection model : likeOrCollectionList) {
             Note note = noteMap.get(model.getLikeOrCollectionId());
+            if (note == null) {
+                continue;
+            }
             NoteSearchVo noteSearchVo = ConvertUtils.sourceToTarget(note, NoteSearchVo.class);
-            User user = userMap.get(model.getPublishUid());
+            UserSummaryVo user = userMap.get(model.getPublishUid());
             noteSearchVo.setUsername(user.getUsername())
                     .setAvatar(user.getAvatar());
             noteSearchVoList.add(noteSearchVo);
         }
-
-        noteSearchVoPage.setRecords(noteSearchVoList);
-        noteSearchVoPage.setTotal(total);
-        return noteSearchVoPage;
+        return noteSearchVoList;
     }
 
 
+    @Override
+    public User getUserById(String userId) {
+        return mergeCount(this.getById(userId));
+    }
+
     @Override
     public User updateUser(User user) {
         this.updateById(user);
-        return this.getById(user.getId());
+        userSummaryCache.invalidate(user.getId());
+        return mergeCount(this.getById(user.getId()));
+    }
+
+    /**
+     * 动态、关注和粉丝数加上计数缓冲中还未写回的增量
+     */
+    private User mergeCount(User user) {
+        if (user == null) {
+            return null;
+        }
+        String userId = user.getId();
+        user.setTrendCount(countBuffer.merge(CountField.USER_TREND, userId, user.getTrendCount()));
+        user.setFollowerCount(countBuffer.merge(CountField.USER_FOLLOWER, userId, user.getFollowerCount()));
+        user.setFanCount(countBuffer.merge(CountField.USER_FAN, userId, user.getFanCount()));
+        return user;
     }
 
     @Override
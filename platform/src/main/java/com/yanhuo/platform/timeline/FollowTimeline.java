@@ -0,0 +1,379 @@
+package com.yanhuo.platform.timeline;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yanhuo.common.constant.CacheConstant;
+import com.yanhuo.common.constant.NoteStatusConstant;
+import com.yanhuo.common.result.CursorPage;
+import com.yanhuo.common.utils.AfterCommit;
+import com.yanhuo.common.utils.KeysetQuery;
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.xo.dao.FollowerDao;
+import com.yanhuo.xo.dao.NoteDao;
+import com.yanhuo.xo.dao.UserDao;
+import com.yanhuo.xo.entity.Follower;
+import com.yanhuo.xo.entity.Note;
+import com.yanhuo.xo.entity.User;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * 关注动态时间线(推拉结合)
+ * <p>
+ * 每个用户有一个redis zset收件箱，元素为笔记id，score为发布时间。
+ * 粉丝数小于push-fan-limit的作者发布笔记时推送到粉丝已加载的收件箱(推)，
+ * 粉丝数较多的作者不推送，读取时按游标从t_note拉取后与收件箱合并(拉)。
+ * 收件箱加载时和关注时是大V的作者记录在拉取集合中，之后粉丝数降到阈值以下也继续拉取，
+ * 否则这些作者推送之前的笔记既不在收件箱中也不会被拉取。
+ * 收件箱最多保留inbox-size条，读到收件箱末尾且收件箱已满时，更早的笔记从所有关注的作者拉取。
+ * 收件箱第一次读取时从数据库加载，关注/取消关注时回填或移除对应作者的笔记。
+ * 游标和KeysetQuery相同，由发布时间和笔记id组成，同一时间发布的笔记不会被跳过。
+ * 笔记写入es成功后才推送，从数据库拉取和加载时也只取已发布的笔记，旧数据状态为空视为已发布。
+ * 删除笔记后从作者和粉丝的收件箱移除，大V的笔记没有推送，只从作者自己的收件箱移除，
+ * 粉丝数跨过阈值前推送的笔记可能留在收件箱中，读取时按数据库跳过。
+ *
+ * @author xiaozhao
+ */
+@Component
+@Slf4j
+public class FollowTimeline {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final long EXPIRE_DAYS = 7;
+
+    /**
+     * 收件箱已加载的占位元素，score最大，裁剪时不会被移除，读取时不会被查到
+     */
+    private static final double PLACEHOLDER_SCORE = Double.MAX_VALUE;
+
+    private static final String PULL_SUFFIX = ":pull";
+
+    private static final RedisScript<Long> REMOVE_SCRIPT = new DefaultRedisScript<>(
+            "return redis.call('zrem', KEYS[1], unpack(ARGV))", Long.class);
+
+    /**
+     * 按发布时间和id降序，收件箱和数据库使用同一个游标
+     */
+    private static final KeysetQuery<Note> KEYSET = KeysetQuery.<Note>desc()
+            .dateColumn("create_date", Note::getCreateDate)
+            .stringColumn("id", Note::getId);
+
+    @Autowired
+    RedisUtils redisUtils;
+
+    @Autowired
+    FollowerDao followerDao;
+
+    @Autowired
+    NoteDao noteDao;
+
+    @Autowired
+    UserDao userDao;
+
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    Executor executor;
+
+    @Value("${timeline.inbox-size:1000}")
+    long inboxSize;
+
+    @Value("${timeline.push-fan-limit:5000}")
+    long pushFanLimit;
+
+    /**
+     * 发布笔记后推送到作者和粉丝的收件箱
+     *
+     * @param uid        作者id
+     * @param noteId     笔记id
+     * @param createDate 发布时间
+     */
+    public void publish(String uid, String noteId, Date createDate) {
+        long time = createDate.getTime();
+        afterCommit(() -> doPublish(uid, noteId, time));
+    }
+
+    /**
+     * 删除笔记后从作者和粉丝的收件箱移除
+     *
+     * @param uid     作者id
+     * @param noteIds 笔记id
+     */
+    public void remove(String uid, List<String> noteIds) {
+        afterCommit(() -> doRemove(uid, noteIds));
+    }
+
+    /**
+     * 关注后把被关注用户最近的笔记回填到收件箱
+     *
+     * @param uid 用户id
+     * @param fid 被关注的用户id
+     */
+    public void follow(String uid, String fid) {
+        afterCommit(() -> doFollow(uid, fid));
+    }
+
+    /**
+     * 取消关注后从收件箱移除被关注用户的笔记
+     *
+     * @param uid 用户id
+     * @param fid 被关注的用户id
+     */
+    public void unfollow(String uid, String fid) {
+        afterCommit(() -> doUnfollow(uid, fid));
+    }
+
+    /**
+     * 按游标得到关注动态的笔记id
+     *
+     * @param uid      用户id
+     * @param cursor   上一页返回的游标，为空从最新开始
+     * @param pageSize 分页数
+     * @return 按发布时间降序的笔记id
+     */
+    public CursorPage<String> getPage(String uid, String cursor, long pageSize) {
+        // 收件箱和拉取的笔记使用同一个分页数
+        pageSize = KeysetQuery.checkPageSize(pageSize);
+        String key = ensureInbox(uid);
+        double max = Long.MAX_VALUE;
+        String maxId = null;
+        if (StringUtils.isNotBlank(cursor)) {
+            List<Object> values = KEYSET.decode(cursor);
+            max = ((Date) values.get(0)).getTime();
+            maxId = (String) values.get(1);
+        }
+
+        // 和游标同一时间的笔记可能排在游标之前，多取这部分再过滤，另外多取一条用于判断是否还有下一页
+        long ties = maxId == null ? 0L : nullToZero(redisUtils.zCount(key, max, max));
+        Map<String, Note> noteMap = new HashMap<>(16);
+        Set<TypedTuple<String>> tuples = redisUtils.zReverseRangeByScoreWithScores(key, 1, max, 0, pageSize + 1 + ties);
+        if (tuples != null) {
+            for (TypedTuple<String> item : tuples) {
+                long time = item.getScore().longValue();
+                if (maxId == null || time < max || item.getValue().compareTo(maxId) < 0) {
+                    noteMap.put(item.getValue(), note(item.getValue(), time));
+                }
+            }
+        }
+        boolean hasMore = noteMap.size() > pageSize;
+
+        Set<String> pullIds = getPullIds(uid, key);
+        if (!hasMore && nullToZero(redisUtils.zSize(key)) >= inboxSize + 1) {
+            // 收件箱已满，末尾之后的笔记已被裁剪，从所有关注的作者拉取
+            followerDao.selectObjs(new QueryWrapper<Follower>().select("fid").eq("uid", uid))
+                    .forEach(item -> pullIds.add(String.valueOf(item)));
+            pullIds.add(uid);
+        }
+        List<String> pullList = new ArrayList<>(pullIds);
+        for (int i = 0; i < pullList.size(); i += CHUNK_SIZE) {
+            CursorPage<Note> notePage = KEYSET.page(new QueryWrapper<Note>()
+                            .select("id", "create_date")
+                            .in("uid", pullList.subList(i, Math.min(i + CHUNK_SIZE, pullList.size())))
+                            .and(FollowTimeline::published),
+                    cursor, pageSize, noteDao::selectList);
+            notePage.getRecords().forEach(item -> noteMap.putIfAbsent(item.getId(), item));
+            hasMore = hasMore || notePage.getHasMore();
+        }
+
+        List<Note> noteList = noteMap.values().stream()
+                .sorted(Comparator.comparing(Note::getCreateDate).thenComparing(Note::getId).reversed())
+                .collect(Collectors.toList());
+        hasMore = hasMore || noteList.size() > pageSize;
+        if (noteList.size() > pageSize) {
+            noteList = noteList.subList(0, (int) pageSize);
+        }
+        CursorPage<String> page = new CursorPage<>();
+        page.setRecords(noteList.stream().map(Note::getId).collect(Collectors.toList()))
+                .setHasMore(hasMore);
+        if (hasMore && !noteList.isEmpty()) {
+            page.setNextCursor(KEYSET.encode(noteList.get(noteList.size() - 1)));
+        }
+        return page;
+    }
+
+    /**
+     * 需要在读取时拉取的作者：当前的大V和收件箱加载以来做过大V的作者
+     */
+    private Set<String> getPullIds(String uid, String key) {
+        Set<String> pullIds = new HashSet<>(followerDao.selectBigFollowIds(uid, pushFanLimit));
+        Set<String> recorded = redisUtils.setMembers(key + PULL_SUFFIX);
+        if (recorded != null) {
+            recorded.stream().filter(StringUtils::isNotEmpty).forEach(pullIds::add);
+        }
+        return pullIds;
+    }
+
+    private void doPublish(String uid, String noteId, long time) {
+        redisUtils.zAddIfExists(Collections.singletonList(getKey(uid)), noteId, time, inboxSize + 1);
+        int total = forEachFanKeys(uid, keys -> redisUtils.zAddIfExists(keys, noteId, time, inboxSize + 1));
+        log.debug("笔记{}推送到{}个粉丝收件箱", noteId, total);
+    }
+
+    private void doRemove(String uid, List<String> noteIds) {
+        redisUtils.zRemove(getKey(uid), noteIds.toArray());
+        forEachFanKeys(uid, keys -> redisUtils.executeBatch(REMOVE_SCRIPT,
+                keys.stream().map(Collections::singletonList).collect(Collectors.toList()),
+                Collections.nCopies(keys.size(), noteIds)));
+    }
+
+    /**
+     * 作者粉丝数小于推送阈值时按主键分段读取粉丝，每段的收件箱key交给action，一段一次管道
+     *
+     * @return 粉丝数
+     */
+    private int forEachFanKeys(String uid, Consumer<List<String>> action) {
+        User author = userDao.selectById(uid);
+        if (author == null || (author.getFanCount() != null && author.getFanCount() >= pushFanLimit)) {
+            return 0;
+        }
+        String lastId = null;
+        int total = 0;
+        while (true) {
+            List<Follower> fanList = followerDao.selectList(new QueryWrapper<Follower>()
+                    .select("id", "uid")
+                    .eq("fid", uid)
+                    .gt(lastId != null, "id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + CHUNK_SIZE));
+            if (fanList.isEmpty()) {
+                break;
+            }
+            action.accept(fanList.stream().map(item -> getKey(item.getUid())).collect(Collectors.toList()));
+            total += fanList.size();
+            lastId = fanList.get(fanList.size() - 1).getId();
+        }
+        return total;
+    }
+
+    private void doFollow(String uid, String fid) {
+        String key = getKey(uid);
+        if (!Boolean.TRUE.equals(redisUtils.hasKey(key))) {
+            return;
+        }
+        User user = userDao.selectById(fid);
+        if (user == null) {
+            return;
+        }
+        if (user.getFanCount() != null && user.getFanCount() >= pushFanLimit) {
+            // 粉丝数较多的作者在读取时拉取，不需要回填，记录下来以后粉丝数减少时也继续拉取
+            redisUtils.sAdd(key + PULL_SUFFIX, fid);
+            return;
+        }
+        List<Note> noteList = selectLatestNotes(Collections.singletonList(fid));
+        if (noteList.isEmpty()) {
+            return;
+        }
+        Set<TypedTuple<String>> tuples = noteList.stream()
+                .map(item -> new DefaultTypedTuple<>(item.getId(), (double) item.getCreateDate().getTime()))
+                .collect(Collectors.toSet());
+        redisUtils.zAdd(key, tuples);
+        redisUtils.zRemoveRange(key, 0, -inboxSize - 2);
+    }
+
+    private void doUnfollow(String uid, String fid) {
+        String key = getKey(uid);
+        if (!Boolean.TRUE.equals(redisUtils.hasKey(key))) {
+            return;
+        }
+        List<Object> noteIds = noteDao.selectObjs(new QueryWrapper<Note>()
+                .select("id")
+                .eq("uid", fid)
+                .orderByDesc("create_date")
+                .last("limit " + inboxSize));
+        if (!noteIds.isEmpty()) {
+            redisUtils.zRemove(key, noteIds.stream().map(String::valueOf).toArray());
+        }
+        redisUtils.sRemove(key + PULL_SUFFIX, fid);
+    }
+
+    /**
+     * 收件箱不存在时从数据库加载关注的普通作者和自己最近的笔记
+     */
+    private String ensureInbox(String uid) {
+        String key = getKey(uid);
+        if (Boolean.TRUE.equals(redisUtils.hasKey(key))) {
+            redisUtils.multiExpire(Arrays.asList(key, key + PULL_SUFFIX), EXPIRE_DAYS, TimeUnit.DAYS);
+            return key;
+        }
+        Set<String> bigIds = new HashSet<>(followerDao.selectBigFollowIds(uid, pushFanLimit));
+        // 先记录拉取的作者再写入收件箱，收件箱存在时拉取集合一定存在
+        List<String> pullMembers = new ArrayList<>(bigIds);
+        pullMembers.add(CacheConstant.EMPTY_MEMBER);
+        redisUtils.sAdd(key + PULL_SUFFIX, pullMembers.toArray(new String[0]));
+        redisUtils.expire(key + PULL_SUFFIX, EXPIRE_DAYS, TimeUnit.DAYS);
+        List<Object> fidList = followerDao.selectObjs(new QueryWrapper<Follower>().select("fid").eq("uid", uid));
+        List<String> uids = fidList.stream().map(String::valueOf).filter(item -> !bigIds.contains(item)).collect(Collectors.toList());
+        uids.add(uid);
+
+        // 分段查询每段最近的笔记，合并后只保留最新的inboxSize条
+        List<Note> noteList = new ArrayList<>();
+        for (int i = 0; i < uids.size(); i += CHUNK_SIZE) {
+            noteList.addAll(selectLatestNotes(uids.subList(i, Math.min(i + CHUNK_SIZE, uids.size()))));
+        }
+        Set<TypedTuple<String>> tuples = noteList.stream()
+                .sorted(Comparator.comparing(Note::getCreateDate).reversed())
+                .limit(inboxSize)
+                .map(item -> new DefaultTypedTuple<>(item.getId(), (double) item.getCreateDate().getTime()))
+                .collect(Collectors.toSet());
+        tuples.add(new DefaultTypedTuple<>(CacheConstant.EMPTY_MEMBER, PLACEHOLDER_SCORE));
+        redisUtils.zAdd(key, tuples);
+        redisUtils.expire(key, EXPIRE_DAYS, TimeUnit.DAYS);
+        log.debug("加载关注动态收件箱{}，笔记数={}", key, tuples.size() - 1);
+        return key;
+    }
+
+    private List<Note> selectLatestNotes(List<String> uids) {
+        return noteDao.selectList(new QueryWrapper<Note>()
+                .select("id", "create_date")
+                .in("uid", uids)
+                .and(FollowTimeline::published)
+                .orderByDesc("create_date")
+                .last("limit " + inboxSize));
+    }
+
+    private static void published(QueryWrapper<Note> wrapper) {
+        wrapper.isNull("status").or().eq("status", NoteStatusConstant.PUBLISHED);
+    }
+
+    /**
+     * 事务提交后再交给线程池执行，推送和回填不阻塞请求
+     */
+    private void afterCommit(Runnable runnable) {
+        Runnable task = () -> {
+            try {
+                runnable.run();
+            } catch (Exception e) {
+                log.error("关注动态收件箱更新失败", e);
+            }
+        };
+        AfterCommit.run(() -> executor.execute(task));
+    }
+
+    private static Note note(String id, long time) {
+        Note note = new Note();
+        note.setId(id);
+        note.setCreateDate(new Date(time));
+        return note;
+    }
+
+    private static long nullToZero(Long count) {
+        return count == null ? 0L : count;
+    }
+
+    private String getKey(String uid) {
+        return CacheConstant.TIMELINE_INBOX_KEY + uid;
+    }
+}
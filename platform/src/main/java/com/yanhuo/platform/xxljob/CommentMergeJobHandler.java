@@ -0,0 +1,59 @@
+package com.yanhuo.platform.xxljob;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import com.yanhuo.xo.dao.CommentDao;
+import com.yanhuo.xo.dao.CommentSyncDao;
+import com.yanhuo.xo.entity.CommentSync;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 把旧的t_comment_sync合并到t_comment，上线评论状态字段后执行一次
+ * <p>
+ * 执行前先执行 doc/migration/20261018_t_comment_status.sql 给t_comment增加状态字段，已有的评论默认为已展示。
+ * 只在t_comment_sync中的评论是还未同步的评论，以等待同步状态复制，已同步过的评论依赖主键忽略。
+ * 可以重复执行，确认完成后可以删除t_comment_sync。
+ *
+ * @author xiaozhao
+ */
+@Component
+@Slf4j
+public class CommentMergeJobHandler {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    @Autowired
+    CommentSyncDao commentSyncDao;
+
+    @Autowired
+    CommentDao commentDao;
+
+    @XxlJob("commentMergeJobHandler")
+    public void execute() throws Exception {
+        log.info("评论表合并开始--------------------------------");
+        String lastId = null;
+        int total = 0;
+        int merged = 0;
+        while (true) {
+            // 按主键分段读取，每段一条insert ... select
+            List<String> ids = commentSyncDao.selectObjs(new QueryWrapper<CommentSync>()
+                            .select("id")
+                            .gt(lastId != null, "id", lastId)
+                            .orderByAsc("id")
+                            .last("limit " + CHUNK_SIZE))
+                    .stream().map(String::valueOf).collect(Collectors.toList());
+            if (ids.isEmpty()) {
+                break;
+            }
+            merged += commentDao.mergeFromSync(ids);
+            total += ids.size();
+            lastId = ids.get(ids.size() - 1);
+        }
+        log.info("评论表合并结束，读取={}，复制={}--------------------------------", total, merged);
+    }
+}
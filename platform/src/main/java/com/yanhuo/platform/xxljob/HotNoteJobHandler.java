@@ -0,0 +1,55 @@
+package com.yanhuo.platform.xxljob;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import com.yanhuo.platform.cache.HotNoteRanking;
+import com.yanhuo.platform.service.NoteService;
+import com.yanhuo.xo.entity.Note;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 从t_note重建笔记热度排行，建议每天执行一次以重置衰减基准时间
+ *
+ * @author xiaozhao
+ */
+@Component
+@Slf4j
+public class HotNoteJobHandler {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    @Autowired
+    NoteService noteService;
+
+    @Autowired
+    HotNoteRanking hotNoteRanking;
+
+    @XxlJob("hotNoteJobHandler")
+    public void execute() throws Exception {
+        log.info("笔记热度排行重建开始--------------------------------");
+        long epoch = System.currentTimeMillis();
+        String lastId = null;
+        int total = 0;
+        hotNoteRanking.startRebuild(epoch);
+        while (true) {
+            // 按主键分段读取，只查询计算热度需要的字段
+            List<Note> noteList = noteService.list(new QueryWrapper<Note>()
+                    .select("id", "view_count", "like_count", "collection_count", "comment_count", "create_date")
+                    .gt(lastId != null, "id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + CHUNK_SIZE));
+            if (noteList.isEmpty()) {
+                break;
+            }
+            hotNoteRanking.rebuildChunk(epoch, noteList);
+            total += noteList.size();
+            lastId = noteList.get(noteList.size() - 1).getId();
+        }
+        hotNoteRanking.finishRebuild(epoch);
+        log.info("笔记热度排行重建结束，笔记数={}--------------------------------", total);
+    }
+}
@@ -1,23 +1,18 @@
 package com.yanhuo.platform.xxljob;
 
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.xxl.job.core.handler.annotation.XxlJob;
-import com.yanhuo.common.utils.ConvertUtils;
-import com.yanhuo.platform.client.EsClient;
-import com.yanhuo.platform.service.*;
-import com.yanhuo.xo.entity.*;
-import com.yanhuo.xo.vo.NoteSearchVo;
+import com.yanhuo.platform.index.NoteIndexer;
+import com.yanhuo.platform.publish.NotePublishPipeline;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
-
 /**
+ * 笔记es索引同步
+ * <p>
+ * noteJobHandler定时增量同步修改过的笔记，noteReindexJobHandler手动执行全量重建，
+ * notePublishRetryJobHandler定时重新发布失败和处理中超时的笔记。
+ *
  * @author xiaozhao
  */
 @Component
@@ -25,60 +20,29 @@ import java.util.stream.Collectors;
 public class NoteJobHandler {
 
     @Autowired
-    EsClient esClient;
-
-    @Autowired
-    NoteService noteService;
-
-    @Autowired
-    UserService userService;
-
-    @Autowired
-    TagNoteRelationService tagNoteRelationService;
+    NoteIndexer noteIndexer;
 
     @Autowired
-    TagService tagService;
-
-    @Autowired
-    CategoryService categoryService;
-
+    NotePublishPipeline notePublishPipeline;
 
     @XxlJob("noteJobHandler")
     public void execute() throws Exception {
-        log.info("es数据同步开始--------------------------------");
-        List<NoteSearchVo> noteSearchVoList = new ArrayList<>();
-        List<Note> noteList = noteService.list();
-        List<String> uids = noteList.stream().map(Note::getUid).collect(Collectors.toList());
-        List<User> userList = userService.listByIds(uids);
-        HashMap<String, User> userMap = new HashMap<>();
-        userList.forEach(item -> userMap.put(item.getId(), item));
-        User user;
-        for (Note note : noteList) {
-            NoteSearchVo noteSearchVo = ConvertUtils.sourceToTarget(note, NoteSearchVo.class);
-            user = userMap.get(note.getUid());
-            //懒得优化了
-            List<TagNoteRelation> tagNoteRelationList = tagNoteRelationService.list(new QueryWrapper<TagNoteRelation>().eq("nid", note.getId()));
-            if (!tagNoteRelationList.isEmpty()) {
-                Set<String> tids = tagNoteRelationList.stream().map(TagNoteRelation::getTid).collect(Collectors.toSet());
-                List<Tag> tags = tagService.listByIds(tids);
-                String tagStr = tags.stream().map(Tag::getTitle).collect(Collectors.joining(","));
-                noteSearchVo.setTags(tagStr);
-            } else {
-                noteSearchVo.setTags("");
-            }
+        log.info("es增量同步开始--------------------------------");
+        int total = noteIndexer.indexChanged();
+        log.info("es增量同步结束，笔记数={}--------------------------------", total);
+    }
+
+    @XxlJob("noteReindexJobHandler")
+    public void reindex() throws Exception {
+        log.info("es全量重建开始--------------------------------");
+        int total = noteIndexer.reindex();
+        log.info("es全量重建结束，笔记数={}--------------------------------", total);
+    }
 
-            Category category = categoryService.getById(note.getCid());
-            Category parentCategory = categoryService.getById(note.getCpid());
-            noteSearchVo.setUid(user.getId())
-                    .setUsername(user.getUsername())
-                    .setAvatar(user.getAvatar())
-                    .setCategoryName(category.getTitle())
-                    .setCategoryParentName(parentCategory.getTitle())
-                    .setTime(note.getUpdateDate().getTime())
-                    .setIsLoading(false);
-            noteSearchVoList.add(noteSearchVo);
-        }
-        esClient.addNoteBulkData(noteSearchVoList);
-        log.info("es数据同步结束--------------------------------");
+    @XxlJob("notePublishRetryJobHandler")
+    public void retryPublish() throws Exception {
+        log.info("笔记重新发布开始--------------------------------");
+        int total = notePublishPipeline.retryFailed();
+        log.info("笔记重新发布结束，成功数={}--------------------------------", total);
     }
 }
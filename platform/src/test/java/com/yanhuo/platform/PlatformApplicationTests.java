@@ -100,7 +100,7 @@ public class PlatformApplicationTests {
                     .setIsLoading(false);
             noteSearchVoList.add(noteSearchVo);
         }
-        esClient.addNoteBulkData(noteSearchVoList);
+        esClient.addNoteBulkData(noteSearchVoList, null);
     }
 
     @Test
@@ -0,0 +1,154 @@
+package com.yanhuo.platform.performance;
+
+import com.yanhuo.common.auth.AuthContextHolder;
+import com.yanhuo.platform.cache.LikeOrCollectionIndex;
+import com.yanhuo.platform.counter.CountBuffer;
+import com.yanhuo.platform.service.NoteService;
+import com.yanhuo.xo.cache.UserSummaryCache;
+import com.yanhuo.xo.entity.Note;
+import com.yanhuo.xo.vo.UserSummaryVo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * 笔记详情页浏览量性能测试
+ * 并发调用getNoteById，对比浏览量写入缓冲后批量写回(当前实现)与每次访问额外updateById整行(优化前的做法)的吞吐量。
+ * 用户摘要和点赞索引依赖redis，这里用mock代替，只测量数据库读写。
+ */
+@DisplayName("Note View Count Performance Tests")
+class NoteViewCountPerformanceTest extends BasePerformanceTest {
+
+    private static final int NOTE_NUM = 10;
+
+    private static final int THREADS = 20;
+
+    private static final int REQUESTS_PER_THREAD = 50;
+
+    @Autowired
+    private NoteService noteService;
+
+    @Autowired
+    private CountBuffer countBuffer;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @MockBean
+    private UserSummaryCache userSummaryCache;
+
+    @MockBean
+    private LikeOrCollectionIndex likeOrCollectionIndex;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // 清掉上一个测试留下的增量，避免写入本次重建的表
+        countBuffer.flush();
+        when(userSummaryCache.get(anyString())).thenReturn(new UserSummaryVo().setId("1").setUsername("user1").setAvatar("avatar"));
+        when(likeOrCollectionIndex.isLiked(any(), anyInt(), anyString())).thenReturn(false);
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            stmt.execute("DROP TABLE IF EXISTS t_note");
+            stmt.execute("DROP TABLE IF EXISTS t_follower");
+            stmt.execute("DROP TABLE IF EXISTS t_tag_note_relation");
+            stmt.execute("DROP TABLE IF EXISTS t_tag");
+
+            stmt.execute("CREATE TABLE t_note (" +
+                "id VARCHAR(50) PRIMARY KEY, " +
+                "title VARCHAR(50), " +
+                "content TEXT, " +
+                "note_cover VARCHAR(255), " +
+                "note_cover_height INTEGER, " +
+                "uid VARCHAR(50), " +
+                "cid VARCHAR(50), " +
+                "cpid VARCHAR(50), " +
+                "urls TEXT, " +
+                "count INTEGER, " +
+                "sort INTEGER, " +
+                "pinned INTEGER DEFAULT 0, " +
+                "status INTEGER DEFAULT 1, " +
+                "type INTEGER, " +
+                "view_count BIGINT DEFAULT 0, " +
+                "like_count BIGINT DEFAULT 0, " +
+                "collection_count BIGINT DEFAULT 0, " +
+                "comment_count BIGINT DEFAULT 0, " +
+                "creator VARCHAR(50), " +
+                "create_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                "updater VARCHAR(50), " +
+                "update_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                ")");
+            stmt.execute("CREATE TABLE t_follower (" +
+                "id VARCHAR(50) PRIMARY KEY, uid VARCHAR(50), fid VARCHAR(50), " +
+                "creator VARCHAR(50), create_date TIMESTAMP, updater VARCHAR(50), update_date TIMESTAMP)");
+            stmt.execute("CREATE TABLE t_tag_note_relation (" +
+                "id VARCHAR(50) PRIMARY KEY, nid VARCHAR(50), tid VARCHAR(50), " +
+                "creator VARCHAR(50), create_date TIMESTAMP, updater VARCHAR(50), update_date TIMESTAMP)");
+            stmt.execute("CREATE TABLE t_tag (" +
+                "id VARCHAR(50) PRIMARY KEY, title VARCHAR(50), like_count BIGINT, sort INTEGER, " +
+                "creator VARCHAR(50), create_date TIMESTAMP, updater VARCHAR(50), update_date TIMESTAMP)");
+
+            stmt.execute("INSERT INTO t_tag (id, title, like_count) VALUES ('t1', 'tag1', 1)");
+            // 少量热点笔记，模拟详情页集中访问
+            for (int i = 1; i <= NOTE_NUM; i++) {
+                stmt.execute("INSERT INTO t_note (id, title, uid) VALUES (" +
+                    "'" + i + "', " +
+                    "'note" + i + "', " +
+                    "'1')");
+                stmt.execute("INSERT INTO t_tag_note_relation (id, nid, tid) VALUES ('r" + i + "', '" + i + "', 't1')");
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("浏览量逐次更新性能测试(优化前)")
+    void testUpdateByIdViewCountPerformance() {
+        // 优化前getNoteById在返回前updateById整行，这里在当前实现之后补上这次写入作为对照
+        Runnable testLogic = () -> {
+            String noteId = String.valueOf((int) (Math.random() * NOTE_NUM) + 1);
+            AuthContextHolder.setUserId("2");
+            try {
+                noteService.getNoteById(noteId);
+                Note note = noteService.getById(noteId);
+                noteService.updateById(note);
+            } finally {
+                AuthContextHolder.removeUserId();
+            }
+        };
+
+        runPerformanceTest("NoteViewCountUpdateById", testLogic, THREADS, REQUESTS_PER_THREAD);
+    }
+
+    @Test
+    @DisplayName("浏览量缓冲批量写回性能测试(优化后)")
+    void testBufferedViewCountPerformance() {
+        Runnable testLogic = () -> {
+            String noteId = String.valueOf((int) (Math.random() * NOTE_NUM) + 1);
+            AuthContextHolder.setUserId("2");
+            try {
+                noteService.getNoteById(noteId);
+            } finally {
+                AuthContextHolder.removeUserId();
+            }
+        };
+
+        runPerformanceTest("NoteViewCountBuffered", testLogic, THREADS, REQUESTS_PER_THREAD);
+        countBuffer.flush();
+
+        // 每次getNoteById都计一次浏览，写回后数据库中的浏览量总和应等于访问次数
+        long total = noteService.list().stream().mapToLong(Note::getViewCount).sum();
+        assertThat(total).isEqualTo((long) THREADS * REQUESTS_PER_THREAD);
+    }
+}
@@ -0,0 +1,175 @@
+package com.yanhuo.platform.unit.cache;
+
+import cn.hutool.json.JSONUtil;
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.platform.cache.CommentTreeCache;
+import com.yanhuo.platform.counter.CountField;
+import com.yanhuo.xo.dao.CommentDao;
+import com.yanhuo.xo.dto.CountDeltaDTO;
+import com.yanhuo.xo.entity.Comment;
+import com.yanhuo.xo.vo.CommentVo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 评论树缓存单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("🌲 评论树缓存测试")
+class CommentTreeCacheTest {
+
+    @Mock
+    private RedisUtils redisUtils;
+
+    @Mock
+    private CommentDao commentDao;
+
+    @InjectMocks
+    private CommentTreeCache commentTreeCache;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(commentTreeCache, "childSize", 3);
+        ReflectionTestUtils.setField(commentTreeCache, "ttl", 86400L);
+        ReflectionTestUtils.setField(commentTreeCache, "lockTimeout", 5000L);
+        ReflectionTestUtils.setField(commentTreeCache, "lockWait", 200L);
+    }
+
+    @Test
+    @DisplayName("✅ 命中缓存时一次读取得到总数和评论")
+    void shouldReadPageFromCache() {
+        CommentVo commentVo = new CommentVo();
+        commentVo.setId("c1");
+        commentVo.setChildren(Collections.singletonList(new CommentVo().setId("c2").setPid("c1")));
+        List<Object> result = Arrays.asList("5", JSONUtil.toJsonStr(commentVo));
+        doReturn(result).when(redisUtils).execute(any(), anyList(), any());
+
+        CommentTreeCache.TreePage page = commentTreeCache.getPage("n1", 0, 6);
+
+        assertThat(page.getTotal()).isEqualTo(5L);
+        assertThat(page.getRecords()).extracting(CommentVo::getId).containsExactly("c1");
+        assertThat(page.getRecords().get(0).getChildren()).extracting(CommentVo::getId).containsExactly("c2");
+        verifyNoInteractions(commentDao);
+    }
+
+    @Test
+    @DisplayName("✅ 缓存不存在时拿到重建锁后从数据库重建")
+    void shouldRebuildOnMiss() {
+        List<Object[]> calls = recordScriptCalls();
+        when(redisUtils.setIfAbsent(eq("commentTree:lock:n1"), anyString(), eq(5000L), any())).thenReturn(true);
+        when(commentDao.selectList(any())).thenReturn(Collections.singletonList(comment("c1", "0", 2L)));
+        when(commentDao.selectTopChildren(anyCollection(), eq(3))).thenReturn(Collections.singletonList(comment("c2", "c1", 1L)));
+
+        commentTreeCache.getPage("n1", 0, 6);
+
+        // 读取、重建写入、释放锁、再次读取
+        assertThat(calls).hasSize(4);
+        Object[] writeArgs = calls.get(1);
+        assertThat(writeArgs[0]).isEqualTo("1");
+        assertThat(writeArgs[2]).isEqualTo("c1");
+        assertThat(writeArgs[3]).isEqualTo("2");
+        assertThat((String) writeArgs[4]).contains("c2");
+    }
+
+    @Test
+    @DisplayName("🔒 其他请求正在重建时等待，不访问数据库")
+    void shouldWaitForOtherRebuild() {
+        recordScriptCalls();
+        when(redisUtils.setIfAbsent(eq("commentTree:lock:n1"), anyString(), eq(5000L), any())).thenReturn(false);
+        when(redisUtils.hasKey("commentTree:node:n1")).thenReturn(false, true);
+
+        commentTreeCache.getPage("n1", 0, 6);
+
+        verify(redisUtils, times(2)).hasKey("commentTree:node:n1");
+        verifyNoInteractions(commentDao);
+    }
+
+    @Test
+    @DisplayName("🔄 重建期间有增量更新时，重建写入后重新更新这些节点")
+    void shouldRefreshDirtyAfterRebuild() {
+        List<Object[]> calls = new ArrayList<>();
+        doAnswer(invocation -> {
+            Object[] args = (Object[]) invocation.getRawArguments()[2];
+            calls.add(args);
+            // 重建写入返回重建期间记录的一级评论
+            return "1".equals(args[0]) ? Collections.singletonList("c5") : null;
+        }).when(redisUtils).execute(any(), anyList(), any());
+        when(redisUtils.setIfAbsent(eq("commentTree:lock:n1"), anyString(), eq(5000L), any())).thenReturn(true);
+        when(commentDao.selectList(any())).thenReturn(Collections.singletonList(comment("c1", "0", 2L)),
+                Collections.singletonList(comment("c5", "0", 0L)));
+        when(commentDao.selectTopChildren(anyCollection(), eq(3))).thenReturn(Collections.emptyList());
+
+        commentTreeCache.getPage("n1", 0, 6);
+
+        // 读取、重建写入、更新c5、释放锁、再次读取
+        assertThat(calls).hasSize(5);
+        assertThat(calls.get(2)[0]).isEqualTo("0");
+        assertThat(calls.get(2)[2]).isEqualTo("c5");
+    }
+
+    @Test
+    @DisplayName("✅ 同步二级评论后更新所属的一级评论节点")
+    void shouldRefreshParentOnCommentAdded() {
+        List<Object[]> calls = recordScriptCalls();
+        when(commentDao.selectList(any())).thenReturn(Collections.singletonList(comment("c1", "0", 0L)));
+        when(commentDao.selectTopChildren(anyCollection(), eq(3))).thenReturn(Collections.emptyList());
+
+        commentTreeCache.onCommentsAdded(Collections.singletonList(comment("c9", "c1", 0L)));
+
+        assertThat(calls).hasSize(1);
+        assertThat(calls.get(0)[0]).isEqualTo("0");
+        assertThat(calls.get(0)[2]).isEqualTo("c1");
+    }
+
+    @Test
+    @DisplayName("✅ 已缓存时直接返回一级评论排名")
+    void shouldReturnRankFromCache() {
+        when(redisUtils.hasKey("commentTree:node:n1")).thenReturn(true);
+        when(redisUtils.zReverseRank("commentTree:rank:n1", "c1")).thenReturn(15L);
+
+        assertThat(commentTreeCache.rank("n1", "c1")).isEqualTo(15L);
+        verifyNoInteractions(commentDao);
+    }
+
+    @Test
+    @DisplayName("✅ 非评论计数写回时不更新缓存")
+    void shouldIgnoreOtherFields() {
+        commentTreeCache.onFlush(CountField.NOTE_LIKE, Collections.singletonList(new CountDeltaDTO("n1", 1L)));
+
+        verifyNoInteractions(commentDao, redisUtils);
+    }
+
+    /**
+     * 记录每次执行脚本的参数，脚本返回空
+     */
+    private List<Object[]> recordScriptCalls() {
+        List<Object[]> calls = new ArrayList<>();
+        doAnswer(invocation -> {
+            calls.add((Object[]) invocation.getRawArguments()[2]);
+            return null;
+        }).when(redisUtils).execute(any(), anyList(), any());
+        return calls;
+    }
+
+    private Comment comment(String id, String pid, long likeCount) {
+        Comment comment = new Comment();
+        comment.setId(id);
+        comment.setNid("n1");
+        comment.setPid(pid);
+        comment.setLikeCount(likeCount);
+        comment.setCreateDate(new Date());
+        return comment;
+    }
+}
@@ -0,0 +1,104 @@
+package com.yanhuo.platform.unit.cache;
+
+import com.yanhuo.common.constant.CacheConstant;
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.platform.cache.HotNoteRanking;
+import com.yanhuo.platform.counter.CountField;
+import com.yanhuo.xo.dto.CountDeltaDTO;
+import com.yanhuo.xo.entity.Note;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 笔记热度排行单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("🔥 笔记热度排行测试")
+class HotNoteRankingTest {
+
+    @Mock
+    private RedisUtils redisUtils;
+
+    @InjectMocks
+    private HotNoteRanking hotNoteRanking;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(hotNoteRanking, "halfLife", 86400000L);
+        ReflectionTestUtils.setField(hotNoteRanking, "maxSize", 10000L);
+    }
+
+    @Test
+    @DisplayName("✅ 点赞增量按权重和笔记发布时间累加到排行")
+    void shouldIncrementScoreWithWeight() {
+        long time = System.currentTimeMillis() - 86400000L;
+        String noteId = snowflakeId(time);
+
+        hotNoteRanking.onFlush(CountField.NOTE_LIKE, Arrays.asList(new CountDeltaDTO(noteId, 2L), new CountDeltaDTO("n2", -1L)));
+
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(redisUtils).execute(any(), eq(Arrays.asList(CacheConstant.HOT_NOTE_KEY, CacheConstant.HOT_NOTE_EPOCH_KEY,
+                CacheConstant.HOT_NOTE_KEY + ":rebuildState", CacheConstant.HOT_NOTE_KEY + ":rebuild")), captor.capture());
+        List<Object> args = captor.getAllValues();
+        assertThat(args.subList(0, 2)).containsExactly("86400000", "10000");
+        assertThat(args.subList(3, 6)).containsExactly(noteId, "6.0", String.valueOf(time));
+        assertThat(args.subList(6, 8)).containsExactly("n2", "-3.0");
+    }
+
+    @Test
+    @DisplayName("✅ 从雪花id取出发布时间，其他id使用默认时间")
+    void shouldExtractNoteTimeFromId() {
+        long time = 1700000000000L;
+
+        assertThat(HotNoteRanking.noteTime(snowflakeId(time), System.currentTimeMillis())).isEqualTo(time);
+        assertThat(HotNoteRanking.noteTime("n1", 123L)).isEqualTo(123L);
+        assertThat(HotNoteRanking.noteTime("1", 123L)).isEqualTo(123L);
+    }
+
+    @Test
+    @DisplayName("✅ 重建时先清空旧结果，每批写入后记录进度")
+    @SuppressWarnings("unchecked")
+    void shouldTrackRebuildProgress() {
+        long epoch = System.currentTimeMillis();
+        Note note = new Note();
+        note.setId(snowflakeId(epoch));
+        note.setLikeCount(1L);
+        note.setCreateDate(new Date(epoch));
+
+        hotNoteRanking.startRebuild(epoch);
+        hotNoteRanking.rebuildChunk(epoch, Collections.singletonList(note));
+
+        verify(redisUtils).delete(CacheConstant.HOT_NOTE_KEY + ":rebuild");
+        ArgumentCaptor<Set<TypedTuple<String>>> captor = ArgumentCaptor.forClass(Set.class);
+        verify(redisUtils).zAdd(eq(CacheConstant.HOT_NOTE_KEY + ":rebuild"), captor.capture());
+        assertThat(captor.getValue().iterator().next().getScore()).isCloseTo(3D, within(0.01));
+        verify(redisUtils).hPut(CacheConstant.HOT_NOTE_KEY + ":rebuildState", "progress", note.getId());
+    }
+
+    @Test
+    @DisplayName("✅ 非笔记计数不影响排行")
+    void shouldIgnoreNonNoteFields() {
+        hotNoteRanking.onFlush(CountField.USER_FAN, Collections.singletonList(new CountDeltaDTO("u1", 1L)));
+
+        verifyNoInteractions(redisUtils);
+    }
+
+    private static String snowflakeId(long time) {
+        return String.valueOf((time - 1288834974657L) << 22);
+    }
+}
@@ -0,0 +1,90 @@
+package com.yanhuo.platform.unit.cache;
+
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.platform.cache.LikeOrCollectionIndex;
+import com.yanhuo.xo.dao.LikeOrCollectionDao;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 点赞收藏关系索引单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("❤️ 点赞收藏索引测试")
+class LikeOrCollectionIndexTest {
+
+    private static final String KEY = "likeOrCollection:user-1:2";
+
+    @Mock
+    private RedisUtils redisUtils;
+
+    @Mock
+    private LikeOrCollectionDao likeOrCollectionDao;
+
+    @InjectMocks
+    private LikeOrCollectionIndex likeOrCollectionIndex;
+
+    @Test
+    @DisplayName("✅ 索引已加载时批量判断只访问redis")
+    void shouldLookupWithoutDatabaseWhenWarm() {
+        when(redisUtils.hasKey(KEY)).thenReturn(true);
+        when(redisUtils.sIsMembers(eq(KEY), anyList())).thenReturn(Arrays.asList(true, false, true));
+
+        Set<String> liked = likeOrCollectionIndex.getLikedSet("user-1", 2, Arrays.asList("c1", "c2", "c3"));
+
+        assertThat(liked).containsExactlyInAnyOrder("c1", "c3");
+        verifyNoInteractions(likeOrCollectionDao);
+    }
+
+    @Test
+    @DisplayName("✅ 索引未加载时从数据库加载到临时key再原子替换")
+    @SuppressWarnings("unchecked")
+    void shouldWarmFromDatabaseOnMiss() {
+        when(redisUtils.hasKey(KEY)).thenReturn(false);
+        when(likeOrCollectionDao.selectObjs(any())).thenReturn(Collections.singletonList("c1"));
+        when(redisUtils.sIsMembers(eq(KEY), anyList())).thenReturn(Collections.singletonList(true));
+
+        assertThat(likeOrCollectionIndex.isLiked("user-1", 2, "c1")).isTrue();
+
+        verify(redisUtils).setEx(eq(KEY + ":loading"), eq("1"), anyLong(), any());
+        verify(redisUtils).sAdd(startsWith(KEY + ":tmp:"), eq(""), eq("c1"));
+        verify(redisUtils, never()).sAdd(eq(KEY), any());
+        ArgumentCaptor<List<String>> keysCaptor = ArgumentCaptor.forClass(List.class);
+        verify(redisUtils).execute(any(), keysCaptor.capture(), eq("259200"));
+        assertThat(keysCaptor.getValue().get(0)).isEqualTo(KEY);
+        assertThat(keysCaptor.getValue().get(1)).startsWith(KEY + ":tmp:");
+        assertThat(keysCaptor.getValue().subList(2, 4)).containsExactly(KEY + ":journal", KEY + ":loading");
+    }
+
+    @Test
+    @DisplayName("✅ 未登录用户直接返回空集合")
+    void shouldReturnEmptyForAnonymousUser() {
+        assertThat(likeOrCollectionIndex.getLikedSet(null, 1, Collections.singletonList("n1"))).isEmpty();
+        verifyNoInteractions(redisUtils, likeOrCollectionDao);
+    }
+
+    @Test
+    @DisplayName("✅ 增量维护在一个脚本中判断索引是否存在并修改")
+    void shouldUpdateWithSingleScript() {
+        likeOrCollectionIndex.update("user-1", 2, "c1", true);
+
+        verify(redisUtils).execute(any(), eq(Arrays.asList(KEY, KEY + ":loading", KEY + ":journal")),
+                eq("1"), eq("c1"), eq("60"));
+        verify(redisUtils, never()).hasKey(anyString());
+        verify(redisUtils, never()).sAdd(anyString(), any());
+    }
+}
@@ -0,0 +1,97 @@
+package com.yanhuo.platform.unit.cache;
+
+import com.yanhuo.platform.cache.TagDictionary;
+import com.yanhuo.xo.dao.TagDao;
+import com.yanhuo.xo.entity.Tag;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 标签字典单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("🏷️ 标签字典测试")
+class TagDictionaryTest {
+
+    @Mock
+    private TagDao tagDao;
+
+    @InjectMocks
+    private TagDictionary tagDictionary;
+
+    @Test
+    @DisplayName("✅ 已存在的标签忽略大小写命中，只批量插入新标签")
+    @SuppressWarnings("unchecked")
+    void shouldInsertOnlyUnknownTags() {
+        when(tagDao.selectList(any()))
+                .thenReturn(Collections.singletonList(tag("1", "Anime")))
+                .thenReturn(Collections.singletonList(tag("2", "壁纸")));
+
+        Map<String, String> result = tagDictionary.getOrCreate(Arrays.asList(" anime ", "壁纸", "壁纸"));
+
+        assertThat(result).containsEntry("anime", "1").containsEntry("壁纸", "2");
+        ArgumentCaptor<List<Tag>> captor = ArgumentCaptor.forClass(List.class);
+        verify(tagDao).insertIgnoreBatch(captor.capture());
+        assertThat(captor.getValue()).extracting(Tag::getTitle).containsExactly("壁纸");
+    }
+
+    @Test
+    @DisplayName("✅ 字典加载后再次查询不访问数据库")
+    void shouldNotQueryDatabaseWhenAllTagsKnown() {
+        when(tagDao.selectList(any())).thenReturn(Collections.singletonList(tag("1", "风景")));
+
+        tagDictionary.getOrCreate(Collections.singletonList("风景"));
+        Map<String, String> result = tagDictionary.getOrCreate(Collections.singletonList("风景"));
+
+        assertThat(result).containsEntry("风景", "1");
+        verify(tagDao, times(1)).selectList(any());
+        verify(tagDao, never()).insertIgnoreBatch(anyList());
+    }
+
+    @Test
+    @DisplayName("✅ 带重音和全角的标题与已有标签视为相同")
+    void shouldIgnoreAccentsLikeCollation() {
+        when(tagDao.selectList(any())).thenReturn(Collections.singletonList(tag("1", "Café")));
+
+        Map<String, String> result = tagDictionary.getOrCreate(Arrays.asList("cafe", "ＣＡＦＥ"));
+
+        assertThat(TagDictionary.normalize(" Café ")).isEqualTo("cafe");
+        assertThat(result).containsEntry("cafe", "1");
+        verify(tagDao, never()).insertIgnoreBatch(anyList());
+    }
+
+    @Test
+    @DisplayName("✅ 插入后按规范化标题回查不到时按数据库比较结果逐个查询")
+    void shouldResolveThroughDatabaseOnMiss() {
+        when(tagDao.selectList(any()))
+                .thenReturn(Collections.emptyList())
+                .thenReturn(Collections.singletonList(tag("7", "Straße")));
+        when(tagDao.selectOne(any())).thenReturn(tag("7", "Straße"));
+
+        Map<String, String> result = tagDictionary.getOrCreate(Collections.singletonList("strasse"));
+
+        assertThat(result).containsEntry("strasse", "7");
+        verify(tagDao).selectOne(any());
+    }
+
+    private Tag tag(String id, String title) {
+        Tag tag = new Tag();
+        tag.setId(id);
+        tag.setTitle(title);
+        return tag;
+    }
+}
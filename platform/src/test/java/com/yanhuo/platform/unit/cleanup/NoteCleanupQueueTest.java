@@ -0,0 +1,135 @@
+package com.yanhuo.platform.unit.cleanup;
+
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.platform.cleanup.NoteCleanupQueue;
+import com.yanhuo.platform.client.EsClient;
+import com.yanhuo.platform.client.OssClient;
+import com.yanhuo.xo.dao.NoteDao;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 笔记删除清理队列单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("🧹 笔记删除清理队列测试")
+class NoteCleanupQueueTest {
+
+    private static final String QUEUE_KEY = "noteCleanup:queue";
+
+    @Mock
+    private EsClient esClient;
+
+    @Mock
+    private OssClient ossClient;
+
+    @Mock
+    private NoteDao noteDao;
+
+    @Mock
+    private RedisUtils redisUtils;
+
+    @InjectMocks
+    private NoteCleanupQueue noteCleanupQueue;
+
+    @BeforeEach
+    void setUp() {
+        // 同步执行，便于断言
+        ReflectionTestUtils.setField(noteCleanupQueue, "executor", (Executor) Runnable::run);
+        ReflectionTestUtils.setField(noteCleanupQueue, "type", 1);
+        ReflectionTestUtils.setField(noteCleanupQueue, "maxRetries", 3);
+        ReflectionTestUtils.setField(noteCleanupQueue, "retryInterval", 1000L);
+        ReflectionTestUtils.setField(noteCleanupQueue, "lease", 300000L);
+        ReflectionTestUtils.setField(noteCleanupQueue, "commitTimeout", 600000L);
+    }
+
+    @Test
+    @DisplayName("✅ 任务先写入队列，1000条笔记分段批量删除后移出队列")
+    void shouldDeleteInChunks() {
+        when(noteDao.selectCount(any())).thenReturn(0L);
+        List<String> noteIds = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            noteIds.add("note-" + i);
+        }
+
+        noteCleanupQueue.submit(noteIds, Collections.singletonList("a.jpg"));
+
+        String member = submittedMember();
+        verify(esClient, times(2)).deleteNoteBulkData(argThat(list -> list.size() == 500));
+        verify(ossClient, times(1)).deleteBatch(eq(Collections.singletonList("a.jpg")), eq(1));
+        verify(redisUtils, times(1)).zRemove(QUEUE_KEY, member);
+    }
+
+    @Test
+    @DisplayName("🔁 es删除失败时不影响oss清理，任务带着重试次数放回队列")
+    void shouldRescheduleOnFailure() {
+        when(noteDao.selectCount(any())).thenReturn(0L);
+        doThrow(new RuntimeException("es down")).when(esClient).deleteNoteBulkData(anyList());
+
+        noteCleanupQueue.submit(Collections.singletonList("note-1"), Collections.singletonList("a.jpg"));
+
+        String member = submittedMember();
+        verify(esClient, times(1)).deleteNoteBulkData(anyList());
+        verify(ossClient, times(1)).deleteBatch(anyList(), eq(1));
+        verify(redisUtils, never()).zRemove(any(), any());
+        verify(redisUtils, times(1)).execute(any(), eq(Collections.singletonList(QUEUE_KEY)), eq(member),
+                argThat((Object next) -> String.valueOf(next).contains("\"attempts\":1")), any());
+    }
+
+    @Test
+    @DisplayName("☠️ 重试用完的任务移入死信列表")
+    void shouldMoveToDeadList() {
+        String member = "{\"id\":\"t1\",\"noteIds\":[\"note-1\"],\"paths\":[],\"attempts\":2,\"createTime\":"
+                + System.currentTimeMillis() + "}";
+        when(redisUtils.execute(any(), eq(Collections.singletonList(QUEUE_KEY)), any(), any(), any()))
+                .thenReturn(Collections.singletonList(member));
+        when(noteDao.selectCount(any())).thenReturn(0L);
+        doThrow(new RuntimeException("es down")).when(esClient).deleteNoteBulkData(anyList());
+
+        noteCleanupQueue.poll();
+
+        verify(redisUtils, times(1)).execute(any(), eq(Arrays.asList(QUEUE_KEY, "noteCleanup:dead")), eq(member));
+    }
+
+    @Test
+    @DisplayName("⏳ 笔记仍存在时不清理，未超时放回队列，超时后丢弃")
+    void shouldWaitForCommit() {
+        when(noteDao.selectCount(any())).thenReturn(1L);
+
+        noteCleanupQueue.submit(Collections.singletonList("note-1"), Collections.emptyList());
+
+        String member = submittedMember();
+        verify(esClient, never()).deleteNoteBulkData(anyList());
+        verify(redisUtils, times(1)).execute(any(), eq(Collections.singletonList(QUEUE_KEY)), eq(member), eq(member), any());
+
+        ReflectionTestUtils.setField(noteCleanupQueue, "commitTimeout", -1L);
+        noteCleanupQueue.submit(Collections.singletonList("note-2"), Collections.emptyList());
+
+        verify(redisUtils, times(1)).zRemove(eq(QUEUE_KEY), argThat((Object m) -> String.valueOf(m).contains("note-2")));
+    }
+
+    private String submittedMember() {
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(redisUtils, atLeastOnce()).zAdd(eq(QUEUE_KEY), captor.capture(), anyDouble());
+        String member = captor.getValue();
+        assertTrue(member.contains("\"attempts\":0"));
+        return member;
+    }
+}
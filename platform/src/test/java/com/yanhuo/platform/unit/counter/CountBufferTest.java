@@ -0,0 +1,111 @@
+package com.yanhuo.platform.unit.counter;
+
+import com.yanhuo.platform.counter.CountBuffer;
+import com.yanhuo.platform.counter.CountField;
+import com.yanhuo.xo.dao.NoteDao;
+import com.yanhuo.xo.dao.UserDao;
+import com.yanhuo.xo.dto.CountDeltaDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 计数增量合并缓冲单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("🔢 计数增量缓冲测试")
+class CountBufferTest {
+
+    @Mock
+    private ApplicationContext applicationContext;
+
+    @Mock
+    private NoteDao noteDao;
+
+    @Mock
+    private UserDao userDao;
+
+    @InjectMocks
+    private CountBuffer countBuffer;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(countBuffer, "batchSize", 500);
+        ReflectionTestUtils.setField(countBuffer, "shutdownRetries", 2);
+        ReflectionTestUtils.setField(countBuffer, "shutdownRetryInterval", 0L);
+    }
+
+    @Test
+    @DisplayName("✅ 同一行的多次增量应合并为一条更新")
+    @SuppressWarnings("unchecked")
+    void shouldCoalesceDeltasForSameRow() {
+        when(applicationContext.getBean(NoteDao.class)).thenReturn(noteDao);
+
+        for (int i = 0; i < 10; i++) {
+            countBuffer.increment(CountField.NOTE_LIKE, "note-1");
+        }
+        countBuffer.add(CountField.NOTE_LIKE, "note-2", -1);
+
+        assertThat(countBuffer.merge(CountField.NOTE_LIKE, "note-1", 5L)).isEqualTo(15L);
+
+        countBuffer.flush();
+
+        ArgumentCaptor<List<CountDeltaDTO>> captor = ArgumentCaptor.forClass(List.class);
+        verify(noteDao, times(1)).incrCountBatch(eq("like_count"), captor.capture());
+        assertThat(captor.getValue()).containsExactlyInAnyOrder(
+                new CountDeltaDTO("note-1", 10L),
+                new CountDeltaDTO("note-2", -1L));
+        assertThat(countBuffer.getPending(CountField.NOTE_LIKE, "note-1")).isZero();
+        verifyNoInteractions(userDao);
+    }
+
+    @Test
+    @DisplayName("❌ 写回失败时增量应放回缓冲")
+    void shouldKeepDeltasWhenFlushFails() {
+        when(applicationContext.getBean(UserDao.class)).thenReturn(userDao);
+        when(userDao.incrCountBatch(anyString(), anyList())).thenThrow(new RuntimeException("db down"));
+
+        countBuffer.add(CountField.USER_FAN, "user-1", 3);
+        countBuffer.flush();
+
+        assertThat(countBuffer.getPending(CountField.USER_FAN, "user-1")).isEqualTo(3L);
+    }
+
+    @Test
+    @DisplayName("📉 合并后的计数不应小于0")
+    void shouldNotMergeBelowZero() {
+        countBuffer.add(CountField.ALBUM_IMG, "album-1", -10);
+
+        assertThat(countBuffer.merge(CountField.ALBUM_IMG, "album-1", 3L)).isZero();
+    }
+
+    @Test
+    @DisplayName("🛑 应用停止时写回剩余增量，失败时重试")
+    void shouldFlushOnStopWithRetry() {
+        when(applicationContext.getBean(UserDao.class)).thenReturn(userDao);
+        when(userDao.incrCountBatch(anyString(), anyList()))
+                .thenThrow(new RuntimeException("db down"))
+                .thenReturn(1);
+
+        countBuffer.start();
+        countBuffer.add(CountField.USER_TREND, "user-1", 2);
+        countBuffer.stop();
+
+        verify(userDao, times(2)).incrCountBatch(eq("trend_count"), anyList());
+        assertThat(countBuffer.getPending(CountField.USER_TREND, "user-1")).isZero();
+        assertThat(countBuffer.isRunning()).isFalse();
+    }
+}
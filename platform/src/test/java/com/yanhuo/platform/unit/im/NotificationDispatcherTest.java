@@ -0,0 +1,115 @@
+package com.yanhuo.platform.unit.im;
+
+import com.yanhuo.common.im.CountNotice;
+import com.yanhuo.platform.client.ChatClient;
+import com.yanhuo.platform.im.NotificationDispatcher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 消息通知分发单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("🔔 消息通知分发测试")
+class NotificationDispatcherTest {
+
+    @Mock
+    private ChatClient chatClient;
+
+    @InjectMocks
+    private NotificationDispatcher notificationDispatcher;
+
+    @BeforeEach
+    void setUp() {
+        // 同步执行，便于断言
+        ReflectionTestUtils.setField(notificationDispatcher, "executor", (Executor) Runnable::run);
+        ReflectionTestUtils.setField(notificationDispatcher, "queueCapacity", 3);
+        ReflectionTestUtils.setField(notificationDispatcher, "batchSize", 200);
+        ReflectionTestUtils.setField(notificationDispatcher, "maxRetries", 2);
+        ReflectionTestUtils.setField(notificationDispatcher, "retryInterval", 0L);
+        notificationDispatcher.init();
+    }
+
+    @Test
+    @DisplayName("✅ 同一用户的通知合并为一条增量")
+    @SuppressWarnings("unchecked")
+    void shouldCoalescePerRecipient() {
+        notificationDispatcher.dispatch("user-1", 0);
+        notificationDispatcher.dispatch("user-1", 0);
+        notificationDispatcher.dispatch("user-2", 2);
+
+        notificationDispatcher.flush();
+
+        ArgumentCaptor<List<CountNotice>> captor = ArgumentCaptor.forClass(List.class);
+        verify(chatClient, times(1)).sendCountBatch(captor.capture());
+        List<CountNotice> batch = captor.getValue();
+        assertEquals(2, batch.size());
+        assertEquals("user-1", batch.get(0).getAcceptUid());
+        assertEquals(2L, batch.get(0).getLikeOrCollectionCount());
+        assertEquals(1L, batch.get(1).getFollowCount());
+    }
+
+    @Test
+    @DisplayName("✅ 队列满时丢弃通知，不阻塞调用方")
+    void shouldDropWhenQueueFull() {
+        for (int i = 0; i < 5; i++) {
+            notificationDispatcher.dispatch("user-" + i, 1);
+        }
+
+        assertEquals(2L, notificationDispatcher.getDroppedCount());
+        notificationDispatcher.flush();
+        verify(chatClient).sendCountBatch(argThat(list -> list.size() == 3));
+    }
+
+    @Test
+    @DisplayName("✅ 调用im失败后用相同的通知id重试")
+    @SuppressWarnings("unchecked")
+    void shouldRetryOnFailure() {
+        when(chatClient.sendCountBatch(anyList())).thenThrow(new RuntimeException("im不可用")).thenReturn(null);
+
+        notificationDispatcher.dispatch("user-1", 1);
+        notificationDispatcher.flush();
+
+        ArgumentCaptor<List<CountNotice>> captor = ArgumentCaptor.forClass(List.class);
+        verify(chatClient, times(2)).sendCountBatch(captor.capture());
+        String id = captor.getAllValues().get(0).get(0).getId();
+        assertNotNull(id);
+        assertEquals(id, captor.getAllValues().get(1).get(0).getId());
+    }
+
+    @Test
+    @DisplayName("🛑 关闭时在当前线程发送，不使用已关闭的线程池")
+    void shouldFlushOnCallerThreadWhenDestroyed() {
+        ReflectionTestUtils.setField(notificationDispatcher, "executor", (Executor) task -> {
+            throw new RejectedExecutionException("线程池已关闭");
+        });
+
+        notificationDispatcher.dispatch("user-1", 1);
+        notificationDispatcher.destroy();
+
+        verify(chatClient, times(1)).sendCountBatch(anyList());
+    }
+
+    @Test
+    @DisplayName("✅ 队列为空时不调用im")
+    void shouldSkipWhenEmpty() {
+        notificationDispatcher.flush();
+
+        verifyNoInteractions(chatClient);
+    }
+}
@@ -0,0 +1,210 @@
+package com.yanhuo.platform.unit.index;
+
+import com.yanhuo.common.constant.CacheConstant;
+import com.yanhuo.common.constant.NoteStatusConstant;
+import com.yanhuo.common.exception.YanHuoException;
+import com.yanhuo.common.result.Result;
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.platform.client.EsClient;
+import com.yanhuo.platform.index.NoteIndexer;
+import com.yanhuo.xo.cache.UserSummaryCache;
+import com.yanhuo.xo.dao.CategoryDao;
+import com.yanhuo.xo.dao.NoteDao;
+import com.yanhuo.xo.dao.TagDao;
+import com.yanhuo.xo.dao.TagNoteRelationDao;
+import com.yanhuo.xo.entity.Category;
+import com.yanhuo.xo.entity.Note;
+import com.yanhuo.xo.entity.Tag;
+import com.yanhuo.xo.entity.TagNoteRelation;
+import com.yanhuo.xo.vo.NoteSearchVo;
+import com.yanhuo.xo.vo.UserSummaryVo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 笔记索引同步单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("🔎 笔记索引同步测试")
+class NoteIndexerTest {
+
+    @Mock
+    private NoteDao noteDao;
+
+    @Mock
+    private TagNoteRelationDao tagNoteRelationDao;
+
+    @Mock
+    private TagDao tagDao;
+
+    @Mock
+    private CategoryDao categoryDao;
+
+    @Mock
+    private UserSummaryCache userSummaryCache;
+
+    @Mock
+    private EsClient esClient;
+
+    @Mock
+    private RedisUtils redisUtils;
+
+    @InjectMocks
+    private NoteIndexer noteIndexer;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(noteIndexer, "chunkSize", 2);
+        ReflectionTestUtils.setField(noteIndexer, "overlap", 60000L);
+        ReflectionTestUtils.setField(noteIndexer, "maxRetries", 3);
+        ReflectionTestUtils.setField(noteIndexer, "retryInterval", 0L);
+        ReflectionTestUtils.setField(noteIndexer, "lockTimeout", 600000L);
+        lenient().when(redisUtils.setIfAbsent(eq(CacheConstant.NOTE_INDEX_LOCK_KEY), anyString(), anyLong(), any())).thenReturn(true);
+        // 续期锁
+        lenient().when(redisUtils.execute(any(), anyList(), any(), any())).thenReturn(1L);
+        lenient().when(userSummaryCache.getAll(any())).thenReturn(Collections.singletonMap("user-1",
+                new UserSummaryVo().setId("user-1").setUsername("u").setAvatar("a")));
+    }
+
+    @Test
+    @DisplayName("✅ 每种关联数据只批量查询一次")
+    void shouldHydrateWithBatchQueries() {
+        when(tagNoteRelationDao.selectList(any())).thenReturn(Arrays.asList(relation("n1", "t1"), relation("n1", "t2"), relation("n2", "t1")));
+        when(tagDao.selectList(any())).thenReturn(Arrays.asList(tag("t1", "旅行"), tag("t2", "美食")));
+        when(categoryDao.selectList(any())).thenReturn(Arrays.asList(category("c1", "子分类"), category("p1", "父分类")));
+
+        List<NoteSearchVo> result = noteIndexer.hydrate(Arrays.asList(note("n1", 1000L), note("n2", 2000L), note("n3", 3000L)));
+
+        assertThat(result).extracting(NoteSearchVo::getTags).containsExactly("旅行,美食", "旅行", "");
+        assertThat(result).extracting(NoteSearchVo::getCategoryName).containsOnly("子分类");
+        assertThat(result).extracting(NoteSearchVo::getCategoryParentName).containsOnly("父分类");
+        assertThat(result).extracting(NoteSearchVo::getUsername).containsOnly("u");
+        assertThat(result.get(2).getTime()).isEqualTo(3000L);
+        verify(userSummaryCache, times(1)).getAll(any());
+        verify(tagNoteRelationDao, times(1)).selectList(any());
+        verify(tagDao, times(1)).selectList(any());
+        verify(categoryDao, times(1)).selectList(any());
+    }
+
+    @Test
+    @DisplayName("✅ 增量同步分段写入，每段成功后保存同步位置")
+    void shouldIndexChangedInChunks() {
+        when(redisUtils.get(CacheConstant.NOTE_INDEX_WATERMARK_KEY)).thenReturn("100000");
+        when(noteDao.selectList(any())).thenReturn(
+                Arrays.asList(note("n1", 100000L), note("n2", 200000L)),
+                Collections.singletonList(note("n3", 300000L)));
+        when(esClient.addNoteBulkData(anyList(), isNull())).thenAnswer(invocation -> Result.ok());
+
+        int total = noteIndexer.indexChanged();
+
+        assertThat(total).isEqualTo(3);
+        verify(esClient, times(2)).addNoteBulkData(anyList(), isNull());
+        verify(redisUtils).set(CacheConstant.NOTE_INDEX_WATERMARK_KEY, "200000");
+        verify(redisUtils).set(CacheConstant.NOTE_INDEX_WATERMARK_KEY, "300000");
+        // 释放锁
+        verify(redisUtils, times(1)).execute(any(), eq(Collections.singletonList(CacheConstant.NOTE_INDEX_LOCK_KEY)), anyString());
+    }
+
+    @Test
+    @DisplayName("🗑️ 不再是已发布状态的笔记从es删除，状态为空的视为已发布")
+    void shouldDeleteUnpublishedNotes() {
+        Note failed = note("n2", 2000L);
+        failed.setStatus(NoteStatusConstant.FAILED);
+        Note published = note("n3", 3000L);
+        published.setStatus(NoteStatusConstant.PUBLISHED);
+        when(noteDao.selectList(any())).thenReturn(Arrays.asList(note("n1", 1000L), failed, published));
+        when(esClient.addNoteBulkData(anyList(), isNull())).thenAnswer(invocation -> Result.ok());
+        ReflectionTestUtils.setField(noteIndexer, "chunkSize", 3);
+
+        int total = noteIndexer.indexChanged();
+
+        assertThat(total).isEqualTo(3);
+        verify(esClient).addNoteBulkData(argThat(list -> list.size() == 2), isNull());
+        verify(esClient).deleteNoteBulkData(Collections.singletonList("n2"));
+        verify(redisUtils).set(CacheConstant.NOTE_INDEX_WATERMARK_KEY, "3000");
+    }
+
+    @Test
+    @DisplayName("🔒 其他实例正在同步或重建时跳过增量同步，全量重建直接失败")
+    void shouldSkipWhenLocked() {
+        when(redisUtils.setIfAbsent(eq(CacheConstant.NOTE_INDEX_LOCK_KEY), anyString(), anyLong(), any())).thenReturn(false);
+
+        assertThat(noteIndexer.indexChanged()).isZero();
+        assertThatThrownBy(() -> noteIndexer.reindex()).isInstanceOf(YanHuoException.class);
+
+        verify(noteDao, never()).selectList(any());
+        verify(esClient, never()).createReindex();
+    }
+
+    @Test
+    @DisplayName("❌ 写入失败时重试，用完后不推进同步位置")
+    void shouldKeepWatermarkWhenBulkFails() {
+        when(noteDao.selectList(any())).thenReturn(Collections.singletonList(note("n1", 1000L)));
+        when(esClient.addNoteBulkData(anyList(), isNull())).thenAnswer(invocation -> Result.fail(null));
+
+        assertThatThrownBy(() -> noteIndexer.indexChanged()).isInstanceOf(YanHuoException.class);
+
+        verify(esClient, times(3)).addNoteBulkData(anyList(), isNull());
+        verify(redisUtils, never()).set(anyString(), anyString());
+        verify(redisUtils, times(1)).execute(any(), eq(Collections.singletonList(CacheConstant.NOTE_INDEX_LOCK_KEY)), anyString());
+    }
+
+    @Test
+    @DisplayName("✅ 全量重建写入新索引后切换别名，并退回同步位置")
+    void shouldReindexAndSwitchAlias() {
+        when(esClient.createReindex()).thenReturn(Result.ok("note_index_1"));
+        when(noteDao.selectList(any())).thenReturn(Collections.singletonList(note("n1", 1000L)));
+        when(esClient.addNoteBulkData(anyList(), eq("note_index_1"))).thenAnswer(invocation -> Result.ok());
+        when(esClient.switchIndex("note_index_1")).thenAnswer(invocation -> Result.ok());
+        when(redisUtils.get(CacheConstant.NOTE_INDEX_WATERMARK_KEY)).thenReturn(String.valueOf(Long.MAX_VALUE));
+
+        int total = noteIndexer.reindex();
+
+        assertThat(total).isEqualTo(1);
+        verify(esClient).switchIndex("note_index_1");
+        verify(redisUtils).set(eq(CacheConstant.NOTE_INDEX_WATERMARK_KEY), anyString());
+    }
+
+    private Note note(String id, long updateDate) {
+        Note note = new Note();
+        note.setId(id);
+        note.setUid("user-1");
+        note.setCid("c1");
+        note.setCpid("p1");
+        note.setUpdateDate(new Date(updateDate));
+        return note;
+    }
+
+    private TagNoteRelation relation(String nid, String tid) {
+        TagNoteRelation relation = new TagNoteRelation();
+        relation.setNid(nid);
+        relation.setTid(tid);
+        return relation;
+    }
+
+    private Tag tag(String id, String title) {
+        Tag tag = new Tag();
+        tag.setId(id);
+        tag.setTitle(title);
+        return tag;
+    }
+
+    private Category category(String id, String title) {
+        Category category = new Category();
+        category.setId(id);
+        category.setTitle(title);
+        return category;
+    }
+}
@@ -0,0 +1,177 @@
+package com.yanhuo.platform.unit.publish;
+
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.yanhuo.common.constant.NoteStatusConstant;
+import com.yanhuo.platform.client.EsClient;
+import com.yanhuo.platform.publish.NotePublishPipeline;
+import com.yanhuo.platform.service.CategoryService;
+import com.yanhuo.platform.timeline.FollowTimeline;
+import com.yanhuo.xo.cache.UserSummaryCache;
+import com.yanhuo.xo.dao.NoteDao;
+import com.yanhuo.xo.dao.TagDao;
+import com.yanhuo.xo.dao.TagNoteRelationDao;
+import com.yanhuo.xo.entity.Category;
+import com.yanhuo.xo.entity.Note;
+import com.yanhuo.xo.entity.Tag;
+import com.yanhuo.xo.vo.NoteSearchVo;
+import com.yanhuo.xo.vo.UserSummaryVo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+/**
+ * 笔记发布流水线单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("🚀 笔记发布流水线测试")
+class NotePublishPipelineTest {
+
+    @Mock
+    private EsClient esClient;
+
+    @Mock
+    private CategoryService categoryService;
+
+    @Mock
+    private UserSummaryCache userSummaryCache;
+
+    @Mock
+    private NoteDao noteDao;
+
+    @Mock
+    private TagDao tagDao;
+
+    @Mock
+    private TagNoteRelationDao tagNoteRelationDao;
+
+    @Mock
+    private FollowTimeline followTimeline;
+
+    @Mock
+    private ScheduledExecutorService scheduler;
+
+    @InjectMocks
+    private NotePublishPipeline notePublishPipeline;
+
+    @BeforeEach
+    void setUp() {
+        // 立即同步执行，便于断言
+        ReflectionTestUtils.setField(notePublishPipeline, "scheduler", scheduler);
+        lenient().doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return null;
+        }).when(scheduler).execute(any());
+        lenient().when(scheduler.schedule(any(Runnable.class), anyLong(), any())).thenAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return null;
+        });
+        ReflectionTestUtils.setField(notePublishPipeline, "maxRetries", 3);
+        ReflectionTestUtils.setField(notePublishPipeline, "retryInterval", 0L);
+        when(userSummaryCache.get("user-1")).thenReturn(new UserSummaryVo().setId("user-1").setUsername("u").setAvatar("a"));
+        when(categoryService.getById(any())).thenReturn(new Category());
+    }
+
+    @Test
+    @DisplayName("✅ 写入es成功后更新为已发布并推送到关注动态")
+    void shouldMarkPublishedAfterIndex() {
+        when(noteDao.update(isNull(), any())).thenReturn(1);
+        Note note = note();
+
+        notePublishPipeline.index(note, "tag");
+
+        verify(esClient, times(1)).addNote(any());
+        assertStatus(NoteStatusConstant.PUBLISHED);
+        verify(followTimeline, times(1)).publish("user-1", "note-1", note.getCreateDate());
+    }
+
+    @Test
+    @DisplayName("🗑️ 写入es期间笔记被删除时不推送，并删除刚写入的文档")
+    void shouldNotPublishDeletedNote() {
+        when(noteDao.update(isNull(), any())).thenReturn(0);
+
+        notePublishPipeline.index(note(), "tag");
+
+        assertStatus(NoteStatusConstant.PUBLISHED);
+        verify(followTimeline, never()).publish(any(), any(), any());
+        verify(esClient, times(1)).deleteNoteBulkData(Collections.singletonList("note-1"));
+    }
+
+    @Test
+    @DisplayName("✅ 写入es失败时定时重试，用完后更新为发布失败且不推送")
+    void shouldRetryThenMarkFailed() {
+        doThrow(new RuntimeException("es down")).when(esClient).addNote(any());
+
+        notePublishPipeline.index(note(), "tag");
+
+        verify(esClient, times(3)).addNote(any());
+        verify(scheduler, times(2)).schedule(any(Runnable.class), eq(0L), eq(TimeUnit.MILLISECONDS));
+        assertStatus(NoteStatusConstant.FAILED);
+        verify(followTimeline, never()).publish(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("🔁 定时任务重新发布失败的笔记，标签按保存时的方式拼接")
+    void shouldRetryFailedNotes() {
+        ReflectionTestUtils.setField(notePublishPipeline, "processingTimeout", 600000L);
+        when(noteDao.selectList(any())).thenReturn(Collections.singletonList(note()), Collections.emptyList());
+        when(tagNoteRelationDao.selectObjs(any())).thenReturn(Arrays.<Object>asList("t1", "t2"));
+        when(tagDao.selectList(any())).thenReturn(Arrays.asList(tag("美食"), tag("旅行")));
+        when(noteDao.update(isNull(), any())).thenReturn(1);
+
+        int total = notePublishPipeline.retryFailed();
+
+        assertEquals(1, total);
+        ArgumentCaptor<NoteSearchVo> captor = ArgumentCaptor.forClass(NoteSearchVo.class);
+        verify(esClient).addNote(captor.capture());
+        assertEquals("美食旅行", captor.getValue().getTags());
+        assertStatus(NoteStatusConstant.PUBLISHED);
+        verify(followTimeline, times(1)).publish(eq("user-1"), eq("note-1"), any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void assertStatus(Integer status) {
+        ArgumentCaptor<Wrapper<Note>> captor = ArgumentCaptor.forClass(Wrapper.class);
+        verify(noteDao, times(1)).update(isNull(), captor.capture());
+        UpdateWrapper<Note> wrapper = (UpdateWrapper<Note>) captor.getValue();
+        assertTrue(wrapper.getSqlSet().startsWith("status="));
+        assertTrue(wrapper.getParamNameValuePairs().containsValue(status));
+    }
+
+    private Tag tag(String title) {
+        Tag tag = new Tag();
+        tag.setTitle(title);
+        return tag;
+    }
+
+    private Note note() {
+        Note note = new Note();
+        note.setId("note-1");
+        note.setUid("user-1");
+        note.setCid("c1");
+        note.setCpid("c0");
+        note.setCreateDate(new Date());
+        note.setUpdateDate(new Date());
+        return note;
+    }
+}
@@ -1,6 +1,8 @@
 package com.yanhuo.platform.unit.service;
 
+import com.yanhuo.platform.counter.CountBuffer;
 import com.yanhuo.platform.service.impl.UserServiceImpl;
+import com.yanhuo.xo.cache.UserSummaryCache;
 import com.yanhuo.xo.dao.UserDao;
 import com.yanhuo.xo.entity.User;
 import org.junit.jupiter.api.BeforeEach;
@@ -9,6 +11,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import static org.mockito.ArgumentMatchers.any;
@@ -22,6 +25,12 @@ public class UserServiceRealTest {
     @Mock
     private UserDao userDao;
 
+    @Mock
+    private UserSummaryCache userSummaryCache;
+
+    @Spy
+    private CountBuffer countBuffer = new CountBuffer();
+
     @InjectMocks
     private UserServiceImpl userService;
 
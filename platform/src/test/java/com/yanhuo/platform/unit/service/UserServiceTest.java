@@ -1,7 +1,10 @@
 package com.yanhuo.platform.unit.service;
 
+import com.yanhuo.platform.counter.CountBuffer;
+import com.yanhuo.platform.counter.CountField;
 import com.yanhuo.platform.service.UserService;
 import com.yanhuo.platform.service.impl.UserServiceImpl;
+import com.yanhuo.xo.cache.UserSummaryCache;
 import com.yanhuo.xo.dao.UserDao;
 import com.yanhuo.xo.entity.User;
 import org.junit.jupiter.api.BeforeEach;
@@ -10,6 +13,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import static org.mockito.ArgumentMatchers.any;
@@ -23,6 +27,12 @@ public class UserServiceTest {
     @Mock
     private UserDao userDao;
 
+    @Mock
+    private UserSummaryCache userSummaryCache;
+
+    @Spy
+    private CountBuffer countBuffer = new CountBuffer();
+
     @InjectMocks
     private UserServiceImpl userService;
 
@@ -70,4 +80,23 @@ public class UserServiceTest {
         assertThat(result.getUsername()).isEqualTo("updatedUser");
         assertThat(result.getEmail()).isEqualTo("updated@example.com");
     }
-} 
\ No newline at end of file
+
+    @Test
+    @DisplayName("Should merge unflushed counts when getting user by ID")
+    void whenGetUserById_thenMergePendingCounts() {
+        // Arrange
+        testUser.setFanCount(5L);
+        testUser.setFollowerCount(2L);
+        when(userDao.selectById(any())).thenReturn(testUser);
+        countBuffer.add(CountField.USER_FAN, "1", 3);
+        countBuffer.add(CountField.USER_FOLLOWER, "1", -1);
+
+        // Act
+        User result = userService.getUserById("1");
+
+        // Assert
+        assertThat(result.getFanCount()).isEqualTo(8L);
+        assertThat(result.getFollowerCount()).isEqualTo(1L);
+        assertThat(result.getTrendCount()).isZero();
+    }
+}
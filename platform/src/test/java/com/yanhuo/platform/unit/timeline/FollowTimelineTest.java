@@ -0,0 +1,189 @@
+package com.yanhuo.platform.unit.timeline;
+
+import com.yanhuo.common.result.CursorPage;
+import com.yanhuo.common.utils.KeysetQuery;
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.platform.timeline.FollowTimeline;
+import com.yanhuo.xo.dao.FollowerDao;
+import com.yanhuo.xo.dao.NoteDao;
+import com.yanhuo.xo.dao.UserDao;
+import com.yanhuo.xo.entity.Follower;
+import com.yanhuo.xo.entity.Note;
+import com.yanhuo.xo.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 关注动态时间线单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("📰 关注动态时间线测试")
+class FollowTimelineTest {
+
+    private static final String KEY = "timeline:inbox:user-1";
+
+    private static final String PULL_KEY = KEY + ":pull";
+
+    private static final KeysetQuery<Note> KEYSET = KeysetQuery.<Note>desc()
+            .dateColumn("create_date", Note::getCreateDate)
+            .stringColumn("id", Note::getId);
+
+    @Mock
+    private RedisUtils redisUtils;
+
+    @Mock
+    private FollowerDao followerDao;
+
+    @Mock
+    private NoteDao noteDao;
+
+    @Mock
+    private UserDao userDao;
+
+    @InjectMocks
+    private FollowTimeline followTimeline;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(followTimeline, "inboxSize", 1000L);
+        ReflectionTestUtils.setField(followTimeline, "pushFanLimit", 5000L);
+    }
+
+    @Test
+    @DisplayName("✅ 收件箱与大V笔记按发布时间合并并返回游标")
+    void shouldMergeInboxWithPulledNotes() {
+        when(redisUtils.hasKey(KEY)).thenReturn(true);
+        Set<TypedTuple<String>> tuples = new LinkedHashSet<>();
+        tuples.add(new DefaultTypedTuple<>("n3", 300D));
+        tuples.add(new DefaultTypedTuple<>("n1", 100D));
+        when(redisUtils.zReverseRangeByScoreWithScores(eq(KEY), eq(1D), anyDouble(), eq(0L), eq(3L))).thenReturn(tuples);
+        when(followerDao.selectBigFollowIds("user-1", 5000L)).thenReturn(Collections.singletonList("big-1"));
+        when(redisUtils.setMembers(PULL_KEY)).thenReturn(Collections.singleton(""));
+        when(noteDao.selectList(any())).thenReturn(Arrays.asList(note("n2", 200L), note("n0", 50L)));
+
+        CursorPage<String> page = followTimeline.getPage("user-1", null, 2);
+
+        assertThat(page.getRecords()).containsExactly("n3", "n2");
+        assertThat(page.getHasMore()).isTrue();
+        assertThat(page.getNextCursor()).isEqualTo(KEYSET.encode(note("n2", 200L)));
+    }
+
+    @Test
+    @DisplayName("✅ 没有关注大V时只读取收件箱")
+    void shouldReadInboxOnlyWithoutBigAuthors() {
+        when(redisUtils.hasKey(KEY)).thenReturn(true);
+        when(redisUtils.zCount(KEY, 150D, 150D)).thenReturn(0L);
+        Set<TypedTuple<String>> tuples = new LinkedHashSet<>();
+        tuples.add(new DefaultTypedTuple<>("n1", 100D));
+        when(redisUtils.zReverseRangeByScoreWithScores(eq(KEY), eq(1D), eq(150D), eq(0L), eq(11L))).thenReturn(tuples);
+        when(redisUtils.zSize(KEY)).thenReturn(5L);
+        when(followerDao.selectBigFollowIds("user-1", 5000L)).thenReturn(Collections.emptyList());
+
+        CursorPage<String> page = followTimeline.getPage("user-1", KEYSET.encode(note("n2", 150L)), 10);
+
+        assertThat(page.getRecords()).containsExactly("n1");
+        assertThat(page.getHasMore()).isFalse();
+        assertThat(page.getNextCursor()).isNull();
+        verifyNoInteractions(noteDao);
+    }
+
+    @Test
+    @DisplayName("✅ 和游标同一时间发布的笔记不会被跳过")
+    void shouldNotSkipNotesWithSameTime() {
+        when(redisUtils.hasKey(KEY)).thenReturn(true);
+        when(redisUtils.zCount(KEY, 200D, 200D)).thenReturn(3L);
+        Set<TypedTuple<String>> tuples = new LinkedHashSet<>();
+        tuples.add(new DefaultTypedTuple<>("n6", 200D));
+        tuples.add(new DefaultTypedTuple<>("n5", 200D));
+        tuples.add(new DefaultTypedTuple<>("n4", 200D));
+        tuples.add(new DefaultTypedTuple<>("n1", 100D));
+        when(redisUtils.zReverseRangeByScoreWithScores(eq(KEY), eq(1D), eq(200D), eq(0L), eq(6L))).thenReturn(tuples);
+        when(redisUtils.zSize(KEY)).thenReturn(5L);
+        when(followerDao.selectBigFollowIds("user-1", 5000L)).thenReturn(Collections.emptyList());
+
+        CursorPage<String> page = followTimeline.getPage("user-1", KEYSET.encode(note("n5", 200L)), 2);
+
+        assertThat(page.getRecords()).containsExactly("n4", "n1");
+        assertThat(page.getHasMore()).isFalse();
+    }
+
+    @Test
+    @DisplayName("✅ 粉丝数降到阈值以下的作者继续拉取")
+    void shouldKeepPullingFormerBigAuthors() {
+        when(redisUtils.hasKey(KEY)).thenReturn(true);
+        when(redisUtils.zReverseRangeByScoreWithScores(eq(KEY), eq(1D), anyDouble(), eq(0L), eq(11L))).thenReturn(Collections.emptySet());
+        when(redisUtils.zSize(KEY)).thenReturn(1L);
+        when(followerDao.selectBigFollowIds("user-1", 5000L)).thenReturn(Collections.emptyList());
+        when(redisUtils.setMembers(PULL_KEY)).thenReturn(new HashSet<>(Arrays.asList("", "old-big")));
+        when(noteDao.selectList(any())).thenReturn(Collections.singletonList(note("n9", 900L)));
+
+        CursorPage<String> page = followTimeline.getPage("user-1", null, 10);
+
+        assertThat(page.getRecords()).containsExactly("n9");
+        verify(followerDao, never()).selectObjs(any());
+    }
+
+    @Test
+    @DisplayName("✅ 读到已满收件箱的末尾后从所有关注的作者拉取")
+    void shouldPullAllAuthorsAfterInboxEnd() {
+        when(redisUtils.hasKey(KEY)).thenReturn(true);
+        when(redisUtils.zCount(KEY, 100D, 100D)).thenReturn(1L);
+        when(redisUtils.zReverseRangeByScoreWithScores(eq(KEY), eq(1D), eq(100D), eq(0L), eq(12L))).thenReturn(Collections.emptySet());
+        when(redisUtils.zSize(KEY)).thenReturn(1001L);
+        when(followerDao.selectBigFollowIds("user-1", 5000L)).thenReturn(Collections.emptyList());
+        when(followerDao.selectObjs(any())).thenReturn(Collections.singletonList("small-1"));
+        when(noteDao.selectList(any())).thenReturn(Collections.singletonList(note("n0", 50L)));
+
+        CursorPage<String> page = followTimeline.getPage("user-1", KEYSET.encode(note("n1", 100L)), 10);
+
+        assertThat(page.getRecords()).containsExactly("n0");
+        assertThat(page.getHasMore()).isFalse();
+    }
+
+    @Test
+    @DisplayName("✅ 删除笔记时从作者和粉丝的收件箱移除")
+    void shouldRemoveDeletedNotesFromInboxes() {
+        ReflectionTestUtils.setField(followTimeline, "executor", (Executor) Runnable::run);
+        User author = new User();
+        author.setFanCount(2L);
+        when(userDao.selectById("user-1")).thenReturn(author);
+        when(followerDao.selectList(any())).thenReturn(Arrays.asList(fan("f1", "fan-1"), fan("f2", "fan-2")), Collections.emptyList());
+        List<String> noteIds = Arrays.asList("n1", "n2");
+
+        followTimeline.remove("user-1", noteIds);
+
+        verify(redisUtils).zRemove(KEY, "n1", "n2");
+        verify(redisUtils).executeBatch(any(),
+                eq(Arrays.asList(Collections.singletonList("timeline:inbox:fan-1"), Collections.singletonList("timeline:inbox:fan-2"))),
+                eq(Arrays.asList(noteIds, noteIds)));
+    }
+
+    private Follower fan(String id, String uid) {
+        Follower follower = new Follower();
+        follower.setId(id);
+        follower.setUid(uid);
+        return follower;
+    }
+
+    private Note note(String id, long time) {
+        Note note = new Note();
+        note.setId(id);
+        note.setCreateDate(new Date(time));
+        return note;
+    }
+}
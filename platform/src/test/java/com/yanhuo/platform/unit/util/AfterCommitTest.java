@@ -0,0 +1,52 @@
+package com.yanhuo.platform.unit.util;
+
+import com.yanhuo.common.utils.AfterCommit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 事务提交后执行单元测试
+ */
+@DisplayName("🧾 事务提交后执行测试")
+class AfterCommitTest {
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("✅ 没有事务时立即执行")
+    void shouldRunImmediatelyWithoutTransaction() {
+        AtomicInteger count = new AtomicInteger();
+
+        AfterCommit.run(count::incrementAndGet);
+
+        assertThat(count.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("⏳ 存在事务时提交后才执行，回滚时不执行")
+    void shouldRunOnlyAfterCommit() {
+        AtomicInteger count = new AtomicInteger();
+        TransactionSynchronizationManager.initSynchronization();
+
+        AfterCommit.run(count::incrementAndGet);
+        assertThat(count.get()).isZero();
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(item -> item.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        assertThat(count.get()).isZero();
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(count.get()).isEqualTo(1);
+    }
+}
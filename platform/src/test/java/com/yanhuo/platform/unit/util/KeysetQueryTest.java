@@ -0,0 +1,122 @@
+package com.yanhuo.platform.unit.util;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yanhuo.common.exception.YanHuoException;
+import com.yanhuo.common.result.CursorPage;
+import com.yanhuo.common.utils.KeysetQuery;
+import com.yanhuo.xo.entity.Comment;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * 游标分页查询单元测试
+ */
+@DisplayName("📑 游标分页查询测试")
+class KeysetQueryTest {
+
+    @Test
+    @DisplayName("✅ 多取一条判断下一页，游标指向本页最后一条")
+    void shouldReturnCursorOfLastRecord() {
+        List<Comment> rows = Arrays.asList(comment("c3", 3000L), comment("c2", 2000L), comment("c1", 1000L));
+        AtomicReference<QueryWrapper<Comment>> captured = new AtomicReference<>();
+
+        CursorPage<Comment> page = query().page(new QueryWrapper<Comment>().eq("nid", "n1"), null, 2, wrapper -> {
+            captured.set(wrapper);
+            return new ArrayList<>(rows);
+        });
+
+        assertThat(page.getRecords()).extracting(Comment::getId).containsExactly("c3", "c2");
+        assertThat(page.getHasMore()).isTrue();
+        assertThat(page.getNextCursor()).isNotBlank();
+        assertThat(page.getTotal()).isNull();
+        String sql = captured.get().getCustomSqlSegment();
+        assertThat(sql).contains("ORDER BY create_date DESC,id DESC").endsWith("limit 3");
+    }
+
+    @Test
+    @DisplayName("✅ 按游标生成行比较条件")
+    void shouldSeekFromCursor() {
+        CursorPage<Comment> first = query().page(new QueryWrapper<>(), null, 1,
+                wrapper -> new ArrayList<>(Arrays.asList(comment("c2", 2000L), comment("c1", 1000L))));
+        AtomicReference<QueryWrapper<Comment>> captured = new AtomicReference<>();
+
+        CursorPage<Comment> second = query().page(new QueryWrapper<Comment>().eq("nid", "n1"), first.getNextCursor(), 1, wrapper -> {
+            captured.set(wrapper);
+            return new ArrayList<>(Arrays.asList(comment("c1", 1000L)));
+        });
+
+        assertThat(second.getHasMore()).isFalse();
+        assertThat(second.getNextCursor()).isNull();
+        QueryWrapper<Comment> wrapper = captured.get();
+        assertThat(wrapper.getCustomSqlSegment()).contains("create_date <").contains("OR").contains("id <");
+        assertThat(wrapper.getParamNameValuePairs().values()).contains(new Date(2000L), "c2");
+    }
+
+    @Test
+    @DisplayName("✅ 只在第一页统计总数")
+    void shouldCountOnlyOnFirstPage() {
+        CursorPage<Comment> page = query().page(new QueryWrapper<>(), null, 10, wrapper -> new ArrayList<>(), wrapper -> 42L);
+
+        assertThat(page.getTotal()).isEqualTo(42L);
+        assertThat(page.getHasMore()).isFalse();
+    }
+
+    @Test
+    @DisplayName("✅ 缓存中排好序的记录生成的游标可以继续查询数据库")
+    void shouldPageSortedRecords() {
+        CursorPage<Comment> first = query().page(Arrays.asList(comment("c3", 3000L), comment("c2", 2000L), comment("c1", 1000L)), 2);
+        AtomicReference<QueryWrapper<Comment>> captured = new AtomicReference<>();
+
+        query().page(new QueryWrapper<>(), first.getNextCursor(), 2, wrapper -> {
+            captured.set(wrapper);
+            return new ArrayList<>();
+        });
+
+        assertThat(first.getRecords()).extracting(Comment::getId).containsExactly("c3", "c2");
+        assertThat(first.getHasMore()).isTrue();
+        assertThat(captured.get().getParamNameValuePairs().values()).contains(new Date(2000L), "c2");
+    }
+
+    @Test
+    @DisplayName("❌ 非法游标抛出异常")
+    void shouldRejectInvalidCursor() {
+        assertThatThrownBy(() -> query().page(new QueryWrapper<>(), "not-a-cursor", 10, wrapper -> new ArrayList<>()))
+                .isInstanceOf(YanHuoException.class);
+    }
+
+    @Test
+    @DisplayName("❌ 分页数小于1时报错，超过上限时按上限查询")
+    void shouldCheckPageSize() {
+        AtomicReference<QueryWrapper<Comment>> captured = new AtomicReference<>();
+
+        assertThatThrownBy(() -> query().page(new QueryWrapper<>(), null, 0, wrapper -> new ArrayList<>()))
+                .isInstanceOf(YanHuoException.class);
+        query().page(new QueryWrapper<>(), null, 100000, wrapper -> {
+            captured.set(wrapper);
+            return new ArrayList<>();
+        });
+
+        assertThat(captured.get().getCustomSqlSegment()).endsWith("limit " + (KeysetQuery.MAX_PAGE_SIZE + 1));
+    }
+
+    private KeysetQuery<Comment> query() {
+        return KeysetQuery.<Comment>desc()
+                .dateColumn("create_date", Comment::getCreateDate)
+                .stringColumn("id", Comment::getId);
+    }
+
+    private Comment comment(String id, long time) {
+        Comment comment = new Comment();
+        comment.setId(id);
+        comment.setCreateDate(new Date(time));
+        return comment;
+    }
+}
@@ -0,0 +1,282 @@
+package com.yanhuo.search.cache;
+
+import com.yanhuo.common.result.CursorPage;
+import com.yanhuo.search.dto.NoteDTO;
+import com.yanhuo.xo.vo.NoteSearchVo;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 笔记搜索结果缓存
+ * <p>
+ * 查询缓存以规范化后的搜索条件和页码为key，只保存命中的笔记id、总数和下一页游标，笔记内容放在单独的文档缓存中，
+ * 不同查询和页之间共用，缺少的笔记用一次mget补齐。两个缓存都按估算的字节数限制大小。
+ * 笔记索引每次写入后索引代数加一，查询缓存中代数不是当前代数的结果视为失效，
+ * 写入的笔记同时从文档缓存中删除。es写入后要等刷新才能搜索到，最近一次写入后refresh-interval毫秒内的搜索结果不缓存。
+ * 代数只在本实例内，两个缓存都在ttl毫秒后过期，其他实例写入的修改最多ttl毫秒后可见。
+ *
+ * @author xiaozhao
+ */
+@Component
+public class SearchResultCache {
+
+    @Value("${search-cache.query-max-bytes:16777216}")
+    long queryMaxBytes;
+
+    @Value("${search-cache.doc-max-bytes:67108864}")
+    long docMaxBytes;
+
+    @Value("${search-cache.ttl:60000}")
+    long ttl;
+
+    @Value("${search-cache.refresh-interval:1000}")
+    long refreshInterval;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile long lastWriteTime;
+
+    private WeightedLruCache<String, QueryEntry> queryCache;
+
+    private WeightedLruCache<String, NoteSearchVo> docCache;
+
+    private final LongAdder queryHitCount = new LongAdder();
+
+    private final LongAdder queryMissCount = new LongAdder();
+
+    private final LongAdder docHitCount = new LongAdder();
+
+    private final LongAdder docMissCount = new LongAdder();
+
+    private final LongAdder hitNanos = new LongAdder();
+
+    private final LongAdder missNanos = new LongAdder();
+
+    private final AtomicLong maxMissNanos = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        queryCache = new WeightedLruCache<>(queryMaxBytes, ttl, QueryEntry::weigh);
+        docCache = new WeightedLruCache<>(docMaxBytes, ttl, SearchResultCache::weigh);
+    }
+
+    /**
+     * 规范化搜索条件，关键词去掉首尾和重复的空白并转为小写，空条件统一为空串
+     *
+     * @param noteDTO  搜索条件
+     * @param page     页码，游标分页的第一页为cursor
+     * @param pageSize 分页数
+     * @return 查询缓存的key
+     */
+    public static String queryKey(NoteDTO noteDTO, String page, long pageSize) {
+        String keyword = StringUtils.normalizeSpace(StringUtils.defaultString(noteDTO.getKeyword())).toLowerCase(Locale.ROOT);
+        return (noteDTO.getType() == null ? 0 : noteDTO.getType())
+                + "|" + StringUtils.trimToEmpty(noteDTO.getCpid())
+                + "|" + StringUtils.trimToEmpty(noteDTO.getCid())
+                + "|" + page + "|" + pageSize
+                + "|" + keyword;
+    }
+
+    /**
+     * 从缓存得到搜索结果，未命中时搜索es并缓存
+     *
+     * @param key       查询缓存的key
+     * @param searcher  搜索es
+     * @param docLoader 按id批量得到笔记，不存在的笔记不出现在结果中
+     * @return 搜索结果
+     */
+    public CursorPage<NoteSearchVo> get(String key, Supplier<CursorPage<NoteSearchVo>> searcher,
+                                        Function<Collection<String>, Map<String, NoteSearchVo>> docLoader) {
+        long start = System.nanoTime();
+        CursorPage<NoteSearchVo> page = getCached(key, docLoader);
+        if (page != null) {
+            queryHitCount.increment();
+            hitNanos.add(System.nanoTime() - start);
+            return page;
+        }
+        long current = generation.get();
+        page = searcher.get();
+        put(key, current, page);
+        long nanos = System.nanoTime() - start;
+        queryMissCount.increment();
+        missNanos.add(nanos);
+        maxMissNanos.accumulateAndGet(nanos, Math::max);
+        return page;
+    }
+
+    /**
+     * 笔记写入后调用，使所有查询结果失效并删除这些笔记的文档缓存
+     *
+     * @param noteIds 写入的笔记id
+     */
+    public void invalidate(Collection<String> noteIds) {
+        synchronized (docCache) {
+            generation.incrementAndGet();
+            lastWriteTime = System.currentTimeMillis();
+            noteIds.forEach(docCache::remove);
+        }
+    }
+
+    /**
+     * 无法确定写入了哪些笔记时调用，如流式写入和切换索引，清空所有缓存
+     */
+    public void invalidateAll() {
+        synchronized (docCache) {
+            generation.incrementAndGet();
+            lastWriteTime = System.currentTimeMillis();
+            docCache.clear();
+        }
+        queryCache.clear();
+    }
+
+    /**
+     * 得到缓存统计
+     *
+     * @return 统计项 -> 值
+     */
+    public Map<String, Object> getStats() {
+        long queryHit = queryHitCount.sum();
+        long queryMiss = queryMissCount.sum();
+        long docHit = docHitCount.sum();
+        long docMiss = docMissCount.sum();
+        Map<String, Object> result = new LinkedHashMap<>(16);
+        result.put("generation", generation.get());
+        result.put("queryHitCount", queryHit);
+        result.put("queryMissCount", queryMiss);
+        result.put("queryHitRatio", queryHit + queryMiss == 0 ? 0D : (double) queryHit / (queryHit + queryMiss));
+        result.put("docHitCount", docHit);
+        result.put("docMissCount", docMiss);
+        result.put("docHitRatio", docHit + docMiss == 0 ? 0D : (double) docHit / (docHit + docMiss));
+        result.put("avgHitMillis", queryHit == 0 ? 0D : hitNanos.sum() / 1e6 / queryHit);
+        result.put("avgMissMillis", queryMiss == 0 ? 0D : missNanos.sum() / 1e6 / queryMiss);
+        result.put("maxMissMillis", maxMissNanos.get() / 1e6);
+        result.put("queryEntries", queryCache.size());
+        result.put("queryBytes", queryCache.weight());
+        result.put("docEntries", docCache.size());
+        result.put("docBytes", docCache.weight());
+        return result;
+    }
+
+    private CursorPage<NoteSearchVo> getCached(String key, Function<Collection<String>, Map<String, NoteSearchVo>> docLoader) {
+        QueryEntry entry = queryCache.get(key);
+        if (entry == null || entry.generation != generation.get()) {
+            return null;
+        }
+        Map<String, NoteSearchVo> docMap = new HashMap<>(entry.ids.size());
+        List<String> missList = new ArrayList<>();
+        for (String id : entry.ids) {
+            NoteSearchVo doc = docCache.get(id);
+            if (doc != null) {
+                docMap.put(id, doc);
+            } else {
+                missList.add(id);
+            }
+        }
+        docHitCount.add(docMap.size());
+        docMissCount.add(missList.size());
+        if (!missList.isEmpty()) {
+            long current = generation.get();
+            Map<String, NoteSearchVo> loaded = docLoader.apply(missList);
+            putDocs(current, loaded.values());
+            docMap.putAll(loaded);
+        }
+        List<NoteSearchVo> records = new ArrayList<>(entry.ids.size());
+        for (String id : entry.ids) {
+            NoteSearchVo doc = docMap.get(id);
+            if (doc == null) {
+                // 笔记已不在索引中，结果不完整时重新搜索
+                return null;
+            }
+            records.add(doc);
+        }
+        return new CursorPage<NoteSearchVo>()
+                .setRecords(records)
+                .setTotal(entry.total)
+                .setNextCursor(entry.nextCursor)
+                .setHasMore(entry.hasMore);
+    }
+
+    private void put(String key, long current, CursorPage<NoteSearchVo> page) {
+        // 搜索期间有写入，或者最近的写入可能还没有刷新，结果可能是旧的
+        if (current != generation.get() || System.currentTimeMillis() - lastWriteTime < refreshInterval) {
+            return;
+        }
+        List<String> ids = new ArrayList<>(page.getRecords().size());
+        for (NoteSearchVo record : page.getRecords()) {
+            if (record == null || record.getId() == null) {
+                return;
+            }
+            ids.add(record.getId());
+        }
+        putDocs(current, page.getRecords());
+        queryCache.put(key, new QueryEntry(current, ids, page, key.length()));
+    }
+
+    private void putDocs(long current, Collection<NoteSearchVo> docs) {
+        // 和invalidate互斥，读取期间被修改的笔记不会在删除之后又放回旧的内容
+        synchronized (docCache) {
+            if (current != generation.get()) {
+                return;
+            }
+            docs.forEach(doc -> docCache.put(doc.getId(), doc));
+        }
+    }
+
+    /**
+     * 估算笔记占用的字节数，字符串按每个字符2字节加对象头计算
+     */
+    static long weigh(NoteSearchVo doc) {
+        long weight = 128;
+        for (String value : Arrays.asList(doc.getId(), doc.getTitle(), doc.getContent(), doc.getNoteCover(),
+                doc.getCid(), doc.getCategoryName(), doc.getCpid(), doc.getCategoryParentName(), doc.getUid(),
+                doc.getUsername(), doc.getAvatar(), doc.getUrls(), doc.getTags())) {
+            if (value != null) {
+                weight += 40 + 2L * value.length();
+            }
+        }
+        return weight;
+    }
+
+    private static class QueryEntry {
+
+        private final long generation;
+
+        private final List<String> ids;
+
+        private final Long total;
+
+        private final String nextCursor;
+
+        private final Boolean hasMore;
+
+        private final int keyLength;
+
+        private QueryEntry(long generation, List<String> ids, CursorPage<NoteSearchVo> page, int keyLength) {
+            this.generation = generation;
+            this.ids = ids;
+            this.total = page.getTotal();
+            this.nextCursor = page.getNextCursor();
+            this.hasMore = page.getHasMore();
+            this.keyLength = keyLength;
+        }
+
+        private long weigh() {
+            long weight = 64 + 40 + 2L * keyLength;
+            if (nextCursor != null) {
+                weight += 40 + 2L * nextCursor.length();
+            }
+            for (String id : ids) {
+                weight += 40 + 2L * id.length();
+            }
+            return weight;
+        }
+    }
+}
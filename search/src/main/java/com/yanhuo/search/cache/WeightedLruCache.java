@@ -0,0 +1,103 @@
+package com.yanhuo.search.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * 按估算大小限制容量的LRU缓存
+ * <p>
+ * 每个值放入时按weigher估算占用的字节数，总大小超过上限时从最久未访问的开始淘汰，
+ * 单个超过上限的值不缓存。ttl大于0时超过ttl毫秒的值视为不存在。
+ *
+ * @author xiaozhao
+ */
+public class WeightedLruCache<K, V> {
+
+    private final long maxWeight;
+
+    private final long ttl;
+
+    private final ToLongFunction<V> weigher;
+
+    private final LinkedHashMap<K, Node<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long weight;
+
+    /**
+     * @param maxWeight 总大小上限(字节)
+     * @param ttl       过期时间(毫秒)，0为不过期
+     * @param weigher   估算值的大小
+     */
+    public WeightedLruCache(long maxWeight, long ttl, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.ttl = ttl;
+        this.weigher = weigher;
+    }
+
+    public synchronized V get(K key) {
+        Node<V> node = map.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (ttl > 0 && System.currentTimeMillis() - node.createTime > ttl) {
+            remove(key);
+            return null;
+        }
+        return node.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        long valueWeight = weigher.applyAsLong(value);
+        remove(key);
+        if (valueWeight > maxWeight) {
+            return;
+        }
+        map.put(key, new Node<>(value, valueWeight, System.currentTimeMillis()));
+        weight += valueWeight;
+        Iterator<Map.Entry<K, Node<V>>> iterator = map.entrySet().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            weight -= iterator.next().getValue().weight;
+            iterator.remove();
+        }
+    }
+
+    public synchronized void remove(K key) {
+        Node<V> node = map.remove(key);
+        if (node != null) {
+            weight -= node.weight;
+        }
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    /**
+     * 当前估算的总大小(字节)
+     */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    private static class Node<V> {
+
+        private final V value;
+
+        private final long weight;
+
+        private final long createTime;
+
+        private Node(V value, long weight, long createTime) {
+            this.value = value;
+            this.weight = weight;
+            this.createTime = createTime;
+        }
+    }
+}
@@ -5,7 +5,15 @@ package com.yanhuo.search.common;
  */
 public interface NoteConstant {
 
+    /**
+     * 笔记索引别名，全量重建后指向新索引
+     */
     String NOTE_INDEX = "note_index";
 
+    /**
+     * 全量重建时新索引名称的前缀，后接创建时间
+     */
+    String NOTE_INDEX_PREFIX = "note_index_";
+
     String RECOED_INDEX = "recoed_index";
 }
@@ -0,0 +1,66 @@
+package com.yanhuo.search.common;
+
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import com.yanhuo.search.dto.NoteDTO;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * 笔记搜索条件
+ * <p>
+ * 关键词和分类组合成一个bool查询：关键词按字段加权放在should中，至少匹配一个，参与打分；
+ * 分类id放在filter中，用keyword子字段精确匹配，不打分，结果可以被es缓存。
+ * 排序按搜索类型取一个字段，分页时再加上唯一的排序值作为search_after的最后一个值。
+ *
+ * @author xiaozhao
+ */
+public final class NoteSearchQuery {
+
+    private NoteSearchQuery() {
+    }
+
+    /**
+     * 构造搜索条件
+     *
+     * @param noteDTO 搜索条件
+     * @return bool查询
+     */
+    public static Query build(NoteDTO noteDTO) {
+        BoolQuery.Builder bool = new BoolQuery.Builder();
+        String keyword = StringUtils.trimToNull(noteDTO.getKeyword());
+        if (keyword != null) {
+            bool.should(h -> h.match(f -> f.field("title").boost(1f).query(keyword)))
+                    .should(h -> h.match(f -> f.field("username").boost(0.5f).query(keyword)))
+                    .should(h -> h.match(f -> f.field("content").boost(1f).query(keyword)))
+                    .should(h -> h.match(f -> f.field("tags").boost(4f).query(keyword)))
+                    .should(h -> h.match(f -> f.field("categoryName").boost(2f).query(keyword)))
+                    .should(h -> h.match(f -> f.field("categoryParentName").boost(1.5f).query(keyword)))
+                    .minimumShouldMatch("1");
+        }
+        if (StringUtils.isNotBlank(noteDTO.getCpid())) {
+            bool.filter(h -> h.term(t -> t.field("cpid.keyword").value(noteDTO.getCpid().trim())));
+        }
+        if (StringUtils.isNotBlank(noteDTO.getCid())) {
+            bool.filter(h -> h.term(t -> t.field("cid.keyword").value(noteDTO.getCid().trim())));
+        }
+        return Query.of(q -> q.bool(bool.build()));
+    }
+
+    /**
+     * 按搜索类型排序，1按点赞数，2按时间，其他按相关度
+     *
+     * @param builder 搜索请求
+     * @param type    搜索类型
+     */
+    public static void sort(SearchRequest.Builder builder, Integer type) {
+        if (type != null && type == 1) {
+            builder.sort(o -> o.field(f -> f.field("likeCount").order(SortOrder.Desc)));
+        } else if (type != null && type == 2) {
+            builder.sort(o -> o.field(f -> f.field("time").order(SortOrder.Desc)));
+        } else {
+            builder.sort(o -> o.score(s -> s.order(SortOrder.Desc)));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.yanhuo.search.common;
+
+import cn.hutool.json.JSONUtil;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import com.yanhuo.common.exception.YanHuoException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * es search_after游标
+ * <p>
+ * 保存上一页最后一条结果的排序值，每个值带类型前缀(d浮点数，l整数，s字符串，b布尔，n空)，
+ * 组成json数组后做base64编码，对客户端不透明。浮点数按原样转为字符串，还原后与es返回的排序值完全相同。
+ *
+ * @author xiaozhao
+ */
+public final class SearchAfterCursor {
+
+    private SearchAfterCursor() {
+    }
+
+    /**
+     * 编码排序值
+     *
+     * @param values 排序值
+     * @return 游标
+     */
+    public static String encode(List<FieldValue> values) {
+        List<String> items = new ArrayList<>(values.size());
+        for (FieldValue value : values) {
+            if (value.isDouble()) {
+                items.add("d" + value.doubleValue());
+            } else if (value.isLong()) {
+                items.add("l" + value.longValue());
+            } else if (value.isBoolean()) {
+                items.add("b" + value.booleanValue());
+            } else if (value.isString()) {
+                items.add("s" + value.stringValue());
+            } else {
+                items.add("n");
+            }
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(JSONUtil.toJsonStr(items).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 还原排序值
+     *
+     * @param cursor 游标
+     * @param size   排序值的数量
+     * @return 排序值
+     */
+    public static List<FieldValue> decode(String cursor, int size) {
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            List<String> items = JSONUtil.parseArray(json).toList(String.class);
+            if (items.size() != size) {
+                throw new YanHuoException("游标无效");
+            }
+            List<FieldValue> values = new ArrayList<>(items.size());
+            for (String item : items) {
+                String value = item.substring(1);
+                switch (item.charAt(0)) {
+                    case 'd':
+                        values.add(FieldValue.of(Double.parseDouble(value)));
+                        break;
+                    case 'l':
+                        values.add(FieldValue.of(Long.parseLong(value)));
+                        break;
+                    case 'b':
+                        values.add(FieldValue.of(Boolean.parseBoolean(value)));
+                        break;
+                    case 's':
+                        values.add(FieldValue.of(value));
+                        break;
+                    default:
+                        values.add(FieldValue.NULL);
+                        break;
+                }
+            }
+            return values;
+        } catch (YanHuoException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new YanHuoException("游标无效");
+        }
+    }
+}
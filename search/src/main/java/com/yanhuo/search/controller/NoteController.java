@@ -1,14 +1,19 @@
 package com.yanhuo.search.controller;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.yanhuo.common.result.CursorPage;
 import com.yanhuo.common.result.Result;
 import com.yanhuo.common.validator.myVaildator.noLogin.NoLoginIntercept;
+import com.yanhuo.search.cache.SearchResultCache;
 import com.yanhuo.search.dto.NoteDTO;
+import com.yanhuo.search.ingest.BulkIngestResult;
 import com.yanhuo.search.service.NoteService;
 import com.yanhuo.xo.vo.NoteSearchVo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -21,6 +26,9 @@ public class NoteController {
     @Autowired
     NoteService noteService;
 
+    @Autowired
+    SearchResultCache searchResultCache;
+
     /**
      * 搜索对应的笔记
      *
@@ -36,6 +44,31 @@ public class NoteController {
         return Result.ok(page);
     }
 
+    /**
+     * 按游标搜索对应的笔记，深分页和第一页一样快
+     *
+     * @param pageSize 分页数
+     * @param cursor   上一页返回的游标，第一页不传
+     * @param noteDTO  搜索条件
+     * @return 笔记
+     */
+    @NoLoginIntercept
+    @PostMapping("getNoteByCursor/{pageSize}")
+    public Result<?> getNoteByCursor(@PathVariable long pageSize, @RequestParam(required = false) String cursor, @RequestBody NoteDTO noteDTO) {
+        CursorPage<NoteSearchVo> page = noteService.getNoteByCursor(cursor, pageSize, noteDTO);
+        return Result.ok(page);
+    }
+
+    /**
+     * 得到搜索结果缓存统计，包括命中率和耗时
+     *
+     * @return 统计数据
+     */
+    @GetMapping("getSearchCacheStats")
+    public Result<?> getSearchCacheStats() {
+        return Result.ok(searchResultCache.getStats());
+    }
+
     /**
      * 分页查询笔记
      *
@@ -50,6 +83,20 @@ public class NoteController {
         return Result.ok(page);
     }
 
+    /**
+     * 按游标得到推荐笔记
+     *
+     * @param pageSize 分页数
+     * @param cursor   上一页返回的游标，第一页不传
+     * @return 推荐笔记
+     */
+    @NoLoginIntercept
+    @GetMapping("getRecommendNoteByCursor/{pageSize}")
+    public Result<?> getRecommendNoteByCursor(@PathVariable long pageSize, String cursor) {
+        CursorPage<NoteSearchVo> page = noteService.getRecommendNoteByCursor(cursor, pageSize);
+        return Result.ok(page);
+    }
+
     /**
      * 增加笔记
      *
@@ -72,14 +119,56 @@ public class NoteController {
     }
 
     /**
-     * 批量增加笔记
+     * 批量写入笔记，已存在的笔记整体覆盖
      *
      * @param noteSearchVoList 笔记实体集合
+     * @param index            写入的索引，为空时写入笔记索引别名
+     * @return success
      */
     @PostMapping("addNoteBulkData")
     @NoLoginIntercept
-    public void addNoteBulkData(@RequestBody List<NoteSearchVo> noteSearchVoList) {
-        noteService.addNoteBulkData(noteSearchVoList);
+    public Result<?> addNoteBulkData(@RequestBody List<NoteSearchVo> noteSearchVoList, @RequestParam(required = false) String index) {
+        noteService.addNoteBulkData(noteSearchVoList, index);
+        return Result.ok();
+    }
+
+    /**
+     * 流式批量写入笔记，请求体每行一个笔记json(ndjson)，调用方不需要一次组装整个列表
+     *
+     * @param request 请求
+     * @param index   写入的索引，为空时写入笔记索引别名
+     * @return 写入结果
+     */
+    @PostMapping(value = "ingestNote", consumes = "application/x-ndjson")
+    @NoLoginIntercept
+    public Result<?> ingestNote(HttpServletRequest request, @RequestParam(required = false) String index) throws IOException {
+        BulkIngestResult result = noteService.ingestNote(request.getInputStream(), index);
+        return Result.ok(result);
+    }
+
+    /**
+     * 创建全量重建使用的新索引
+     *
+     * @return 新索引名称
+     */
+    @PostMapping("createReindex")
+    @NoLoginIntercept
+    public Result<?> createReindex() {
+        String index = noteService.createReindex();
+        return Result.ok(index);
+    }
+
+    /**
+     * 把笔记索引别名切换到全量重建的新索引
+     *
+     * @param index 新索引名称
+     * @return success
+     */
+    @PostMapping("switchIndex")
+    @NoLoginIntercept
+    public Result<?> switchIndex(String index) {
+        noteService.switchIndex(index);
+        return Result.ok();
     }
 
     /**
@@ -91,4 +180,14 @@ public class NoteController {
     public void deleteNote(@PathVariable String noteId) {
         noteService.deleteNote(noteId);
     }
+
+    /**
+     * 批量删除es中的笔记
+     *
+     * @param noteIds 笔记id集合
+     */
+    @PostMapping("deleteNoteBulkData")
+    public void deleteNoteBulkData(@RequestBody List<String> noteIds) {
+        noteService.deleteNoteBulkData(noteIds);
+    }
 }
@@ -0,0 +1,45 @@
+package com.yanhuo.search.ingest;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量写入结果
+ *
+ * @author xiaozhao
+ */
+@Data
+public class BulkIngestResult {
+
+    /**
+     * 收到的文档数
+     */
+    private long total;
+
+    /**
+     * 写入成功的文档数
+     */
+    private long succeeded;
+
+    /**
+     * 重试后仍然失败的文档数
+     */
+    private long failed;
+
+    /**
+     * 失败的文档id，无法解析的行为 line:行号，最多保留100个
+     */
+    private List<String> failedIds = new ArrayList<>();
+
+    /**
+     * 发送的bulk请求数，包括重试
+     */
+    private long requests;
+
+    /**
+     * 耗时(毫秒)
+     */
+    private long took;
+}
@@ -0,0 +1,320 @@
+package com.yanhuo.search.ingest;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.yanhuo.xo.vo.NoteSearchVo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流式批量写入es
+ * <p>
+ * 调用方逐条加入文档，缓冲的文档数达到max-actions或大小达到max-bytes时作为一个bulk请求发送，
+ * 加入时序列化一次，得到的json同时用于计算大小和写入请求，发送和重试时不再序列化。
+ * 所有写入共享max-concurrent个并发名额，名额用完时加入文档的线程阻塞，内存中最多保留并发数+1批文档。
+ * bulk响应中被拒绝(429)或节点暂时不可用(5xx)的文档按间隔翻倍重试，其他失败和重试用完的文档记录到结果中。
+ *
+ * @author xiaozhao
+ */
+@Component
+@Slf4j
+public class BulkIngester {
+
+    private static final int MAX_FAILED_IDS = 100;
+
+    private static final Set<Integer> RETRY_STATUS = new HashSet<>(Arrays.asList(429, 502, 503, 504));
+
+    @Autowired
+    ElasticsearchClient elasticsearchClient;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Value("${bulk.max-actions:1000}")
+    int maxActions;
+
+    @Value("${bulk.max-bytes:5242880}")
+    long maxBytes;
+
+    @Value("${bulk.max-concurrent:2}")
+    int maxConcurrent;
+
+    @Value("${bulk.max-retries:3}")
+    int maxRetries;
+
+    @Value("${bulk.retry-interval:500}")
+    long retryInterval;
+
+    private Semaphore permits;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxConcurrent);
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(maxConcurrent, runnable -> {
+            Thread thread = new Thread(runnable, "bulk-ingest-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    /**
+     * 开始一次批量写入
+     *
+     * @param index 写入的索引
+     * @return 写入会话，加入所有文档后调用finish
+     */
+    public Session open(String index) {
+        return new Session(index);
+    }
+
+    /**
+     * 一次批量写入，可以在一个线程中连续加入文档
+     */
+    public class Session {
+
+        private final String index;
+
+        private final long start = System.currentTimeMillis();
+
+        private final BulkIngestResult result = new BulkIngestResult();
+
+        private List<Document> buffer = new ArrayList<>();
+
+        private long bufferBytes;
+
+        private int inFlight;
+
+        private Session(String index) {
+            this.index = index;
+        }
+
+        /**
+         * 加入文档，序列化后的json直接写入请求，大小按json的utf-8字节数计算
+         */
+        public void add(NoteSearchVo noteSearchVo) {
+            byte[] json;
+            try {
+                json = objectMapper.writeValueAsBytes(noteSearchVo);
+            } catch (Exception e) {
+                // 交给es客户端序列化，失败时记录到结果
+                add(new Document(noteSearchVo.getId(), noteSearchVo), 0);
+                return;
+            }
+            add(new Document(noteSearchVo.getId(), new RawValue(new String(json, StandardCharsets.UTF_8))), json.length);
+        }
+
+        /**
+         * 加入文档，由es客户端序列化
+         *
+         * @param noteSearchVo 文档
+         * @param bytes        文档大小(utf-8字节数)
+         */
+        public void add(NoteSearchVo noteSearchVo, long bytes) {
+            add(new Document(noteSearchVo.getId(), noteSearchVo), bytes);
+        }
+
+        /**
+         * 缓冲区满时发送，并发名额用完时阻塞
+         */
+        private void add(Document document, long bytes) {
+            List<Document> batch = null;
+            synchronized (this) {
+                result.setTotal(result.getTotal() + 1);
+                buffer.add(document);
+                bufferBytes += bytes;
+                if (buffer.size() >= maxActions || bufferBytes >= maxBytes) {
+                    batch = buffer;
+                    buffer = new ArrayList<>();
+                    bufferBytes = 0;
+                }
+            }
+            if (batch != null) {
+                submit(batch);
+            }
+        }
+
+        /**
+         * 记录无法加入的数据，如无法解析的行
+         *
+         * @param ref 数据标识
+         */
+        public synchronized void reject(String ref) {
+            result.setTotal(result.getTotal() + 1);
+            recordFailure(ref);
+        }
+
+        /**
+         * 发送剩余的文档，等待所有请求完成
+         *
+         * @return 写入结果
+         */
+        public BulkIngestResult finish() {
+            List<Document> batch;
+            synchronized (this) {
+                batch = buffer;
+                buffer = new ArrayList<>();
+                bufferBytes = 0;
+            }
+            if (!batch.isEmpty()) {
+                submit(batch);
+            }
+            synchronized (this) {
+                while (inFlight > 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                result.setTook(System.currentTimeMillis() - start);
+                return result;
+            }
+        }
+
+        private void submit(List<Document> batch) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                synchronized (this) {
+                    batch.forEach(item -> recordFailure(item.id));
+                }
+                return;
+            }
+            synchronized (this) {
+                inFlight++;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        send(batch);
+                    } finally {
+                        complete();
+                    }
+                });
+            } catch (Exception e) {
+                log.error("bulk请求提交失败，数量={}", batch.size(), e);
+                synchronized (this) {
+                    batch.forEach(item -> recordFailure(item.id));
+                }
+                complete();
+            }
+        }
+
+        private void complete() {
+            permits.release();
+            synchronized (this) {
+                inFlight--;
+                notifyAll();
+            }
+        }
+
+        private void send(List<Document> batch) {
+            List<Document> pending = batch;
+            long interval = retryInterval;
+            for (int attempt = 1; ; attempt++) {
+                List<Document> retryList = new ArrayList<>();
+                List<String> failedList = new ArrayList<>();
+                long succeeded = 0;
+                try {
+                    BulkResponse bulkResponse = elasticsearchClient.bulk(buildRequest(pending));
+                    List<BulkResponseItem> items = bulkResponse.items();
+                    // 响应中的结果与请求中的操作顺序相同
+                    for (int i = 0; i < items.size(); i++) {
+                        BulkResponseItem item = items.get(i);
+                        if (item.error() == null) {
+                            succeeded++;
+                        } else if (RETRY_STATUS.contains(item.status())) {
+                            retryList.add(pending.get(i));
+                        } else {
+                            log.warn("es写入文档{}失败，{}", item.id(), item.error().reason());
+                            failedList.add(pending.get(i).id);
+                        }
+                    }
+                } catch (Exception e) {
+                    log.warn("bulk请求失败，第{}次，数量={}", attempt, pending.size(), e);
+                    retryList = pending;
+                }
+                if (attempt >= maxRetries) {
+                    retryList.forEach(item -> failedList.add(item.id));
+                    retryList = Collections.emptyList();
+                }
+                synchronized (this) {
+                    result.setRequests(result.getRequests() + 1);
+                    result.setSucceeded(result.getSucceeded() + succeeded);
+                    failedList.forEach(this::recordFailure);
+                }
+                if (retryList.isEmpty()) {
+                    return;
+                }
+                try {
+                    Thread.sleep(interval);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    synchronized (this) {
+                        retryList.forEach(item -> recordFailure(item.id));
+                    }
+                    return;
+                }
+                interval *= 2;
+                pending = retryList;
+            }
+        }
+
+        private BulkRequest buildRequest(List<Document> batch) {
+            List<BulkOperation> operations = new ArrayList<>(batch.size());
+            for (Document document : batch) {
+                operations.add(new BulkOperation.Builder().index(
+                        d -> d.document(document.source).id(document.id).index(index)).build());
+            }
+            return BulkRequest.of(b -> b.index(index).operations(operations));
+        }
+
+        private void recordFailure(String ref) {
+            result.setFailed(result.getFailed() + 1);
+            if (result.getFailedIds().size() < MAX_FAILED_IDS) {
+                result.getFailedIds().add(ref);
+            }
+        }
+    }
+
+    /**
+     * 缓冲中的文档，source为已序列化的json或交给es客户端序列化的对象
+     */
+    private static class Document {
+
+        private final String id;
+
+        private final Object source;
+
+        private Document(String id, Object source) {
+            this.id = id;
+            this.source = source;
+        }
+    }
+}
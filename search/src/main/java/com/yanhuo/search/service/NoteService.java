@@ -2,10 +2,13 @@ package com.yanhuo.search.service;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.yanhuo.common.result.CursorPage;
 import com.yanhuo.search.dto.NoteDTO;
+import com.yanhuo.search.ingest.BulkIngestResult;
 import com.yanhuo.xo.entity.Note;
 import com.yanhuo.xo.vo.NoteSearchVo;
 
+import java.io.InputStream;
 import java.util.List;
 
 /**
@@ -23,6 +26,16 @@ public interface NoteService extends IService<Note> {
      */
     Page<NoteSearchVo> getNotePageByDTO(long currentPage, long pageSize, NoteDTO noteDTO);
 
+    /**
+     * 按游标搜索对应的笔记，第一页打开es快照，之后的页在同一个快照上按search_after翻页
+     *
+     * @param cursor   上一页返回的游标，第一页不传
+     * @param pageSize 分页数
+     * @param noteDTO  搜索条件
+     * @return 笔记，总数只在第一页返回
+     */
+    CursorPage<NoteSearchVo> getNoteByCursor(String cursor, long pageSize, NoteDTO noteDTO);
+
     /**
      * 分页查询笔记
      *
@@ -32,6 +45,15 @@ public interface NoteService extends IService<Note> {
      */
     Page<NoteSearchVo> getRecommendNotePage(long currentPage, long pageSize);
 
+    /**
+     * 按游标得到推荐笔记，第一页生成随机种子，同一次浏览中的页按相同的随机顺序翻页
+     *
+     * @param cursor   上一页返回的游标，第一页不传
+     * @param pageSize 分页数
+     * @return 推荐笔记
+     */
+    CursorPage<NoteSearchVo> getRecommendNoteByCursor(String cursor, long pageSize);
+
     /**
      * 增加笔记
      *
@@ -47,11 +69,35 @@ public interface NoteService extends IService<Note> {
     void updateNote(NoteSearchVo noteSearchVo);
 
     /**
-     * 批量增加笔记
+     * 批量写入笔记，已存在的笔记整体覆盖
      *
      * @param noteSearchVoList 笔记实体集合
+     * @param index            写入的索引，为空时写入笔记索引别名
+     */
+    void addNoteBulkData(List<NoteSearchVo> noteSearchVoList, String index);
+
+    /**
+     * 流式批量写入笔记，请求体每行一个笔记json(ndjson)，边读取边分批写入
+     *
+     * @param inputStream 请求体
+     * @param index       写入的索引，为空时写入笔记索引别名
+     * @return 写入结果
      */
-    void addNoteBulkData(List<NoteSearchVo> noteSearchVoList);
+    BulkIngestResult ingestNote(InputStream inputStream, String index);
+
+    /**
+     * 创建全量重建使用的新索引，复制当前笔记索引的mapping，重建期间关闭刷新
+     *
+     * @return 新索引名称
+     */
+    String createReindex();
+
+    /**
+     * 全量重建完成后把笔记索引别名切换到新索引，并删除旧索引
+     *
+     * @param index 新索引名称
+     */
+    void switchIndex(String index);
 
     /**
      * 删除es中的笔记
@@ -59,4 +105,10 @@ public interface NoteService extends IService<Note> {
      */
     void deleteNote(String noteId);
 
+    /**
+     * 批量删除es中的笔记
+     *
+     * @param noteIds 笔记id集合
+     */
+    void deleteNoteBulkData(List<String> noteIds);
 }
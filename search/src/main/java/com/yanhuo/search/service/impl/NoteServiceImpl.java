@@ -1,17 +1,29 @@
 package com.yanhuo.search.service.impl;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.FieldValue;
 import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.mapping.TypeMapping;
+import co.elastic.clients.elasticsearch._types.query_dsl.FunctionBoostMode;
 import co.elastic.clients.elasticsearch.core.*;
 import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.mget.MultiGetResponseItem;
 import co.elastic.clients.elasticsearch.core.search.Hit;
 import co.elastic.clients.elasticsearch.core.search.TotalHits;
+import co.elastic.clients.elasticsearch.indices.GetMappingResponse;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.google.common.collect.Lists;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.yanhuo.common.exception.YanHuoException;
+import com.yanhuo.common.result.CursorPage;
+import com.yanhuo.search.cache.SearchResultCache;
 import com.yanhuo.search.common.NoteConstant;
+import com.yanhuo.search.common.NoteSearchQuery;
+import com.yanhuo.search.common.SearchAfterCursor;
 import com.yanhuo.search.dto.NoteDTO;
+import com.yanhuo.search.ingest.BulkIngestResult;
+import com.yanhuo.search.ingest.BulkIngester;
 import com.yanhuo.search.service.NoteService;
 import com.yanhuo.xo.dao.NoteDao;
 import com.yanhuo.xo.entity.Note;
@@ -19,9 +31,17 @@ import com.yanhuo.xo.vo.NoteSearchVo;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * @author xiaozhao
@@ -30,87 +50,280 @@ import java.util.*;
 @Slf4j
 public class NoteServiceImpl extends ServiceImpl<NoteDao, Note> implements NoteService {
 
+    /**
+     * es默认的index.max_result_window，from+size不能超过
+     */
+    private static final int MAX_RESULT_WINDOW = 10000;
+
     @Autowired
     ElasticsearchClient elasticsearchClient;
 
+    @Autowired
+    BulkIngester bulkIngester;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    SearchResultCache searchResultCache;
+
+    @Value("${note-search.keep-alive:1m}")
+    String keepAlive;
+
 
     @Override
     public Page<NoteSearchVo> getNotePageByDTO(long currentPage, long pageSize, NoteDTO noteDTO) {
+        // from/size分页超过es的max_result_window会报错，更深的页使用游标分页
+        if (currentPage < 1 || pageSize < 1 || currentPage * pageSize > MAX_RESULT_WINDOW) {
+            throw new YanHuoException("页码超出范围，请使用游标分页");
+        }
+        String key = SearchResultCache.queryKey(noteDTO, String.valueOf(currentPage), pageSize);
+        CursorPage<NoteSearchVo> cursorPage = searchResultCache.get(key, () -> searchNotePage(currentPage, pageSize, noteDTO), this::getNoteByIds);
         Page<NoteSearchVo> page = new Page<>();
-        List<NoteSearchVo> noteSearchVoList = new ArrayList<>();
+        page.setTotal(cursorPage.getTotal() == null ? 0 : cursorPage.getTotal());
+        page.setRecords(cursorPage.getRecords());
+        return page;
+    }
+
+    private CursorPage<NoteSearchVo> searchNotePage(long currentPage, long pageSize, NoteDTO noteDTO) {
         try {
-            SearchRequest.Builder builder = new SearchRequest.Builder().index(NoteConstant.NOTE_INDEX);
-            if (StringUtils.isNotBlank(noteDTO.getKeyword())) {
-                builder.query(q -> q.bool(b -> b
-                        .should(h -> h.match(f -> f.field("title").boost(1f).query(noteDTO.getKeyword())))
-                        .should(h -> h.match(f -> f.field("username").boost(0.5f).query(noteDTO.getKeyword())))
-                        .should(h -> h.match(f -> f.field("content").boost(1f).query(noteDTO.getKeyword())))
-                        .should(h -> h.match(f -> f.field("tags").boost(4f).query(noteDTO.getKeyword())))
-                        .should(h -> h.match(f -> f.field("categoryName").boost(2f).query(noteDTO.getKeyword())))
-                        .should(h -> h.match(f -> f.field("categoryParentName").boost(1.5f).query(noteDTO.getKeyword())))
-                ));
+            SearchRequest.Builder builder = new SearchRequest.Builder()
+                    .index(NoteConstant.NOTE_INDEX)
+                    .query(NoteSearchQuery.build(noteDTO))
+                    .from((int) ((currentPage - 1) * pageSize))
+                    .size((int) pageSize);
+            NoteSearchQuery.sort(builder, noteDTO.getType());
+            SearchResponse<NoteSearchVo> searchResponse = elasticsearchClient.search(builder.build(), NoteSearchVo.class);
+            TotalHits totalHits = searchResponse.hits().total();
+            List<NoteSearchVo> noteSearchVoList = new ArrayList<>();
+            searchResponse.hits().hits().forEach(hit -> noteSearchVoList.add(hit.source()));
+            return new CursorPage<NoteSearchVo>()
+                    .setRecords(noteSearchVoList)
+                    .setTotal(totalHits == null ? 0 : totalHits.value());
+        } catch (Exception e) {
+            log.error("es搜索笔记异常", e);
+            throw new YanHuoException("es查找数据异常");
+        }
+    }
+
+    @Override
+    public CursorPage<NoteSearchVo> getNoteByCursor(String cursor, long pageSize, NoteDTO noteDTO) {
+        if (pageSize < 1 || pageSize > MAX_RESULT_WINDOW) {
+            throw new YanHuoException("分页数超出范围");
+        }
+        if (StringUtils.isNotBlank(cursor)) {
+            return searchNoteByCursor(cursor, pageSize, noteDTO);
+        }
+        // 只缓存第一页，第一页不打开快照，缓存的游标不含快照id
+        String key = SearchResultCache.queryKey(noteDTO, "cursor", pageSize);
+        return searchResultCache.get(key, () -> searchNoteByCursor(null, pageSize, noteDTO), this::getNoteByIds);
+    }
+
+    /**
+     * 在快照(point in time)上按search_after翻页
+     * <p>
+     * 第一页直接搜索索引，不打开快照，结果可以缓存给多个请求共用；第二页打开快照，之后的页在同一个快照上搜索，
+     * 翻页期间的写入不会造成重复或遗漏。排序值最后加上笔记id，顺序唯一且不依赖快照，
+     * 快照过期后打开新的快照从相同的排序值继续。游标是快照id(第一页为空)加上一页最后一条的排序值，最后一页关闭快照。
+     */
+    private CursorPage<NoteSearchVo> searchNoteByCursor(String cursor, long pageSize, NoteDTO noteDTO) {
+        String pitId = null;
+        List<FieldValue> searchAfter = null;
+        if (StringUtils.isNotBlank(cursor)) {
+            List<FieldValue> values = SearchAfterCursor.decode(cursor, 3);
+            if (!values.get(0).isString()) {
+                throw new YanHuoException("游标无效");
             }
-            if (StringUtils.isNotBlank(noteDTO.getCpid()) && StringUtils.isNotBlank(noteDTO.getCid())) {
-                builder.query(q -> q.bool(b -> b
-                        .must(h -> h.match(m -> m.field("cid").query(noteDTO.getCid())))
-                        .must(h -> h.match(m -> m.field("cpid").query(noteDTO.getCpid())))
-                ));
-            } else if (StringUtils.isNotBlank(noteDTO.getCpid())) {
-                builder.query(h -> h.match(m -> m.field("cpid").query(noteDTO.getCpid())));
+            pitId = StringUtils.isEmpty(values.get(0).stringValue()) ? openPointInTime() : values.get(0).stringValue();
+            searchAfter = values.subList(1, values.size());
+        }
+        try {
+            SearchRequest searchRequest = noteCursorRequest(noteDTO, pitId, searchAfter, pageSize);
+            SearchResponse<NoteSearchVo> searchResponse;
+            try {
+                searchResponse = elasticsearchClient.search(searchRequest, NoteSearchVo.class);
+            } catch (ElasticsearchException e) {
+                if (pitId == null || e.status() != 404) {
+                    throw e;
+                }
+                // 快照已过期，打开新的快照从相同的排序值继续
+                log.info("es快照已过期，重新打开，{}", e.getMessage());
+                pitId = openPointInTime();
+                searchRequest = noteCursorRequest(noteDTO, pitId, searchAfter, pageSize);
+                searchResponse = elasticsearchClient.search(searchRequest, NoteSearchVo.class);
             }
-
-            if (noteDTO.getType() == 1) {
-                builder.sort(o -> o.field(f -> f.field("likeCount").order(SortOrder.Desc)));
-            } else if (noteDTO.getType() == 2) {
-                builder.sort(o -> o.field(f -> f.field("time").order(SortOrder.Desc)));
+            if (searchResponse.pitId() != null) {
+                pitId = searchResponse.pitId();
             }
-            builder.from((int) (currentPage - 1) * (int) pageSize);
-            builder.size((int) pageSize);
-            SearchRequest searchRequest = builder.build();
-            SearchResponse<NoteSearchVo> searchResponse = elasticsearchClient.search(searchRequest, NoteSearchVo.class);
-            TotalHits totalHits = searchResponse.hits().total();
-            page.setTotal(totalHits.value());
             List<Hit<NoteSearchVo>> hits = searchResponse.hits().hits();
-            for (Hit<NoteSearchVo> hit : hits) {
-                NoteSearchVo noteSearchVo = hit.source();
-                noteSearchVoList.add(noteSearchVo);
+            boolean hasMore = hits.size() > pageSize;
+            CursorPage<NoteSearchVo> page = new CursorPage<>();
+            if (hasMore) {
+                hits = hits.subList(0, (int) pageSize);
+                List<FieldValue> values = new ArrayList<>();
+                values.add(FieldValue.of(pitId == null ? "" : pitId));
+                // 快照上的搜索在排序值最后加上隐式的_shard_doc，只保留请求中的排序字段，与第一页的游标长度一致
+                List<FieldValue> sort = hits.get(hits.size() - 1).sort();
+                values.addAll(sort.subList(0, Math.min(sort.size(), searchRequest.sort().size())));
+                page.setNextCursor(SearchAfterCursor.encode(values));
+            } else if (pitId != null) {
+                closePointInTime(pitId);
             }
+            if (searchAfter == null && searchResponse.hits().total() != null) {
+                page.setTotal(searchResponse.hits().total().value());
+            }
+            List<NoteSearchVo> noteSearchVoList = new ArrayList<>(hits.size());
+            hits.forEach(hit -> noteSearchVoList.add(hit.source()));
+            return page.setRecords(noteSearchVoList).setHasMore(hasMore);
         } catch (Exception e) {
+            log.error("es搜索笔记异常", e);
             throw new YanHuoException("es查找数据异常");
         }
-        page.setRecords(noteSearchVoList);
-        return page;
+    }
+
+    /**
+     * 翻页的搜索请求，没有快照时搜索索引，多取一条用于判断是否还有下一页，只在第一页统计总数
+     */
+    private SearchRequest noteCursorRequest(NoteDTO noteDTO, String pitId, List<FieldValue> searchAfter, long pageSize) {
+        SearchRequest.Builder builder = new SearchRequest.Builder()
+                .query(NoteSearchQuery.build(noteDTO))
+                .size((int) pageSize + 1);
+        if (pitId == null) {
+            builder.index(NoteConstant.NOTE_INDEX);
+        } else {
+            builder.pit(p -> p.id(pitId).keepAlive(t -> t.time(keepAlive)));
+        }
+        NoteSearchQuery.sort(builder, noteDTO.getType());
+        builder.sort(o -> o.field(f -> f.field("id.keyword").order(SortOrder.Asc)));
+        if (searchAfter != null) {
+            builder.searchAfter(searchAfter).trackTotalHits(t -> t.enabled(false));
+        }
+        return builder.build();
+    }
+
+    private String openPointInTime() {
+        try {
+            return elasticsearchClient.openPointInTime(OpenPointInTimeRequest.of(o -> o.index(NoteConstant.NOTE_INDEX).keepAlive(t -> t.time(keepAlive)))).id();
+        } catch (Exception e) {
+            log.error("es打开快照异常", e);
+            throw new YanHuoException("es查找数据异常");
+        }
+    }
+
+    /**
+     * 最后一页关闭快照，关闭失败时等待快照过期
+     */
+    private void closePointInTime(String pitId) {
+        try {
+            elasticsearchClient.closePointInTime(ClosePointInTimeRequest.of(c -> c.id(pitId)));
+        } catch (Exception e) {
+            log.warn("es关闭快照异常", e);
+        }
+    }
+
+    /**
+     * 按id批量得到es中的笔记，用于补齐搜索结果缓存中缺少的笔记
+     */
+    private Map<String, NoteSearchVo> getNoteByIds(Collection<String> noteIds) {
+        Map<String, NoteSearchVo> result = new HashMap<>(noteIds.size());
+        try {
+            MgetResponse<NoteSearchVo> mgetResponse = elasticsearchClient.mget(m -> m.index(NoteConstant.NOTE_INDEX).ids(new ArrayList<>(noteIds)), NoteSearchVo.class);
+            for (MultiGetResponseItem<NoteSearchVo> item : mgetResponse.docs()) {
+                if (item.isResult() && item.result().found() && item.result().source() != null) {
+                    result.put(item.result().id(), item.result().source());
+                }
+            }
+        } catch (Exception e) {
+            log.error("es批量查询笔记异常", e);
+            throw new YanHuoException("es查找数据异常");
+        }
+        return result;
     }
 
 
     @Override
     public Page<NoteSearchVo> getRecommendNotePage(long currentPage, long pageSize) {
         Page<NoteSearchVo> page = new Page<>();
-        List<NoteSearchVo> noteSearchVoList = new ArrayList<>();
-        //得到当前用户的浏览记录
+        // 没有会话种子时按天取种子，同一天内按页码翻页结果稳定
+        long seed = LocalDate.now().toEpochDay();
         try {
-            SearchRequest.Builder builder = new SearchRequest.Builder().index(NoteConstant.NOTE_INDEX);
-            builder.size(1000);
-            SearchRequest searchRequest = builder.build();
-            SearchResponse<NoteSearchVo> searchResponse = elasticsearchClient.search(searchRequest, NoteSearchVo.class);
+            // 按页码翻页需要总数计算页数
+            SearchRequest.Builder builder = recommendBuilder(seed)
+                    .from((int) ((currentPage - 1) * pageSize))
+                    .size((int) pageSize)
+                    .trackTotalHits(t -> t.enabled(true));
+            SearchResponse<NoteSearchVo> searchResponse = elasticsearchClient.search(builder.build(), NoteSearchVo.class);
             TotalHits totalHits = searchResponse.hits().total();
-            //得到所有的数据
+            page.setTotal(totalHits == null ? 0 : totalHits.value());
+            List<NoteSearchVo> noteSearchVoList = new ArrayList<>();
+            searchResponse.hits().hits().forEach(hit -> noteSearchVoList.add(hit.source()));
+            page.setRecords(noteSearchVoList);
+        } catch (Exception e) {
+            log.error("es推荐笔记查询异常", e);
+            throw new YanHuoException("es查找数据异常");
+        }
+        return page;
+    }
+
+    @Override
+    public CursorPage<NoteSearchVo> getRecommendNoteByCursor(String cursor, long pageSize) {
+        long seed;
+        List<FieldValue> searchAfter = null;
+        if (StringUtils.isBlank(cursor)) {
+            // 第一页生成种子，放在游标中，之后的页使用相同的随机顺序
+            seed = ThreadLocalRandom.current().nextLong(Integer.MAX_VALUE);
+        } else {
+            List<FieldValue> values = SearchAfterCursor.decode(cursor, 4);
+            seed = values.get(0).longValue();
+            searchAfter = values.subList(1, values.size());
+        }
+        CursorPage<NoteSearchVo> page = new CursorPage<>();
+        try {
+            // 多取一条用于判断是否还有下一页，游标翻页不需要总数
+            SearchRequest.Builder builder = recommendBuilder(seed)
+                    .size((int) pageSize + 1)
+                    .trackTotalHits(t -> t.enabled(false));
+            if (searchAfter != null) {
+                builder.searchAfter(searchAfter);
+            }
+            SearchResponse<NoteSearchVo> searchResponse = elasticsearchClient.search(builder.build(), NoteSearchVo.class);
             List<Hit<NoteSearchVo>> hits = searchResponse.hits().hits();
-            for (Hit<NoteSearchVo> hit : hits) {
-                NoteSearchVo noteSearchVo = hit.source();
-                noteSearchVoList.add(noteSearchVo);
+            boolean hasMore = hits.size() > pageSize;
+            if (hasMore) {
+                hits = hits.subList(0, (int) pageSize);
+                List<FieldValue> values = new ArrayList<>();
+                values.add(FieldValue.of(seed));
+                values.addAll(hits.get(hits.size() - 1).sort());
+                page.setNextCursor(SearchAfterCursor.encode(values));
             }
-            Collections.shuffle(noteSearchVoList);
-            List<List<NoteSearchVo>> partition = Lists.partition(noteSearchVoList, (int) pageSize);
-            List<NoteSearchVo> noteSearchVos = partition.get((int) currentPage - 1);
-            page.setTotal(totalHits.value());
-            page.setRecords(noteSearchVos);
+            List<NoteSearchVo> noteSearchVoList = new ArrayList<>(hits.size());
+            hits.forEach(hit -> noteSearchVoList.add(hit.source()));
+            page.setRecords(noteSearchVoList).setHasMore(hasMore);
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("es推荐笔记查询异常", e);
+            throw new YanHuoException("es查找数据异常");
         }
         return page;
     }
 
+    /**
+     * 按种子随机排序的查询，相同种子的排序不变
+     * <p>
+     * random_score基于笔记id和种子计算分数，同一篇笔记的分数不随更新和索引重建变化，
+     * 分数相同时按时间排序，最后按笔记id排序保证顺序唯一，作为search_after的排序值
+     */
+    private SearchRequest.Builder recommendBuilder(long seed) {
+        return new SearchRequest.Builder()
+                .index(NoteConstant.NOTE_INDEX)
+                .query(q -> q.functionScore(f -> f
+                        .query(h -> h.matchAll(m -> m))
+                        .functions(fn -> fn.randomScore(r -> r.seed(String.valueOf(seed)).field("id.keyword")))
+                        .boostMode(FunctionBoostMode.Replace)))
+                .sort(o -> o.score(c -> c.order(SortOrder.Desc)))
+                .sort(o -> o.field(c -> c.field("time").order(SortOrder.Desc)))
+                .sort(o -> o.field(c -> c.field("id.keyword").order(SortOrder.Asc)));
+    }
+
     @Override
     public void addNote(NoteSearchVo noteSearchVo) {
         try {
@@ -119,6 +332,7 @@ public class NoteServiceImpl extends ServiceImpl<NoteDao, Note> implements NoteS
         } catch (Exception e) {
             e.printStackTrace();
         }
+        searchResultCache.invalidate(Collections.singletonList(noteSearchVo.getId()));
     }
 
     @Override
@@ -129,20 +343,115 @@ public class NoteServiceImpl extends ServiceImpl<NoteDao, Note> implements NoteS
         } catch (Exception e) {
             e.printStackTrace();
         }
+        searchResultCache.invalidate(Collections.singletonList(noteSearchVo.getId()));
+    }
+
+    @Override
+    public void addNoteBulkData(List<NoteSearchVo> noteSearchVoList, String index) {
+        BulkIngester.Session session = bulkIngester.open(StringUtils.isBlank(index) ? NoteConstant.NOTE_INDEX : index);
+        noteSearchVoList.forEach(session::add);
+        BulkIngestResult result = session.finish();
+        // 写入重建中的新索引时不影响搜索，切换索引时再清空缓存
+        if (StringUtils.isBlank(index)) {
+            List<String> noteIds = new ArrayList<>(noteSearchVoList.size());
+            noteSearchVoList.forEach(item -> noteIds.add(item.getId()));
+            searchResultCache.invalidate(noteIds);
+        }
+        if (result.getFailed() > 0) {
+            log.error("es批量写入笔记部分失败，失败数={}，{}", result.getFailed(), result.getFailedIds());
+            throw new YanHuoException("es批量写入笔记部分失败");
+        }
     }
 
     @Override
-    public void addNoteBulkData(List<NoteSearchVo> noteSearchVoList) {
+    public BulkIngestResult ingestNote(InputStream inputStream, String index) {
+        BulkIngester.Session session = bulkIngester.open(StringUtils.isBlank(index) ? NoteConstant.NOTE_INDEX : index);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (StringUtils.isBlank(line)) {
+                    continue;
+                }
+                NoteSearchVo noteSearchVo;
+                try {
+                    noteSearchVo = objectMapper.readValue(line, NoteSearchVo.class);
+                } catch (Exception e) {
+                    session.reject("line:" + lineNumber);
+                    continue;
+                }
+                if (StringUtils.isBlank(noteSearchVo.getId())) {
+                    session.reject("line:" + lineNumber);
+                    continue;
+                }
+                // 读取速度受并发名额限制，写入跟不上时不再读取请求体
+                session.add(noteSearchVo, line.getBytes(StandardCharsets.UTF_8).length);
+            }
+        } catch (IOException e) {
+            // 已读取的文档继续写完，结果中的总数就是实际收到的数量
+            log.error("读取ndjson请求体异常", e);
+        }
+        BulkIngestResult result = session.finish();
+        if (StringUtils.isBlank(index)) {
+            searchResultCache.invalidateAll();
+        }
+        log.info("ndjson批量写入完成，{}", result);
+        return result;
+    }
+
+    @Override
+    public String createReindex() {
+        String index = NoteConstant.NOTE_INDEX_PREFIX + System.currentTimeMillis();
         try {
-            List<BulkOperation> result = new ArrayList<>();
-            for (NoteSearchVo noteSearchVo : noteSearchVoList) {
-                result.add(new BulkOperation.Builder().create(
-                        d -> d.document(noteSearchVo).id(noteSearchVo.getId()).index(NoteConstant.NOTE_INDEX)).build());
+            TypeMapping mapping = null;
+            if (elasticsearchClient.indices().exists(e -> e.index(NoteConstant.NOTE_INDEX)).value()) {
+                GetMappingResponse mappingResponse = elasticsearchClient.indices().getMapping(g -> g.index(NoteConstant.NOTE_INDEX));
+                mapping = mappingResponse.result().values().iterator().next().mappings();
             }
-            BulkResponse bulkResponse = elasticsearchClient.bulk(e -> e.index(NoteConstant.NOTE_INDEX).operations(result));
-            log.info("createResponse.result{}", bulkResponse.toString());
+            TypeMapping currentMapping = mapping;
+            elasticsearchClient.indices().create(c -> {
+                // 重建期间不刷新，切换前再恢复
+                c.index(index).settings(s -> s.refreshInterval(t -> t.time("-1")));
+                if (currentMapping != null) {
+                    c.mappings(currentMapping);
+                }
+                return c;
+            });
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("es创建重建索引异常", e);
+            throw new YanHuoException("es创建重建索引异常");
+        }
+        log.info("es创建重建索引{}", index);
+        return index;
+    }
+
+    @Override
+    public void switchIndex(String index) {
+        if (StringUtils.isBlank(index) || !index.startsWith(NoteConstant.NOTE_INDEX_PREFIX)) {
+            throw new YanHuoException("索引名称无效");
+        }
+        try {
+            List<String> oldIndices = new ArrayList<>();
+            if (elasticsearchClient.indices().existsAlias(e -> e.name(NoteConstant.NOTE_INDEX)).value()) {
+                oldIndices.addAll(elasticsearchClient.indices().getAlias(g -> g.name(NoteConstant.NOTE_INDEX)).result().keySet());
+            } else if (elasticsearchClient.indices().exists(e -> e.index(NoteConstant.NOTE_INDEX)).value()) {
+                // 第一次重建前笔记索引是同名的普通索引，和别名切换在同一个请求中删除
+                oldIndices.add(NoteConstant.NOTE_INDEX);
+            }
+            oldIndices.remove(index);
+            elasticsearchClient.indices().putSettings(p -> p.index(index).settings(s -> s.refreshInterval(t -> t.time("1s"))));
+            elasticsearchClient.indices().refresh(r -> r.index(index));
+            elasticsearchClient.indices().updateAliases(u -> {
+                u.actions(a -> a.add(x -> x.index(index).alias(NoteConstant.NOTE_INDEX)));
+                oldIndices.forEach(old -> u.actions(a -> a.removeIndex(r -> r.index(old))));
+                return u;
+            });
+            searchResultCache.invalidateAll();
+            log.info("es笔记索引切换到{}，删除旧索引{}", index, oldIndices);
+        } catch (Exception e) {
+            log.error("es切换笔记索引异常", e);
+            throw new YanHuoException("es切换笔记索引异常");
         }
     }
 
@@ -154,5 +463,28 @@ public class NoteServiceImpl extends ServiceImpl<NoteDao, Note> implements NoteS
         } catch (Exception e) {
             e.printStackTrace();
         }
+        searchResultCache.invalidate(Collections.singletonList(noteId));
+    }
+
+    @Override
+    public void deleteNoteBulkData(List<String> noteIds) {
+        List<BulkOperation> result = new ArrayList<>();
+        for (String noteId : noteIds) {
+            result.add(new BulkOperation.Builder().delete(d -> d.id(noteId).index(NoteConstant.NOTE_INDEX)).build());
+        }
+        BulkResponse bulkResponse;
+        try {
+            bulkResponse = elasticsearchClient.bulk(e -> e.index(NoteConstant.NOTE_INDEX).operations(result));
+        } catch (Exception e) {
+            log.error("es批量删除笔记异常", e);
+            throw new YanHuoException("es批量删除笔记异常");
+        } finally {
+            searchResultCache.invalidate(noteIds);
+        }
+        // 文档不存在不算失败，调用方重试时可以重复删除
+        if (bulkResponse.errors()) {
+            log.error("es批量删除笔记部分失败，{}", bulkResponse);
+            throw new YanHuoException("es批量删除笔记部分失败");
+        }
     }
 }
@@ -0,0 +1,156 @@
+package com.yanhuo.search.benchmark;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import com.yanhuo.search.common.NoteSearchQuery;
+import com.yanhuo.search.dto.NoteDTO;
+import com.yanhuo.xo.vo.NoteSearchVo;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 笔记搜索翻页深度基准测试
+ * <p>
+ * 对比from/size和快照上的search_after在不同页码取一页的耗时，搜索条件和排序与线上相同(分类filter，按时间排序)。
+ * search_after的排序值在准备阶段翻页得到，测量的是取这一页的单次请求。
+ * 需要一个测试用的es，地址由-Des.url和-Des.port指定，默认localhost:9200，
+ * 第一次运行时写入note_benchmark索引，之后重复使用，不再需要时手动删除。
+ * 运行方式：在search模块执行 mvn test-compile 后运行main方法。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NoteSearchDepthBenchmark {
+
+    private static final String INDEX = "note_benchmark";
+
+    private static final int DOC_COUNT = 50000;
+
+    private static final int PAGE_SIZE = 20;
+
+    /**
+     * 页码，from+size不能超过10000
+     */
+    @Param({"1", "50", "200", "490"})
+    int depth;
+
+    private RestClient restClient;
+
+    private RestClientTransport transport;
+
+    private ElasticsearchClient client;
+
+    private NoteDTO noteDTO;
+
+    private String pitId;
+
+    private List<FieldValue> searchAfter;
+
+    @Setup
+    public void setup() throws Exception {
+        restClient = RestClient.builder(new HttpHost(System.getProperty("es.url", "localhost"),
+                Integer.getInteger("es.port", 9200))).build();
+        transport = new RestClientTransport(restClient, new JacksonJsonpMapper());
+        client = new ElasticsearchClient(transport);
+        if (!client.indices().exists(e -> e.index(INDEX)).value()) {
+            load();
+        }
+        noteDTO = new NoteDTO();
+        noteDTO.setType(2);
+        noteDTO.setCpid("p0");
+
+        pitId = client.openPointInTime(o -> o.index(INDEX).keepAlive(t -> t.time("5m"))).id();
+        for (int page = 1; page < depth; page++) {
+            List<Hit<NoteSearchVo>> hits = client.search(searchAfterRequest(), NoteSearchVo.class).hits().hits();
+            searchAfter = hits.get(hits.size() - 1).sort();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.closePointInTime(c -> c.id(pitId));
+        transport.close();
+        restClient.close();
+    }
+
+    @Benchmark
+    public SearchResponse<NoteSearchVo> fromSize() throws Exception {
+        SearchRequest.Builder builder = new SearchRequest.Builder()
+                .index(INDEX)
+                .query(NoteSearchQuery.build(noteDTO))
+                .from((depth - 1) * PAGE_SIZE)
+                .size(PAGE_SIZE);
+        NoteSearchQuery.sort(builder, noteDTO.getType());
+        return client.search(builder.build(), NoteSearchVo.class);
+    }
+
+    @Benchmark
+    public SearchResponse<NoteSearchVo> searchAfter() throws Exception {
+        return client.search(searchAfterRequest(), NoteSearchVo.class);
+    }
+
+    private SearchRequest searchAfterRequest() {
+        SearchRequest.Builder builder = new SearchRequest.Builder()
+                .query(NoteSearchQuery.build(noteDTO))
+                .pit(p -> p.id(pitId).keepAlive(t -> t.time("5m")))
+                .size(PAGE_SIZE)
+                .trackTotalHits(t -> t.enabled(false));
+        NoteSearchQuery.sort(builder, noteDTO.getType());
+        builder.sort(o -> o.field(f -> f.field("id.keyword").order(SortOrder.Asc)));
+        if (searchAfter != null) {
+            builder.searchAfter(searchAfter);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 写入测试笔记，分两个父分类，每个分类25000篇
+     */
+    private void load() throws Exception {
+        long now = System.currentTimeMillis();
+        List<BulkOperation> operations = new ArrayList<>();
+        for (int i = 0; i < DOC_COUNT; i++) {
+            NoteSearchVo note = new NoteSearchVo()
+                    .setId(String.valueOf(1630000000000000000L + i))
+                    .setTitle("笔记标题" + i)
+                    .setContent("基准测试笔记内容" + i)
+                    .setCpid("p" + (i % 2))
+                    .setCid("c" + (i % 10))
+                    .setLikeCount((long) (i % 1000))
+                    .setTime(now - i * 1000L);
+            operations.add(new BulkOperation.Builder().index(d -> d.index(INDEX).id(note.getId()).document(note)).build());
+            if (operations.size() == 1000) {
+                List<BulkOperation> batch = operations;
+                client.bulk(b -> b.index(INDEX).operations(batch));
+                operations = new ArrayList<>();
+            }
+        }
+        client.indices().refresh(r -> r.index(INDEX));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(NoteSearchDepthBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
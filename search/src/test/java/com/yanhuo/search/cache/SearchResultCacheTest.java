@@ -0,0 +1,168 @@
+package com.yanhuo.search.cache;
+
+import com.yanhuo.common.result.CursorPage;
+import com.yanhuo.search.dto.NoteDTO;
+import com.yanhuo.xo.vo.NoteSearchVo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 搜索结果缓存单元测试
+ */
+@DisplayName("🗂️ 搜索结果缓存测试")
+class SearchResultCacheTest {
+
+    private SearchResultCache searchResultCache;
+
+    private final AtomicInteger searchCount = new AtomicInteger();
+
+    private final List<Collection<String>> loadedIds = new ArrayList<>();
+
+    private final Map<String, NoteSearchVo> index = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        searchResultCache = new SearchResultCache();
+        ReflectionTestUtils.setField(searchResultCache, "queryMaxBytes", 1024L * 1024);
+        ReflectionTestUtils.setField(searchResultCache, "docMaxBytes", 1024L * 1024);
+        ReflectionTestUtils.setField(searchResultCache, "ttl", 60000L);
+        ReflectionTestUtils.setField(searchResultCache, "refreshInterval", 0L);
+        searchResultCache.init();
+        index.put("n1", note("n1", "标题1"));
+        index.put("n2", note("n2", "标题2"));
+    }
+
+    @Test
+    @DisplayName("✅ 规范化后相同的搜索条件使用同一个key")
+    void shouldNormalizeKey() {
+        NoteDTO a = dto("  Java   笔记 ", null);
+        NoteDTO b = dto("java 笔记", 0);
+
+        assertEquals(SearchResultCache.queryKey(a, "1", 10), SearchResultCache.queryKey(b, "1", 10));
+        assertNotEquals(SearchResultCache.queryKey(a, "1", 10), SearchResultCache.queryKey(b, "2", 10));
+    }
+
+    @Test
+    @DisplayName("✅ 第二次相同的搜索不访问es，从文档缓存组装结果")
+    void shouldServeFromCache() {
+        CursorPage<NoteSearchVo> first = searchResultCache.get("k", searcher("n1", "n2"), docLoader());
+        CursorPage<NoteSearchVo> second = searchResultCache.get("k", searcher("n1", "n2"), docLoader());
+
+        assertEquals(1, searchCount.get());
+        assertTrue(loadedIds.isEmpty());
+        assertEquals(2L, second.getTotal());
+        assertEquals("next", second.getNextCursor());
+        assertTrue(second.getHasMore());
+        assertEquals(Arrays.asList("n1", "n2"), ids(second));
+        assertEquals(ids(first), ids(second));
+        Map<String, Object> stats = searchResultCache.getStats();
+        assertEquals(1L, stats.get("queryHitCount"));
+        assertEquals(1L, stats.get("queryMissCount"));
+        assertEquals(0.5D, stats.get("queryHitRatio"));
+    }
+
+    @Test
+    @DisplayName("🔄 写入笔记后代数加一，查询结果失效，修改的笔记重新读取")
+    void shouldInvalidateOnWrite() {
+        searchResultCache.get("k", searcher("n1", "n2"), docLoader());
+
+        index.put("n1", note("n1", "新标题"));
+        searchResultCache.invalidate(Collections.singletonList("n1"));
+        CursorPage<NoteSearchVo> page = searchResultCache.get("k", searcher("n1", "n2"), docLoader());
+
+        assertEquals(2, searchCount.get());
+        assertEquals("新标题", page.getRecords().get(0).getTitle());
+        assertEquals(1L, searchResultCache.getStats().get("generation"));
+    }
+
+    @Test
+    @DisplayName("🧩 查询缓存命中但文档被淘汰时用一次mget补齐")
+    void shouldLoadMissingDocs() {
+        searchResultCache.get("k", searcher("n1", "n2"), docLoader());
+        ReflectionTestUtils.setField(searchResultCache, "docCache", new WeightedLruCache<String, NoteSearchVo>(1024L * 1024, 0, SearchResultCache::weigh));
+
+        CursorPage<NoteSearchVo> page = searchResultCache.get("k", searcher("n1", "n2"), docLoader());
+
+        assertEquals(1, searchCount.get());
+        assertEquals(1, loadedIds.size());
+        assertEquals(Arrays.asList("n1", "n2"), new ArrayList<>(loadedIds.get(0)));
+        assertEquals(Arrays.asList("n1", "n2"), ids(page));
+    }
+
+    @Test
+    @DisplayName("⏳ 写入后刷新间隔内的搜索结果不缓存")
+    void shouldNotCacheBeforeRefresh() {
+        ReflectionTestUtils.setField(searchResultCache, "refreshInterval", 60000L);
+        searchResultCache.invalidate(Collections.singletonList("n1"));
+
+        searchResultCache.get("k", searcher("n1"), docLoader());
+        searchResultCache.get("k", searcher("n1"), docLoader());
+
+        assertEquals(2, searchCount.get());
+    }
+
+    @Test
+    @DisplayName("📏 总大小超过上限时淘汰最久未访问的值")
+    void shouldEvictByWeight() {
+        WeightedLruCache<String, String> cache = new WeightedLruCache<>(10, 0, String::length);
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+        cache.get("a");
+        cache.put("c", "cccc");
+        cache.put("d", "dddddddddddd");
+
+        assertEquals("aaaa", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("cccc", cache.get("c"));
+        assertNull(cache.get("d"));
+        assertEquals(8, cache.weight());
+    }
+
+    private Supplier<CursorPage<NoteSearchVo>> searcher(String... ids) {
+        return () -> {
+            searchCount.incrementAndGet();
+            CursorPage<NoteSearchVo> page = new CursorPage<>();
+            List<NoteSearchVo> records = new ArrayList<>();
+            for (String id : ids) {
+                records.add(index.get(id));
+            }
+            page.setRecords(records).setTotal((long) ids.length).setNextCursor("next").setHasMore(true);
+            return page;
+        };
+    }
+
+    private Function<Collection<String>, Map<String, NoteSearchVo>> docLoader() {
+        return ids -> {
+            loadedIds.add(ids);
+            Map<String, NoteSearchVo> result = new HashMap<>(16);
+            ids.forEach(id -> result.put(id, index.get(id)));
+            return result;
+        };
+    }
+
+    private List<String> ids(CursorPage<NoteSearchVo> page) {
+        List<String> ids = new ArrayList<>();
+        page.getRecords().forEach(item -> ids.add(item.getId()));
+        return ids;
+    }
+
+    private NoteDTO dto(String keyword, Integer type) {
+        NoteDTO noteDTO = new NoteDTO();
+        noteDTO.setKeyword(keyword);
+        noteDTO.setType(type);
+        return noteDTO;
+    }
+
+    private NoteSearchVo note(String id, String title) {
+        return new NoteSearchVo().setId(id).setTitle(title);
+    }
+}
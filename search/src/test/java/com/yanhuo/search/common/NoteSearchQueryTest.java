@@ -0,0 +1,70 @@
+package com.yanhuo.search.common;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import com.yanhuo.search.dto.NoteDTO;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 笔记搜索条件单元测试
+ */
+@DisplayName("🔎 笔记搜索条件测试")
+class NoteSearchQueryTest {
+
+    @Test
+    @DisplayName("✅ 关键词和分类组合在同一个bool查询中，分类放在filter")
+    void shouldCombineKeywordAndCategory() {
+        NoteDTO noteDTO = dto(" java ", "c1", "p1");
+
+        BoolQuery bool = NoteSearchQuery.build(noteDTO).bool();
+
+        assertEquals(6, bool.should().size());
+        assertEquals("1", bool.minimumShouldMatch());
+        assertEquals("java", bool.should().get(0).match().query().stringValue());
+        assertTrue(bool.must().isEmpty());
+        assertEquals(2, bool.filter().size());
+        assertEquals("cpid.keyword", bool.filter().get(0).term().field());
+        assertEquals("p1", bool.filter().get(0).term().value().stringValue());
+        assertEquals("cid.keyword", bool.filter().get(1).term().field());
+    }
+
+    @Test
+    @DisplayName("✅ 只有分类时不加should，只有关键词时不加filter")
+    void shouldOmitEmptyClauses() {
+        BoolQuery category = NoteSearchQuery.build(dto("", null, "p1")).bool();
+        BoolQuery keyword = NoteSearchQuery.build(dto("java", null, null)).bool();
+
+        assertTrue(category.should().isEmpty());
+        assertNull(category.minimumShouldMatch());
+        assertEquals(1, category.filter().size());
+        assertEquals(6, keyword.should().size());
+        assertTrue(keyword.filter().isEmpty());
+    }
+
+    @Test
+    @DisplayName("🔢 按搜索类型选择排序字段，默认按相关度")
+    void shouldSortByType() {
+        assertEquals("likeCount", sortOf(1).sort().get(0).field().field());
+        assertEquals("time", sortOf(2).sort().get(0).field().field());
+        assertTrue(sortOf(0).sort().get(0).isScore());
+        assertTrue(sortOf(null).sort().get(0).isScore());
+    }
+
+    private SearchRequest sortOf(Integer type) {
+        SearchRequest.Builder builder = new SearchRequest.Builder().query(Query.of(q -> q.matchAll(m -> m)));
+        NoteSearchQuery.sort(builder, type);
+        return builder.build();
+    }
+
+    private NoteDTO dto(String keyword, String cid, String cpid) {
+        NoteDTO noteDTO = new NoteDTO();
+        noteDTO.setKeyword(keyword);
+        noteDTO.setCid(cid);
+        noteDTO.setCpid(cpid);
+        return noteDTO;
+    }
+}
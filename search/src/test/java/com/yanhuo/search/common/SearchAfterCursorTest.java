@@ -0,0 +1,40 @@
+package com.yanhuo.search.common;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import com.yanhuo.common.exception.YanHuoException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * search_after游标单元测试
+ */
+@DisplayName("🧭 search_after游标测试")
+class SearchAfterCursorTest {
+
+    @Test
+    @DisplayName("✅ 编码后还原出相同类型和值的排序值")
+    void shouldRoundTrip() {
+        List<FieldValue> values = Arrays.asList(FieldValue.of(42L), FieldValue.of(0.123456789d), FieldValue.of("note-1"), FieldValue.of(true));
+
+        List<FieldValue> decoded = SearchAfterCursor.decode(SearchAfterCursor.encode(values), 4);
+
+        assertEquals(42L, decoded.get(0).longValue());
+        assertEquals(0.123456789d, decoded.get(1).doubleValue());
+        assertEquals("note-1", decoded.get(2).stringValue());
+        assertTrue(decoded.get(3).booleanValue());
+    }
+
+    @Test
+    @DisplayName("❌ 数量不符或无法解析的游标抛出异常")
+    void shouldRejectInvalidCursor() {
+        String cursor = SearchAfterCursor.encode(Arrays.asList(FieldValue.of(1L), FieldValue.of(2L)));
+
+        assertThrows(YanHuoException.class, () -> SearchAfterCursor.decode(cursor, 3));
+        assertThrows(YanHuoException.class, () -> SearchAfterCursor.decode("not-a-cursor", 2));
+    }
+}
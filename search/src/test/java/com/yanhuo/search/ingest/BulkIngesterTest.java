@@ -0,0 +1,212 @@
+package com.yanhuo.search.ingest;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.bulk.OperationType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.yanhuo.xo.vo.NoteSearchVo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 流式批量写入单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("📦 流式批量写入测试")
+class BulkIngesterTest {
+
+    @Mock
+    private ElasticsearchClient elasticsearchClient;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    private BulkIngester bulkIngester;
+
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(bulkIngester, "maxActions", 2);
+        ReflectionTestUtils.setField(bulkIngester, "maxBytes", 1024L * 1024);
+        ReflectionTestUtils.setField(bulkIngester, "maxConcurrent", 2);
+        ReflectionTestUtils.setField(bulkIngester, "maxRetries", 3);
+        ReflectionTestUtils.setField(bulkIngester, "retryInterval", 0L);
+        bulkIngester.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        bulkIngester.destroy();
+    }
+
+    @Test
+    @DisplayName("✅ 按文档数分批发送")
+    void shouldFlushByCount() throws Exception {
+        respond(id -> 201);
+
+        BulkIngester.Session session = bulkIngester.open("note_index");
+        for (int i = 0; i < 5; i++) {
+            session.add(note("n" + i));
+        }
+        BulkIngestResult result = session.finish();
+
+        assertEquals(5, result.getTotal());
+        assertEquals(5, result.getSucceeded());
+        assertEquals(0, result.getFailed());
+        assertEquals(3, result.getRequests());
+        assertEquals(Arrays.asList(1, 2, 2), sorted(batchSizes));
+    }
+
+    @Test
+    @DisplayName("✅ 文档只序列化一次，json直接写入请求，重试时复用")
+    void shouldSerializeOnce() throws Exception {
+        List<Object> documents = Collections.synchronizedList(new ArrayList<>());
+        Set<String> rejected = Collections.synchronizedSet(new HashSet<>(Collections.singletonList("n1")));
+        when(elasticsearchClient.bulk(any(BulkRequest.class))).thenAnswer(invocation -> {
+            BulkRequest request = invocation.getArgument(0);
+            documents.add(request.operations().get(0).index().document());
+            int status = rejected.remove("n1") ? 429 : 201;
+            BulkResponseItem item = BulkResponseItem.of(b -> {
+                b.operationType(OperationType.Index).index("note_index").id("n1").status(status);
+                if (status >= 300) {
+                    b.error(e -> e.type("error").reason("status " + status));
+                }
+                return b;
+            });
+            return BulkResponse.of(b -> b.errors(status >= 300).took(1).items(Collections.singletonList(item)));
+        });
+
+        NoteSearchVo noteSearchVo = note("n1");
+        BulkIngester.Session session = bulkIngester.open("note_index");
+        session.add(noteSearchVo);
+        BulkIngestResult result = session.finish();
+
+        assertEquals(1, result.getSucceeded());
+        assertEquals(2, documents.size());
+        assertSame(documents.get(0), documents.get(1));
+        assertEquals(new RawValue(objectMapper.writeValueAsString(noteSearchVo)), documents.get(0));
+        verify(objectMapper, times(1)).writeValueAsBytes(noteSearchVo);
+    }
+
+    @Test
+    @DisplayName("✅ 按大小分批发送")
+    void shouldFlushByBytes() throws Exception {
+        ReflectionTestUtils.setField(bulkIngester, "maxBytes", 100L);
+        respond(id -> 201);
+
+        BulkIngester.Session session = bulkIngester.open("note_index");
+        session.add(note("n1"), 60);
+        session.add(note("n2"), 60);
+        session.add(note("n3"), 10);
+        BulkIngestResult result = session.finish();
+
+        assertEquals(3, result.getSucceeded());
+        assertEquals(Arrays.asList(1, 2), sorted(batchSizes));
+    }
+
+    @Test
+    @DisplayName("✅ 被拒绝的文档单独重试")
+    void shouldRetryRejectedItems() throws Exception {
+        Set<String> rejected = Collections.synchronizedSet(new HashSet<>(Collections.singletonList("n2")));
+        respond(id -> rejected.remove(id) ? 429 : 201);
+
+        BulkIngester.Session session = bulkIngester.open("note_index");
+        session.add(note("n1"));
+        session.add(note("n2"));
+        BulkIngestResult result = session.finish();
+
+        assertEquals(2, result.getSucceeded());
+        assertEquals(0, result.getFailed());
+        assertEquals(2, result.getRequests());
+        assertEquals(Arrays.asList(1, 2), sorted(batchSizes));
+    }
+
+    @Test
+    @DisplayName("❌ 不可重试的失败和无法解析的行记录到结果")
+    void shouldCollectFailures() throws Exception {
+        respond(id -> "n2".equals(id) ? 400 : 201);
+
+        BulkIngester.Session session = bulkIngester.open("note_index");
+        session.add(note("n1"));
+        session.add(note("n2"));
+        session.reject("line:3");
+        BulkIngestResult result = session.finish();
+
+        assertEquals(3, result.getTotal());
+        assertEquals(1, result.getSucceeded());
+        assertEquals(2, result.getFailed());
+        assertTrue(result.getFailedIds().containsAll(Arrays.asList("n2", "line:3")));
+        assertEquals(1, result.getRequests());
+    }
+
+    @Test
+    @DisplayName("❌ 请求异常时整批重试，用完后记为失败")
+    void shouldFailAfterRetries() throws Exception {
+        when(elasticsearchClient.bulk(any(BulkRequest.class))).thenThrow(new RuntimeException("es down"));
+
+        BulkIngester.Session session = bulkIngester.open("note_index");
+        session.add(note("n1"));
+        BulkIngestResult result = session.finish();
+
+        assertEquals(1, result.getFailed());
+        assertEquals(3, result.getRequests());
+        verify(elasticsearchClient, times(3)).bulk(any(BulkRequest.class));
+    }
+
+    private void respond(Function<String, Integer> statusOf) throws Exception {
+        when(elasticsearchClient.bulk(any(BulkRequest.class))).thenAnswer(invocation -> {
+            BulkRequest request = invocation.getArgument(0);
+            batchSizes.add(request.operations().size());
+            List<BulkResponseItem> items = new ArrayList<>();
+            boolean errors = false;
+            for (BulkOperation operation : request.operations()) {
+                String id = operation.index().id();
+                int status = statusOf.apply(id);
+                errors |= status >= 300;
+                items.add(BulkResponseItem.of(b -> {
+                    b.operationType(OperationType.Index).index("note_index").id(id).status(status);
+                    if (status >= 300) {
+                        b.error(e -> e.type("error").reason("status " + status));
+                    }
+                    return b;
+                }));
+            }
+            boolean hasErrors = errors;
+            return BulkResponse.of(b -> b.errors(hasErrors).took(1).items(items));
+        });
+    }
+
+    private List<Integer> sorted(List<Integer> list) {
+        List<Integer> result = new ArrayList<>(list);
+        Collections.sort(result);
+        return result;
+    }
+
+    private NoteSearchVo note(String id) {
+        NoteSearchVo noteSearchVo = new NoteSearchVo();
+        noteSearchVo.setId(id);
+        noteSearchVo.setTitle("title");
+        return noteSearchVo;
+    }
+}
@@ -0,0 +1,110 @@
+package com.yanhuo.search.service.impl;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch.core.*;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.yanhuo.common.result.CursorPage;
+import com.yanhuo.search.cache.SearchResultCache;
+import com.yanhuo.search.dto.NoteDTO;
+import com.yanhuo.xo.vo.NoteSearchVo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 笔记游标搜索单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("🔍 笔记游标搜索测试")
+class NoteServiceImplTest {
+
+    @Mock
+    private ElasticsearchClient elasticsearchClient;
+
+    @Mock
+    private SearchResultCache searchResultCache;
+
+    @InjectMocks
+    private NoteServiceImpl noteService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ReflectionTestUtils.setField(noteService, "keepAlive", "1m");
+        lenient().when(searchResultCache.get(anyString(), any(), any()))
+                .thenAnswer(invocation -> ((Supplier<CursorPage<NoteSearchVo>>) invocation.getArgument(1)).get());
+    }
+
+    @Test
+    @DisplayName("✅ 快照上的排序值带有隐式_shard_doc时游标长度不变，可以连续翻页，最后一页关闭快照")
+    void shouldPageThroughPointInTime() throws Exception {
+        when(elasticsearchClient.openPointInTime(any(OpenPointInTimeRequest.class)))
+                .thenReturn(OpenPointInTimeResponse.of(o -> o.id("pit-1")));
+        when(elasticsearchClient.search(any(SearchRequest.class), eq(NoteSearchVo.class))).thenReturn(
+                // 第一页直接搜索索引，排序值只有请求中的两个字段
+                response(null, hit("n1", false, 0), hit("n2", false, 0), hit("n3", false, 0)),
+                // 之后的页在快照上搜索，排序值多出_shard_doc
+                response("pit-1", hit("n3", true, 3), hit("n4", true, 4), hit("n5", true, 5)),
+                response("pit-1", hit("n5", true, 5), hit("n6", true, 6), hit("n7", true, 7)),
+                response("pit-1", hit("n7", true, 7)));
+        NoteDTO noteDTO = new NoteDTO();
+
+        List<String> ids = new ArrayList<>();
+        CursorPage<NoteSearchVo> page = noteService.getNoteByCursor(null, 2, noteDTO);
+        page.getRecords().forEach(item -> ids.add(item.getId()));
+        int pages = 1;
+        while (page.getHasMore()) {
+            page = noteService.getNoteByCursor(page.getNextCursor(), 2, noteDTO);
+            page.getRecords().forEach(item -> ids.add(item.getId()));
+            pages++;
+        }
+
+        assertEquals(4, pages);
+        assertEquals(Arrays.asList("n1", "n2", "n3", "n4", "n5", "n6", "n7"), ids);
+        ArgumentCaptor<SearchRequest> captor = ArgumentCaptor.forClass(SearchRequest.class);
+        verify(elasticsearchClient, times(4)).search(captor.capture(), eq(NoteSearchVo.class));
+        assertNull(captor.getAllValues().get(0).pit());
+        for (SearchRequest request : captor.getAllValues().subList(1, 4)) {
+            assertEquals("pit-1", request.pit().id());
+            assertEquals(2, request.searchAfter().size());
+        }
+        verify(elasticsearchClient, times(1)).openPointInTime(any(OpenPointInTimeRequest.class));
+        verify(elasticsearchClient, times(1)).closePointInTime(any(ClosePointInTimeRequest.class));
+    }
+
+    @SafeVarargs
+    private final SearchResponse<NoteSearchVo> response(String pitId, Hit<NoteSearchVo>... hits) {
+        return SearchResponse.of(b -> b
+                .took(1)
+                .timedOut(false)
+                .shards(s -> s.failed(0).successful(1).total(1))
+                .hits(h -> h.hits(Arrays.asList(hits)))
+                .pitId(pitId));
+    }
+
+    private Hit<NoteSearchVo> hit(String id, boolean pit, long shardDoc) {
+        List<FieldValue> sort = new ArrayList<>(Arrays.asList(FieldValue.of(1.5D), FieldValue.of(id)));
+        if (pit) {
+            sort.add(FieldValue.of(shardDoc));
+        }
+        NoteSearchVo noteSearchVo = new NoteSearchVo();
+        noteSearchVo.setId(id);
+        return Hit.of(h -> h.index("note_index").id(id).source(noteSearchVo).sort(sort));
+    }
+}
@@ -60,6 +60,28 @@ export const getAllChatRecord = (
   });
 };
 
+/**
+ * 按游标获取聊天记录
+ * @param pageSize 分页数
+ * @param acceptUid 接收方的用户id
+ * @param cursor 上一页返回的游标，第一页不传
+ * @returns 聊天记录
+ */
+export const getChatRecordByCursor = (
+  pageSize: number,
+  acceptUid: string,
+  cursor?: string
+) => {
+  return request<any>({
+    url: `/im/chat/getChatRecordByCursor/${pageSize}`,
+    method: "get",
+    params: {
+      acceptUid,
+      cursor,
+    },
+  });
+};
+
 /**
  * 发送消息
  * @param data 消息实体
@@ -14,6 +14,22 @@ export const getRecommendNotePage = (currentPage: number, pageSize: number) => {
   });
 };
 
+/**
+ * 按游标得到推荐笔记
+ * @param pageSize 分页数
+ * @param cursor 上一页返回的游标，第一页不传
+ * @returns 推荐笔记
+ */
+export const getRecommendNoteByCursor = (pageSize: number, cursor?: string) => {
+  return request<any>({
+    url: `/search/note/getRecommendNoteByCursor/${pageSize}`,
+    method: "get",
+    params: {
+      cursor,
+    },
+  });
+};
+
 /**
  * 
  * @param currentPage 
@@ -29,6 +45,24 @@ export const getNotePageByDTO = (currentPage: number, pageSize: number,data:Note
   });
 };
 
+/**
+ * 按游标搜索笔记
+ * @param pageSize 分页数
+ * @param data 搜索条件
+ * @param cursor 上一页返回的游标，第一页不传
+ * @returns 笔记
+ */
+export const getNoteByCursor = (pageSize: number, data: NoteDTO, cursor?: string) => {
+  return request<any>({
+    url: `/search/note/getNoteByCursor/${pageSize}`,
+    method: "post",
+    params: {
+      cursor,
+    },
+    data: data,
+  });
+};
+
 /**
  * 
  * @param keyword 
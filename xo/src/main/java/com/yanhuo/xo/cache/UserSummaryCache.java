@@ -0,0 +1,189 @@
+package com.yanhuo.xo.cache;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yanhuo.common.constant.CacheConstant;
+import com.yanhuo.common.utils.AfterCommit;
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.xo.dao.UserDao;
+import com.yanhuo.xo.entity.User;
+import com.yanhuo.xo.vo.UserSummaryVo;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户摘要信息多级缓存(本地LRU -> redis -> mysql)
+ * <p>
+ * 列表页组装数据时只需要用户名和头像，批量查询时依次从本地缓存、redis中取，
+ * 剩余未命中的id一次查询数据库后回填两级缓存。
+ * 用户信息修改的事务提交后删除redis缓存，并通过redis发布订阅通知所有实例删除本地缓存。
+ * 提交前从数据库读到旧值的请求可能在删除之后才回填缓存，double-delete-delay毫秒后再删除一次。
+ *
+ * @author xiaozhao
+ */
+@Component
+@Slf4j
+public class UserSummaryCache implements MessageListener {
+
+    @Autowired
+    UserDao userDao;
+
+    @Autowired
+    RedisUtils redisUtils;
+
+    @Autowired
+    RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${user-summary.local-size:10000}")
+    int localSize;
+
+    @Value("${user-summary.local-ttl:60000}")
+    long localTtl;
+
+    @Value("${user-summary.redis-ttl:86400}")
+    long redisTtl;
+
+    @Value("${user-summary.double-delete-delay:1000}")
+    long doubleDeleteDelay;
+
+    private LRUCache<String, UserSummaryVo> localCache;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        localCache = CacheUtil.newLRUCache(localSize, localTtl);
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("user-summary-evict-").setDaemon(true).build());
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CacheConstant.USER_SUMMARY_INVALIDATE_CHANNEL));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 得到单个用户的摘要信息
+     *
+     * @param uid 用户id
+     * @return 用户摘要信息，用户不存在时为null
+     */
+    public UserSummaryVo get(String uid) {
+        return getAll(Collections.singletonList(uid)).get(uid);
+    }
+
+    /**
+     * 批量得到用户的摘要信息
+     *
+     * @param uids 用户id
+     * @return 用户id -> 用户摘要信息，不存在的用户不会出现在结果中
+     */
+    public Map<String, UserSummaryVo> getAll(Collection<String> uids) {
+        Map<String, UserSummaryVo> result = new HashMap<>(16);
+        if (uids == null || uids.isEmpty()) {
+            return result;
+        }
+        List<String> redisMissList = new ArrayList<>();
+        for (String uid : new HashSet<>(uids)) {
+            if (uid == null) {
+                continue;
+            }
+            UserSummaryVo summary = localCache.get(uid);
+            if (summary != null) {
+                result.put(uid, summary);
+            } else {
+                redisMissList.add(uid);
+            }
+        }
+        if (redisMissList.isEmpty()) {
+            return result;
+        }
+
+        List<String> keys = new ArrayList<>(redisMissList.size());
+        redisMissList.forEach(uid -> keys.add(getKey(uid)));
+        List<String> values = redisUtils.multiGet(keys);
+        List<String> dbMissList = new ArrayList<>();
+        for (int i = 0; i < redisMissList.size(); i++) {
+            String uid = redisMissList.get(i);
+            String value = values == null ? null : values.get(i);
+            if (StringUtils.isNotBlank(value)) {
+                UserSummaryVo summary = JSONUtil.toBean(value, UserSummaryVo.class);
+                localCache.put(uid, summary);
+                result.put(uid, summary);
+            } else {
+                dbMissList.add(uid);
+            }
+        }
+        if (dbMissList.isEmpty()) {
+            return result;
+        }
+
+        List<User> userList = userDao.selectList(new QueryWrapper<User>().select("id", "username", "avatar").in("id", dbMissList));
+        Map<String, String> redisMap = new HashMap<>(userList.size());
+        for (User user : userList) {
+            UserSummaryVo summary = new UserSummaryVo()
+                    .setId(user.getId())
+                    .setUsername(user.getUsername())
+                    .setAvatar(user.getAvatar());
+            localCache.put(user.getId(), summary);
+            redisMap.put(getKey(user.getId()), JSONUtil.toJsonStr(summary));
+            result.put(user.getId(), summary);
+        }
+        if (!redisMap.isEmpty()) {
+            redisUtils.multiSetEx(redisMap, redisTtl, TimeUnit.SECONDS);
+        }
+        return result;
+    }
+
+    /**
+     * 用户信息修改后删除缓存，并通知其他实例删除本地缓存，存在事务时在提交后执行，延迟后再删除一次
+     *
+     * @param uid 用户id
+     */
+    public void invalidate(String uid) {
+        AfterCommit.run(() -> {
+            evict(uid);
+            scheduler.schedule(() -> evict(uid), doubleDeleteDelay, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    private void evict(String uid) {
+        try {
+            redisUtils.delete(getKey(uid));
+            localCache.remove(uid);
+            redisUtils.convertAndSend(CacheConstant.USER_SUMMARY_INVALIDATE_CHANNEL, uid);
+        } catch (Exception e) {
+            log.error("删除用户摘要缓存失败，uid={}", uid, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String uid = new String(message.getBody(), StandardCharsets.UTF_8);
+        localCache.remove(uid);
+        log.debug("收到用户摘要缓存失效通知，uid={}", uid);
+    }
+
+    private String getKey(String uid) {
+        return CacheConstant.USER_SUMMARY_KEY + uid;
+    }
+}
@@ -2,11 +2,12 @@ package com.yanhuo.xo.dao;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.yanhuo.xo.entity.Album;
+import com.yanhuo.xo.mapper.CountMapper;
 import org.apache.ibatis.annotations.Mapper;
 
 /**
  * @author xiaozhao
  */
 @Mapper
-public interface AlbumDao extends BaseMapper<Album>{
+public interface AlbumDao extends BaseMapper<Album>, CountMapper {
 }
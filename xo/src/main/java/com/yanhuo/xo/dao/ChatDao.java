@@ -4,9 +4,19 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.yanhuo.xo.entity.Chat;
 import org.apache.ibatis.annotations.Mapper;
 
+import java.util.List;
+
 /**
  * @author xiaozhao
  */
 @Mapper
 public interface ChatDao extends BaseMapper<Chat> {
+
+    /**
+     * 一条语句批量插入聊天消息，id和时间由调用方设置
+     *
+     * @param list 聊天消息
+     * @return 插入的数量
+     */
+    int insertBatch(List<Chat> list);
 }
@@ -4,9 +4,20 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.yanhuo.xo.entity.ChatUserRelation;
 import org.apache.ibatis.annotations.Mapper;
 
+import java.util.List;
+
 /**
  * @author xiaozhao
  */
 @Mapper
 public interface ChatUserRelationDao extends BaseMapper<ChatUserRelation> {
+
+    /**
+     * 批量更新会话，不存在时插入，依赖(send_uid, accept_uid)唯一索引
+     * count为0时未读数清零，否则未读数加1，按list顺序依次生效
+     *
+     * @param list 会话
+     * @return 影响的行数
+     */
+    int upsertBatch(List<ChatUserRelation> list);
 }
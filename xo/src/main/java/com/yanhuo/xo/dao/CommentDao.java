@@ -2,11 +2,33 @@ package com.yanhuo.xo.dao;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.yanhuo.xo.entity.Comment;
+import com.yanhuo.xo.mapper.CountMapper;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 /**
  * @author xiaozhao
  */
 @Mapper
-public interface CommentDao extends BaseMapper<Comment> {
+public interface CommentDao extends BaseMapper<Comment>, CountMapper {
+
+    /**
+     * 得到每条一级评论下点赞数最多的几条二级评论
+     *
+     * @param pids  一级评论id
+     * @param limit 每条一级评论保留的数量
+     * @return 二级评论
+     */
+    List<Comment> selectTopChildren(@Param("pids") Collection<String> pids, @Param("limit") int limit);
+
+    /**
+     * 把t_comment_sync中还不在t_comment的评论以等待同步状态复制过来，已存在的忽略
+     *
+     * @param ids t_comment_sync的评论id
+     * @return 复制的数量
+     */
+    int mergeFromSync(@Param("ids") Collection<String> ids);
 }
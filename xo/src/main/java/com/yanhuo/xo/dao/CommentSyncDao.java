@@ -5,6 +5,8 @@ import com.yanhuo.xo.entity.CommentSync;
 import org.apache.ibatis.annotations.Mapper;
 
 /**
+ * 旧的待同步评论表，只在合并到t_comment时读取
+ *
  * @author xiaozhao
  */
 @Mapper
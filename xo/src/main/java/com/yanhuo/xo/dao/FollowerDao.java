@@ -3,10 +3,22 @@ package com.yanhuo.xo.dao;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.yanhuo.xo.entity.Follower;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * @author xiaozhao
  */
 @Mapper
 public interface FollowerDao extends BaseMapper<Follower> {
+
+    /**
+     * 得到用户关注的粉丝数不小于minFanCount的用户id
+     *
+     * @param uid         用户id
+     * @param minFanCount 最小粉丝数
+     * @return 关注的用户id
+     */
+    List<String> selectBigFollowIds(@Param("uid") String uid, @Param("minFanCount") long minFanCount);
 }
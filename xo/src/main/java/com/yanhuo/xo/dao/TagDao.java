@@ -3,10 +3,21 @@ package com.yanhuo.xo.dao;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.yanhuo.xo.entity.Tag;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * @author xiaozhao
  */
 @Mapper
 public interface TagDao extends BaseMapper<Tag> {
+
+    /**
+     * 批量插入标签，标题已存在(title唯一索引)的记录直接忽略
+     *
+     * @param tagList 标签
+     * @return 影响行数
+     */
+    int insertIgnoreBatch(@Param("list") List<Tag> tagList);
 }
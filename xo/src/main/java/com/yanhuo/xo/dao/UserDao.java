@@ -2,11 +2,12 @@ package com.yanhuo.xo.dao;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.yanhuo.xo.entity.User;
+import com.yanhuo.xo.mapper.CountMapper;
 import org.apache.ibatis.annotations.Mapper;
 
 /**
  * @author xiaozhao
  */
 @Mapper
-public interface UserDao extends BaseMapper<User> {
+public interface UserDao extends BaseMapper<User>, CountMapper {
 }
@@ -0,0 +1,25 @@
+package com.yanhuo.xo.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * @author xiaozhao
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel(value = "计数增量DTO")
+public class CountDeltaDTO implements Serializable {
+
+    @ApiModelProperty("记录id")
+    private String id;
+
+    @ApiModelProperty("计数增量(可为负数)")
+    private Long delta;
+}
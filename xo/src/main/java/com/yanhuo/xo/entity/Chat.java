@@ -1,5 +1,6 @@
 package com.yanhuo.xo.entity;
 
+import cn.hutool.crypto.SecureUtil;
 import com.baomidou.mybatisplus.annotation.TableName;
 import com.yanhuo.common.entity.BaseEntity;
 import lombok.Data;
@@ -15,6 +16,9 @@ public class Chat extends BaseEntity {
 
     private String acceptUid;
 
+    // 会话id，两个用户id排序后拼接的md5，同一对用户之间的消息相同
+    private String conversationId;
+
     private String content;
 
     // 0是私聊，1是群聊
@@ -24,4 +28,19 @@ public class Chat extends BaseEntity {
     private Integer msgType;
 
     private long timestamp;
+
+    /**
+     * 得到两个用户之间的会话id，与用户顺序无关
+     * <p>
+     * 和 md5(concat(least(a, b), ':', greatest(a, b))) 结果相同，历史数据用 doc/migration/20261018_t_chat_conversation_id.sql 回填
+     *
+     * @param uid      用户id
+     * @param otherUid 另一个用户id
+     * @return 会话id
+     */
+    public static String conversationIdOf(String uid, String otherUid) {
+        return uid.compareTo(otherUid) <= 0
+                ? SecureUtil.md5(uid + ":" + otherUid)
+                : SecureUtil.md5(otherUid + ":" + uid);
+    }
 }
@@ -33,4 +33,9 @@ public class Comment extends BaseEntity {
     private Long likeCount;
 
     private Long twoCommentCount;
+
+    /**
+     * 0等待同步 1已展示
+     */
+    private Integer status;
 }
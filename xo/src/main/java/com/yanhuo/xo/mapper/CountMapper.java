@@ -0,0 +1,23 @@
+package com.yanhuo.xo.mapper;
+
+import com.yanhuo.xo.dto.CountDeltaDTO;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * 计数字段原子增量更新，由各个Dao继承并在对应的mapper xml中实现
+ *
+ * @author xiaozhao
+ */
+public interface CountMapper {
+
+    /**
+     * 批量累加计数字段(column = column + delta)，一条语句完成，不需要先查询整行
+     *
+     * @param column    计数字段列名，只能传入固定的列名常量
+     * @param deltaList 记录id和增量
+     * @return 影响行数
+     */
+    int incrCountBatch(@Param("column") String column, @Param("list") List<CountDeltaDTO> deltaList);
+}
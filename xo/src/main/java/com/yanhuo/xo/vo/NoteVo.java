@@ -47,12 +47,17 @@ public class NoteVo implements Serializable {
 
     private Long commentCount;
 
+    private Long viewCount;
+
     private List<Tag> tagList;
 
     private Long time;
 
     private Integer pinned;
 
+    //发布状态(0处理中，1已发布，2发布失败)
+    private Integer status;
+
     //点赞关注收藏
     private Boolean isFollow;
 
@@ -0,0 +1,22 @@
+package com.yanhuo.xo.vo;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+
+/**
+ * 列表页展示用的用户摘要信息
+ *
+ * @author xiaozhao
+ */
+@Data
+@Accessors(chain = true)
+public class UserSummaryVo implements Serializable {
+
+    private String id;
+
+    private String username;
+
+    private String avatar;
+}
@@ -0,0 +1,106 @@
+package com.yanhuo.xo.cache;
+
+import com.yanhuo.common.utils.RedisUtils;
+import com.yanhuo.xo.dao.UserDao;
+import com.yanhuo.xo.entity.User;
+import com.yanhuo.xo.vo.UserSummaryVo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 用户摘要信息多级缓存单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("👤 用户摘要缓存测试")
+class UserSummaryCacheTest {
+
+    @Mock
+    private UserDao userDao;
+
+    @Mock
+    private RedisUtils redisUtils;
+
+    @Mock
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @InjectMocks
+    private UserSummaryCache userSummaryCache;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(userSummaryCache, "localSize", 100);
+        ReflectionTestUtils.setField(userSummaryCache, "localTtl", 60000L);
+        ReflectionTestUtils.setField(userSummaryCache, "redisTtl", 86400L);
+        ReflectionTestUtils.setField(userSummaryCache, "doubleDeleteDelay", 50L);
+        userSummaryCache.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        userSummaryCache.destroy();
+    }
+
+    @Test
+    @DisplayName("✅ 只查询redis未命中的用户，第二次读取命中本地缓存")
+    void shouldQueryDatabaseOnlyForMisses() {
+        when(redisUtils.multiGet(anyList())).thenReturn(Arrays.asList("{\"id\":\"u1\",\"username\":\"alice\",\"avatar\":\"a1\"}", null));
+        User user = new User();
+        user.setId("u2");
+        user.setUsername("bob");
+        user.setAvatar("a2");
+        when(userDao.selectList(any())).thenReturn(Collections.singletonList(user));
+
+        Map<String, UserSummaryVo> first = userSummaryCache.getAll(Arrays.asList("u1", "u2"));
+        Map<String, UserSummaryVo> second = userSummaryCache.getAll(Arrays.asList("u1", "u2"));
+
+        assertThat(first.get("u1").getUsername()).isEqualTo("alice");
+        assertThat(first.get("u2").getUsername()).isEqualTo("bob");
+        assertThat(second).hasSize(2);
+        verify(userDao, times(1)).selectList(any());
+        verify(redisUtils, times(1)).multiGet(anyList());
+        verify(redisUtils).multiSetEx(anyMap(), eq(86400L), any());
+    }
+
+    @Test
+    @DisplayName("✅ 失效后删除redis缓存并发布通知，延迟后再删除一次")
+    void shouldPublishInvalidation() {
+        userSummaryCache.invalidate("u1");
+
+        verify(redisUtils, timeout(1000).times(2)).delete("userSummary:u1");
+        verify(redisUtils, timeout(1000).times(2)).convertAndSend("userSummary:invalidate", "u1");
+    }
+
+    @Test
+    @DisplayName("✅ 存在事务时提交后才删除缓存")
+    void shouldInvalidateAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            userSummaryCache.invalidate("u1");
+            verify(redisUtils, never()).delete(anyString());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(redisUtils, timeout(1000).times(2)).delete("userSummary:u1");
+    }
+}